@@ -1,27 +1,44 @@
 package com.lotaris.api.test;
 
 import com.lotaris.api.test.rules.ApiTestClientRule;
+import com.lotaris.api.test.rules.ApiTestConnectionPoolRule;
 import com.lotaris.api.test.rules.ApiTestHeaderConfigurationRule;
-import com.jayway.jsonassert.JsonAssert;
+import com.lotaris.api.test.rules.ApiTestLoadRule;
 import com.jayway.jsonassert.JsonAsserter;
+import com.jayway.jsonpath.spi.JsonProviderFactory;
 import com.lotaris.api.test.client.ApiTestMultipartFormData;
 import com.lotaris.api.test.client.ApiTestFormUrlEncoded;
 import com.lotaris.api.test.rules.ApiTestHeadersManagerRule;
 import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiTestBatchResult;
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestClientScope;
+import com.lotaris.api.test.client.ApiTestException;
 import com.lotaris.api.test.client.ApiTestRequestBody;
 import com.lotaris.api.test.client.ApiUriBuilder;
 import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.client.ApiTestStreamingResponse;
 import com.lotaris.api.test.client.IApiTestClientConfiguration;
 import com.lotaris.api.test.headers.ApiHeader;
 import com.lotaris.api.test.headers.ApiHeaderConfigurator;
 import com.lotaris.api.test.headers.ApiHeadersManager;
 import com.lotaris.api.test.headers.IApiHeaderConfiguration;
 import com.lotaris.api.test.headers.IApiHeaderConfiguratorLocator;
+import com.lotaris.api.test.load.ApiCapacityTest;
+import com.lotaris.api.test.load.ApiLoadTest;
+import com.lotaris.api.test.load.ApiLoadTestConsoleReporter;
+import com.lotaris.api.test.load.IApiLoadTestReporter;
+import com.lotaris.api.test.matchers.ApiJsonAsserter;
+import com.lotaris.api.test.utils.StreamingJsonObjectBuilder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.json.JsonStructure;
 import org.apache.http.HttpHeaders;
 import org.apache.http.entity.ContentType;
+import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
@@ -30,20 +47,38 @@ import org.junit.rules.TestRule;
  * Abstract API test implementation with utilities to make API calls, customize headers and make
  * assertions on JSON responses.
  *
- * <p>An API client is automatically created before each test and closed after each test.</p>
+ * <p>An API client is automatically created before each test and closed after each test. By
+ * default, each client has its own connections; override {@link #getClientScope()} to reuse
+ * connections across the tests of a class or of the whole suite.</p>
  *
  * <p>Methods such as <tt>getResource</tt> and <tt>postResource</tt> are provided for GET, POST,
  * PUT, PATCH and DELETE. They perform the request (with a body for POST, PUT and PATCH) and return
- * an API test response.</p>
+ * an API test response. Their <tt>Async</tt> counterparts (e.g. <tt>getResourceAsync</tt>) send
+ * the request with a non-blocking client and immediately return a future response; request
+ * headers are configured when the request is submitted.</p>
+ *
+ * <p>Batches of requests built with <tt>buildRequest</tt> can be executed concurrently with
+ * <tt>parallel</tt>, on virtual threads if the JVM supports them.</p>
  *
  * <p>A JsonPath asserter (see https://code.google.com/p/json-path/) is returned by
- * <tt>withJson</tt> methods. They can be used to run assertions on the response body.</p>
+ * <tt>withJson</tt> methods. They can be used to run assertions on the response body. Compiled
+ * paths are cached for all tests, so that repeated assertions only evaluate them.</p>
+ *
+ * <p>Test methods annotated with {@link ApiLoadTest} are run as load tests by concurrent virtual
+ * users; the latency of each synchronous request is recorded and reported to
+ * {@link #getLoadTestReporter()}. Test methods annotated with {@link ApiCapacityTest} are run at
+ * increasing arrival rates to find the highest rate meeting a latency objective.</p>
  *
  * @author Simon Oulevay (simon.oulevay@lotaris.com)
  * @author Laurent Prevost, laurent.prevost@lotaris.com
  */
 public abstract class AbstractApiTest {
 
+	/**
+	 * JUnit class rule to share HTTP connection pools between tests (see {@link #getClientScope()}).
+	 */
+	@ClassRule
+	public static final ApiTestConnectionPoolRule connectionPoolRule = new ApiTestConnectionPoolRule();
 	/**
 	 * JUnit rule to create and release an HTTP client for each test.
 	 */
@@ -57,6 +92,10 @@ public abstract class AbstractApiTest {
 	 * {@link ApiHeaderConfigurator} annotation on the test class (if present).
 	 */
 	private ApiTestHeaderConfigurationRule headerConfigurationRule;
+	/**
+	 * JUnit rule to run test methods annotated with {@link ApiLoadTest} as load tests.
+	 */
+	private ApiTestLoadRule loadRule;
 	/**
 	 * The default API entry point (must be provided by implementations).
 	 *
@@ -97,9 +136,10 @@ public abstract class AbstractApiTest {
 		
 		
 		// create rules
-		clientRule = new ApiTestClientRule(getClientConfiguration());
+		clientRule = new ApiTestClientRule(getClientConfiguration(), getClientScope(), connectionPoolRule);
 		headersManagerRule = new ApiTestHeadersManagerRule();
 		headerConfigurationRule = new ApiTestHeaderConfigurationRule(getHeaderConfiguratorLocator(), headersManagerRule);
+		loadRule = new ApiTestLoadRule(clientRule, headersManagerRule, getLoadTestReporter());
 
 		// make sure the client and headers manager rules are run first
 		chain = RuleChain.outerRule(clientRule).around(headersManagerRule);
@@ -116,6 +156,9 @@ public abstract class AbstractApiTest {
 		for (TestRule rule : rulesAfterHeaderConfigurationRule()) {
 			chain = chain.around(rule);
 		}
+
+		// run load tests last so that each virtual user runs the test method with the same setup
+		chain = chain.around(loadRule);
 	}
 
 	/**
@@ -136,7 +179,30 @@ public abstract class AbstractApiTest {
 	 * @return The configuration for the client
 	 */
 	protected abstract IApiTestClientConfiguration getClientConfiguration();
+
+	/**
+	 * Returns the scope of the HTTP connections used by the API client. With the default
+	 * {@link ApiTestClientScope#TEST} scope, connections are opened and closed for each test.
+	 * Shared scopes reuse pooled connections (see
+	 * {@link com.lotaris.api.test.client.IApiTestClientExtendedConfiguration#getConnectionPoolConfiguration()})
+	 * while request headers are still managed separately for each test.
+	 *
+	 * @return the scope of the client connections
+	 */
+	protected ApiTestClientScope getClientScope() {
+		return ApiTestClientScope.TEST;
+	}
 	
+	/**
+	 * Returns the reporter receiving the results of test methods annotated with
+	 * {@link ApiLoadTest}. By default, a summary is printed to the standard output.
+	 *
+	 * @return a load test reporter
+	 */
+	protected IApiLoadTestReporter getLoadTestReporter() {
+		return new ApiLoadTestConsoleReporter();
+	}
+
 	/**
 	 * Returns the operations that must be run after the HTTP client and headers manager have been
 	 * created.
@@ -240,6 +306,28 @@ public abstract class AbstractApiTest {
 		return executeStandardRequest(ApiTestRequest.POST, urlBuilder, body);
 	}
 
+	/**
+	 * Performs a POST request on a resource with a body generated by a streaming builder.
+	 *
+	 * @param body the request body builder
+	 * @param singlePath a single path element
+	 * @return the API response
+	 */
+	protected ApiTestResponse postResource(StreamingJsonObjectBuilder body, String singlePath) {
+		return postResource(body, uri(singlePath));
+	}
+
+	/**
+	 * Performs a POST request on a resource with a body generated by a streaming builder.
+	 *
+	 * @param body the request body builder
+	 * @param urlBuilder URI builder
+	 * @return the API response
+	 */
+	protected ApiTestResponse postResource(StreamingJsonObjectBuilder body, ApiUriBuilder urlBuilder) {
+		return executeStandardRequest(ApiTestRequest.POST, urlBuilder, body != null ? body.build() : null);
+	}
+
 	/**
 	 * Performs a POST request on a resource.
 	 *
@@ -284,6 +372,28 @@ public abstract class AbstractApiTest {
 		return executeStandardRequest(ApiTestRequest.PUT, uriBuilder, body);
 	}
 
+	/**
+	 * Performs a PUT request on a resource with a body generated by a streaming builder.
+	 *
+	 * @param body the request body builder
+	 * @param singlePath a single path element
+	 * @return the API response
+	 */
+	protected ApiTestResponse putResource(StreamingJsonObjectBuilder body, String singlePath) {
+		return putResource(body, uri(singlePath));
+	}
+
+	/**
+	 * Performs a PUT request on a resource with a body generated by a streaming builder.
+	 *
+	 * @param body the request body builder
+	 * @param uriBuilder URI builder
+	 * @return the API response
+	 */
+	protected ApiTestResponse putResource(StreamingJsonObjectBuilder body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequest(ApiTestRequest.PUT, uriBuilder, body != null ? body.build() : null);
+	}
+
 	/**
 	 * Performs a PUT request on a resource.
 	 *
@@ -328,6 +438,28 @@ public abstract class AbstractApiTest {
 		return executeStandardRequest(ApiTestRequest.PATCH, uriBuilder, body);
 	}
 
+	/**
+	 * Performs a PATCH request on a resource with a body generated by a streaming builder.
+	 *
+	 * @param body the request body builder
+	 * @param singlePath a single path element
+	 * @return the API response
+	 */
+	protected ApiTestResponse patchResource(StreamingJsonObjectBuilder body, String singlePath) {
+		return patchResource(body, uri(singlePath));
+	}
+
+	/**
+	 * Performs a PATCH request on a resource with a body generated by a streaming builder.
+	 *
+	 * @param body the request body builder
+	 * @param uriBuilder URI builder
+	 * @return the API response
+	 */
+	protected ApiTestResponse patchResource(StreamingJsonObjectBuilder body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequest(ApiTestRequest.PATCH, uriBuilder, body != null ? body.build() : null);
+	}
+
 	/**
 	 * Performs a PATCH request on a resource.
 	 *
@@ -358,6 +490,312 @@ public abstract class AbstractApiTest {
 	protected ApiTestResponse deleteResource(ApiUriBuilder uriBuilder) {
 		return executeStandardRequest(ApiTestRequest.DELETE, uriBuilder, (JsonStructure) null);
 	}
+
+	/**
+	 * Performs a GET request on a resource without buffering the response body, e.g. to iterate
+	 * over a huge JSON array in constant memory. The response must be closed.
+	 *
+	 * @param singlePath a single path element
+	 * @return the streaming API response
+	 */
+	protected ApiTestStreamingResponse streamResource(String singlePath) {
+		return streamResource(uri(singlePath));
+	}
+
+	/**
+	 * Performs a GET request on a resource without buffering the response body, e.g. to iterate
+	 * over a huge JSON array in constant memory. The response must be closed. Streaming requests
+	 * are not limited by the concurrency limiter of the client.
+	 *
+	 * @param uriBuilder URI builder
+	 * @return the streaming API response
+	 */
+	protected ApiTestStreamingResponse streamResource(ApiUriBuilder uriBuilder) {
+		return clientRule.getClient().executeStreaming(buildStandardRequest(ApiTestRequest.GET, uriBuilder, null));
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Helpers: asynchronous HTTP requests">
+	/**
+	 * Performs a GET request on a resource asynchronously.
+	 *
+	 * @param singlePath a single path element
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> getResourceAsync(String singlePath) {
+		return getResourceAsync(uri(singlePath));
+	}
+
+	/**
+	 * Performs a GET request on a resource asynchronously.
+	 *
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> getResourceAsync(ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.GET, uriBuilder, (JsonStructure) null);
+	}
+
+	/**
+	 * Performs a HEAD request on a resource asynchronously.
+	 *
+	 * @param singlePath a single path element
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> headResourceAsync(String singlePath) {
+		return headResourceAsync(uri(singlePath));
+	}
+
+	/**
+	 * Performs a HEAD request on a resource asynchronously.
+	 *
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> headResourceAsync(ApiUriBuilder uriBuilder) {
+		return clientRule.getClient().executeAsync(buildRequestWithoutBody(ApiTestRequest.HEAD, uriBuilder));
+	}
+
+	/**
+	 * Performs a POST request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param singlePath a single path element
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> postResourceAsync(JsonStructure body, String singlePath) {
+		return postResourceAsync(body, uri(singlePath));
+	}
+
+	/**
+	 * Performs a POST request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> postResourceAsync(JsonStructure body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.POST, uriBuilder, body);
+	}
+
+	/**
+	 * Performs a POST request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> postResourceAsync(ApiTestFormUrlEncoded body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.POST, uriBuilder, body != null ? ApiTestRequestBody.from(body) : null);
+	}
+
+	/**
+	 * Performs a POST request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> postResourceAsync(ApiTestMultipartFormData body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.POST, uriBuilder, body != null ? ApiTestRequestBody.from(body) : null);
+	}
+
+	/**
+	 * Performs a PUT request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param singlePath a single path element
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> putResourceAsync(JsonStructure body, String singlePath) {
+		return putResourceAsync(body, uri(singlePath));
+	}
+
+	/**
+	 * Performs a PUT request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> putResourceAsync(JsonStructure body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.PUT, uriBuilder, body);
+	}
+
+	/**
+	 * Performs a PUT request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> putResourceAsync(ApiTestFormUrlEncoded body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.PUT, uriBuilder, body != null ? ApiTestRequestBody.from(body) : null);
+	}
+
+	/**
+	 * Performs a PUT request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> putResourceAsync(ApiTestMultipartFormData body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.PUT, uriBuilder, body != null ? ApiTestRequestBody.from(body) : null);
+	}
+
+	/**
+	 * Performs a PATCH request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param singlePath a single path element
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> patchResourceAsync(JsonStructure body, String singlePath) {
+		return patchResourceAsync(body, uri(singlePath));
+	}
+
+	/**
+	 * Performs a PATCH request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> patchResourceAsync(JsonStructure body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.PATCH, uriBuilder, body);
+	}
+
+	/**
+	 * Performs a PATCH request on a resource asynchronously.
+	 *
+	 * @param body the request body
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> patchResourceAsync(ApiTestFormUrlEncoded body, ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.PATCH, uriBuilder, body != null ? ApiTestRequestBody.from(body) : null);
+	}
+
+	/**
+	 * Performs a DELETE request on a resource asynchronously.
+	 *
+	 * @param singlePath a single path element
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> deleteResourceAsync(String singlePath) {
+		return deleteResourceAsync(uri(singlePath));
+	}
+
+	/**
+	 * Performs a DELETE request on a resource asynchronously.
+	 *
+	 * @param uriBuilder URI builder
+	 * @return the future API response
+	 */
+	protected Future<ApiTestResponse> deleteResourceAsync(ApiUriBuilder uriBuilder) {
+		return executeStandardRequestAsync(ApiTestRequest.DELETE, uriBuilder, (JsonStructure) null);
+	}
+
+	/**
+	 * Waits for a future API response.
+	 *
+	 * @param response the future API response
+	 * @return the API response
+	 * @throws ApiTestException if the request failed or the current thread was interrupted
+	 */
+	protected ApiTestResponse await(Future<ApiTestResponse> response) {
+		try {
+			return response.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new ApiTestException("Interrupted while waiting for an API response", ie);
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof ApiTestException) {
+				throw (ApiTestException) ee.getCause();
+			}
+			throw new ApiTestException("Could not complete request", ee.getCause());
+		}
+	}
+
+	/**
+	 * Waits for multiple future API responses.
+	 *
+	 * @param responses the future API responses
+	 * @return the API responses, in the same order
+	 * @throws ApiTestException if a request failed or the current thread was interrupted
+	 */
+	protected List<ApiTestResponse> awaitAll(List<Future<ApiTestResponse>> responses) {
+
+		final List<ApiTestResponse> result = new ArrayList<>(responses.size());
+		for (Future<ApiTestResponse> response : responses) {
+			result.add(await(response));
+		}
+
+		return result;
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Helpers: parallel HTTP requests">
+	/**
+	 * Builds a request that expects a JSON response, to be executed later with
+	 * {@link #parallel(int, java.util.List)}. Request headers are configured immediately.
+	 *
+	 * @param method the HTTP method (e.g. {@link ApiTestRequest#POST})
+	 * @param uriBuilder URI builder
+	 * @param body the request body (or null)
+	 * @return the configured API request
+	 */
+	protected ApiTestRequest buildRequest(String method, ApiUriBuilder uriBuilder, JsonStructure body) {
+		return buildStandardRequest(method, uriBuilder, body != null ? ApiTestRequestBody.from(body) : null);
+	}
+
+	/**
+	 * Builds a request that expects a JSON response with a body generated by a streaming builder,
+	 * to be executed later with {@link #parallel(int, java.util.List)}. Request headers are
+	 * configured immediately.
+	 *
+	 * @param method the HTTP method (e.g. {@link ApiTestRequest#POST})
+	 * @param uriBuilder URI builder
+	 * @param body the request body builder
+	 * @return the configured API request
+	 */
+	protected ApiTestRequest buildRequest(String method, ApiUriBuilder uriBuilder, StreamingJsonObjectBuilder body) {
+		return buildStandardRequest(method, uriBuilder, body.build());
+	}
+
+	/**
+	 * Performs requests concurrently (on virtual threads if the JVM supports them) and waits for
+	 * all of them to complete. This is typically used to create many fixtures quickly.
+	 *
+	 * <pre>
+	 * List&lt;ApiTestRequest&gt; requests = new ArrayList&lt;&gt;();
+	 * for (int i = 0; i &lt; 10000; i++) {
+	 *   requests.add(buildRequest(ApiTestRequest.POST, uri("things"), thing(i)));
+	 * }
+	 * assertTrue(parallel(50, requests).isSuccessful());
+	 * </pre>
+	 *
+	 * @param concurrency the maximum number of requests executed concurrently
+	 * @param requests the requests to execute (see {@link #buildRequest(java.lang.String, com.lotaris.api.test.client.ApiUriBuilder, javax.json.JsonStructure)})
+	 * @return the response or failure of each request, in the order of the requests
+	 * @see ApiTestClient#executeAll(java.util.List, int)
+	 */
+	protected ApiTestBatchResult parallel(int concurrency, List<ApiTestRequest> requests) {
+		return clientRule.getClient().executeAll(requests, concurrency);
+	}
+
+	/**
+	 * Performs requests concurrently and waits for all of them to complete (see
+	 * {@link #parallel(int, java.util.List)}).
+	 *
+	 * @param concurrency the maximum number of requests executed concurrently
+	 * @param requests the requests to execute
+	 * @return the response or failure of each request, in the order of the requests
+	 */
+	protected ApiTestBatchResult parallel(int concurrency, ApiTestRequest... requests) {
+		return parallel(concurrency, Arrays.asList(requests));
+	}
 	//</editor-fold>
 
 	//<editor-fold defaultstate="collapsed" desc="Helpers: header configuration">
@@ -529,18 +967,19 @@ public abstract class AbstractApiTest {
 	 * @link https://code.google.com/p/json-path/
 	 */
 	protected JsonAsserter withJson(String response) {
-		return JsonAssert.with(response);
+		return new ApiJsonAsserter(JsonProviderFactory.createProvider().parse(response));
 	}
 
 	/**
-	 * Returns a JsonPath asserter for an API response.
+	 * Returns a JsonPath asserter for an API response. The response body is parsed at most once,
+	 * no matter how many asserters are created for the response.
 	 *
 	 * @param response the response whose body to run assertions on
 	 * @return a JSON asserter
 	 * @link https://code.google.com/p/json-path/
 	 */
 	protected JsonAsserter withJson(ApiTestResponse response) {
-		return withJson(response.getResponseAsString());
+		return new ApiJsonAsserter(response.getJsonPathDocument());
 	}
 	//</editor-fold>
 
@@ -621,6 +1060,81 @@ public abstract class AbstractApiTest {
 	 */
 	private ApiTestResponse executeStandardRequest(String method, ApiUriBuilder uriBuilder, ApiTestRequestBody entity) {
 
+		// perform the request and return the response
+		return execute(buildStandardRequest(method, uriBuilder, entity));
+	}
+
+	/**
+	 * Executes a standard API request asynchronously (see
+	 * {@link #executeStandardRequest(java.lang.String, com.lotaris.api.test.client.ApiUriBuilder, javax.json.JsonStructure)}).
+	 *
+	 * @param method the HTTP method
+	 * @param uriBuilder the URI builder
+	 * @param json an optional JSON request body
+	 * @return the future API response
+	 */
+	private Future<ApiTestResponse> executeStandardRequestAsync(String method, ApiUriBuilder uriBuilder, JsonStructure json) {
+		return executeStandardRequestAsync(method, uriBuilder, json != null ? ApiTestRequestBody.from(json) : null);
+	}
+
+	/**
+	 * Executes an API request that expects a JSON response asynchronously. Request headers are
+	 * configured immediately, before the request is submitted.
+	 *
+	 * @param method the HTTP method
+	 * @param uriBuilder the URI builder
+	 * @param entity the entity to use as request body (it defines the <tt>Content-Type</tt> header)
+	 * @return the future API response
+	 */
+	private Future<ApiTestResponse> executeStandardRequestAsync(String method, ApiUriBuilder uriBuilder, ApiTestRequestBody entity) {
+		return clientRule.getClient().executeAsync(buildStandardRequest(method, uriBuilder, entity));
+	}
+
+	/**
+	 * Executes an API request that has no body and does not expect the response to have a body. No
+	 * <tt>Accept</tt> header is set. Request headers are configured by the headers manager rule.
+	 *
+	 * @param method the HTTP method
+	 * @param uriBuilder the URI builder
+	 * @return the API response
+	 */
+	private ApiTestResponse executeRequestWithoutBody(String method, ApiUriBuilder uriBuilder) {
+
+		// perform the request and return the response
+		return execute(buildRequestWithoutBody(method, uriBuilder));
+	}
+
+	/**
+	 * Executes an API request with the client of the test and records its latency if the test is
+	 * a load test.
+	 *
+	 * @param request the request to execute
+	 * @return the API response
+	 */
+	private ApiTestResponse execute(ApiTestRequest request) {
+
+		final long start = System.nanoTime();
+		try {
+			final ApiTestResponse response = clientRule.getClient().execute(request);
+			loadRule.recordRequest(System.nanoTime() - start);
+			return response;
+		} catch (ApiTestException ate) {
+			loadRule.recordFailedRequest();
+			throw ate;
+		}
+	}
+
+	/**
+	 * Builds an API request that expects a JSON response: the <tt>Accept</tt> header is set to
+	 * <tt>application/json</tt> and request headers are configured by the headers manager rule.
+	 *
+	 * @param method the HTTP method
+	 * @param uriBuilder the URI builder
+	 * @param entity the entity to use as request body (it defines the <tt>Content-Type</tt> header)
+	 * @return the configured API request
+	 */
+	private ApiTestRequest buildStandardRequest(String method, ApiUriBuilder uriBuilder, ApiTestRequestBody entity) {
+
 		// build request and set Accept header
 		final ApiTestRequest request = new ApiTestRequest(method, uriBuilder, entity);
 		request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
@@ -628,19 +1142,18 @@ public abstract class AbstractApiTest {
 		// configure request headers
 		headersManagerRule.getHeadersManager().applyConfiguration(request);
 
-		// perform the request and return the response
-		return clientRule.getClient().execute(request);
+		return request;
 	}
 
 	/**
-	 * Executes an API request that has no body and does not expect the response to have a body. No
-	 * <tt>Accept</tt> header is set. Request headers are configured by the headers manager rule.
+	 * Builds an API request that has no body. No <tt>Accept</tt> header is set. Request headers are
+	 * configured by the headers manager rule.
 	 *
 	 * @param method the HTTP method
 	 * @param uriBuilder the URI builder
-	 * @return the API response
+	 * @return the configured API request
 	 */
-	private ApiTestResponse executeRequestWithoutBody(String method, ApiUriBuilder uriBuilder) {
+	private ApiTestRequest buildRequestWithoutBody(String method, ApiUriBuilder uriBuilder) {
 
 		// build request
 		final ApiTestRequest request = new ApiTestRequest(method, uriBuilder);
@@ -648,8 +1161,7 @@ public abstract class AbstractApiTest {
 		// configure request headers
 		headersManagerRule.getHeadersManager().applyConfiguration(request);
 
-		// perform the request and return the response
-		return clientRule.getClient().execute(request);
+		return request;
 	}
 	//</editor-fold>
 }
@@ -0,0 +1,155 @@
+package com.lotaris.api.test.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease concurrency limit.
+ *
+ * <p>The limit grows by one every time a full limit's worth of requests has completed successfully
+ * while the limiter was at least half used. It is multiplied by the backoff ratio when a request
+ * fails or is slower than the latency threshold, at most once per round trip: failures of requests
+ * that were already in flight when the limit last decreased are ignored.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestAimdLimit implements IApiTestConcurrencyLimit {
+
+	/**
+	 * Default minimum limit.
+	 */
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	/**
+	 * Default maximum limit.
+	 */
+	public static final int DEFAULT_MAX_LIMIT = 200;
+	/**
+	 * Default ratio applied to the limit when a request fails.
+	 */
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+	/**
+	 * The current limit (fractional so that it can grow by less than one request at a time).
+	 */
+	private double limit;
+	/**
+	 * Minimum limit.
+	 */
+	private int minLimit;
+	/**
+	 * Maximum limit.
+	 */
+	private int maxLimit;
+	/**
+	 * Ratio applied to the limit when a request fails.
+	 */
+	private double backoffRatio;
+	/**
+	 * Latency in nanoseconds above which a request is considered failed.
+	 */
+	private long latencyThreshold;
+	/**
+	 * Whether the limit has already decreased.
+	 */
+	private boolean decreased;
+	/**
+	 * When the limit last decreased (as returned by {@link System#nanoTime()}).
+	 */
+	private long lastDecrease;
+
+	/**
+	 * Constructs a limit with default values.
+	 *
+	 * @param initialLimit the initial limit
+	 * @throws IllegalArgumentException if the initial limit is not strictly positive
+	 */
+	public ApiTestAimdLimit(int initialLimit) {
+		if (initialLimit <= 0) {
+			throw new IllegalArgumentException("Initial limit must be at least 1, got " + initialLimit);
+		}
+
+		this.limit = initialLimit;
+		this.minLimit = DEFAULT_MIN_LIMIT;
+		this.maxLimit = Math.max(DEFAULT_MAX_LIMIT, initialLimit);
+		this.backoffRatio = DEFAULT_BACKOFF_RATIO;
+		this.latencyThreshold = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Sets the bounds of the limit. The current limit is adjusted to fit them.
+	 *
+	 * @param minLimit the minimum limit
+	 * @param maxLimit the maximum limit
+	 * @return this limit
+	 * @throws IllegalArgumentException if the minimum is not strictly positive or is higher than
+	 * the maximum
+	 */
+	public ApiTestAimdLimit withLimits(int minLimit, int maxLimit) {
+		if (minLimit <= 0) {
+			throw new IllegalArgumentException("Minimum limit must be at least 1, got " + minLimit);
+		} else if (maxLimit < minLimit) {
+			throw new IllegalArgumentException("Maximum limit must be at least the minimum limit, got " + maxLimit);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, limit));
+		return this;
+	}
+
+	/**
+	 * Sets the ratio applied to the limit when a request fails.
+	 *
+	 * @param backoffRatio a ratio strictly between 0 and 1
+	 * @return this limit
+	 * @throws IllegalArgumentException if the ratio is not strictly between 0 and 1
+	 */
+	public ApiTestAimdLimit withBackoffRatio(double backoffRatio) {
+		if (!(backoffRatio > 0 && backoffRatio < 1)) {
+			throw new IllegalArgumentException("Backoff ratio must be strictly between 0 and 1, got " + backoffRatio);
+		}
+		this.backoffRatio = backoffRatio;
+		return this;
+	}
+
+	/**
+	 * Sets the latency above which a request is considered failed. By default, only requests that
+	 * could not be completed or that were rejected by an overloaded server are.
+	 *
+	 * @param latencyThreshold the latency threshold
+	 * @param unit the unit of the threshold
+	 * @return this limit
+	 * @throws IllegalArgumentException if the threshold is not strictly positive
+	 */
+	public ApiTestAimdLimit withLatencyThreshold(long latencyThreshold, TimeUnit unit) {
+		if (latencyThreshold <= 0) {
+			throw new IllegalArgumentException("Latency threshold must be strictly positive, got " + latencyThreshold);
+		}
+		this.latencyThreshold = unit.toNanos(latencyThreshold);
+		return this;
+	}
+
+	@Override
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	@Override
+	public void onSample(long latency, int inFlight, boolean failed) {
+		if (failed || latency > latencyThreshold) {
+
+			// only back off once for the requests that were sent with the previous limit
+			final long now = System.nanoTime();
+			if (!decreased || now - latency - lastDecrease >= 0) {
+				limit = Math.max(minLimit, limit * backoffRatio);
+				decreased = true;
+				lastDecrease = now;
+			}
+		} else if (inFlight * 2 >= limit) {
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "AIMD limit " + getLimit() + " (" + minLimit + "-" + maxLimit + ")";
+	}
+}
@@ -0,0 +1,84 @@
+package com.lotaris.api.test.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+
+/**
+ * Transport executing requests with the non-blocking client of a connection pool and waiting for
+ * their responses.
+ *
+ * @see ApiTestTransportEngine#ASYNC
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+class ApiTestAsyncTransport implements IApiTestTransport {
+
+	/**
+	 * The connection pool providing the non-blocking client.
+	 */
+	private final ApiTestConnectionPool pool;
+
+	public ApiTestAsyncTransport(ApiTestConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public String getName() {
+		return "apache-async";
+	}
+
+	@Override
+	public CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException {
+
+		final ApiTestTimingRecorder recorder = ApiTestTimingRecorder.get(context);
+		if (recorder != null) {
+			recorder.sending(null);
+		}
+
+		final HttpResponse response;
+		try {
+			response = pool.getAsyncHttpClient().execute(HttpAsyncMethods.create(request), new TimedResponseConsumer(recorder), context, null).get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the response to " + request.getRequestLine());
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof IOException) {
+				throw (IOException) ee.getCause();
+			}
+			throw new ClientProtocolException(ee.getCause());
+		}
+
+		return new ApiTestBufferedHttpResponse(response);
+	}
+
+	/**
+	 * Response consumer that buffers the response in memory and records when its headers are
+	 * received.
+	 */
+	private static class TimedResponseConsumer extends BasicAsyncResponseConsumer {
+
+		/**
+		 * The timing recorder of the request (or null).
+		 */
+		private final ApiTestTimingRecorder recorder;
+
+		public TimedResponseConsumer(ApiTestTimingRecorder recorder) {
+			this.recorder = recorder;
+		}
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) throws IOException {
+			if (recorder != null) {
+				recorder.headersReceived(response);
+			}
+			super.onResponseReceived(response);
+		}
+	}
+}
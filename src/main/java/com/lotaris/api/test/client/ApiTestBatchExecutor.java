@@ -0,0 +1,123 @@
+package com.lotaris.api.test.client;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes batches of requests with a bounded number of concurrent threads. Virtual threads are
+ * used when the JVM supports them (Java 21 or later); otherwise a daemon platform thread is started
+ * for each concurrent worker of the batch.
+ *
+ * @see ApiTestClient#executeAll(java.util.List, int)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+class ApiTestBatchExecutor {
+
+	/**
+	 * Creates the worker threads (virtual threads if available).
+	 */
+	private static final ThreadFactory THREAD_FACTORY = createThreadFactory();
+
+	/**
+	 * Executes requests concurrently. Each worker executes requests in submission order until all
+	 * requests have been taken or its thread is interrupted. Any throwable of a request is recorded
+	 * as its failure, and requests that were not executed (because all workers were interrupted)
+	 * are failed as well, so that every request has either a response or a failure.
+	 *
+	 * @param client the client executing the requests
+	 * @param requests the requests to execute
+	 * @param concurrency the maximum number of requests executed concurrently
+	 * @return the results of the batch
+	 * @throws ApiTestException if the current thread was interrupted
+	 */
+	static ApiTestBatchResult execute(final ApiTestClient client, final List<ApiTestRequest> requests, int concurrency) {
+
+		final ApiTestResponse[] responses = new ApiTestResponse[requests.size()];
+		final ApiTestException[] failures = new ApiTestException[requests.size()];
+		final AtomicInteger next = new AtomicInteger();
+
+		final Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int i;
+				while (!Thread.currentThread().isInterrupted() && (i = next.getAndIncrement()) < responses.length) {
+					final ApiTestRequest request = requests.get(i);
+					try {
+						responses[i] = client.execute(request);
+					} catch (ApiTestException ate) {
+						failures[i] = ate;
+					} catch (Throwable t) {
+						failures[i] = new ApiTestException("Could not complete request " + request, t);
+					}
+				}
+			}
+		};
+
+		final Thread[] threads = new Thread[Math.min(concurrency, responses.length)];
+		client.getConnectionPool().ensureCapacity(threads.length);
+
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = THREAD_FACTORY.newThread(worker);
+			threads[i].start();
+		}
+
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException ie) {
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+			Thread.currentThread().interrupt();
+			throw new ApiTestException("Interrupted while executing a batch of requests", ie);
+		}
+
+		for (int i = 0; i < responses.length; i++) {
+			if (responses[i] == null && failures[i] == null) {
+				failures[i] = new ApiTestException("Request " + requests.get(i) + " was not executed because the workers of the batch were interrupted");
+			}
+		}
+
+		return new ApiTestBatchResult(responses, failures);
+	}
+
+	/**
+	 * Creates a factory of virtual threads through reflection (the library targets Java 7), or of
+	 * daemon platform threads if virtual threads are not supported.
+	 *
+	 * @return a thread factory
+	 */
+	private static ThreadFactory createThreadFactory() {
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			final Method name = builderClass.getMethod("name", String.class, long.class);
+			final Method factory = builderClass.getMethod("factory");
+			return (ThreadFactory) factory.invoke(name.invoke(ofVirtual.invoke(null), "api-test-batch-", 0L));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// not available, or a preview feature that is not enabled
+			return new PlatformThreadFactory();
+		}
+	}
+
+	/**
+	 * Factory of daemon platform threads.
+	 */
+	private static class PlatformThreadFactory implements ThreadFactory {
+
+		/**
+		 * The number of threads created so far.
+		 */
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, "api-test-batch-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.lotaris.api.test.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Results of a batch of requests executed concurrently: the response or failure of each request,
+ * in the order in which the requests were submitted.
+ *
+ * @see ApiTestClient#executeAll(java.util.List, int)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestBatchResult {
+
+	/**
+	 * The response of each request (null if it failed).
+	 */
+	private final ApiTestResponse[] responses;
+	/**
+	 * The failure of each request (null if it succeeded).
+	 */
+	private final ApiTestException[] failures;
+
+	/**
+	 * Constructs the results of a batch.
+	 *
+	 * @param responses the response of each request (null if it failed)
+	 * @param failures the failure of each request (null if it succeeded)
+	 */
+	ApiTestBatchResult(ApiTestResponse[] responses, ApiTestException[] failures) {
+		this.responses = responses;
+		this.failures = failures;
+	}
+
+	/**
+	 * @return the number of requests in the batch
+	 */
+	public int size() {
+		return responses.length;
+	}
+
+	/**
+	 * Returns the response to a request.
+	 *
+	 * @param index the index of the request in the batch
+	 * @return the API response
+	 * @throws ApiTestException the failure of the request if it could not be completed
+	 */
+	public ApiTestResponse getResponse(int index) {
+		if (failures[index] != null) {
+			throw failures[index];
+		}
+		return responses[index];
+	}
+
+	/**
+	 * Returns the failure of a request.
+	 *
+	 * @param index the index of the request in the batch
+	 * @return the failure, or null if the request was completed
+	 */
+	public ApiTestException getFailure(int index) {
+		return failures[index];
+	}
+
+	/**
+	 * Returns the responses to all requests, in submission order. Requests that could not be
+	 * completed have a null response.
+	 *
+	 * @return an unmodifiable list of API responses
+	 */
+	public List<ApiTestResponse> getResponses() {
+		return Collections.unmodifiableList(Arrays.asList(responses));
+	}
+
+	/**
+	 * Returns the failures of the requests that could not be completed.
+	 *
+	 * @return an unmodifiable map of failures by request index, in submission order
+	 */
+	public SortedMap<Integer, ApiTestException> getFailures() {
+		final SortedMap<Integer, ApiTestException> result = new TreeMap<>();
+		for (int i = 0; i < failures.length; i++) {
+			if (failures[i] != null) {
+				result.put(i, failures[i]);
+			}
+		}
+		return Collections.unmodifiableSortedMap(result);
+	}
+
+	/**
+	 * @return true if all requests were completed (whatever their response status)
+	 */
+	public boolean isSuccessful() {
+		for (int i = 0; i < failures.length; i++) {
+			if (failures[i] != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
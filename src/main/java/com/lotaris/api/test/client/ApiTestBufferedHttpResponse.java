@@ -0,0 +1,39 @@
+package com.lotaris.api.test.client;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Closeable HTTP response whose body (if any) is already buffered, so that closing it releases
+ * nothing.
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+class ApiTestBufferedHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+	/**
+	 * Constructs a response with no headers and no entity.
+	 *
+	 * @param statusLine the status line
+	 */
+	public ApiTestBufferedHttpResponse(StatusLine statusLine) {
+		super(statusLine);
+	}
+
+	/**
+	 * Constructs a closeable copy of a response. The entity is shared with the original response.
+	 *
+	 * @param response the response to copy
+	 */
+	public ApiTestBufferedHttpResponse(HttpResponse response) {
+		super(response.getStatusLine());
+		setHeaders(response.getAllHeaders());
+		setEntity(response.getEntity());
+	}
+
+	@Override
+	public void close() {
+	}
+}
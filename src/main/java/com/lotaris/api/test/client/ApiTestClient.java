@@ -1,99 +1,379 @@
 package com.lotaris.api.test.client;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
 import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.CookieStore;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.conn.routing.HttpRoute;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
 /**
  * HTTP client wrapper.
  *
+ * <p>The connections of the client are provided by an {@link ApiTestConnectionPool} which may be
+ * shared with other clients. Cookies are always specific to each client.</p>
+ *
+ * <p>The timings of each request are recorded and available on its response (see
+ * {@link ApiTestResponse#getTimings()}). Request listeners of the client configuration are
+ * notified of the lifecycle of each request (see {@link IApiTestRequestListener}).</p>
+ *
+ * <p>Response bodies are buffered according to the {@link ApiTestResponseBufferingPolicy} of the
+ * client configuration. Temporary files holding large bodies are deleted when the client is
+ * closed, after which the responses backed by these files can no longer be read.</p>
+ *
+ * <p>If the client configuration has an {@link ApiTestConcurrencyLimiter}, synchronous requests
+ * wait for the limiter before being sent.</p>
+ *
  * @author Simon Oulevay <simon.oulevay@lotaris.com>
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  */
 public class ApiTestClient {
 
 	/**
-	 * The internal Apache HTTP client.
+	 * The connection pool of this client.
+	 */
+	private ApiTestConnectionPool connectionPool;
+	/**
+	 * Whether the connection pool must be closed with this client.
+	 */
+	private boolean ownsConnectionPool;
+	/**
+	 * The transport executing the synchronous requests of this client.
+	 */
+	private IApiTestTransport transport;
+	/**
+	 * The cookies of this client.
 	 */
-	private CloseableHttpClient client;
+	private CookieStore cookieStore;
+	/**
+	 * The temporary files holding the response bodies spooled by this client.
+	 */
+	private Queue<File> temporaryFiles;
 
 	/**
-	 * Constructs a new client. The client should be released with {@link #close()} when no longer
-	 * useful.
+	 * Constructs a new client with its own connection pool. The client should be released with
+	 * {@link #close()} when no longer useful.
 	 * 
 	 * @param clientConfiguration  The client configuration
 	 */
 	public ApiTestClient(final IApiTestClientConfiguration clientConfiguration) {
-		if (clientConfiguration.isProxyEnabled()) {
-			HttpHost proxy = new HttpHost(clientConfiguration.getProxyHost(), clientConfiguration.getProxyPort());
-
-			// Create a proxy route planner to check if host should force to avoid using proxy
-			DefaultProxyRoutePlanner routePlanner = new DefaultProxyRoutePlanner(proxy) {
-				@Override
-				public HttpRoute determineRoute(HttpHost host, HttpRequest request, HttpContext context) throws HttpException {
-					// Retrieve the host name
-					String hostname = host.getHostName();
-					
-					// Check each exceptions
-					for (String hostToCheck : clientConfiguration.getProxyExceptions()) {
-						if (hostname.equals(hostToCheck)) {
-							return new HttpRoute(host);
-						}
-					}
-					
-					return super.determineRoute(host, request, context);
-				}
-			};
-			
-			client = HttpClients.custom().setRoutePlanner(routePlanner).build();
-		}
-		else {
-			client = HttpClients.createDefault();
-		}
+		this(new ApiTestConnectionPool(clientConfiguration), true);
+	}
+
+	/**
+	 * Constructs a new client using the connections of the specified pool.
+	 *
+	 * @param connectionPool the connection pool
+	 * @param ownsConnectionPool whether the connection pool must be closed with this client
+	 * @see ApiTestConnectionPool#createClient()
+	 */
+	protected ApiTestClient(ApiTestConnectionPool connectionPool, boolean ownsConnectionPool) {
+		this(connectionPool, ownsConnectionPool, connectionPool.getTransport());
+	}
+
+	/**
+	 * Constructs a new client using the connections of the specified pool and executing
+	 * synchronous requests with the specified transport.
+	 *
+	 * @param connectionPool the connection pool
+	 * @param ownsConnectionPool whether the connection pool must be closed with this client
+	 * @param transport the transport executing synchronous requests
+	 * @see ApiTestConnectionPool#createClient(com.lotaris.api.test.client.IApiTestTransport)
+	 */
+	protected ApiTestClient(ApiTestConnectionPool connectionPool, boolean ownsConnectionPool, IApiTestTransport transport) {
+		this.connectionPool = connectionPool;
+		this.ownsConnectionPool = ownsConnectionPool;
+		this.transport = transport;
+		this.cookieStore = new BasicCookieStore();
+		this.temporaryFiles = new ConcurrentLinkedQueue<>();
 	}
 	
 	/**
-	 * Closes this client and all associated resources.
+	 * Closes this client and all associated resources, including the temporary files of spooled
+	 * response bodies. The connection pool is only closed if it is not shared with other clients.
 	 *
 	 * @throws ApiTestException if the client could not be closed
 	 */
 	public void close() {
-		try {
-			client.close();
-		} catch (IOException ex) {
-			throw new ApiTestException("Could not close the HTTP client", ex);
+		cookieStore.clear();
+		deleteTemporaryFiles();
+		if (ownsConnectionPool) {
+			connectionPool.close();
+		}
+	}
+
+	/**
+	 * Deletes the temporary files of the response bodies spooled by this client. Files that
+	 * cannot be deleted (e.g. because they are still mapped on some platforms) are deleted when
+	 * the JVM exits.
+	 */
+	private void deleteTemporaryFiles() {
+		File file;
+		while ((file = temporaryFiles.poll()) != null) {
+			if (!file.delete() && file.exists()) {
+				file.deleteOnExit();
+			}
 		}
 	}
 
+	/**
+	 * Returns the connection pool of this client.
+	 *
+	 * @return a connection pool
+	 */
+	public ApiTestConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * Returns the transport executing the synchronous requests of this client.
+	 *
+	 * @return a transport
+	 */
+	public IApiTestTransport getTransport() {
+		return transport;
+	}
+
 	/**
 	 * Performs an API request and returns the response.
 	 *
 	 * @param request the request to execute
 	 * @return the API response
-	 * @throws ApiTestException if an error occurred executing the request or consuming the response
+	 * @throws ApiTestException if an error occurred executing the request or consuming the
+	 * response, or if the current thread was interrupted while waiting for the concurrency limiter
 	 */
 	public ApiTestResponse execute(ApiTestRequest request) {
 
+		final ApiTestConcurrencyLimiter limiter = connectionPool.getConcurrencyLimiter();
+		if (limiter == null) {
+			return executeRequest(request);
+		}
+
+		try {
+			limiter.acquire();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new ApiTestException("Interrupted while waiting to execute request " + request, ie);
+		}
+
+		final long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			final ApiTestResponse response = executeRequest(request);
+			failed = ApiTestConcurrencyLimiter.isOverloaded(response.getStatus());
+			return response;
+		} finally {
+			limiter.release(System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Performs an API request without waiting for the concurrency limiter.
+	 *
+	 * @param request the request to execute
+	 * @return the API response
+	 * @throws ApiTestException if an error occurred executing the request or consuming the response
+	 */
+	private ApiTestResponse executeRequest(ApiTestRequest request) {
+
+		final IApiTestRequestListener[] listeners = connectionPool.getRequestListeners();
+		final ApiTestTimingRecorder timings = new ApiTestTimingRecorder(request, listeners);
+		notifyRequestStart(listeners, request);
+
 		final CloseableHttpResponse response;
 		try {
 
 			// execute the Apache request object
-			response = client.execute(request.getRequestObject());
+			response = transport.execute(request.getRequestObject(), createContext(timings));
 
 			// build and return the API response
-			return buildResponse(response).enrichFromRequest(request);
+			final ApiTestResponse apiResponse = buildResponse(response).enrichFromRequest(request).setTimings(timings.complete(true));
+			notifyResponseComplete(listeners, request, apiResponse);
+			return apiResponse;
 
 		} catch (IOException ioe) {
-			throw new ApiTestException("Could not complete request " + request, ioe);
+			final ApiTestException ate = new ApiTestException("Could not complete request " + request, ioe);
+			notifyError(listeners, request, ate);
+			throw ate;
+		}
+	}
+
+	/**
+	 * Performs an API request and returns the response without reading its body, so that it can
+	 * be streamed. The response must be closed to release the connection.
+	 *
+	 * <p>Request listeners are notified when the request starts, when the response headers are
+	 * received and if an error occurs, but not when the response is complete.</p>
+	 *
+	 * <p>Streaming requests are not subject to the {@link ApiTestConcurrencyLimiter} of the
+	 * connection pool: they hold their connection until the caller closes the response, so their
+	 * latency says nothing about the capacity of the server and would skew the limit. They still
+	 * count against the connections of the pool.</p>
+	 *
+	 * @param request the request to execute
+	 * @return a streaming API response
+	 * @throws ApiTestException if an error occurred executing the request
+	 */
+	public ApiTestStreamingResponse executeStreaming(ApiTestRequest request) {
+
+		final IApiTestRequestListener[] listeners = connectionPool.getRequestListeners();
+		final ApiTestTimingRecorder timings = new ApiTestTimingRecorder(request, listeners);
+		notifyRequestStart(listeners, request);
+
+		try {
+			return new ApiTestStreamingResponse(transport.execute(request.getRequestObject(), createContext(timings)), timings, request);
+		} catch (IOException ioe) {
+			final ApiTestException ate = new ApiTestException("Could not complete request " + request, ioe);
+			notifyError(listeners, request, ate);
+			throw ate;
+		}
+	}
+
+	/**
+	 * Performs a batch of API requests concurrently and waits for all of them to complete. At most
+	 * the specified number of requests are executed at the same time, on virtual threads if the JVM
+	 * supports them (Java 21 or later) or on platform threads otherwise. The connection pool is
+	 * enlarged to the concurrency if necessary.
+	 *
+	 * <p>Requests are sent as is: their headers must be fully configured before calling this
+	 * method. Requests that cannot be completed do not interrupt the batch; their failures are
+	 * returned with the responses of the other requests.</p>
+	 *
+	 * @param requests the requests to execute
+	 * @param concurrency the maximum number of requests executed concurrently
+	 * @return the response or failure of each request, in the order of the requests
+	 * @throws IllegalArgumentException if the concurrency is not strictly positive
+	 * @throws ApiTestException if the current thread was interrupted
+	 */
+	public ApiTestBatchResult executeAll(List<ApiTestRequest> requests, int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Batch concurrency must be at least 1, got " + concurrency);
 		}
+		return ApiTestBatchExecutor.execute(this, requests, concurrency);
+	}
+
+	/**
+	 * Performs an API request asynchronously with a non-blocking I/O client. The request is sent
+	 * as is: its headers must be fully configured before calling this method.
+	 *
+	 * <p>The returned future completes with the API response, or fails with an
+	 * {@link ApiTestException} if an error occurred executing the request or consuming the
+	 * response.</p>
+	 *
+	 * @param request the request to execute
+	 * @return a future API response
+	 * @throws IllegalStateException if the connection pool of this client has been closed
+	 */
+	public Future<ApiTestResponse> executeAsync(final ApiTestRequest request) {
+
+		final ApiTestResponseFuture future = new ApiTestResponseFuture();
+		final IApiTestRequestListener[] listeners = connectionPool.getRequestListeners();
+		final ApiTestTimingRecorder timings = new ApiTestTimingRecorder(request, listeners);
+		notifyRequestStart(listeners, request);
+
+		// execute the Apache request object; the response body is received in memory and then
+		// buffered according to the buffering policy
+		future.setRequestFuture(connectionPool.getAsyncHttpClient().execute(
+				new TimedRequestProducer(HttpAsyncMethods.create(request.getRequestObject()), timings),
+				new TimedResponseConsumer(timings),
+				createContext(timings), new FutureCallback<HttpResponse>() {
+			@Override
+			public void completed(HttpResponse response) {
+				final ApiTestResponse apiResponse;
+				try {
+					apiResponse = new ApiTestResponse(response, connectionPool.getResponseBufferingPolicy(), temporaryFiles).enrichFromRequest(request).setTimings(timings.complete(false));
+				} catch (IOException ioe) {
+					failed(ioe);
+					return;
+				}
+
+				notifyResponseComplete(listeners, request, apiResponse);
+				future.completed(apiResponse);
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				final ApiTestException ate = new ApiTestException("Could not complete request " + request, ex);
+				notifyError(listeners, request, ate);
+				future.failed(ate);
+			}
+
+			@Override
+			public void cancelled() {
+				future.cancel();
+			}
+		}));
+
+		return future;
+	}
+
+	/**
+	 * Notifies listeners that a request is about to be executed.
+	 *
+	 * @param listeners the listeners to notify
+	 * @param request the request
+	 */
+	private static void notifyRequestStart(IApiTestRequestListener[] listeners, ApiTestRequest request) {
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onRequestStart(request);
+		}
+	}
+
+	/**
+	 * Notifies listeners that the response to a request has been fully read.
+	 *
+	 * @param listeners the listeners to notify
+	 * @param request the request
+	 * @param response the API response
+	 */
+	private static void notifyResponseComplete(IApiTestRequestListener[] listeners, ApiTestRequest request, ApiTestResponse response) {
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onResponseComplete(request, response);
+		}
+	}
+
+	/**
+	 * Notifies listeners that a request could not be completed.
+	 *
+	 * @param listeners the listeners to notify
+	 * @param request the request
+	 * @param error the error
+	 */
+	private static void notifyError(IApiTestRequestListener[] listeners, ApiTestRequest request, ApiTestException error) {
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onError(request, error);
+		}
+	}
+
+	/**
+	 * Creates the execution context of a request. The context holds the cookies of this client and
+	 * the timing recorder of the request.
+	 *
+	 * @param timings the timing recorder of the request
+	 * @return an HTTP context
+	 */
+	private HttpClientContext createContext(ApiTestTimingRecorder timings) {
+		final HttpClientContext context = HttpClientContext.create();
+		context.setCookieStore(cookieStore);
+		context.setAttribute(ApiTestTimingRecorder.CONTEXT_ATTRIBUTE, timings);
+		return context;
 	}
 
 	/**
@@ -108,7 +388,7 @@ public class ApiTestClient {
 
 		final ApiTestResponse responseWrapper;
 		try {
-			responseWrapper = new ApiTestResponse(response);
+			responseWrapper = new ApiTestResponse(response, connectionPool.getResponseBufferingPolicy(), temporaryFiles);
 			EntityUtils.consume(response.getEntity());
 		} finally {
 			response.close();
@@ -116,4 +396,117 @@ public class ApiTestClient {
 
 		return responseWrapper;
 	}
+
+	/**
+	 * Future API response that also cancels the underlying HTTP request when cancelled.
+	 */
+	private static class ApiTestResponseFuture extends BasicFuture<ApiTestResponse> {
+
+		/**
+		 * The future of the underlying HTTP request.
+		 */
+		private volatile Future<HttpResponse> requestFuture;
+
+		public ApiTestResponseFuture() {
+			super(null);
+		}
+
+		/**
+		 * @param requestFuture the future of the underlying HTTP request
+		 */
+		public void setRequestFuture(Future<HttpResponse> requestFuture) {
+			this.requestFuture = requestFuture;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			if (requestFuture != null) {
+				requestFuture.cancel(mayInterruptIfRunning);
+			}
+			return super.cancel(mayInterruptIfRunning);
+		}
+	}
+
+	/**
+	 * Asynchronous request producer that records when the request starts being sent.
+	 */
+	private static class TimedRequestProducer implements HttpAsyncRequestProducer {
+
+		/**
+		 * The actual request producer.
+		 */
+		private final HttpAsyncRequestProducer producer;
+		/**
+		 * The timing recorder of the request.
+		 */
+		private final ApiTestTimingRecorder timings;
+
+		public TimedRequestProducer(HttpAsyncRequestProducer producer, ApiTestTimingRecorder timings) {
+			this.producer = producer;
+			this.timings = timings;
+		}
+
+		@Override
+		public HttpHost getTarget() {
+			return producer.getTarget();
+		}
+
+		@Override
+		public HttpRequest generateRequest() throws IOException, HttpException {
+			timings.sending(null);
+			return producer.generateRequest();
+		}
+
+		@Override
+		public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+			producer.produceContent(encoder, ioctrl);
+		}
+
+		@Override
+		public void requestCompleted(HttpContext context) {
+			producer.requestCompleted(context);
+		}
+
+		@Override
+		public void failed(Exception ex) {
+			producer.failed(ex);
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return producer.isRepeatable();
+		}
+
+		@Override
+		public void resetRequest() throws IOException {
+			producer.resetRequest();
+		}
+
+		@Override
+		public void close() throws IOException {
+			producer.close();
+		}
+	}
+
+	/**
+	 * Asynchronous response consumer that buffers the response in memory and records when its
+	 * headers are received.
+	 */
+	private static class TimedResponseConsumer extends BasicAsyncResponseConsumer {
+
+		/**
+		 * The timing recorder of the request.
+		 */
+		private final ApiTestTimingRecorder timings;
+
+		public TimedResponseConsumer(ApiTestTimingRecorder timings) {
+			this.timings = timings;
+		}
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) throws IOException {
+			timings.headersReceived(response);
+			super.onResponseReceived(response);
+		}
+	}
 }
@@ -0,0 +1,53 @@
+package com.lotaris.api.test.client;
+
+import java.util.List;
+
+/**
+ * Client configuration with default values: no proxy, the default connection pool, no request
+ * listeners, response bodies buffered in memory and no concurrency limit. Subclasses override the
+ * settings they need.
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public abstract class ApiTestClientConfigurationAdapter implements IApiTestClientExtendedConfiguration {
+
+	@Override
+	public boolean isProxyEnabled() {
+		return false;
+	}
+
+	@Override
+	public String getProxyHost() {
+		return null;
+	}
+
+	@Override
+	public int getProxyPort() {
+		return 0;
+	}
+
+	@Override
+	public String[] getProxyExceptions() {
+		return new String[0];
+	}
+
+	@Override
+	public ApiTestConnectionPoolConfiguration getConnectionPoolConfiguration() {
+		return null;
+	}
+
+	@Override
+	public List<IApiTestRequestListener> getRequestListeners() {
+		return null;
+	}
+
+	@Override
+	public ApiTestResponseBufferingPolicy getResponseBufferingPolicy() {
+		return null;
+	}
+
+	@Override
+	public ApiTestConcurrencyLimiter getConcurrencyLimiter() {
+		return null;
+	}
+}
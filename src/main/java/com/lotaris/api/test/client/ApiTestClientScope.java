@@ -0,0 +1,25 @@
+package com.lotaris.api.test.client;
+
+/**
+ * Lifespan of the HTTP connections used by the API test client. Request headers are always managed
+ * per test, whatever the scope of the connections.
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public enum ApiTestClientScope {
+
+	/**
+	 * A new connection pool is created before each test and closed after each test.
+	 */
+	TEST,
+	/**
+	 * A connection pool is shared by all the tests of a test class and closed after the last test
+	 * of the class.
+	 */
+	CLASS,
+	/**
+	 * A connection pool is shared by all the test classes with an equal client configuration and
+	 * closed when the JVM shuts down.
+	 */
+	SUITE;
+}
@@ -0,0 +1,170 @@
+package com.lotaris.api.test.client;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit of the number of requests an {@link ApiTestClient} executes at the same time.
+ * Requests beyond the limit wait in a queue until a request completes or the limit grows. The limit
+ * itself is adjusted by an algorithm from the latency and outcome of each request (see
+ * {@link ApiTestAimdLimit} and {@link ApiTestGradientLimit}), so that long load runs settle at the
+ * concurrency the server actually sustains instead of under-driving or overloading it.
+ *
+ * <pre>
+ * public ApiTestConcurrencyLimiter getConcurrencyLimiter() {
+ *   return new ApiTestConcurrencyLimiter(new ApiTestGradientLimit(10).withLimits(1, 100));
+ * }
+ * </pre>
+ *
+ * <p>The limiter is enabled with
+ * {@link IApiTestClientExtendedConfiguration#getConcurrencyLimiter()} and applies to the requests
+ * executed with {@link ApiTestClient#execute(ApiTestRequest)} (including batches and load tests)
+ * by all the clients of a connection pool. Streaming and asynchronous requests are not limited. The
+ * connection pool should allow as many connections as the maximum limit.</p>
+ *
+ * <p>The current limit, the number of requests in flight and the number of waiting requests are
+ * available at any time to be reported as metrics.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestConcurrencyLimiter {
+
+	/**
+	 * The algorithm adjusting the limit.
+	 */
+	private final IApiTestConcurrencyLimit limit;
+	/**
+	 * Guards the state of the limiter and of the algorithm.
+	 */
+	private final ReentrantLock lock;
+	/**
+	 * Signaled when a request completes (the limit may also have grown).
+	 */
+	private final Condition available;
+	/**
+	 * The number of requests in flight.
+	 */
+	private int inFlight;
+	/**
+	 * The number of requests waiting for the limiter.
+	 */
+	private int queueDepth;
+
+	/**
+	 * Constructs a limiter.
+	 *
+	 * @param limit the algorithm adjusting the limit
+	 * @throws IllegalArgumentException if the algorithm is null
+	 */
+	public ApiTestConcurrencyLimiter(IApiTestConcurrencyLimit limit) {
+		if (limit == null) {
+			throw new IllegalArgumentException("Concurrency limit is required");
+		}
+
+		this.limit = limit;
+		this.lock = new ReentrantLock();
+		this.available = lock.newCondition();
+	}
+
+	/**
+	 * Returns the current maximum number of requests in flight.
+	 *
+	 * @return a limit of at least 1
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return limit.getLimit();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of requests currently in flight.
+	 *
+	 * @return a number of requests
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of requests currently waiting for the limiter.
+	 *
+	 * @return a number of requests
+	 */
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return queueDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until a request can be sent without exceeding the limit. Each call must be followed by
+	 * a call to {@link #release(long, boolean)} once the request has completed.
+	 *
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 */
+	void acquire() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			queueDepth++;
+			try {
+				while (inFlight >= limit.getLimit()) {
+					available.await();
+				}
+			} finally {
+				queueDepth--;
+			}
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records the completion of a request and lets waiting requests through if the limit allows.
+	 *
+	 * @param latency the duration of the request in nanoseconds
+	 * @param failed true if the request failed or was rejected by an overloaded server
+	 */
+	void release(long latency, boolean failed) {
+		lock.lock();
+		try {
+			limit.onSample(latency, inFlight, failed);
+			inFlight--;
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Indicates whether a response status signals an overloaded server.
+	 *
+	 * @param status an HTTP status code
+	 * @return true for 429 (too many requests) and server errors
+	 */
+	static boolean isOverloaded(int status) {
+		return status == 429 || status >= 500;
+	}
+
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return "Concurrency limit " + limit.getLimit() + ", " + inFlight + " in flight, " + queueDepth + " queued";
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package com.lotaris.api.test.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * Pool of HTTP connections shared by one or more API test clients. Each client created with
+ * {@link #createClient()} reuses the pooled connections but has its own cookies, so that tests
+ * sharing a pool remain isolated from each other.
+ *
+ * <p>Expired connections and connections that have been idle for too long are evicted by a
+ * background daemon thread (see {@link ApiTestConnectionPoolConfiguration}).</p>
+ *
+ * <p>The connection manager and request executor of the pool record the timings of each request
+ * executed by an {@link ApiTestClient} (see {@link ApiTestTimings}).</p>
+ *
+ * <p>Asynchronous requests are executed by a separate non-blocking I/O client with its own pool
+ * of connections, configured the same way. It is only started when the first asynchronous request
+ * is executed.</p>
+ *
+ * <p>Synchronous requests are executed by the transport of the pool, created by the engine of the
+ * pool configuration (see {@link ApiTestTransportEngine}). Clients can also be created with
+ * another transport, e.g. to compare engines with the same pool.</p>
+ *
+ * <p>If the pool configuration has an in-process transport, requests are dispatched to it instead
+ * of being sent to the network (see {@link ApiTestInProcessTransport}).</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ * @author Laurent Prevost <laurent.prevost@lotaris.com>
+ */
+public class ApiTestConnectionPool {
+
+	/**
+	 * The pooling connection manager (null if requests are dispatched in-process).
+	 */
+	private final TimedConnectionManager connectionManager;
+	/**
+	 * The internal Apache HTTP client (thread-safe).
+	 */
+	private final CloseableHttpClient client;
+	/**
+	 * The transport executing the synchronous requests of the clients of this pool.
+	 */
+	private final IApiTestTransport transport;
+	/**
+	 * Background eviction of expired and idle connections (null if disabled).
+	 */
+	private final ScheduledFuture<?> eviction;
+	/**
+	 * The client configuration (used to lazily create the asynchronous client).
+	 */
+	private final IApiTestClientConfiguration clientConfiguration;
+	/**
+	 * The pool configuration (a copy of the configured one).
+	 */
+	private final ApiTestConnectionPoolConfiguration poolConfiguration;
+	/**
+	 * The listeners notified of the lifecycle of each request.
+	 */
+	private final IApiTestRequestListener[] requestListeners;
+	/**
+	 * The limiter of concurrent requests (or null).
+	 */
+	private final ApiTestConcurrencyLimiter concurrencyLimiter;
+	/**
+	 * The policy deciding how response bodies are buffered (or null).
+	 */
+	private final ApiTestResponseBufferingPolicy responseBufferingPolicy;
+	/**
+	 * The non-blocking connection manager (null until the first asynchronous request).
+	 */
+	private PoolingNHttpClientConnectionManager asyncConnectionManager;
+	/**
+	 * The internal Apache asynchronous HTTP client (null until the first asynchronous request).
+	 */
+	private CloseableHttpAsyncClient asyncClient;
+	/**
+	 * Whether this pool has been closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructs a new connection pool. The pool should be released with {@link #close()} when no
+	 * longer useful.
+	 *
+	 * <p>If the client configuration implements {@link IApiTestClientExtendedConfiguration}, its
+	 * settings are read once by this constructor; otherwise default settings are used.</p>
+	 *
+	 * @param clientConfiguration the client configuration
+	 */
+	public ApiTestConnectionPool(final IApiTestClientConfiguration clientConfiguration) {
+
+		final IApiTestClientExtendedConfiguration extendedConfiguration = clientConfiguration instanceof IApiTestClientExtendedConfiguration
+				? (IApiTestClientExtendedConfiguration) clientConfiguration : null;
+
+		this.clientConfiguration = clientConfiguration;
+		this.poolConfiguration = getPoolConfiguration(extendedConfiguration);
+		this.requestListeners = getRequestListeners(extendedConfiguration);
+		this.concurrencyLimiter = extendedConfiguration != null ? extendedConfiguration.getConcurrencyLimiter() : null;
+		this.responseBufferingPolicy = extendedConfiguration != null ? extendedConfiguration.getResponseBufferingPolicy() : null;
+
+		// requests dispatched in-process have no connections to pool or evict
+		final ApiTestInProcessTransport inProcessTransport = poolConfiguration.getInProcessTransport();
+		if (inProcessTransport != null) {
+			connectionManager = null;
+			client = inProcessTransport.createHttpClient();
+			eviction = null;
+		} else {
+			connectionManager = new TimedConnectionManager();
+			connectionManager.setMaxTotal(poolConfiguration.getMaxTotal());
+			connectionManager.setDefaultMaxPerRoute(poolConfiguration.getMaxPerRoute());
+
+			final HttpClientBuilder builder = HttpClients.custom()
+					.setConnectionManager(connectionManager)
+					.setRequestExecutor(new TimedRequestExecutor(connectionManager))
+					.setKeepAliveStrategy(buildKeepAliveStrategy(poolConfiguration.getKeepAlive()));
+
+			if (clientConfiguration.isProxyEnabled()) {
+				builder.setRoutePlanner(buildProxyRoutePlanner(clientConfiguration));
+			}
+
+			client = builder.build();
+			eviction = scheduleEviction(poolConfiguration);
+		}
+
+		// the transport is given this pool, so it is created once the pool is fully initialized
+		transport = poolConfiguration.getEngine().createTransport(this);
+	}
+
+	/**
+	 * Creates a new API test client using the connections of this pool. Closing the client does
+	 * not close the pool.
+	 *
+	 * @return an API test client
+	 */
+	public ApiTestClient createClient() {
+		return new ApiTestClient(this, false);
+	}
+
+	/**
+	 * Creates a new API test client using the connections of this pool and executing synchronous
+	 * requests with the specified transport instead of the transport of the pool. Closing the
+	 * client does not close the pool.
+	 *
+	 * @param transport the transport executing the synchronous requests of the client
+	 * @return an API test client
+	 * @throws IllegalArgumentException if the transport is null
+	 */
+	public ApiTestClient createClient(IApiTestTransport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("Transport is required");
+		}
+		return new ApiTestClient(this, false, transport);
+	}
+
+	/**
+	 * Creates a transport executing requests with the specified engine and the connections of this
+	 * pool, e.g. to compare engines with {@link #createClient(IApiTestTransport)}.
+	 *
+	 * @param engine the transport engine
+	 * @return a thread-safe transport
+	 * @throws ApiTestException if the engine is not available in this JVM
+	 */
+	public IApiTestTransport createTransport(ApiTestTransportEngine engine) {
+		return engine.createTransport(this);
+	}
+
+	/**
+	 * Returns the transport executing the synchronous requests of the clients of this pool.
+	 *
+	 * @return a thread-safe transport
+	 */
+	public IApiTestTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Ensures that the pool can open at least the specified number of concurrent connections, both
+	 * in total and per route. Limits are never lowered.
+	 *
+	 * @param connections the number of concurrent connections required
+	 */
+	public synchronized void ensureCapacity(int connections) {
+		if (connectionManager != null && connectionManager.getMaxTotal() < connections) {
+			connectionManager.setMaxTotal(connections);
+		}
+		if (connectionManager != null && connectionManager.getDefaultMaxPerRoute() < connections) {
+			connectionManager.setDefaultMaxPerRoute(connections);
+		}
+		if (asyncConnectionManager != null && asyncConnectionManager.getMaxTotal() < connections) {
+			asyncConnectionManager.setMaxTotal(connections);
+		}
+		if (asyncConnectionManager != null && asyncConnectionManager.getDefaultMaxPerRoute() < connections) {
+			asyncConnectionManager.setDefaultMaxPerRoute(connections);
+		}
+	}
+
+	/**
+	 * Closes all connections of this pool. Clients created from this pool can no longer be used.
+	 *
+	 * @throws ApiTestException if the pool could not be closed
+	 */
+	public void close() {
+
+		if (eviction != null) {
+			eviction.cancel(false);
+		}
+
+		final CloseableHttpAsyncClient async;
+		synchronized (this) {
+			async = asyncClient;
+			asyncClient = null;
+			closed = true;
+		}
+
+		try {
+			client.close();
+			if (async != null) {
+				async.close();
+			}
+		} catch (IOException ex) {
+			throw new ApiTestException("Could not close the HTTP client", ex);
+		}
+	}
+
+	/**
+	 * Returns the internal Apache HTTP client.
+	 *
+	 * @return a thread-safe Apache HTTP client
+	 */
+	protected CloseableHttpClient getHttpClient() {
+		return client;
+	}
+
+	/**
+	 * Returns the configuration of the clients of this pool.
+	 *
+	 * @return a client configuration
+	 */
+	protected IApiTestClientConfiguration getClientConfiguration() {
+		return clientConfiguration;
+	}
+
+	/**
+	 * Returns the listeners notified of the lifecycle of each request executed with this pool.
+	 *
+	 * @return an array of listeners (which may be empty but not null)
+	 */
+	protected IApiTestRequestListener[] getRequestListeners() {
+		return requestListeners;
+	}
+
+	/**
+	 * Returns the limiter of the requests executed concurrently with this pool.
+	 *
+	 * @return a limiter, or null if concurrency is not limited
+	 */
+	protected ApiTestConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * Returns the policy deciding how the response bodies of requests executed with this pool are
+	 * buffered.
+	 *
+	 * @return a buffering policy, or null to buffer response bodies in memory
+	 */
+	protected ApiTestResponseBufferingPolicy getResponseBufferingPolicy() {
+		return responseBufferingPolicy;
+	}
+
+	/**
+	 * Returns the internal Apache asynchronous HTTP client, creating and starting it if necessary.
+	 *
+	 * @return a started, thread-safe Apache asynchronous HTTP client
+	 * @throws ApiTestException if the I/O reactor of the client could not be created
+	 * @throws IllegalStateException if this pool has been closed
+	 */
+	protected synchronized CloseableHttpAsyncClient getAsyncHttpClient() {
+		if (closed) {
+			throw new IllegalStateException("Connection pool is closed");
+		} else if (asyncClient == null && poolConfiguration.getInProcessTransport() != null) {
+			asyncClient = poolConfiguration.getInProcessTransport().createAsyncHttpClient(client);
+			asyncClient.start();
+		} else if (asyncClient == null) {
+			try {
+				asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+			} catch (IOReactorException ex) {
+				throw new ApiTestException("Could not create the asynchronous HTTP client", ex);
+			}
+
+			asyncConnectionManager.setMaxTotal(Math.max(poolConfiguration.getMaxTotal(), connectionManager.getMaxTotal()));
+			asyncConnectionManager.setDefaultMaxPerRoute(Math.max(poolConfiguration.getMaxPerRoute(), connectionManager.getDefaultMaxPerRoute()));
+
+			final HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+					.setConnectionManager(asyncConnectionManager)
+					.setKeepAliveStrategy(buildKeepAliveStrategy(poolConfiguration.getKeepAlive()));
+
+			if (clientConfiguration.isProxyEnabled()) {
+				builder.setRoutePlanner(buildProxyRoutePlanner(clientConfiguration));
+			}
+
+			asyncClient = builder.build();
+			asyncClient.start();
+		}
+
+		return asyncClient;
+	}
+
+	/**
+	 * @return the non-blocking connection manager, or null if no asynchronous request was executed
+	 */
+	private synchronized PoolingNHttpClientConnectionManager getAsyncConnectionManager() {
+		return asyncClient != null ? asyncConnectionManager : null;
+	}
+
+	/**
+	 * Returns a copy of the pool configuration of a client configuration, or the default pool
+	 * configuration if there is none.
+	 *
+	 * @param clientConfiguration the extended client configuration (or null)
+	 * @return a connection pool configuration
+	 */
+	private static ApiTestConnectionPoolConfiguration getPoolConfiguration(IApiTestClientExtendedConfiguration clientConfiguration) {
+		final ApiTestConnectionPoolConfiguration poolConfiguration = clientConfiguration != null ? clientConfiguration.getConnectionPoolConfiguration() : null;
+		return poolConfiguration != null ? new ApiTestConnectionPoolConfiguration(poolConfiguration) : new ApiTestConnectionPoolConfiguration();
+	}
+
+	/**
+	 * Returns the request listeners of a client configuration as an array, so that they can be
+	 * notified without allocating an iterator for each request.
+	 *
+	 * @param clientConfiguration the extended client configuration (or null)
+	 * @return an array of listeners (which may be empty but not null)
+	 */
+	private static IApiTestRequestListener[] getRequestListeners(IApiTestClientExtendedConfiguration clientConfiguration) {
+		final List<IApiTestRequestListener> listeners = clientConfiguration != null ? clientConfiguration.getRequestListeners() : null;
+		return listeners != null ? listeners.toArray(new IApiTestRequestListener[listeners.size()]) : new IApiTestRequestListener[0];
+	}
+
+	/**
+	 * Builds a keep-alive strategy that uses the timeout sent by the server if present, or the
+	 * specified default otherwise.
+	 *
+	 * @param keepAlive the default keep-alive duration in milliseconds
+	 * @return a keep-alive strategy
+	 */
+	private static ConnectionKeepAliveStrategy buildKeepAliveStrategy(final long keepAlive) {
+		return new DefaultConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				final long duration = super.getKeepAliveDuration(response, context);
+				return duration > 0 || keepAlive <= 0 ? duration : keepAlive;
+			}
+		};
+	}
+
+	/**
+	 * Builds a proxy route planner that bypasses the proxy for the hosts configured as proxy
+	 * exceptions.
+	 *
+	 * @param clientConfiguration the client configuration
+	 * @return a route planner
+	 */
+	private static DefaultProxyRoutePlanner buildProxyRoutePlanner(final IApiTestClientConfiguration clientConfiguration) {
+
+		HttpHost proxy = new HttpHost(clientConfiguration.getProxyHost(), clientConfiguration.getProxyPort());
+
+		// Create a proxy route planner to check if host should force to avoid using proxy
+		return new DefaultProxyRoutePlanner(proxy) {
+			@Override
+			public HttpRoute determineRoute(HttpHost host, HttpRequest request, HttpContext context) throws HttpException {
+				// Retrieve the host name
+				String hostname = host.getHostName();
+
+				// Check each exceptions
+				for (String hostToCheck : clientConfiguration.getProxyExceptions()) {
+					if (hostname.equals(hostToCheck)) {
+						return new HttpRoute(host);
+					}
+				}
+
+				return super.determineRoute(host, request, context);
+			}
+		};
+	}
+
+	/**
+	 * Schedules the background eviction of expired and idle connections on the evictor shared by
+	 * all pools.
+	 *
+	 * @param poolConfiguration the pool configuration
+	 * @return the scheduled eviction, or null if eviction is disabled
+	 */
+	private ScheduledFuture<?> scheduleEviction(final ApiTestConnectionPoolConfiguration poolConfiguration) {
+
+		final long interval = poolConfiguration.getEvictionInterval();
+		if (interval <= 0) {
+			return null;
+		}
+
+		return Evictor.EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				connectionManager.closeExpiredConnections();
+				if (poolConfiguration.getIdleTimeout() > 0) {
+					connectionManager.closeIdleConnections(poolConfiguration.getIdleTimeout(), TimeUnit.MILLISECONDS);
+				}
+
+				final PoolingNHttpClientConnectionManager asyncManager = getAsyncConnectionManager();
+				if (asyncManager != null) {
+					asyncManager.closeExpiredConnections();
+					if (poolConfiguration.getIdleTimeout() > 0) {
+						asyncManager.closeIdleConnections(poolConfiguration.getIdleTimeout(), TimeUnit.MILLISECONDS);
+					}
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Holder of the daemon thread evicting the connections of all pools, started when the first
+	 * pool with eviction is created. Pools are often created for each test, so they do not start
+	 * their own thread.
+	 */
+	private static class Evictor {
+
+		private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread thread = new Thread(r, "api-test-connection-evictor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		static {
+			// the evictions of closed pools must not be retained until their next run
+			EXECUTOR.setRemoveOnCancelPolicy(true);
+		}
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="Timing instrumentation">
+	/**
+	 * Pooling connection manager that records the time spent establishing connections and the
+	 * sizes of requests and responses when connections are released.
+	 */
+	private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+
+		/**
+		 * Recorders of the requests being executed, by connection.
+		 */
+		private final ConcurrentMap<HttpClientConnection, ApiTestTimingRecorder> recorders = new ConcurrentHashMap<>();
+
+		@Override
+		public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+			final long start = System.nanoTime();
+			super.connect(managedConn, route, connectTimeout, context);
+			recordConnect(context, start);
+		}
+
+		@Override
+		public void upgrade(HttpClientConnection managedConn, HttpRoute route, HttpContext context) throws IOException {
+			final long start = System.nanoTime();
+			super.upgrade(managedConn, route, context);
+			recordConnect(context, start);
+		}
+
+		@Override
+		public void releaseConnection(HttpClientConnection managedConn, Object state, long keepalive, TimeUnit tunit) {
+
+			// sizes must be read before the connection can be leased again
+			final ApiTestTimingRecorder recorder = recorders.remove(managedConn);
+			if (recorder != null) {
+				recorder.released();
+			}
+
+			super.releaseConnection(managedConn, state, keepalive, tunit);
+		}
+
+		/**
+		 * Associates a connection with the recorder of the request it is sending until it is
+		 * released.
+		 *
+		 * @param conn the connection
+		 * @param recorder the recorder of the request
+		 */
+		void track(HttpClientConnection conn, ApiTestTimingRecorder recorder) {
+			recorders.put(conn, recorder);
+		}
+
+		/**
+		 * @param context the execution context of the request
+		 * @param start when the connection step started
+		 */
+		private static void recordConnect(HttpContext context, long start) {
+			final ApiTestTimingRecorder recorder = ApiTestTimingRecorder.get(context);
+			if (recorder != null) {
+				recorder.connected(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Request executor that records when requests start being sent and when response headers are
+	 * received.
+	 */
+	private static class TimedRequestExecutor extends HttpRequestExecutor {
+
+		/**
+		 * The connection manager tracking connections until they are released.
+		 */
+		private final TimedConnectionManager connectionManager;
+
+		public TimedRequestExecutor(TimedConnectionManager connectionManager) {
+			this.connectionManager = connectionManager;
+		}
+
+		@Override
+		protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+			final ApiTestTimingRecorder recorder = ApiTestTimingRecorder.get(context);
+			if (recorder != null) {
+				recorder.sending(conn.getMetrics());
+				connectionManager.track(conn, recorder);
+			}
+
+			return super.doSendRequest(request, conn, context);
+		}
+
+		@Override
+		protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+			final HttpResponse response = super.doReceiveResponse(request, conn, context);
+
+			final ApiTestTimingRecorder recorder = ApiTestTimingRecorder.get(context);
+			if (recorder != null) {
+				recorder.headersReceived(response);
+			}
+
+			return response;
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,267 @@
+package com.lotaris.api.test.client;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the HTTP connection pool backing an {@link ApiTestClient}: pool sizes, keep-alive
+ * and idle connection eviction, the engine executing synchronous requests, or an in-process
+ * transport.
+ *
+ * <p>Configurations are equal if all their settings are equal (in-process transports are compared
+ * by identity), so that tests with equal configurations can share a connection pool.</p>
+ *
+ * @see ApiTestConnectionPool
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestConnectionPoolConfiguration {
+
+	/**
+	 * Default maximum number of connections in the pool.
+	 */
+	public static final int DEFAULT_MAX_TOTAL = 50;
+	/**
+	 * Default maximum number of connections per route (i.e. per target host).
+	 */
+	public static final int DEFAULT_MAX_PER_ROUTE = 20;
+	/**
+	 * Default keep-alive duration (in milliseconds) of connections for which the server does not
+	 * specify one.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(30);
+	/**
+	 * Default duration (in milliseconds) after which idle connections are evicted from the pool.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+	/**
+	 * Default interval (in milliseconds) between two evictions of expired and idle connections.
+	 */
+	public static final long DEFAULT_EVICTION_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+	/**
+	 * Maximum number of connections in the pool.
+	 */
+	private int maxTotal;
+	/**
+	 * Maximum number of connections per route.
+	 */
+	private int maxPerRoute;
+	/**
+	 * Keep-alive duration in milliseconds.
+	 */
+	private long keepAlive;
+	/**
+	 * Idle timeout in milliseconds.
+	 */
+	private long idleTimeout;
+	/**
+	 * Eviction interval in milliseconds.
+	 */
+	private long evictionInterval;
+	/**
+	 * Transport dispatching requests in-process (or null).
+	 */
+	private ApiTestInProcessTransport inProcessTransport;
+	/**
+	 * Engine executing synchronous requests.
+	 */
+	private ApiTestTransportEngine engine;
+
+	/**
+	 * Constructs a configuration with default values.
+	 */
+	public ApiTestConnectionPoolConfiguration() {
+		maxTotal = DEFAULT_MAX_TOTAL;
+		maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+		keepAlive = DEFAULT_KEEP_ALIVE;
+		idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		evictionInterval = DEFAULT_EVICTION_INTERVAL;
+		engine = ApiTestTransportEngine.CLASSIC;
+	}
+
+	/**
+	 * Constructs a copy of a configuration, e.g. to keep the settings of a pool even if the
+	 * original configuration is modified.
+	 *
+	 * @param configuration the configuration to copy
+	 */
+	public ApiTestConnectionPoolConfiguration(ApiTestConnectionPoolConfiguration configuration) {
+		maxTotal = configuration.maxTotal;
+		maxPerRoute = configuration.maxPerRoute;
+		keepAlive = configuration.keepAlive;
+		idleTimeout = configuration.idleTimeout;
+		evictionInterval = configuration.evictionInterval;
+		inProcessTransport = configuration.inProcessTransport;
+		engine = configuration.engine;
+	}
+
+	/**
+	 * Sets the maximum number of connections in the pool.
+	 *
+	 * @param maxTotal the maximum number of connections
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the value is not strictly positive
+	 */
+	public ApiTestConnectionPoolConfiguration withMaxTotal(int maxTotal) {
+		if (maxTotal <= 0) {
+			throw new IllegalArgumentException("Maximum number of connections must be positive");
+		}
+
+		this.maxTotal = maxTotal;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of connections per route (i.e. per target host).
+	 *
+	 * @param maxPerRoute the maximum number of connections per route
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the value is not strictly positive
+	 */
+	public ApiTestConnectionPoolConfiguration withMaxPerRoute(int maxPerRoute) {
+		if (maxPerRoute <= 0) {
+			throw new IllegalArgumentException("Maximum number of connections per route must be positive");
+		}
+
+		this.maxPerRoute = maxPerRoute;
+		return this;
+	}
+
+	/**
+	 * Sets how long connections are kept alive when the server does not specify a
+	 * <tt>Keep-Alive</tt> timeout. Zero or a negative value keeps connections alive indefinitely.
+	 *
+	 * @param duration the keep-alive duration
+	 * @param unit the unit of the duration
+	 * @return this configuration
+	 */
+	public ApiTestConnectionPoolConfiguration withKeepAlive(long duration, TimeUnit unit) {
+		this.keepAlive = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Sets how long a connection may stay idle in the pool before being evicted. Zero or a negative
+	 * value disables idle eviction (expired connections are still evicted).
+	 *
+	 * @param duration the idle timeout
+	 * @param unit the unit of the duration
+	 * @return this configuration
+	 */
+	public ApiTestConnectionPoolConfiguration withIdleTimeout(long duration, TimeUnit unit) {
+		this.idleTimeout = unit.toMillis(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the interval between two evictions of expired and idle connections. Zero or a negative
+	 * value disables the background eviction entirely.
+	 *
+	 * @param interval the eviction interval
+	 * @param unit the unit of the interval
+	 * @return this configuration
+	 */
+	public ApiTestConnectionPoolConfiguration withEvictionInterval(long interval, TimeUnit unit) {
+		this.evictionInterval = unit.toMillis(interval);
+		return this;
+	}
+
+	/**
+	 * Dispatches the requests of the pool in-process to an HTTP handler or JAX-RS application
+	 * instead of sending them to the network. Pool sizes, keep-alive and eviction settings are
+	 * then irrelevant.
+	 *
+	 * @param transport the in-process transport, or null to send requests to the network
+	 * @return this configuration
+	 */
+	public ApiTestConnectionPoolConfiguration withInProcessTransport(ApiTestInProcessTransport transport) {
+		this.inProcessTransport = transport;
+		return this;
+	}
+
+	/**
+	 * Sets the engine executing the synchronous requests of the pool (asynchronous requests are
+	 * always executed by the non-blocking client). The {@link ApiTestTransportEngine#JDK} engine
+	 * multiplexes concurrent requests over HTTP/2 connections.
+	 *
+	 * @param engine the transport engine
+	 * @return this configuration
+	 * @throws IllegalArgumentException if the engine is null
+	 */
+	public ApiTestConnectionPoolConfiguration withEngine(ApiTestTransportEngine engine) {
+		if (engine == null) {
+			throw new IllegalArgumentException("Transport engine is required");
+		}
+		this.engine = engine;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of connections in the pool
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * @return the maximum number of connections per route
+	 */
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * @return the keep-alive duration in milliseconds (zero or negative for no limit)
+	 */
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * @return the idle timeout in milliseconds (zero or negative to disable idle eviction)
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * @return the eviction interval in milliseconds (zero or negative to disable eviction)
+	 */
+	public long getEvictionInterval() {
+		return evictionInterval;
+	}
+
+	/**
+	 * @return the transport dispatching requests in-process, or null if requests are sent to the
+	 * network
+	 */
+	public ApiTestInProcessTransport getInProcessTransport() {
+		return inProcessTransport;
+	}
+
+	/**
+	 * @return the engine executing synchronous requests
+	 */
+	public ApiTestTransportEngine getEngine() {
+		return engine;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		} else if (!(obj instanceof ApiTestConnectionPoolConfiguration)) {
+			return false;
+		}
+
+		final ApiTestConnectionPoolConfiguration other = (ApiTestConnectionPoolConfiguration) obj;
+		return maxTotal == other.maxTotal && maxPerRoute == other.maxPerRoute && keepAlive == other.keepAlive
+				&& idleTimeout == other.idleTimeout && evictionInterval == other.evictionInterval
+				&& inProcessTransport == other.inProcessTransport && engine == other.engine;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(maxTotal, maxPerRoute, keepAlive, idleTimeout, evictionInterval, System.identityHashCode(inProcessTransport), engine);
+	}
+}
@@ -0,0 +1,182 @@
+package com.lotaris.api.test.client;
+
+/**
+ * Gradient concurrency limit, adjusted from the ratio between the long-term and the short-term
+ * average latencies.
+ *
+ * <p>When the short-term latency rises above the long-term latency (multiplied by a tolerance),
+ * requests are queuing in the server and the limit shrinks proportionally (by half at most). While
+ * latencies are stable, the limit grows by a queue allowance of the square root of the limit. A
+ * failed request halves the target limit. Changes are smoothed, and the limit does not grow while
+ * less than half of it is used.</p>
+ *
+ * <p>The long-term average decays quickly when it is more than twice the short-term average, so
+ * that the limit recovers after a period of degraded latencies.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestGradientLimit implements IApiTestConcurrencyLimit {
+
+	/**
+	 * Default minimum limit.
+	 */
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	/**
+	 * Default maximum limit.
+	 */
+	public static final int DEFAULT_MAX_LIMIT = 200;
+	/**
+	 * Default fraction of the target limit applied at each sample.
+	 */
+	public static final double DEFAULT_SMOOTHING = 0.2;
+	/**
+	 * Default ratio by which the short-term latency may exceed the long-term latency before the
+	 * limit shrinks.
+	 */
+	public static final double DEFAULT_TOLERANCE = 1.5;
+
+	/**
+	 * Number of samples of the short-term average latency.
+	 */
+	private static final int SHORT_WINDOW = 10;
+	/**
+	 * Number of samples of the long-term average latency.
+	 */
+	private static final int LONG_WINDOW = 600;
+
+	/**
+	 * The current limit.
+	 */
+	private double limit;
+	/**
+	 * Minimum limit.
+	 */
+	private int minLimit;
+	/**
+	 * Maximum limit.
+	 */
+	private int maxLimit;
+	/**
+	 * Fraction of the target limit applied at each sample.
+	 */
+	private double smoothing;
+	/**
+	 * Tolerated ratio between the short-term and the long-term latencies.
+	 */
+	private double tolerance;
+	/**
+	 * Exponential moving average of the latency over a few samples (0 until the first sample).
+	 */
+	private double shortLatency;
+	/**
+	 * Exponential moving average of the latency over many samples (0 until the first sample).
+	 */
+	private double longLatency;
+
+	/**
+	 * Constructs a limit with default values.
+	 *
+	 * @param initialLimit the initial limit
+	 * @throws IllegalArgumentException if the initial limit is not strictly positive
+	 */
+	public ApiTestGradientLimit(int initialLimit) {
+		if (initialLimit <= 0) {
+			throw new IllegalArgumentException("Initial limit must be at least 1, got " + initialLimit);
+		}
+
+		this.limit = initialLimit;
+		this.minLimit = DEFAULT_MIN_LIMIT;
+		this.maxLimit = Math.max(DEFAULT_MAX_LIMIT, initialLimit);
+		this.smoothing = DEFAULT_SMOOTHING;
+		this.tolerance = DEFAULT_TOLERANCE;
+	}
+
+	/**
+	 * Sets the bounds of the limit. The current limit is adjusted to fit them.
+	 *
+	 * @param minLimit the minimum limit
+	 * @param maxLimit the maximum limit
+	 * @return this limit
+	 * @throws IllegalArgumentException if the minimum is not strictly positive or is higher than
+	 * the maximum
+	 */
+	public ApiTestGradientLimit withLimits(int minLimit, int maxLimit) {
+		if (minLimit <= 0) {
+			throw new IllegalArgumentException("Minimum limit must be at least 1, got " + minLimit);
+		} else if (maxLimit < minLimit) {
+			throw new IllegalArgumentException("Maximum limit must be at least the minimum limit, got " + maxLimit);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, limit));
+		return this;
+	}
+
+	/**
+	 * Sets the fraction of the target limit applied at each sample.
+	 *
+	 * @param smoothing a fraction greater than 0 and at most 1 (1 to disable smoothing)
+	 * @return this limit
+	 * @throws IllegalArgumentException if the fraction is not greater than 0 and at most 1
+	 */
+	public ApiTestGradientLimit withSmoothing(double smoothing) {
+		if (!(smoothing > 0 && smoothing <= 1)) {
+			throw new IllegalArgumentException("Smoothing must be greater than 0 and at most 1, got " + smoothing);
+		}
+		this.smoothing = smoothing;
+		return this;
+	}
+
+	/**
+	 * Sets the ratio by which the short-term latency may exceed the long-term latency before the
+	 * limit shrinks.
+	 *
+	 * @param tolerance a ratio of at least 1
+	 * @return this limit
+	 * @throws IllegalArgumentException if the ratio is lower than 1
+	 */
+	public ApiTestGradientLimit withTolerance(double tolerance) {
+		if (!(tolerance >= 1)) {
+			throw new IllegalArgumentException("Tolerance must be at least 1, got " + tolerance);
+		}
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	@Override
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	@Override
+	public void onSample(long latency, int inFlight, boolean failed) {
+
+		final double sample = Math.max(latency, 1);
+		if (longLatency == 0) {
+			shortLatency = sample;
+			longLatency = sample;
+		} else {
+			shortLatency += (sample - shortLatency) * 2 / (SHORT_WINDOW + 1);
+			longLatency += (sample - longLatency) * 2 / (LONG_WINDOW + 1);
+		}
+
+		// forget degraded latencies faster than the moving average would
+		if (longLatency > shortLatency * 2) {
+			longLatency *= 0.95;
+		}
+
+		// an underused limit says nothing about the capacity of the server
+		if (!failed && inFlight * 2 < limit) {
+			return;
+		}
+
+		final double gradient = failed ? 0.5 : Math.max(0.5, Math.min(1, tolerance * longLatency / shortLatency));
+		final double target = limit * gradient + Math.sqrt(limit);
+		limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + target * smoothing));
+	}
+
+	@Override
+	public String toString() {
+		return "Gradient limit " + getLimit() + " (" + minLimit + "-" + maxLimit + ")";
+	}
+}
@@ -0,0 +1,369 @@
+package com.lotaris.api.test.client;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * HTTP exchange of a request dispatched in-process to an HTTP handler. The request body is read
+ * from memory and the response body is written to memory, with the same rules as an exchange of
+ * the JDK HTTP server: response headers must be sent before the response body is written.
+ *
+ * <p>Like the JDK HTTP server, requests whose path does not start with the path of the context
+ * get a 404 (Not Found) response, and the authenticator of the context (if any) is applied after
+ * the filters of the context and before its handler.</p>
+ *
+ * @see ApiTestInProcessTransport
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+class ApiTestInProcessExchange extends HttpExchange {
+
+	private final Context context;
+	private final String method;
+	private final URI requestUri;
+	private final String protocol;
+	private final Headers requestHeaders;
+	private final Headers responseHeaders;
+	private final InetSocketAddress localAddress;
+	private final Map<String, Object> attributes;
+	private InputStream requestBody;
+	private OutputStream responseBody;
+	private ResponseOutputStream responseBuffer;
+	private int responseCode;
+	private long responseLength;
+	private HttpPrincipal principal;
+
+	/**
+	 * Constructs an exchange for a request.
+	 *
+	 * @param context the context of the handler
+	 * @param method the HTTP method
+	 * @param requestUri the request URI (as sent in the request line)
+	 * @param protocol the protocol version (e.g. <tt>HTTP/1.1</tt>)
+	 * @param requestHeaders the request headers
+	 * @param requestBody the request body
+	 * @param localAddress the address of the target host
+	 */
+	ApiTestInProcessExchange(Context context, String method, URI requestUri, String protocol, Headers requestHeaders, byte[] requestBody, InetSocketAddress localAddress) {
+		this.context = context;
+		this.method = method;
+		this.requestUri = requestUri;
+		this.protocol = protocol;
+		this.requestHeaders = requestHeaders;
+		this.responseHeaders = new Headers();
+		this.localAddress = localAddress;
+		this.attributes = new HashMap<>();
+		this.requestBody = new ByteArrayInputStream(requestBody);
+		this.responseBuffer = new ResponseOutputStream();
+		this.responseBody = responseBuffer;
+		this.responseCode = -1;
+		this.responseLength = -1;
+	}
+
+	/**
+	 * Handles this exchange with the filters and handler of its context.
+	 *
+	 * @throws IOException if the handler failed or did not send a response
+	 */
+	void handle() throws IOException {
+		final String path = requestUri.getPath();
+		if (path == null || !path.startsWith(context.getPath())) {
+			sendNotFound();
+		} else {
+			new Filter.Chain(context.getFilters(), new HttpHandler() {
+				@Override
+				public void handle(HttpExchange exchange) throws IOException {
+					authenticateAndHandle();
+				}
+			}).doFilter(this);
+		}
+
+		if (responseCode < 0) {
+			throw new IOException("The in-process handler did not send a response to " + method + " " + requestUri);
+		}
+	}
+
+	/**
+	 * Authenticates the request with the authenticator of the context (if any), then calls the
+	 * handler of the context if the request is authenticated. Otherwise, the response code of the
+	 * authenticator result is sent.
+	 *
+	 * @throws IOException if the authenticator or handler failed
+	 */
+	private void authenticateAndHandle() throws IOException {
+
+		final Authenticator authenticator = context.getAuthenticator();
+		if (authenticator == null) {
+			context.getHandler().handle(this);
+			return;
+		}
+
+		final Authenticator.Result result = authenticator.authenticate(this);
+		if (result instanceof Authenticator.Success) {
+			principal = ((Authenticator.Success) result).getPrincipal();
+			context.getHandler().handle(this);
+		} else if (result instanceof Authenticator.Retry) {
+			sendResponseHeaders(((Authenticator.Retry) result).getResponseCode(), -1);
+		} else if (result instanceof Authenticator.Failure) {
+			sendResponseHeaders(((Authenticator.Failure) result).getResponseCode(), -1);
+		}
+	}
+
+	/**
+	 * Sends the response of the JDK HTTP server to a request that matches no context.
+	 *
+	 * @throws IOException if the response has already been sent
+	 */
+	private void sendNotFound() throws IOException {
+		final byte[] body = "<h1>404 Not Found</h1>No context found for request".getBytes(StandardCharsets.ISO_8859_1);
+		responseHeaders.set("Content-Type", "text/html");
+		sendResponseHeaders(404, body.length);
+		responseBody.write(body);
+	}
+
+	/**
+	 * @return the length of the response body given when the response headers were sent (zero for
+	 * an arbitrary length, -1 if there is no body)
+	 */
+	long getResponseLength() {
+		return responseLength;
+	}
+
+	/**
+	 * @return the response body bytes written by the handler (only the first
+	 * {@link #getResponseBodyLength()} bytes are valid)
+	 */
+	byte[] getResponseBodyBytes() {
+		return responseBuffer.getBuffer();
+	}
+
+	/**
+	 * @return the number of response body bytes written by the handler
+	 */
+	int getResponseBodyLength() {
+		return responseBuffer.size();
+	}
+
+	@Override
+	public Headers getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	@Override
+	public Headers getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	@Override
+	public URI getRequestURI() {
+		return requestUri;
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return method;
+	}
+
+	@Override
+	public HttpContext getHttpContext() {
+		return context;
+	}
+
+	@Override
+	public void close() {
+		try {
+			requestBody.close();
+			responseBody.close();
+		} catch (IOException ioe) {
+			// in-memory streams do not fail
+		}
+	}
+
+	@Override
+	public InputStream getRequestBody() {
+		return requestBody;
+	}
+
+	@Override
+	public OutputStream getResponseBody() {
+		return responseBody;
+	}
+
+	@Override
+	public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+		if (responseCode >= 0) {
+			throw new IOException("Response headers have already been sent");
+		}
+
+		this.responseCode = rCode;
+		this.responseLength = responseLength;
+		responseBuffer.open();
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return new InetSocketAddress(localAddress.getAddress(), 0);
+	}
+
+	@Override
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	@Override
+	public String getProtocol() {
+		return protocol;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		attributes.put(name, value);
+	}
+
+	@Override
+	public void setStreams(InputStream i, OutputStream o) {
+		if (i != null) {
+			requestBody = i;
+		}
+		if (o != null) {
+			responseBody = o;
+		}
+	}
+
+	@Override
+	public HttpPrincipal getPrincipal() {
+		return principal;
+	}
+
+	/**
+	 * Response body buffer that can only be written once the response headers have been sent.
+	 */
+	private static class ResponseOutputStream extends ByteArrayOutputStream {
+
+		private boolean open;
+
+		void open() {
+			open = true;
+		}
+
+		/**
+		 * @return the internal buffer (only the first {@link #size()} bytes are valid)
+		 */
+		byte[] getBuffer() {
+			return buf;
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			checkOpen();
+			super.write(b);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			checkOpen();
+			super.write(b, off, len);
+		}
+
+		private void checkOpen() {
+			if (!open) {
+				throw new IllegalStateException("Response headers must be sent before the response body");
+			}
+		}
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="Context">
+	/**
+	 * Context of an in-process handler, mapped to a path of the target host.
+	 */
+	static class Context extends HttpContext {
+
+		private final String path;
+		private final Map<String, Object> attributes;
+		private final List<Filter> filters;
+		private HttpHandler handler;
+		private Authenticator authenticator;
+
+		Context(String path, HttpHandler handler) {
+			this.path = path;
+			this.handler = handler;
+			this.attributes = new HashMap<>();
+			this.filters = new CopyOnWriteArrayList<>();
+		}
+
+		@Override
+		public HttpHandler getHandler() {
+			return handler;
+		}
+
+		@Override
+		public void setHandler(HttpHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * Returns null: the handler is not served by an HTTP server.
+		 *
+		 * @return null
+		 */
+		@Override
+		public HttpServer getServer() {
+			return null;
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+
+		@Override
+		public List<Filter> getFilters() {
+			return filters;
+		}
+
+		@Override
+		public Authenticator setAuthenticator(Authenticator auth) {
+			final Authenticator previous = authenticator;
+			authenticator = auth;
+			return previous;
+		}
+
+		@Override
+		public Authenticator getAuthenticator() {
+			return authenticator;
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,769 @@
+package com.lotaris.api.test.client;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.ext.RuntimeDelegate;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Transport executing requests in-process: instead of being sent on a socket, requests are
+ * dispatched directly to an HTTP handler (or to a JAX-RS application) running in the same JVM,
+ * whatever their target host. Tests do not depend on a deployed server and do not pay for network
+ * round trips, while the request and response model stays the same.
+ *
+ * <p>The transport is used by the connection pools configured with
+ * {@link ApiTestConnectionPoolConfiguration#withInProcessTransport(ApiTestInProcessTransport)}.
+ * Requests go through the same execution chain as with a real connection (cookies, redirects,
+ * content encoding, timings and request listeners); only the connection is replaced. The request
+ * and response bodies are buffered in memory, and the sizes of requests and responses are those
+ * of their headers and bodies without transfer encoding.</p>
+ *
+ * <p>Requests are dispatched in the calling thread; asynchronous requests are dispatched by a pool
+ * of daemon threads.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestInProcessTransport {
+
+	/**
+	 * The context of the handler.
+	 */
+	private final ApiTestInProcessExchange.Context context;
+
+	//<editor-fold defaultstate="collapsed" desc="Factory Methods">
+	/**
+	 * Constructs a transport dispatching requests to an HTTP handler mapped to the root path.
+	 *
+	 * @param handler the HTTP handler
+	 * @return an in-process transport
+	 */
+	public static ApiTestInProcessTransport forHandler(HttpHandler handler) {
+		return forHandler(handler, "/");
+	}
+
+	/**
+	 * Constructs a transport dispatching requests to an HTTP handler mapped to a path, as it would
+	 * be with <tt>HttpServer.createContext(path, handler)</tt>. Like with the JDK HTTP server,
+	 * requests whose path does not start with the path of the handler get a 404 (Not Found)
+	 * response, and the authenticator set on the context of the exchange (if any) authenticates
+	 * each request before the handler is called.
+	 *
+	 * @param handler the HTTP handler
+	 * @param path the path of the handler (e.g. <tt>/api</tt>)
+	 * @return an in-process transport
+	 * @throws IllegalArgumentException if the handler is null or the path does not start with
+	 * <tt>/</tt>
+	 */
+	public static ApiTestInProcessTransport forHandler(HttpHandler handler, String path) {
+		if (handler == null) {
+			throw new IllegalArgumentException("Handler cannot be null");
+		} else if (path == null || !path.startsWith("/")) {
+			throw new IllegalArgumentException("Handler path must start with /");
+		}
+
+		return new ApiTestInProcessTransport(new ApiTestInProcessExchange.Context(path, handler));
+	}
+
+	/**
+	 * Constructs a transport dispatching requests to a JAX-RS application mapped to the root
+	 * path.
+	 *
+	 * @param application the JAX-RS application
+	 * @return an in-process transport
+	 * @throws ApiTestException if the JAX-RS implementation cannot create an HTTP handler
+	 * @see #forApplication(javax.ws.rs.core.Application, java.lang.String)
+	 */
+	public static ApiTestInProcessTransport forApplication(Application application) {
+		return forApplication(application, "/");
+	}
+
+	/**
+	 * Constructs a transport dispatching requests to a JAX-RS application mapped to a path. The
+	 * application is deployed as an HTTP handler endpoint by the JAX-RS implementation found on
+	 * the classpath (e.g. Jersey with its JDK HTTP server container).
+	 *
+	 * @param application the JAX-RS application
+	 * @param path the path of the application (e.g. <tt>/api</tt>)
+	 * @return an in-process transport
+	 * @throws IllegalArgumentException if the application is null or the path does not start
+	 * with <tt>/</tt>
+	 * @throws ApiTestException if the JAX-RS implementation cannot create an HTTP handler
+	 */
+	public static ApiTestInProcessTransport forApplication(Application application, String path) {
+		if (application == null) {
+			throw new IllegalArgumentException("Application cannot be null");
+		}
+
+		final HttpHandler handler;
+		try {
+			handler = RuntimeDelegate.getInstance().createEndpoint(application, HttpHandler.class);
+		} catch (IllegalArgumentException | UnsupportedOperationException e) {
+			throw new ApiTestException("The JAX-RS implementation cannot deploy " + application.getClass().getName() + " as an HTTP handler", e);
+		}
+
+		return forHandler(handler, path);
+	}
+	//</editor-fold>
+
+	/**
+	 * Constructs a new transport.
+	 *
+	 * @param context the context of the handler
+	 */
+	private ApiTestInProcessTransport(ApiTestInProcessExchange.Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * @return the HTTP handler requests are dispatched to
+	 */
+	public HttpHandler getHandler() {
+		return context.getHandler();
+	}
+
+	/**
+	 * @return the path the handler is mapped to
+	 */
+	public String getPath() {
+		return context.getPath();
+	}
+
+	/**
+	 * Returns the context of the handler, like <tt>HttpServer.createContext(path, handler)</tt>
+	 * does, to add filters or set an authenticator.
+	 *
+	 * @return the HTTP context
+	 */
+	public com.sun.net.httpserver.HttpContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Creates an Apache HTTP client whose requests are dispatched to the handler of this
+	 * transport.
+	 *
+	 * @return a thread-safe Apache HTTP client
+	 */
+	CloseableHttpClient createHttpClient() {
+		return HttpClients.custom()
+				.setConnectionManager(new InProcessConnectionManager())
+				.setRequestExecutor(new InProcessRequestExecutor())
+				.build();
+	}
+
+	/**
+	 * Creates an Apache asynchronous HTTP client whose requests are dispatched to the handler of
+	 * this transport by a pool of daemon threads. The client must be started.
+	 *
+	 * @param client the client used to execute requests
+	 * @return a thread-safe Apache asynchronous HTTP client
+	 */
+	CloseableHttpAsyncClient createAsyncHttpClient(CloseableHttpClient client) {
+		return new InProcessAsyncClient(client);
+	}
+
+	/**
+	 * Dispatches a request to the handler.
+	 *
+	 * @param request the request
+	 * @param connection the connection (to record sizes in its metrics)
+	 * @return the response, with a body buffered in memory
+	 * @throws IOException if the handler failed or did not send a response
+	 */
+	private HttpResponse dispatch(HttpRequest request, InProcessConnection connection) throws IOException, HttpException {
+
+		// headers and body of the request
+		final Headers requestHeaders = new Headers();
+		long requestSize = request.getRequestLine().toString().length() + 4;
+		for (final Header header : request.getAllHeaders()) {
+			requestHeaders.add(header.getName(), header.getValue());
+			requestSize += header.getName().length() + header.getValue().length() + 4;
+		}
+
+		byte[] requestBody = new byte[0];
+		if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream(entity.getContentLength() > 0 && entity.getContentLength() <= ApiTestResponseBody.MAX_BUFFER_LENGTH ? (int) entity.getContentLength() : 4096);
+			entity.writeTo(baos);
+			requestBody = baos.toByteArray();
+			requestSize += requestBody.length;
+		}
+
+		connection.sent(requestSize);
+
+		// the handler is called with the address of the target host
+		final HttpHost target = connection.target;
+		final InetSocketAddress localAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), target != null && target.getPort() >= 0 ? target.getPort() : 80);
+
+		final URI requestUri;
+		try {
+			requestUri = new URI(request.getRequestLine().getUri());
+		} catch (URISyntaxException use) {
+			throw new HttpException("Invalid request URI " + request.getRequestLine().getUri(), use);
+		}
+
+		final ApiTestInProcessExchange exchange = new ApiTestInProcessExchange(this.context, request.getRequestLine().getMethod(), requestUri, request.getProtocolVersion().toString(), requestHeaders, requestBody, localAddress);
+		try {
+			exchange.handle();
+		} catch (RuntimeException re) {
+			throw new IOException("The in-process handler failed to handle " + request.getRequestLine(), re);
+		} finally {
+			exchange.close();
+		}
+
+		// status, headers and body of the response
+		final int status = exchange.getResponseCode();
+		final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, null));
+		long responseSize = response.getStatusLine().toString().length() + 4;
+
+		response.addHeader(HttpHeaders.DATE, DateUtils.formatDate(new Date()));
+		for (final Entry<String, List<String>> header : exchange.getResponseHeaders().entrySet()) {
+			for (final String value : header.getValue()) {
+				response.addHeader(header.getKey(), value);
+			}
+		}
+
+		final boolean hasBody = exchange.getResponseLength() >= 0 && !"HEAD".equals(exchange.getRequestMethod()) && status != HttpStatus.SC_NO_CONTENT && status != HttpStatus.SC_NOT_MODIFIED;
+		if (!hasBody) {
+			response.addHeader(HttpHeaders.CONTENT_LENGTH, "0");
+		} else if (exchange.getResponseLength() > 0) {
+			response.addHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(exchange.getResponseBodyLength()));
+		} else {
+			response.addHeader(HttpHeaders.TRANSFER_ENCODING, "chunked");
+		}
+
+		for (final Header header : response.getAllHeaders()) {
+			responseSize += header.getName().length() + header.getValue().length() + 4;
+		}
+
+		if (hasBody) {
+			final ByteArrayEntity entity = new ByteArrayEntity(exchange.getResponseBodyBytes(), 0, exchange.getResponseBodyLength());
+			entity.setContentType(response.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+			entity.setContentEncoding(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+			entity.setChunked(exchange.getResponseLength() == 0);
+			response.setEntity(entity);
+			responseSize += exchange.getResponseBodyLength();
+		}
+
+		connection.received(responseSize);
+		return response;
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="In-process connections">
+	/**
+	 * Connection manager leasing in-process connections, which are always open.
+	 */
+	private class InProcessConnectionManager implements HttpClientConnectionManager {
+
+		@Override
+		public ConnectionRequest requestConnection(final HttpRoute route, Object state) {
+			return new ConnectionRequest() {
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ConnectionPoolTimeoutException {
+					return new InProcessConnection(route.getTargetHost());
+				}
+
+				@Override
+				public boolean cancel() {
+					return false;
+				}
+			};
+		}
+
+		@Override
+		public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+			if (conn instanceof InProcessConnection) {
+				((InProcessConnection) conn).released();
+			}
+		}
+
+		@Override
+		public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) {
+		}
+
+		@Override
+		public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) {
+		}
+
+		@Override
+		public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) {
+		}
+
+		@Override
+		public void closeIdleConnections(long idletime, TimeUnit tunit) {
+		}
+
+		@Override
+		public void closeExpiredConnections() {
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+
+	/**
+	 * In-process connection. A request sent on the connection is dispatched to the handler when
+	 * the connection is flushed (or when its response is read), and its response is then read from
+	 * memory. The connection also counts the bytes of the requests and responses dispatched.
+	 */
+	private class InProcessConnection implements HttpClientConnection, HttpConnectionMetrics {
+
+		/**
+		 * The target host of the connection.
+		 */
+		private final HttpHost target;
+		/**
+		 * The request sent but not dispatched yet (or null).
+		 */
+		private HttpRequest request;
+		/**
+		 * The response of the last request whose headers have not been received yet (or null).
+		 */
+		private HttpResponse response;
+		/**
+		 * The entity of the response whose headers have been received (or null).
+		 */
+		private HttpEntity responseEntity;
+		private boolean open = true;
+		private int socketTimeout;
+		private long requestCount;
+		private long responseCount;
+		private long sentBytes;
+		private long receivedBytes;
+		/**
+		 * The recorder of the request being dispatched (or null).
+		 */
+		private ApiTestTimingRecorder recorder;
+
+		public InProcessConnection(HttpHost target) {
+			this.target = target;
+		}
+
+		void track(ApiTestTimingRecorder recorder) {
+			this.recorder = recorder;
+		}
+
+		void sent(long bytes) {
+			requestCount++;
+			sentBytes += bytes;
+		}
+
+		void received(long bytes) {
+			responseCount++;
+			receivedBytes += bytes;
+		}
+
+		void released() {
+			if (recorder != null) {
+				recorder.released();
+				recorder = null;
+			}
+		}
+
+		@Override
+		public boolean isResponseAvailable(int timeout) throws IOException {
+			dispatchSentRequest();
+			return response != null;
+		}
+
+		@Override
+		public void sendRequestHeader(HttpRequest request) throws IOException {
+			ensureOpen();
+			this.request = request;
+			this.response = null;
+			this.responseEntity = null;
+		}
+
+		@Override
+		public void sendRequestEntity(HttpEntityEnclosingRequest request) throws IOException {
+			// the entity is read from the request when it is dispatched
+			ensureOpen();
+		}
+
+		@Override
+		public HttpResponse receiveResponseHeader() throws IOException {
+			dispatchSentRequest();
+			if (response == null) {
+				throw new IOException("No request has been sent on the in-process connection");
+			}
+
+			// the entity is received separately
+			final HttpResponse headers = response;
+			responseEntity = headers.getEntity();
+			headers.setEntity(null);
+			response = null;
+			return headers;
+		}
+
+		@Override
+		public void receiveResponseEntity(HttpResponse response) {
+			response.setEntity(responseEntity);
+			responseEntity = null;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			dispatchSentRequest();
+		}
+
+		/**
+		 * Dispatches the request sent on this connection to the handler, if it has not been
+		 * dispatched yet.
+		 *
+		 * @throws IOException if the connection is closed, or if the request could not be
+		 * dispatched
+		 */
+		private void dispatchSentRequest() throws IOException {
+			ensureOpen();
+			if (request != null) {
+				final HttpRequest sent = request;
+				request = null;
+				try {
+					response = dispatch(sent, this);
+				} catch (HttpException he) {
+					throw new IOException(he.getMessage(), he);
+				}
+			}
+		}
+
+		private void ensureOpen() throws ConnectionClosedException {
+			if (!open) {
+				throw new ConnectionClosedException("The in-process connection is closed");
+			}
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public boolean isStale() {
+			return !open;
+		}
+
+		@Override
+		public void setSocketTimeout(int timeout) {
+			socketTimeout = timeout;
+		}
+
+		@Override
+		public int getSocketTimeout() {
+			return socketTimeout;
+		}
+
+		@Override
+		public void shutdown() {
+			open = false;
+		}
+
+		@Override
+		public HttpConnectionMetrics getMetrics() {
+			return this;
+		}
+
+		@Override
+		public long getRequestCount() {
+			return requestCount;
+		}
+
+		@Override
+		public long getResponseCount() {
+			return responseCount;
+		}
+
+		@Override
+		public long getSentBytesCount() {
+			return sentBytes;
+		}
+
+		@Override
+		public long getReceivedBytesCount() {
+			return receivedBytes;
+		}
+
+		@Override
+		public Object getMetric(String metricName) {
+			return null;
+		}
+
+		@Override
+		public void reset() {
+			requestCount = 0;
+			responseCount = 0;
+			sentBytes = 0;
+			receivedBytes = 0;
+		}
+	}
+
+	/**
+	 * Request executor recording the timings of requests executed on in-process connections.
+	 */
+	private static class InProcessRequestExecutor extends HttpRequestExecutor {
+
+		@Override
+		public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+
+			final InProcessConnection connection = (InProcessConnection) conn;
+			final ApiTestTimingRecorder recorder = ApiTestTimingRecorder.get(context);
+			if (recorder != null) {
+				recorder.sending(connection);
+				connection.track(recorder);
+			}
+
+			final HttpResponse response = super.execute(request, conn, context);
+			if (recorder != null) {
+				recorder.headersReceived(response);
+			}
+
+			return response;
+		}
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Asynchronous client">
+	/**
+	 * Asynchronous client executing requests with an in-process client in a pool of daemon
+	 * threads. Request bodies are produced by the entity of the request generated by the request
+	 * producer, and response bodies are fed to the response consumer from memory.
+	 */
+	private static class InProcessAsyncClient extends CloseableHttpAsyncClient {
+
+		private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+		private final CloseableHttpClient client;
+		private final ExecutorService executor;
+		private volatile boolean running;
+
+		public InProcessAsyncClient(CloseableHttpClient client) {
+			this.client = client;
+
+			final int pool = POOL_COUNTER.incrementAndGet();
+			this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "api-test-in-process-" + pool + "-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		@Override
+		public boolean isRunning() {
+			return running;
+		}
+
+		@Override
+		public void start() {
+			running = true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			running = false;
+			executor.shutdownNow();
+		}
+
+		@Override
+		public <T> Future<T> execute(final HttpAsyncRequestProducer requestProducer, final HttpAsyncResponseConsumer<T> responseConsumer, final HttpContext context, FutureCallback<T> callback) {
+
+			final BasicFuture<T> future = new BasicFuture<>(callback);
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						// the entity of the generated request produces the body
+						final HttpRequest request = requestProducer.generateRequest();
+
+						// timings are recorded by the producer and consumer, not by the in-process
+						// client (the child context hides the recorder but shares the cookies)
+						final HttpContext clientContext = new BasicHttpContext(context);
+						clientContext.setAttribute(ApiTestTimingRecorder.CONTEXT_ATTRIBUTE, Boolean.FALSE);
+
+						try (CloseableHttpResponse response = client.execute(requestProducer.getTarget(), request, clientContext)) {
+							requestProducer.requestCompleted(context);
+
+							// feed the buffered response body to the consumer
+							final byte[] body = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : null;
+							if (body != null) {
+								response.setEntity(copyEntity(response.getEntity(), body));
+							}
+
+							responseConsumer.responseReceived(response);
+							if (body != null) {
+								final BufferDecoder decoder = new BufferDecoder(ByteBuffer.wrap(body));
+								while (!decoder.isCompleted()) {
+									final int remaining = decoder.remaining();
+									responseConsumer.consumeContent(decoder, NO_IO_CONTROL);
+									if (decoder.remaining() == remaining) {
+										// there is no input to wait for: the consumer will never read the rest
+										throw new IOException("The response consumer stopped reading the response body of " + request.getRequestLine()
+												+ " with " + remaining + " bytes remaining");
+									}
+								}
+							}
+							responseConsumer.responseCompleted(context);
+						}
+
+						final Exception exception = responseConsumer.getException();
+						if (exception != null) {
+							future.failed(exception);
+						} else {
+							future.completed(responseConsumer.getResult());
+						}
+					} catch (IOException | HttpException | RuntimeException e) {
+						requestProducer.failed(e);
+						responseConsumer.failed(e);
+						future.failed(e);
+					} finally {
+						try {
+							requestProducer.close();
+							responseConsumer.close();
+						} catch (IOException ioe) {
+							// nothing more can be done
+						}
+					}
+				}
+			});
+
+			return future;
+		}
+
+		/**
+		 * @param entity a response entity
+		 * @param body the content of the entity
+		 * @return a repeatable copy of the entity
+		 */
+		private static HttpEntity copyEntity(HttpEntity entity, byte[] body) {
+			final ByteArrayEntity copy = new ByteArrayEntity(body);
+			copy.setContentType(entity.getContentType());
+			copy.setContentEncoding(entity.getContentEncoding());
+			copy.setChunked(entity.isChunked());
+			return copy;
+		}
+	}
+
+	/**
+	 * Content decoder reading a buffer.
+	 */
+	private static class BufferDecoder implements ContentDecoder {
+
+		private final ByteBuffer buffer;
+
+		public BufferDecoder(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+
+			final int length = Math.min(buffer.remaining(), dst.remaining());
+			final ByteBuffer slice = buffer.duplicate();
+			slice.limit(slice.position() + length);
+			dst.put(slice);
+			buffer.position(buffer.position() + length);
+			return length;
+		}
+
+		@Override
+		public boolean isCompleted() {
+			return !buffer.hasRemaining();
+		}
+
+		/**
+		 * @return the number of bytes that have not been read
+		 */
+		public int remaining() {
+			return buffer.remaining();
+		}
+	}
+
+	/**
+	 * I/O control of in-process requests, which have no I/O to control.
+	 */
+	private static final IOControl NO_IO_CONTROL = new IOControl() {
+		@Override
+		public void requestInput() {
+		}
+
+		@Override
+		public void suspendInput() {
+		}
+
+		@Override
+		public void requestOutput() {
+		}
+
+		@Override
+		public void suspendOutput() {
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	};
+	//</editor-fold>
+}
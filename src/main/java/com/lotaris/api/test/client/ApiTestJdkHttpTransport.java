@@ -0,0 +1,463 @@
+package com.lotaris.api.test.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestWrapper;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.RequestAddCookies;
+import org.apache.http.client.protocol.ResponseProcessCookies;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.config.Lookup;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.cookie.CookieSpecProvider;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.cookie.BestMatchSpecFactory;
+import org.apache.http.impl.cookie.BrowserCompatSpecFactory;
+import org.apache.http.impl.cookie.IgnoreSpecFactory;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Transport executing requests with the HTTP client of the JDK (<tt>java.net.http</tt>, Java 11 or
+ * later). The client negotiates HTTP/2 (with ALPN over TLS, or with an upgrade from HTTP/1.1 for
+ * plain-text requests without a body) and multiplexes concurrent requests over a single connection
+ * per host, falling back to HTTP/1.1 for servers that do not support it.
+ *
+ * <p>Since this library targets Java 7, the JDK client is used through reflection. Cookies are
+ * managed by the same cookie specifications as the Apache clients; cookies set by redirect
+ * responses (which the JDK client follows by itself) are not stored. Connect times and request and
+ * response sizes are not measured.</p>
+ *
+ * @see ApiTestTransportEngine#JDK
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+class ApiTestJdkHttpTransport implements IApiTestTransport {
+
+	/**
+	 * Headers managed by the JDK client, which rejects them or forbids them in HTTP/2.
+	 */
+	private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+			"connection", "content-length", "expect", "host", "keep-alive", "proxy-connection", "te", "transfer-encoding", "upgrade"));
+
+	/**
+	 * The HTTP/2 protocol version.
+	 */
+	private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+	/**
+	 * The cookie specifications (the default Apache specification is "best match").
+	 */
+	private static final Lookup<CookieSpecProvider> COOKIE_SPECS = RegistryBuilder.<CookieSpecProvider>create()
+			.register("best-match", new BestMatchSpecFactory())
+			.register("compatibility", new BrowserCompatSpecFactory())
+			.register("ignoreCookies", new IgnoreSpecFactory())
+			.build();
+
+	/**
+	 * The JDK client API (resolved once).
+	 */
+	private final JdkHttpApi api;
+	/**
+	 * The JDK HTTP client (thread-safe).
+	 */
+	private final Object client;
+
+	/**
+	 * Constructs a transport with a new JDK HTTP client.
+	 *
+	 * @param clientConfiguration the client configuration (for the proxy settings)
+	 * @throws ApiTestException if the JDK HTTP client is not available
+	 */
+	public ApiTestJdkHttpTransport(IApiTestClientConfiguration clientConfiguration) {
+		this.api = JdkHttpApi.get();
+		this.client = api.createClient(clientConfiguration.isProxyEnabled() ? new ExceptionsProxySelector(clientConfiguration) : null);
+	}
+
+	@Override
+	public String getName() {
+		return "jdk";
+	}
+
+	@Override
+	public CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException {
+
+		// cookie headers are added to a copy of the request, as the Apache clients do
+		final HttpRequestWrapper wrapper = HttpRequestWrapper.wrap(request);
+		final URI uri = request.getURI();
+		prepareCookies(wrapper, uri, context);
+
+		final ApiTestTimingRecorder recorder = ApiTestTimingRecorder.get(context);
+		if (recorder != null) {
+			recorder.sending(null);
+		}
+
+		final JdkResponse response = api.send(client, buildRequest(wrapper, uri));
+		if (recorder != null) {
+			recorder.headersReceived(response);
+		}
+
+		try {
+			new ResponseProcessCookies().process(response, context);
+		} catch (HttpException he) {
+			response.close();
+			throw new ClientProtocolException(he);
+		}
+
+		return response;
+	}
+
+	/**
+	 * Adds the cookies of the client to a request.
+	 *
+	 * @param request the request
+	 * @param uri the request URI
+	 * @param context the execution context of the request
+	 * @throws IOException if the cookies could not be added
+	 */
+	private static void prepareCookies(HttpRequestWrapper request, URI uri, HttpClientContext context) throws IOException {
+
+		final HttpHost uriHost = URIUtils.extractHost(uri);
+		if (uriHost == null) {
+			throw new ClientProtocolException("URI does not specify a valid host name: " + uri);
+		}
+
+		final boolean secure = "https".equalsIgnoreCase(uriHost.getSchemeName());
+		final HttpHost target = new HttpHost(uriHost.getHostName(), uriHost.getPort() >= 0 ? uriHost.getPort() : (secure ? 443 : 80), uriHost.getSchemeName());
+
+		context.setAttribute(HttpClientContext.COOKIESPEC_REGISTRY, COOKIE_SPECS);
+		context.setAttribute(HttpClientContext.HTTP_TARGET_HOST, target);
+		context.setAttribute(HttpClientContext.HTTP_ROUTE, new HttpRoute(target, null, secure));
+
+		try {
+			new RequestAddCookies().process(request, context);
+		} catch (HttpException he) {
+			throw new ClientProtocolException(he);
+		}
+	}
+
+	/**
+	 * Builds the JDK request of an Apache request.
+	 *
+	 * @param request the Apache request
+	 * @param uri the request URI
+	 * @return a JDK request
+	 * @throws IOException if the request body could not be read
+	 */
+	private Object buildRequest(HttpRequestWrapper request, URI uri) throws IOException {
+
+		final HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+		final Object builder = api.newRequestBuilder(uri, request.getMethod(), entity != null ? EntityUtils.toByteArray(entity) : null);
+
+		for (Header header : request.getAllHeaders()) {
+			if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ENGLISH))) {
+				api.addHeader(builder, header.getName(), header.getValue());
+			}
+		}
+
+		// the Apache clients send the content type and encoding of the entity
+		if (entity != null && entity.getContentType() != null && !request.containsHeader("Content-Type")) {
+			api.addHeader(builder, "Content-Type", entity.getContentType().getValue());
+		}
+		if (entity != null && entity.getContentEncoding() != null && !request.containsHeader("Content-Encoding")) {
+			api.addHeader(builder, "Content-Encoding", entity.getContentEncoding().getValue());
+		}
+
+		return api.build(builder);
+	}
+
+	/**
+	 * Response of the JDK client whose body is streamed from the connection. Closing the response
+	 * discards the rest of the body.
+	 */
+	private static class JdkResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+		/**
+		 * The response body stream.
+		 */
+		private final InputStream body;
+
+		public JdkResponse(ProtocolVersion version, int status, InputStream body) {
+			super(new BasicStatusLine(version, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, null)));
+			this.body = body;
+		}
+
+		@Override
+		public void close() throws IOException {
+			body.close();
+		}
+	}
+
+	/**
+	 * Proxy selector that bypasses the proxy for the hosts configured as proxy exceptions.
+	 */
+	private static class ExceptionsProxySelector extends ProxySelector {
+
+		/**
+		 * The client configuration.
+		 */
+		private final IApiTestClientConfiguration clientConfiguration;
+		/**
+		 * The configured proxy.
+		 */
+		private final List<Proxy> proxy;
+
+		public ExceptionsProxySelector(IApiTestClientConfiguration clientConfiguration) {
+			this.clientConfiguration = clientConfiguration;
+			this.proxy = Collections.singletonList(new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(clientConfiguration.getProxyHost(), clientConfiguration.getProxyPort())));
+		}
+
+		@Override
+		public List<Proxy> select(URI uri) {
+			for (String hostToCheck : clientConfiguration.getProxyExceptions()) {
+				if (hostToCheck.equals(uri.getHost())) {
+					return Collections.singletonList(Proxy.NO_PROXY);
+				}
+			}
+			return proxy;
+		}
+
+		@Override
+		public void connectFailed(URI uri, SocketAddress sa, IOException ioe) {
+		}
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="JDK HTTP client API (reflection)">
+	/**
+	 * Methods of the <tt>java.net.http</tt> API used by the transport, resolved once per JVM.
+	 */
+	private static final class JdkHttpApi {
+
+		/**
+		 * The resolved API (null until first used).
+		 */
+		private static JdkHttpApi instance;
+
+		private final Method newClientBuilder;
+		private final Method clientBuilderVersion;
+		private final Method clientBuilderFollowRedirects;
+		private final Method clientBuilderProxy;
+		private final Method clientBuilderBuild;
+		private final Object http2Version;
+		private final Object normalRedirect;
+		private final Method newRequestBuilder;
+		private final Method requestBuilderMethod;
+		private final Method requestBuilderHeader;
+		private final Method requestBuilderBuild;
+		private final Method noBody;
+		private final Method ofByteArray;
+		private final Method send;
+		private final Object ofInputStream;
+		private final Method responseStatusCode;
+		private final Method responseVersion;
+		private final Method responseHeaders;
+		private final Method headersMap;
+		private final Method responseBody;
+
+		private JdkHttpApi() throws ReflectiveOperationException {
+			final Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+			final Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+			final Class<?> versionClass = Class.forName("java.net.http.HttpClient$Version");
+			final Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+			final Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+			final Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+			final Class<?> publisherClass = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+			final Class<?> publishersClass = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+			final Class<?> handlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+			final Class<?> handlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+			final Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+			final Class<?> headersClass = Class.forName("java.net.http.HttpHeaders");
+
+			newClientBuilder = clientClass.getMethod("newBuilder");
+			clientBuilderVersion = clientBuilderClass.getMethod("version", versionClass);
+			clientBuilderFollowRedirects = clientBuilderClass.getMethod("followRedirects", redirectClass);
+			clientBuilderProxy = clientBuilderClass.getMethod("proxy", ProxySelector.class);
+			clientBuilderBuild = clientBuilderClass.getMethod("build");
+			http2Version = versionClass.getField("HTTP_2").get(null);
+			normalRedirect = redirectClass.getField("NORMAL").get(null);
+			newRequestBuilder = requestClass.getMethod("newBuilder", URI.class);
+			requestBuilderMethod = requestBuilderClass.getMethod("method", String.class, publisherClass);
+			requestBuilderHeader = requestBuilderClass.getMethod("header", String.class, String.class);
+			requestBuilderBuild = requestBuilderClass.getMethod("build");
+			noBody = publishersClass.getMethod("noBody");
+			ofByteArray = publishersClass.getMethod("ofByteArray", byte[].class);
+			send = clientClass.getMethod("send", requestClass, handlerClass);
+			ofInputStream = handlersClass.getMethod("ofInputStream").invoke(null);
+			responseStatusCode = responseClass.getMethod("statusCode");
+			responseVersion = responseClass.getMethod("version");
+			responseHeaders = responseClass.getMethod("headers");
+			headersMap = headersClass.getMethod("map");
+			responseBody = responseClass.getMethod("body");
+		}
+
+		/**
+		 * @return the resolved API
+		 * @throws ApiTestException if the JDK HTTP client is not available
+		 */
+		static synchronized JdkHttpApi get() {
+			if (instance == null) {
+				try {
+					instance = new JdkHttpApi();
+				} catch (ReflectiveOperationException roe) {
+					throw new ApiTestException("The JDK HTTP client (java.net.http) requires Java 11 or later", roe);
+				}
+			}
+			return instance;
+		}
+
+		/**
+		 * @param proxySelector the proxy selector, or null to connect directly
+		 * @return a new HTTP client preferring HTTP/2 and following redirects
+		 */
+		Object createClient(ProxySelector proxySelector) {
+			try {
+				Object builder = newClientBuilder.invoke(null);
+				builder = clientBuilderVersion.invoke(builder, http2Version);
+				builder = clientBuilderFollowRedirects.invoke(builder, normalRedirect);
+				if (proxySelector != null) {
+					builder = clientBuilderProxy.invoke(builder, proxySelector);
+				}
+				return clientBuilderBuild.invoke(builder);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new ApiTestException("Could not create the JDK HTTP client", e);
+			}
+		}
+
+		/**
+		 * @param uri the request URI
+		 * @param method the HTTP method
+		 * @param body the request body, or null for no body
+		 * @return a new request builder
+		 * @throws IOException if the request is invalid
+		 */
+		Object newRequestBuilder(URI uri, String method, byte[] body) throws IOException {
+			final Object builder = invoke(newRequestBuilder, null, uri);
+			return invoke(requestBuilderMethod, builder, method, body != null ? invoke(ofByteArray, null, (Object) body) : invoke(noBody, null));
+		}
+
+		/**
+		 * @param builder the request builder
+		 * @param name the header name
+		 * @param value the header value
+		 * @throws IOException if the header is invalid
+		 */
+		void addHeader(Object builder, String name, String value) throws IOException {
+			invoke(requestBuilderHeader, builder, name, value);
+		}
+
+		/**
+		 * @param builder the request builder
+		 * @return the request
+		 * @throws IOException if the request is invalid
+		 */
+		Object build(Object builder) throws IOException {
+			return invoke(requestBuilderBuild, builder);
+		}
+
+		/**
+		 * Sends a request and waits for the response headers.
+		 *
+		 * @param client the HTTP client
+		 * @param request the request
+		 * @return the response, whose body remains to be read
+		 * @throws IOException if the request could not be executed
+		 */
+		JdkResponse send(Object client, Object request) throws IOException {
+
+			final Object response = invoke(send, client, request, ofInputStream);
+
+			final ProtocolVersion version = "HTTP_2".equals(((Enum<?>) invoke(responseVersion, response)).name()) ? HTTP_2 : HttpVersion.HTTP_1_1;
+			final JdkResponse result = new JdkResponse(version, (Integer) invoke(responseStatusCode, response), (InputStream) invoke(responseBody, response));
+
+			@SuppressWarnings("unchecked")
+			final Map<String, List<String>> headers = (Map<String, List<String>>) invoke(headersMap, invoke(responseHeaders, response));
+			for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+				if (!header.getKey().startsWith(":")) {
+					for (String value : header.getValue()) {
+						result.addHeader(header.getKey(), value);
+					}
+				}
+			}
+
+			final BasicHttpEntity entity = new BasicHttpEntity();
+			entity.setContent(result.body);
+			entity.setContentType(result.getFirstHeader("Content-Type"));
+			entity.setContentEncoding(result.getFirstHeader("Content-Encoding"));
+			final Header contentLength = result.getFirstHeader("Content-Length");
+			entity.setContentLength(contentLength != null ? parseLength(contentLength.getValue()) : -1);
+			result.setEntity(entity);
+
+			return result;
+		}
+
+		/**
+		 * @param value the value of a Content-Length header
+		 * @return the length, or -1 if invalid
+		 */
+		private static long parseLength(String value) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException nfe) {
+				return -1;
+			}
+		}
+
+		/**
+		 * Invokes a method of the API, rethrowing the exceptions it throws.
+		 *
+		 * @param method the method
+		 * @param target the target object (null for static methods)
+		 * @param args the arguments
+		 * @return the result
+		 * @throws IOException if the method threw an I/O exception or was interrupted
+		 */
+		private static Object invoke(Method method, Object target, Object... args) throws IOException {
+			try {
+				return method.invoke(target, args);
+			} catch (IllegalAccessException iae) {
+				throw new IllegalStateException(iae);
+			} catch (InvocationTargetException ite) {
+				final Throwable cause = ite.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				} else if (cause instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the response");
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new ClientProtocolException(cause);
+			}
+		}
+	}
+	//</editor-fold>
+}
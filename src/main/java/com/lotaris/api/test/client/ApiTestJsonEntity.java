@@ -0,0 +1,102 @@
+package com.lotaris.api.test.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.json.Json;
+import javax.json.JsonStructure;
+import javax.json.JsonWriter;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * HTTP entity serializing a JSON structure directly to the output stream of the connection when
+ * the request is sent, without buffering it. The entity is repeatable since JSON structures are
+ * immutable.
+ *
+ * <p>If the length of the serialized structure is not known, the entity is sent with chunked
+ * transfer encoding. Clients that pull content with {@link #getContent()} rather than pushing it
+ * with {@link #writeTo(java.io.OutputStream)} (such as the asynchronous client) get a buffered
+ * copy.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+class ApiTestJsonEntity extends AbstractHttpEntity {
+
+	/**
+	 * The JSON structure to serialize.
+	 */
+	private final JsonStructure json;
+	/**
+	 * The length of the serialized structure in bytes, or a negative number if unknown.
+	 */
+	private final long contentLength;
+
+	/**
+	 * Constructs a new entity.
+	 *
+	 * @param json the JSON structure to serialize
+	 * @param contentLength the exact length of the serialized structure in bytes (in UTF-8), or a
+	 * negative number if unknown
+	 */
+	public ApiTestJsonEntity(JsonStructure json, long contentLength) {
+		this.json = json;
+		this.contentLength = contentLength;
+		setContentType(ContentType.APPLICATION_JSON.toString());
+		setChunked(contentLength < 0);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream(contentLength >= 0 && contentLength <= ApiTestResponseBody.MAX_BUFFER_LENGTH ? (int) contentLength : 4096);
+		writeTo(baos);
+		return new ByteArrayInputStream(baos.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+
+		// closing the JSON writer must not close the stream of the connection
+		try (JsonWriter writer = Json.createWriter(new CloseShieldOutputStream(outstream))) {
+			writer.write(json);
+		}
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Output stream that flushes but does not close the underlying stream when it is closed.
+	 */
+	private static class CloseShieldOutputStream extends FilterOutputStream {
+
+		public CloseShieldOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.flush();
+		}
+	}
+}
@@ -122,7 +122,7 @@ public class ApiTestRequest {
 	 */
 	public ApiTestRequest setHeader(String name, Object value) {
 		request.removeHeaders(name);
-		request.setHeader(name, value.toString());
+		request.addHeader(name, value.toString());
 		return this;
 	}
 
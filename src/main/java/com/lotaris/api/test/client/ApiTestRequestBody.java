@@ -1,6 +1,5 @@
 package com.lotaris.api.test.client;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -9,8 +8,8 @@ import javax.json.JsonStructure;
 import javax.json.JsonWriter;
 import org.apache.http.HttpEntity;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 
 /**
@@ -40,18 +39,46 @@ public class ApiTestRequestBody {
 
 	/**
 	 * Constructs a request body with content type <tt>application/json</tt> from a JSON structure.
+	 * The structure is serialized directly to the connection when the request is sent, and sent
+	 * with chunked transfer encoding since its length is not known in advance.
 	 *
 	 * @param json the JSON structure to use as request body
 	 * @return an API request body
 	 */
 	public static ApiTestRequestBody from(JsonStructure json) {
+		return from(json, -1);
+	}
+
+	/**
+	 * Constructs a request body with content type <tt>application/json</tt> from a JSON structure
+	 * whose serialized length is already known. The structure is serialized directly to the
+	 * connection when the request is sent.
+	 *
+	 * @param json the JSON structure to use as request body
+	 * @param contentLength the exact length in bytes of the structure serialized in UTF-8, or a
+	 * negative number if unknown
+	 * @return an API request body
+	 */
+	public static ApiTestRequestBody from(JsonStructure json, long contentLength) {
+		return new ApiTestRequestBody(new ApiTestJsonEntity(json, contentLength));
+	}
+
+	/**
+	 * Constructs a request body with content type <tt>application/json</tt> from a JSON structure
+	 * serialized in memory, for servers that require a <tt>Content-Length</tt>. The serialized
+	 * bytes are not copied.
+	 *
+	 * @param json the JSON structure to use as request body
+	 * @return an API request body
+	 */
+	public static ApiTestRequestBody fromBuffered(JsonStructure json) {
 
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final ExposedByteArrayOutputStream baos = new ExposedByteArrayOutputStream();
 		try (JsonWriter writer = Json.createWriter(baos)) {
 			writer.write(json);
 		}
 
-		return new ApiTestRequestBody(baos.toByteArray(), APPLICATION_JSON);
+		return new ApiTestRequestBody(baos.getBuffer(), 0, baos.size(), APPLICATION_JSON, StandardCharsets.UTF_8);
 	}
 
 	/**
@@ -95,15 +122,28 @@ public class ApiTestRequestBody {
 	}
 
 	/**
-	 * Constructs a new request body.
+	 * Constructs a new request body. The data is not copied and must not be modified afterwards.
 	 *
 	 * @param data the request body
 	 * @param mediaType the media type of the body
 	 * @param charset the charset of the body
 	 */
 	public ApiTestRequestBody(byte[] data, String mediaType, Charset charset) {
-		this(new InputStreamEntity(new ByteArrayInputStream(data),
-				ContentType.create(mediaType, charset)));
+		this(new ByteArrayEntity(data, ContentType.create(mediaType, charset)));
+	}
+
+	/**
+	 * Constructs a new request body from part of a byte array. The data is not copied and must not
+	 * be modified afterwards.
+	 *
+	 * @param data the array containing the request body
+	 * @param offset the offset of the request body in the array
+	 * @param length the length of the request body in bytes
+	 * @param mediaType the media type of the body
+	 * @param charset the charset of the body
+	 */
+	public ApiTestRequestBody(byte[] data, int offset, int length, String mediaType, Charset charset) {
+		this(new ByteArrayEntity(data, offset, length, ContentType.create(mediaType, charset)));
 	}
 
 	/**
@@ -124,4 +164,17 @@ public class ApiTestRequestBody {
 	protected HttpEntity toEntity() {
 		return body;
 	}
+
+	/**
+	 * Byte array output stream giving access to its internal buffer, to avoid copying it.
+	 */
+	static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+		/**
+		 * @return the internal buffer (only the first {@link #size()} bytes are valid)
+		 */
+		public byte[] getBuffer() {
+			return buf;
+		}
+	}
 }
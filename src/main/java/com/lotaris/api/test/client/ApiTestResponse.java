@@ -1,19 +1,43 @@
 package com.lotaris.api.test.client;
 
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.spi.JsonProviderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonException;
 import javax.json.JsonObject;
+import javax.json.JsonStructure;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.entity.ContentType;
 
 /**
  * HTTP response wrapper.
  *
+ * <p>The response body is read as raw bytes when the response is received. It is only decoded to
+ * a string (with the charset of the <tt>Content-Type</tt> header, UTF-8 by default) the first time
+ * it is requested as a string; JSON accessors decode the bytes directly.</p>
+ *
+ * <p>Depending on the {@link ApiTestResponseBufferingPolicy} of the client, large bodies are
+ * spooled to a temporary file instead of being held in memory. The file is memory-mapped when the
+ * body is requested as bytes or as a buffer, and streamed otherwise.</p>
+ *
+ * <p>Parsed representations of the body (the JSON structure and the JsonPath document) are built
+ * at most once and shared by all callers, such as <tt>withJson</tt> assertions and matchers.</p>
+ *
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  * @author Simon Oulevay <simon.oulevay@lotaris.com>
  */
@@ -24,24 +48,59 @@ public class ApiTestResponse {
 	 */
 	private HttpResponse response;
 	/**
-	 * The cached response body.
+	 * The raw response body (null if the response has no body).
+	 */
+	private ApiTestResponseBody responseBytes;
+	/**
+	 * The charset of the response body.
+	 */
+	private Charset responseCharset;
+	/**
+	 * The decoded response body (null until first requested).
 	 */
 	private String responseBody;
+	/**
+	 * The parsed JSON response body (null until first requested).
+	 */
+	private JsonStructure responseJson;
+	/**
+	 * The JsonPath document model of the response body (null until first requested).
+	 */
+	private Object responseJsonPathDocument;
 
 	/**
 	 * URI from the request
 	 */
 	private URI requestUri;
+
+	/**
+	 * Timing breakdown of the request.
+	 */
+	private ApiTestTimings timings;
 	
 	/**
-	 * Constructs a new API response from an Apache HTTP response.
+	 * Constructs a new API response from an Apache HTTP response. The body is buffered in memory.
 	 *
 	 * @param response the HTTP response
 	 * @throws IOException if the response could not be consumed or closed
 	 */
 	protected ApiTestResponse(HttpResponse response) throws IOException {
+		this(response, null, new ArrayList<File>(0));
+	}
+
+	/**
+	 * Constructs a new API response from an Apache HTTP response. The body is buffered according
+	 * to the specified policy.
+	 *
+	 * @param response the HTTP response
+	 * @param bufferingPolicy the buffering policy, or null to buffer the body in memory
+	 * @param temporaryFiles the collection to which temporary files are added (they must be deleted
+	 * by the caller once the response is no longer used)
+	 * @throws IOException if the response could not be consumed or closed
+	 */
+	protected ApiTestResponse(HttpResponse response, ApiTestResponseBufferingPolicy bufferingPolicy, Collection<File> temporaryFiles) throws IOException {
 		this.response = response;
-		this.responseBody = readResponseBody(response);
+		readResponseBody(response.getEntity(), bufferingPolicy, temporaryFiles);
 	}
 
 	/**
@@ -72,7 +131,82 @@ public class ApiTestResponse {
 	 * @return the response body string (which may be empty but not null)
 	 */
 	public String getResponseAsString() {
-		return responseBody != null ? responseBody : "";
+		if (responseBody == null) {
+			try {
+				responseBody = responseBytes != null ? getResponseCharset().decode(responseBytes.toByteBuffer()).toString() : "";
+			} catch (IOException ioe) {
+				throw new ApiTestException("Could not read the response body from " + requestUri, ioe);
+			}
+		}
+		return responseBody;
+	}
+
+	/**
+	 * Returns the raw response body. If the response has no body, an empty array is returned. The
+	 * returned array may be shared with this response and must not be modified.
+	 *
+	 * @return the response body bytes (which may be empty but not null)
+	 * @throws ApiTestException if the body was spooled to a file that could not be read
+	 */
+	public byte[] getResponseAsBytes() {
+		try {
+			return responseBytes != null ? responseBytes.toByteArray() : new byte[0];
+		} catch (IOException ioe) {
+			throw new ApiTestException("Could not read the response body from " + requestUri, ioe);
+		}
+	}
+
+	/**
+	 * Returns the raw response body as a read-only buffer. The bytes are not copied; a body
+	 * spooled to a temporary file is memory-mapped.
+	 *
+	 * <p>The mapping of a spooled body is created once and is only released when the response
+	 * and the buffers it returned are garbage-collected, even after the client deleted the file.
+	 * Tests reading many large bodies should therefore not keep references to their responses.</p>
+	 *
+	 * @return a read-only byte buffer (which may be empty)
+	 * @throws ApiTestException if the body was spooled to a file that could not be mapped
+	 */
+	public ByteBuffer getResponseAsByteBuffer() {
+		try {
+			return responseBytes != null ? responseBytes.toByteBuffer() : ByteBuffer.allocate(0).asReadOnlyBuffer();
+		} catch (IOException ioe) {
+			throw new ApiTestException("Could not read the response body from " + requestUri, ioe);
+		}
+	}
+
+	/**
+	 * Returns the length of the raw response body.
+	 *
+	 * @return the number of bytes of the body (0 if there is none)
+	 */
+	public long getResponseLength() {
+		return responseBytes != null ? responseBytes.length() : 0;
+	}
+
+	/**
+	 * Returns a new stream reading the raw response body. The bytes are not copied; a body spooled
+	 * to a temporary file is read from the file.
+	 *
+	 * @return an input stream (which may be empty)
+	 * @throws ApiTestException if the body was spooled to a file that could not be opened
+	 */
+	public InputStream getResponseAsStream() {
+		try {
+			return responseBytes != null ? responseBytes.openStream() : new ByteArrayInputStream(new byte[0]);
+		} catch (IOException ioe) {
+			throw new ApiTestException("Could not read the response body from " + requestUri, ioe);
+		}
+	}
+
+	/**
+	 * Returns the charset used to decode the response body: the charset of the
+	 * <tt>Content-Type</tt> header, or UTF-8 if there is none.
+	 *
+	 * @return a charset
+	 */
+	public Charset getResponseCharset() {
+		return responseCharset != null ? responseCharset : StandardCharsets.UTF_8;
 	}
 
 	/**
@@ -82,7 +216,11 @@ public class ApiTestResponse {
 	 * @throws JsonException if the response body could not be read or is not valid JSON
 	 */
 	public JsonObject getResponseAsJsonObject() {
-		return Json.createReader(new StringReader(getResponseAsString())).readObject();
+		final JsonStructure json = getResponseAsJson();
+		if (!(json instanceof JsonObject)) {
+			throw new JsonException("Cannot read JSON object, found JSON array");
+		}
+		return (JsonObject) json;
 	}
 	
 	/**
@@ -103,6 +241,26 @@ public class ApiTestResponse {
 		return this;
 	}
 
+	/**
+	 * Returns the timing breakdown and wire sizes of the request that produced this response.
+	 *
+	 * @return the request timings, or null if they were not recorded
+	 */
+	public ApiTestTimings getTimings() {
+		return timings;
+	}
+
+	/**
+	 * Sets the timings of the request that produced this response.
+	 *
+	 * @param timings the request timings
+	 * @return this
+	 */
+	protected ApiTestResponse setTimings(ApiTestTimings timings) {
+		this.timings = timings;
+		return this;
+	}
+
 	/**
 	 * Returns the response body as a JSON array.
 	 *
@@ -110,17 +268,79 @@ public class ApiTestResponse {
 	 * @throws JsonException if the response body could not be read or is not valid JSON
 	 */
 	public JsonArray getResponseAsJsonArray() {
-		return Json.createReader(new StringReader(getResponseAsString())).readArray();
+		final JsonStructure json = getResponseAsJson();
+		if (!(json instanceof JsonArray)) {
+			throw new JsonException("Cannot read JSON array, found JSON object");
+		}
+		return (JsonArray) json;
 	}
-	
+
+	/**
+	 * Returns the response body as a JSON structure (object or array). The body is parsed the
+	 * first time this method is called; the same immutable structure is returned afterwards.
+	 *
+	 * @return a JSON structure
+	 * @throws JsonException if the response body could not be read or is not valid JSON
+	 */
+	public JsonStructure getResponseAsJson() {
+		if (responseJson == null) {
+			responseJson = Json.createReader(getResponseAsReader()).read();
+		}
+		return responseJson;
+	}
+
+	/**
+	 * Returns the JsonPath document model of the response body (maps and lists), which can be
+	 * passed to <tt>JsonPath.read</tt> instead of the body string to avoid parsing it again. The
+	 * body is parsed the first time this method is called; the same document is returned
+	 * afterwards. It is shared and must not be modified.
+	 *
+	 * @return a JsonPath document
+	 * @throws InvalidJsonException if the response body is not valid JSON
+	 */
+	public Object getJsonPathDocument() {
+		if (responseJsonPathDocument == null) {
+			responseJsonPathDocument = JsonProviderFactory.createProvider().parse(getResponseAsReader());
+		}
+		return responseJsonPathDocument;
+	}
+
+	/**
+	 * Returns a reader of the response body. The decoded string is used if it is already
+	 * available; otherwise the raw bytes are decoded as they are read.
+	 *
+	 * @return a reader
+	 */
+	private Reader getResponseAsReader() {
+		return responseBody != null || responseBytes == null ? new StringReader(getResponseAsString()) : new InputStreamReader(getResponseAsStream(), getResponseCharset());
+	}
+
 	/**
-	 * Returns the HTTP response body as an UTF-8 string.
+	 * Reads the raw HTTP response body, in memory or into a temporary file depending on the
+	 * buffering policy (see {@link ApiTestResponseBody#read}).
 	 *
-	 * @param response the HTTP response whose body to read
-	 * @return the response body as a string
+	 * @param entity the HTTP entity to read (may be null)
+	 * @param bufferingPolicy the buffering policy, or null to buffer the body in memory
+	 * @param temporaryFiles the collection to which temporary files are added
 	 * @throws IOException if the response entity could not be read
 	 */
-	private static String readResponseBody(HttpResponse response) throws IOException {
-		return response.getEntity() != null ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8) : null;
+	private void readResponseBody(HttpEntity entity, ApiTestResponseBufferingPolicy bufferingPolicy, Collection<File> temporaryFiles) throws IOException {
+		if (entity == null) {
+			return;
+		}
+
+		final ContentType contentType = ContentType.get(entity);
+		responseCharset = contentType != null && contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+
+		final InputStream in = entity.getContent();
+		if (in == null) {
+			return;
+		}
+
+		try {
+			responseBytes = ApiTestResponseBody.read(in, entity.getContentLength(), bufferingPolicy, temporaryFiles);
+		} finally {
+			in.close();
+		}
 	}
 }
@@ -0,0 +1,260 @@
+package com.lotaris.api.test.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Raw body of an API response, either held in memory or spooled to a temporary file depending on
+ * its size (see {@link ApiTestResponseBufferingPolicy}).
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+abstract class ApiTestResponseBody {
+
+	/**
+	 * Maximum length of a body held in memory or mapped at once (the maximum size of an array).
+	 */
+	static final int MAX_BUFFER_LENGTH = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Size of the chunks copied to temporary files.
+	 */
+	private static final int COPY_BUFFER_LENGTH = 64 * 1024;
+
+	/**
+	 * @return the length of the body in bytes
+	 */
+	abstract long length();
+
+	/**
+	 * Returns the body as an array. The array may be shared and must not be modified.
+	 *
+	 * @return the body bytes
+	 * @throws IOException if the body could not be read
+	 */
+	abstract byte[] toByteArray() throws IOException;
+
+	/**
+	 * Returns a read-only buffer over the body.
+	 *
+	 * @return a byte buffer
+	 * @throws IOException if the body could not be read or is too large to be mapped
+	 */
+	abstract ByteBuffer toByteBuffer() throws IOException;
+
+	/**
+	 * Opens a new stream reading the body.
+	 *
+	 * @return an input stream
+	 * @throws IOException if the body could not be read
+	 */
+	abstract InputStream openStream() throws IOException;
+
+	/**
+	 * Reads a body from a stream. It is read in memory up to the memory threshold of the buffering
+	 * policy, and spooled to a temporary file beyond that.
+	 *
+	 * @param in the stream to read (not closed)
+	 * @param contentLength the announced length of the body, or a negative number if unknown
+	 * @param bufferingPolicy the buffering policy, or null to always read the body in memory
+	 * @param temporaryFiles the collection to which temporary files are added (so that they can be
+	 * deleted later)
+	 * @return a response body
+	 * @throws IOException if the body could not be read or spooled
+	 */
+	static ApiTestResponseBody read(InputStream in, long contentLength, ApiTestResponseBufferingPolicy bufferingPolicy, Collection<File> temporaryFiles) throws IOException {
+
+		final long threshold = bufferingPolicy != null ? Math.min(bufferingPolicy.getMemoryThreshold(), MAX_BUFFER_LENGTH) : MAX_BUFFER_LENGTH;
+
+		// read directly into an array of the announced length if it fits in memory
+		if (contentLength > threshold) {
+			if (bufferingPolicy == null) {
+				throw new IOException("Response body is too large to be buffered in memory (" + contentLength + " bytes)");
+			}
+			return spool(new byte[0], 0, in, bufferingPolicy, temporaryFiles);
+		}
+
+		byte[] buffer = new byte[contentLength >= 0 ? (int) contentLength : (int) Math.min(4096, threshold)];
+		int length = 0;
+		while (true) {
+			if (length == buffer.length) {
+				// the body may be longer than announced or its length may be unknown
+				final int next = in.read();
+				if (next < 0) {
+					break;
+				} else if (buffer.length >= threshold) {
+					if (bufferingPolicy == null) {
+						throw new IOException("Response body is too large to be buffered in memory");
+					}
+					buffer = Arrays.copyOf(buffer, length + 1);
+					buffer[length++] = (byte) next;
+					return spool(buffer, length, in, bufferingPolicy, temporaryFiles);
+				}
+
+				buffer = Arrays.copyOf(buffer, (int) Math.min(Math.max(buffer.length * 2L, 4096), threshold));
+				buffer[length++] = (byte) next;
+			}
+
+			final int read = in.read(buffer, length, buffer.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+
+		return new MemoryBody(buffer, length);
+	}
+
+	/**
+	 * Spools a body to a temporary file: the bytes already read first, then the rest of the stream.
+	 *
+	 * @param head the bytes already read
+	 * @param headLength the number of bytes already read
+	 * @param in the stream of the rest of the body
+	 * @param bufferingPolicy the buffering policy
+	 * @param temporaryFiles the collection to which the temporary file is added
+	 * @return a body backed by the temporary file
+	 * @throws IOException if the body could not be spooled
+	 */
+	private static ApiTestResponseBody spool(byte[] head, int headLength, InputStream in, ApiTestResponseBufferingPolicy bufferingPolicy, Collection<File> temporaryFiles) throws IOException {
+
+		final File file = File.createTempFile("api-test-response-", ".tmp", bufferingPolicy.getTemporaryDirectory());
+		temporaryFiles.add(file);
+
+		long length = headLength;
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(head, 0, headLength);
+
+			final byte[] buffer = new byte[COPY_BUFFER_LENGTH];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+				length += read;
+			}
+		}
+
+		return new FileBody(file, length);
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="MemoryBody">
+	/**
+	 * Body held in memory.
+	 */
+	private static class MemoryBody extends ApiTestResponseBody {
+
+		/**
+		 * The body bytes (only the first {@link #length} bytes are part of the body).
+		 */
+		private byte[] bytes;
+		/**
+		 * The length of the body.
+		 */
+		private final int length;
+
+		public MemoryBody(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+		}
+
+		@Override
+		long length() {
+			return length;
+		}
+
+		@Override
+		byte[] toByteArray() {
+			if (bytes.length != length) {
+				// trim the read buffer once
+				bytes = Arrays.copyOf(bytes, length);
+			}
+			return bytes;
+		}
+
+		@Override
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(bytes, 0, length).asReadOnlyBuffer();
+		}
+
+		@Override
+		InputStream openStream() {
+			return new ByteArrayInputStream(bytes, 0, length);
+		}
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="FileBody">
+	/**
+	 * Body spooled to a temporary file. The file is memory-mapped the first time the body is read
+	 * as a buffer or array.
+	 *
+	 * <p>Java cannot unmap a file explicitly: the mapping (at most {@link #MAX_BUFFER_LENGTH}
+	 * bytes of address space, outside of the heap) lives until this body and the buffers it returned
+	 * are garbage-collected. Platforms that refuse to delete mapped files delete them when the JVM
+	 * exits instead (see {@link ApiTestClient#close()}).</p>
+	 */
+	private static class FileBody extends ApiTestResponseBody {
+
+		/**
+		 * The temporary file.
+		 */
+		private final File file;
+		/**
+		 * The length of the body.
+		 */
+		private final long length;
+		/**
+		 * The memory-mapped file (null until first requested).
+		 */
+		private ByteBuffer mapped;
+
+		public FileBody(File file, long length) {
+			this.file = file;
+			this.length = length;
+		}
+
+		@Override
+		long length() {
+			return length;
+		}
+
+		@Override
+		byte[] toByteArray() throws IOException {
+			final ByteBuffer buffer = toByteBuffer();
+			final byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			return bytes;
+		}
+
+		@Override
+		synchronized ByteBuffer toByteBuffer() throws IOException {
+			if (mapped == null) {
+				if (length > MAX_BUFFER_LENGTH) {
+					throw new IOException("Response body spooled to " + file + " is too large to be mapped (" + length + " bytes)");
+				}
+
+				// the mapping remains valid after the channel is closed
+				try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+					mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+				}
+			}
+			return mapped.asReadOnlyBuffer();
+		}
+
+		@Override
+		InputStream openStream() throws IOException {
+			return new BufferedInputStream(new FileInputStream(file), COPY_BUFFER_LENGTH);
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,81 @@
+package com.lotaris.api.test.client;
+
+import java.io.File;
+
+/**
+ * Policy to buffer response bodies: bodies up to a threshold are kept in memory, larger bodies are
+ * spooled to temporary files. Spooled bodies are memory-mapped when read and their files are
+ * deleted when the client that received them is closed.
+ *
+ * <p>A mapping is not released when its file is deleted but when the response is garbage-collected.
+ * Each spooled body is mapped at most once, and only bodies larger than the memory threshold are
+ * mapped.</p>
+ *
+ * @see IApiTestClientExtendedConfiguration#getResponseBufferingPolicy()
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestResponseBufferingPolicy {
+
+	/**
+	 * Default maximum size (in bytes) of a response body kept in memory.
+	 */
+	public static final long DEFAULT_MEMORY_THRESHOLD = 16 * 1024 * 1024;
+
+	/**
+	 * Maximum size of a response body kept in memory.
+	 */
+	private long memoryThreshold;
+	/**
+	 * Directory of temporary files (null for the default temporary directory).
+	 */
+	private File temporaryDirectory;
+
+	/**
+	 * Constructs a policy with default values.
+	 */
+	public ApiTestResponseBufferingPolicy() {
+		memoryThreshold = DEFAULT_MEMORY_THRESHOLD;
+	}
+
+	/**
+	 * Sets the maximum size of a response body kept in memory. Larger bodies are spooled to
+	 * temporary files.
+	 *
+	 * @param memoryThreshold a size in bytes
+	 * @return this policy
+	 * @throws IllegalArgumentException if the size is negative
+	 */
+	public ApiTestResponseBufferingPolicy withMemoryThreshold(long memoryThreshold) {
+		if (memoryThreshold < 0) {
+			throw new IllegalArgumentException("Memory threshold cannot be negative");
+		}
+
+		this.memoryThreshold = memoryThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the directory in which temporary files are created.
+	 *
+	 * @param temporaryDirectory a directory, or null to use the default temporary directory
+	 * @return this policy
+	 */
+	public ApiTestResponseBufferingPolicy withTemporaryDirectory(File temporaryDirectory) {
+		this.temporaryDirectory = temporaryDirectory;
+		return this;
+	}
+
+	/**
+	 * @return the maximum size in bytes of a response body kept in memory
+	 */
+	public long getMemoryThreshold() {
+		return memoryThreshold;
+	}
+
+	/**
+	 * @return the directory of temporary files, or null to use the default temporary directory
+	 */
+	public File getTemporaryDirectory() {
+		return temporaryDirectory;
+	}
+}
@@ -0,0 +1,349 @@
+package com.lotaris.api.test.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+
+/**
+ * HTTP response whose body is not buffered but read directly from the connection, so that huge
+ * bodies can be processed in constant memory. The body can be read only once, either as a raw
+ * stream, as a stream of JSON parser events, or element by element if it is a JSON array.
+ *
+ * <p>The response must be closed to release the connection. Its timings are available once it has
+ * been closed. Streaming requests are not limited by the concurrency limiter of the client (see
+ * {@link ApiTestClient#executeStreaming(com.lotaris.api.test.client.ApiTestRequest)}).</p>
+ *
+ * @see ApiTestClient#executeStreaming(com.lotaris.api.test.client.ApiTestRequest)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestStreamingResponse implements Closeable {
+
+	/**
+	 * The internal Apache HTTP response (not consumed).
+	 */
+	private final CloseableHttpResponse response;
+	/**
+	 * The timing recorder of the request.
+	 */
+	private final ApiTestTimingRecorder timingRecorder;
+	/**
+	 * URI from the request.
+	 */
+	private final URI requestUri;
+	/**
+	 * Whether the body has already been requested.
+	 */
+	private boolean bodyRequested;
+	/**
+	 * Timing breakdown of the request (null until closed).
+	 */
+	private ApiTestTimings timings;
+
+	/**
+	 * Constructs a new streaming response.
+	 *
+	 * @param response the unconsumed HTTP response
+	 * @param timingRecorder the timing recorder of the request
+	 * @param request the request
+	 */
+	ApiTestStreamingResponse(CloseableHttpResponse response, ApiTestTimingRecorder timingRecorder, ApiTestRequest request) {
+		this.response = response;
+		this.timingRecorder = timingRecorder;
+		this.requestUri = request.getUri();
+	}
+
+	/**
+	 * Returns the HTTP status code of this response.
+	 *
+	 * @return an integer status code
+	 */
+	public int getStatus() {
+		return response.getStatusLine().getStatusCode();
+	}
+
+	/**
+	 * Returns the value of the specified response header. If the header is present multiple times
+	 * in the response, the value of the first header is returned.
+	 *
+	 * @param headerName the header name
+	 * @return the value of the first response header with the given name, or null if there is none
+	 */
+	public String getHeaderString(String headerName) {
+		final Header header = response.getFirstHeader(headerName);
+		return header != null ? header.getValue() : null;
+	}
+
+	/**
+	 * @return The request URI
+	 */
+	public URI getRequestUri() {
+		return requestUri;
+	}
+
+	/**
+	 * Returns the timing breakdown and wire sizes of the request. The download time covers the
+	 * time until the response was closed.
+	 *
+	 * @return the request timings, or null if the response has not been closed yet
+	 */
+	public ApiTestTimings getTimings() {
+		return timings;
+	}
+
+	/**
+	 * Returns the response body stream. The body is read directly from the connection.
+	 *
+	 * @return an input stream (which may be empty)
+	 * @throws ApiTestException if the body was already requested or could not be read
+	 */
+	public InputStream getResponseAsStream() {
+		if (bodyRequested) {
+			throw new ApiTestException("The body of a streaming response can only be read once");
+		}
+		bodyRequested = true;
+
+		try {
+			final HttpEntity entity = response.getEntity();
+			final InputStream content = entity != null ? entity.getContent() : null;
+			return content != null ? content : new ByteArrayInputStream(new byte[0]);
+		} catch (IOException ioe) {
+			throw new ApiTestException("Could not read the response body from " + requestUri, ioe);
+		}
+	}
+
+	/**
+	 * Returns a JSON parser reading the response body as it is received. The body is decoded with
+	 * the charset of the <tt>Content-Type</tt> header (UTF-8 by default).
+	 *
+	 * @return a JSON parser
+	 * @throws ApiTestException if the body was already requested or could not be read
+	 */
+	public JsonParser getResponseAsJsonParser() {
+		return Json.createParser(new InputStreamReader(getResponseAsStream(), getResponseCharset()));
+	}
+
+	/**
+	 * Returns an iterator over the elements of the JSON array that is the response body. Each
+	 * element is built in memory when {@link Iterator#next()} is called; the array itself never
+	 * is.
+	 *
+	 * @return an iterator of JSON values
+	 * @throws ApiTestException if the body was already requested or could not be read
+	 * @throws JsonException if the response body is not a JSON array
+	 */
+	public Iterator<JsonValue> getResponseAsJsonArrayIterator() {
+
+		final JsonParser parser = getResponseAsJsonParser();
+		if (!parser.hasNext() || parser.next() != Event.START_ARRAY) {
+			parser.close();
+			throw new JsonException("Response body of " + requestUri + " is not a JSON array");
+		}
+
+		return new JsonArrayIterator(parser);
+	}
+
+	/**
+	 * Closes this response and releases its connection. If the body has not been fully read, the
+	 * connection is closed rather than reused.
+	 *
+	 * @throws ApiTestException if the response could not be closed
+	 */
+	@Override
+	public void close() {
+		if (timings != null) {
+			return;
+		}
+
+		try {
+			response.close();
+		} catch (IOException ioe) {
+			throw new ApiTestException("Could not close response from " + requestUri, ioe);
+		} finally {
+			timings = timingRecorder.complete(true);
+		}
+	}
+
+	/**
+	 * @return the charset of the <tt>Content-Type</tt> header, or UTF-8 if there is none
+	 */
+	private Charset getResponseCharset() {
+		final ContentType contentType = response.getEntity() != null ? ContentType.get(response.getEntity()) : null;
+		return contentType != null && contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="JsonArrayIterator">
+	/**
+	 * Iterator building the elements of a JSON array from parser events.
+	 */
+	private static class JsonArrayIterator implements Iterator<JsonValue> {
+
+		/**
+		 * The parser, positioned after the start of the array or after the previous element.
+		 */
+		private final JsonParser parser;
+		/**
+		 * The first event of the next element (null if not read yet).
+		 */
+		private Event nextEvent;
+		/**
+		 * Whether the end of the array was reached.
+		 */
+		private boolean ended;
+
+		public JsonArrayIterator(JsonParser parser) {
+			this.parser = parser;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!ended && nextEvent == null) {
+				if (!parser.hasNext()) {
+					throw new JsonParsingException("Unexpected end of JSON array", parser.getLocation());
+				}
+
+				nextEvent = parser.next();
+				if (nextEvent == Event.END_ARRAY) {
+					ended = true;
+					nextEvent = null;
+					parser.close();
+				}
+			}
+
+			return !ended;
+		}
+
+		@Override
+		public JsonValue next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			final Event event = nextEvent;
+			nextEvent = null;
+
+			// javax.json 1.0 cannot create standalone values: scalars are built in a wrapper array
+			final JsonArrayBuilder wrapper = Json.createArrayBuilder();
+			addValue(wrapper, event);
+			return wrapper.build().get(0);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Elements cannot be removed from a streaming response");
+		}
+
+		/**
+		 * Adds the value starting with the specified event to an array.
+		 *
+		 * @param builder the array builder
+		 * @param event the first event of the value
+		 */
+		private void addValue(JsonArrayBuilder builder, Event event) {
+			switch (event) {
+				case START_OBJECT:
+					builder.add(readObject());
+					break;
+				case START_ARRAY:
+					builder.add(readArray());
+					break;
+				case VALUE_STRING:
+					builder.add(parser.getString());
+					break;
+				case VALUE_NUMBER:
+					builder.add(parser.getBigDecimal());
+					break;
+				case VALUE_TRUE:
+					builder.add(JsonValue.TRUE);
+					break;
+				case VALUE_FALSE:
+					builder.add(JsonValue.FALSE);
+					break;
+				case VALUE_NULL:
+					builder.addNull();
+					break;
+				default:
+					throw new JsonParsingException("Unexpected JSON event " + event, parser.getLocation());
+			}
+		}
+
+		/**
+		 * Reads an object whose start event has been consumed.
+		 *
+		 * @return an object builder with the object properties
+		 */
+		private JsonObjectBuilder readObject() {
+
+			final JsonObjectBuilder builder = Json.createObjectBuilder();
+			Event event = parser.next();
+			while (event != Event.END_OBJECT) {
+				final String name = parser.getString();
+				event = parser.next();
+				switch (event) {
+					case START_OBJECT:
+						builder.add(name, readObject());
+						break;
+					case START_ARRAY:
+						builder.add(name, readArray());
+						break;
+					case VALUE_STRING:
+						builder.add(name, parser.getString());
+						break;
+					case VALUE_NUMBER:
+						builder.add(name, parser.getBigDecimal());
+						break;
+					case VALUE_TRUE:
+						builder.add(name, JsonValue.TRUE);
+						break;
+					case VALUE_FALSE:
+						builder.add(name, JsonValue.FALSE);
+						break;
+					case VALUE_NULL:
+						builder.addNull(name);
+						break;
+					default:
+						throw new JsonParsingException("Unexpected JSON event " + event, parser.getLocation());
+				}
+				event = parser.next();
+			}
+
+			return builder;
+		}
+
+		/**
+		 * Reads an array whose start event has been consumed.
+		 *
+		 * @return an array builder with the array elements
+		 */
+		private JsonArrayBuilder readArray() {
+
+			final JsonArrayBuilder builder = Json.createArrayBuilder();
+			Event event = parser.next();
+			while (event != Event.END_ARRAY) {
+				addValue(builder, event);
+				event = parser.next();
+			}
+
+			return builder;
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,110 @@
+package com.lotaris.api.test.client;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Transport answering every request with the same canned response, without any I/O. It measures
+ * the overhead of the client itself (building requests, reading responses, recording timings and
+ * notifying listeners) and serves as a baseline when benchmarking other transports.
+ *
+ * <pre>
+ * ApiTestClient client = pool.createClient(new ApiTestStubTransport(200, "application/json", "{}"));
+ * </pre>
+ *
+ * <p>Streamed request bodies are consumed; other request bodies are ignored. Cookies are neither
+ * sent nor stored.</p>
+ *
+ * @see ApiTestConnectionPool#createClient(com.lotaris.api.test.client.IApiTestTransport)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestStubTransport implements IApiTestTransport {
+
+	/**
+	 * The status line of the response.
+	 */
+	private final BasicStatusLine statusLine;
+	/**
+	 * The response body (or null).
+	 */
+	private final ByteArrayEntity entity;
+
+	/**
+	 * Constructs a transport answering with an empty 204 No Content response.
+	 */
+	public ApiTestStubTransport() {
+		this(HttpStatus.SC_NO_CONTENT, null, null);
+	}
+
+	/**
+	 * Constructs a transport answering with the specified response. The body is encoded in UTF-8.
+	 *
+	 * @param status the HTTP status code
+	 * @param mediaType the media type of the body (e.g. <tt>application/json</tt>)
+	 * @param body the response body, or null for no body
+	 */
+	public ApiTestStubTransport(int status, String mediaType, String body) {
+		this(status, mediaType, body != null ? body.getBytes(StandardCharsets.UTF_8) : null, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Constructs a transport answering with the specified response.
+	 *
+	 * @param status the HTTP status code
+	 * @param mediaType the media type of the body (e.g. <tt>application/json</tt>)
+	 * @param body the response body, or null for no body
+	 * @param charset the charset of the body (or null)
+	 * @throws IllegalArgumentException if the status code is invalid
+	 */
+	public ApiTestStubTransport(int status, String mediaType, byte[] body, Charset charset) {
+		if (status < 100 || status > 599) {
+			throw new IllegalArgumentException("Invalid HTTP status code " + status);
+		}
+
+		this.statusLine = new BasicStatusLine(HttpVersion.HTTP_1_1, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, null));
+		this.entity = body != null ? new ByteArrayEntity(body, mediaType != null ? ContentType.create(mediaType, charset) : null) : null;
+	}
+
+	@Override
+	public String getName() {
+		return "stub";
+	}
+
+	@Override
+	public CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException {
+
+		final ApiTestTimingRecorder recorder = ApiTestTimingRecorder.get(context);
+		if (recorder != null) {
+			recorder.sending(null);
+		}
+
+		if (request instanceof HttpEntityEnclosingRequest) {
+			EntityUtils.consume(((HttpEntityEnclosingRequest) request).getEntity());
+		}
+
+		final ApiTestBufferedHttpResponse response = new ApiTestBufferedHttpResponse(statusLine);
+		if (entity != null) {
+			response.setEntity(entity);
+			response.setHeader(entity.getContentType());
+			response.setHeader("Content-Length", String.valueOf(entity.getContentLength()));
+		}
+
+		if (recorder != null) {
+			recorder.headersReceived(response);
+		}
+
+		return response;
+	}
+}
@@ -0,0 +1,164 @@
+package com.lotaris.api.test.client;
+
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Records the timings of a single request as it is executed, and notifies request listeners when
+ * the response headers are received. The recorder is stored in the execution context of the
+ * request so that it can be found by the connection manager and request executor of the
+ * connection pool.
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+class ApiTestTimingRecorder {
+
+	/**
+	 * Name of the execution context attribute holding the recorder.
+	 */
+	static final String CONTEXT_ATTRIBUTE = ApiTestTimingRecorder.class.getName();
+
+	/**
+	 * The request being executed.
+	 */
+	private final ApiTestRequest request;
+	/**
+	 * The listeners to notify when the response headers are received.
+	 */
+	private final IApiTestRequestListener[] listeners;
+	/**
+	 * When the execution of the request started.
+	 */
+	private final long start;
+	/**
+	 * Time spent establishing connections.
+	 */
+	private long connectTime;
+	/**
+	 * When the request started being sent (or -1).
+	 */
+	private long sendTime = -1;
+	/**
+	 * When the response headers were received (or -1).
+	 */
+	private long headersTime = -1;
+	/**
+	 * The metrics of the connection used to send the request (or null).
+	 */
+	private HttpConnectionMetrics metrics;
+	/**
+	 * Whether the request was sent on a connection with metrics (connections are then measured).
+	 */
+	private boolean sentOnConnection;
+	/**
+	 * Bytes sent on the connection before the request.
+	 */
+	private long sentBefore;
+	/**
+	 * Bytes received on the connection before the response.
+	 */
+	private long receivedBefore;
+	/**
+	 * Bytes of the request sent on the connection (or -1).
+	 */
+	private long requestSize = ApiTestTimings.UNKNOWN;
+	/**
+	 * Bytes of the response received on the connection (or -1).
+	 */
+	private long responseSize = ApiTestTimings.UNKNOWN;
+
+	/**
+	 * Constructs a recorder for a request whose execution starts now.
+	 *
+	 * @param request the request being executed
+	 * @param listeners the listeners to notify when the response headers are received
+	 */
+	ApiTestTimingRecorder(ApiTestRequest request, IApiTestRequestListener[] listeners) {
+		this.request = request;
+		this.listeners = listeners;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Returns the recorder stored in an execution context.
+	 *
+	 * @param context the execution context
+	 * @return a recorder, or null if there is none
+	 */
+	static ApiTestTimingRecorder get(HttpContext context) {
+		final Object recorder = context != null ? context.getAttribute(CONTEXT_ATTRIBUTE) : null;
+		return recorder instanceof ApiTestTimingRecorder ? (ApiTestTimingRecorder) recorder : null;
+	}
+
+	/**
+	 * Records that a connection was established.
+	 *
+	 * @param duration the time it took in nanoseconds
+	 */
+	void connected(long duration) {
+		connectTime += duration;
+	}
+
+	/**
+	 * Records that the request starts being sent on a connection.
+	 *
+	 * @param metrics the metrics of the connection (may be null)
+	 */
+	void sending(HttpConnectionMetrics metrics) {
+		sendTime = System.nanoTime();
+		this.metrics = metrics;
+		this.sentOnConnection = metrics != null;
+		if (metrics != null) {
+			sentBefore = metrics.getSentBytesCount();
+			receivedBefore = metrics.getReceivedBytesCount();
+		}
+	}
+
+	/**
+	 * Records that the response headers were received and notifies listeners.
+	 *
+	 * @param response the response whose headers were received
+	 */
+	void headersReceived(HttpResponse response) {
+		headersTime = System.nanoTime();
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].onResponseHeaders(request, response.getStatusLine().getStatusCode());
+		}
+	}
+
+	/**
+	 * Records the sizes of the request and response once the response has been fully read and
+	 * before the connection is released. Sizes are accumulated if the request is sent several
+	 * times (e.g. when following redirects).
+	 */
+	void released() {
+		if (metrics != null) {
+			requestSize = Math.max(requestSize, 0) + metrics.getSentBytesCount() - sentBefore;
+			responseSize = Math.max(responseSize, 0) + metrics.getReceivedBytesCount() - receivedBefore;
+			metrics = null;
+		}
+	}
+
+	/**
+	 * Completes the recording once the response has been fully read.
+	 *
+	 * @param measuredConnect whether connections are measured (false if they are established
+	 * asynchronously; the connect time is then unknown). Connections are never measured if the
+	 * request was not sent on a connection with metrics.
+	 * @return the timings of the request
+	 */
+	ApiTestTimings complete(boolean measuredConnect) {
+
+		final long end = System.nanoTime();
+		final long firstByteStart = sendTime >= 0 ? sendTime : start;
+
+		return new ApiTestTimings(
+				measuredConnect && sentOnConnection ? connectTime : ApiTestTimings.UNKNOWN,
+				headersTime >= 0 ? headersTime - firstByteStart : ApiTestTimings.UNKNOWN,
+				headersTime >= 0 ? end - headersTime : ApiTestTimings.UNKNOWN,
+				end - start,
+				requestSize,
+				responseSize);
+	}
+}
@@ -0,0 +1,164 @@
+package com.lotaris.api.test.client;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing breakdown and wire sizes of an API request.
+ *
+ * <ul>
+ * <li><em>connect time</em>: time spent establishing a new connection (including the TLS
+ * handshake), or zero if a pooled connection was reused;</li>
+ * <li><em>time to first byte</em>: time between the moment the request starts being sent and the
+ * moment the response headers are received (network round trip and server processing);</li>
+ * <li><em>download time</em>: time spent reading the response body once the headers have been
+ * received;</li>
+ * <li><em>total time</em>: time spent executing the request, including waiting for a pooled
+ * connection.</li>
+ * </ul>
+ *
+ * <p>Sizes are the number of bytes of the HTTP messages (request line or status line, headers and
+ * body) as transferred on the connection, i.e. before decompression. Values that could not be
+ * measured are -1: the connect time and sizes of asynchronous requests are unknown.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestTimings {
+
+	/**
+	 * Value of measures that are not available.
+	 */
+	public static final long UNKNOWN = -1;
+
+	/**
+	 * Connect time in nanoseconds.
+	 */
+	private final long connectTime;
+	/**
+	 * Time to first byte in nanoseconds.
+	 */
+	private final long timeToFirstByte;
+	/**
+	 * Download time in nanoseconds.
+	 */
+	private final long downloadTime;
+	/**
+	 * Total time in nanoseconds.
+	 */
+	private final long totalTime;
+	/**
+	 * Size of the request in bytes.
+	 */
+	private final long requestSize;
+	/**
+	 * Size of the response in bytes.
+	 */
+	private final long responseSize;
+
+	/**
+	 * Constructs new timings. Durations are in nanoseconds; unknown values are {@link #UNKNOWN}.
+	 *
+	 * @param connectTime the connect time
+	 * @param timeToFirstByte the time to first byte
+	 * @param downloadTime the download time
+	 * @param totalTime the total time
+	 * @param requestSize the size of the request in bytes
+	 * @param responseSize the size of the response in bytes
+	 */
+	public ApiTestTimings(long connectTime, long timeToFirstByte, long downloadTime, long totalTime, long requestSize, long responseSize) {
+		this.connectTime = connectTime;
+		this.timeToFirstByte = timeToFirstByte;
+		this.downloadTime = downloadTime;
+		this.totalTime = totalTime;
+		this.requestSize = requestSize;
+		this.responseSize = responseSize;
+	}
+
+	/**
+	 * Returns the time spent establishing a new connection (zero if a pooled connection was
+	 * reused).
+	 *
+	 * @param unit the unit of the returned duration
+	 * @return the duration in the specified unit, or {@link #UNKNOWN}
+	 */
+	public long getConnectTime(TimeUnit unit) {
+		return convert(connectTime, unit);
+	}
+
+	/**
+	 * Returns the time between the moment the request starts being sent and the moment the
+	 * response headers are received.
+	 *
+	 * @param unit the unit of the returned duration
+	 * @return the duration in the specified unit, or {@link #UNKNOWN}
+	 */
+	public long getTimeToFirstByte(TimeUnit unit) {
+		return convert(timeToFirstByte, unit);
+	}
+
+	/**
+	 * Returns the time spent reading the response body.
+	 *
+	 * @param unit the unit of the returned duration
+	 * @return the duration in the specified unit, or {@link #UNKNOWN}
+	 */
+	public long getDownloadTime(TimeUnit unit) {
+		return convert(downloadTime, unit);
+	}
+
+	/**
+	 * Returns the total time spent executing the request.
+	 *
+	 * @param unit the unit of the returned duration
+	 * @return the duration in the specified unit
+	 */
+	public long getTotalTime(TimeUnit unit) {
+		return convert(totalTime, unit);
+	}
+
+	/**
+	 * @return the number of bytes of the request sent on the connection, or {@link #UNKNOWN}
+	 */
+	public long getRequestSize() {
+		return requestSize;
+	}
+
+	/**
+	 * @return the number of bytes of the response received on the connection, or {@link #UNKNOWN}
+	 */
+	public long getResponseSize() {
+		return responseSize;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ENGLISH, "connect=%s ttfb=%s download=%s total=%s sent=%s received=%s",
+				formatDuration(connectTime), formatDuration(timeToFirstByte), formatDuration(downloadTime), formatDuration(totalTime),
+				formatSize(requestSize), formatSize(responseSize));
+	}
+
+	/**
+	 * @param nanos a duration in nanoseconds or {@link #UNKNOWN}
+	 * @param unit the target unit
+	 * @return the duration in the target unit, or {@link #UNKNOWN}
+	 */
+	private static long convert(long nanos, TimeUnit unit) {
+		return nanos == UNKNOWN ? UNKNOWN : unit.convert(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param nanos a duration in nanoseconds or {@link #UNKNOWN}
+	 * @return the duration in milliseconds, or "?"
+	 */
+	private static String formatDuration(long nanos) {
+		return nanos == UNKNOWN ? "?" : String.format(Locale.ENGLISH, "%.3fms", nanos / 1000000.0);
+	}
+
+	/**
+	 * @param bytes a size in bytes or {@link #UNKNOWN}
+	 * @return the size in bytes, or "?"
+	 */
+	private static String formatSize(long bytes) {
+		return bytes == UNKNOWN ? "?" : bytes + "B";
+	}
+}
@@ -0,0 +1,68 @@
+package com.lotaris.api.test.client;
+
+import java.io.IOException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+
+/**
+ * Engines of the connection pools executing the synchronous requests of their clients.
+ *
+ * @see ApiTestConnectionPoolConfiguration#withEngine(com.lotaris.api.test.client.ApiTestTransportEngine)
+ * @see ApiTestConnectionPool#createTransport(com.lotaris.api.test.client.ApiTestTransportEngine)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public enum ApiTestTransportEngine {
+
+	/**
+	 * The blocking Apache HTTP client, with one connection per concurrent request. Connect times
+	 * and request and response sizes are measured (default).
+	 */
+	CLASSIC {
+		@Override
+		IApiTestTransport createTransport(final ApiTestConnectionPool pool) {
+			return new IApiTestTransport() {
+				@Override
+				public String getName() {
+					return "apache-classic";
+				}
+
+				@Override
+				public CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException {
+					return pool.getHttpClient().execute(request, context);
+				}
+			};
+		}
+	},
+	/**
+	 * The non-blocking Apache HTTP client (the one executing asynchronous requests); the calling
+	 * thread waits for the response. Response bodies are received in memory. Connect times and
+	 * request and response sizes are not measured.
+	 */
+	ASYNC {
+		@Override
+		IApiTestTransport createTransport(ApiTestConnectionPool pool) {
+			return new ApiTestAsyncTransport(pool);
+		}
+	},
+	/**
+	 * The HTTP client of the JDK (Java 11 or later), which negotiates HTTP/2 and multiplexes
+	 * concurrent requests over a single connection per host. It does not use the connections of the
+	 * pool. Connect times and request and response sizes are not measured.
+	 */
+	JDK {
+		@Override
+		IApiTestTransport createTransport(ApiTestConnectionPool pool) {
+			return new ApiTestJdkHttpTransport(pool.getClientConfiguration());
+		}
+	};
+
+	/**
+	 * Creates the transport of a connection pool.
+	 *
+	 * @param pool the connection pool
+	 * @return a transport using the clients of the pool
+	 * @throws ApiTestException if the engine is not available in this JVM
+	 */
+	abstract IApiTestTransport createTransport(ApiTestConnectionPool pool);
+}
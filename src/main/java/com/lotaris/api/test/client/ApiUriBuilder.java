@@ -3,32 +3,59 @@ package com.lotaris.api.test.client;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import org.apache.http.client.utils.URIBuilder;
 
 /**
  * Utility to construct URIs with a builder pattern. Ensures that the final URI will not contain
  * duplicate slash (<tt>/</tt>) characters.
  *
+ * <p>Path elements are appended as they are, while templated path elements (see
+ * {@link #template(java.lang.String, java.lang.Object[])}) are percent-encoded from compiled
+ * {@link ApiUriTemplate}s. Query parameters are form-encoded in UTF-8, in the order in which they
+ * were added. Path elements and query parameters are inserted before the query and fragment of the
+ * base URI, if any.</p>
+ *
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  * @author Simon Oulevay <simon.oulevay@lotaris.com>
  */
 public class ApiUriBuilder {
 
 	/**
-	 * Base URI.
+	 * Maximum capacity of the per-thread buffer kept between builds.
+	 */
+	private static final int MAX_BUFFER_CAPACITY = 8192;
+	/**
+	 * Per-thread buffer in which URIs are assembled.
+	 */
+	private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+
+	/**
+	 * Base URI, without its query and fragment.
 	 */
 	private String baseUri;
+	/**
+	 * Query of the base URI (null if it has none or if it is empty).
+	 */
+	private String baseQuery;
+	/**
+	 * Fragment of the base URI (null if it has none).
+	 */
+	private String baseFragment;
 	/**
 	 * Query parameters.
 	 */
 	private Map<String, List<Object>> queryParams;
 	/**
-	 * Path elements.
+	 * Path elements, each preceded by a slash. Templates are expanded directly into it.
 	 */
-	private List<String> pathElements;
+	private StringBuilder path;
 
 	/**
 	 * Constructs an URI builder starting from the specified base URI.
@@ -37,11 +64,18 @@ public class ApiUriBuilder {
 	 */
 	public ApiUriBuilder(String baseUri) {
 
+		// split the query and fragment, which must remain after the path elements
+		final int fragmentStart = baseUri.indexOf('#');
+		final String withoutFragment = fragmentStart >= 0 ? baseUri.substring(0, fragmentStart) : baseUri;
+		final int queryStart = withoutFragment.indexOf('?');
+		this.baseFragment = fragmentStart >= 0 ? baseUri.substring(fragmentStart + 1) : null;
+		this.baseQuery = queryStart >= 0 && queryStart < withoutFragment.length() - 1 ? withoutFragment.substring(queryStart + 1) : null;
+
 		// strip trailing slash
-		this.baseUri = baseUri.replaceFirst("\\/$", "");
+		this.baseUri = stripSlashes(queryStart >= 0 ? withoutFragment.substring(0, queryStart) : withoutFragment, false);
 
-		this.queryParams = new HashMap<>();
-		this.pathElements = new ArrayList<>();
+		this.queryParams = new LinkedHashMap<>();
+		this.path = new StringBuilder();
 	}
 
 	/**
@@ -54,12 +88,54 @@ public class ApiUriBuilder {
 
 		for (String element : elements) {
 			// strip leading and trailing slash
-			pathElements.add(element.replaceFirst("^\\/", "").replaceFirst("\\/$", ""));
+			path.append('/').append(stripSlashes(element, true));
 		}
 
 		return this;
 	}
 
+	/**
+	 * Appends a path element expanded from a URI template with positional values, e.g.
+	 * <tt>template("/orgs/{org}/users/{id}", "lotaris", 42)</tt>. The template is compiled once
+	 * and cached (see {@link ApiUriTemplate}).
+	 *
+	 * @param template the URI template
+	 * @param values the values of the template variables, in order of first appearance
+	 * @return this builder
+	 * @throws IllegalArgumentException if the template is invalid or the values do not match its
+	 * variables
+	 */
+	public ApiUriBuilder template(String template, Object... values) {
+		return template(ApiUriTemplate.compile(template), values);
+	}
+
+	/**
+	 * Appends a path element expanded from a compiled URI template with positional values.
+	 *
+	 * @param template the compiled URI template
+	 * @param values the values of the template variables, in order of first appearance
+	 * @return this builder
+	 * @throws IllegalArgumentException if the values do not match the template variables
+	 */
+	public ApiUriBuilder template(ApiUriTemplate template, Object... values) {
+		appendTemplate(template, values, null);
+		return this;
+	}
+
+	/**
+	 * Appends a path element expanded from a URI template with named values.
+	 *
+	 * @param template the URI template
+	 * @param values the values of the template variables by name
+	 * @return this builder
+	 * @throws IllegalArgumentException if the template is invalid or the value of a variable is
+	 * missing
+	 */
+	public ApiUriBuilder template(String template, Map<String, ?> values) {
+		appendTemplate(ApiUriTemplate.compile(template), null, values);
+		return this;
+	}
+
 	/**
 	 * Adds a query parameter to the URI.
 	 *
@@ -112,31 +188,97 @@ public class ApiUriBuilder {
 	private List<Object> getQueryParamList(final String name) {
 
 		// create the list if necessary
-		if (!queryParams.containsKey(name)) {
-			queryParams.put(name, new ArrayList<>());
+		List<Object> values = queryParams.get(name);
+		if (values == null) {
+			values = new ArrayList<>();
+			queryParams.put(name, values);
 		}
 
-		return queryParams.get(name);
+		return values;
 	}
 
-	private URI buildUri() throws URISyntaxException {
+	/**
+	 * Expands a template at the end of the path, without creating an intermediate string. The
+	 * path is left unchanged if the values do not match the template.
+	 *
+	 * @param template the compiled URI template
+	 * @param values the positional values of the template variables (or null)
+	 * @param namedValues the values of the template variables by name (used if there are no
+	 * positional values)
+	 * @throws IllegalArgumentException if the values do not match the template variables
+	 */
+	private void appendTemplate(ApiUriTemplate template, Object[] values, Map<String, ?> namedValues) {
 
-		// build the URI from the base URI and path elements
-		final StringBuilder builder = new StringBuilder(baseUri);
-		for (String element : pathElements) {
-			builder.append("/").append(element);
+		final int start = path.append('/').length();
+		try {
+			if (values != null) {
+				template.expandTo(path, values);
+			} else {
+				template.expandTo(path, namedValues);
+			}
+		} catch (IllegalArgumentException iae) {
+			path.setLength(start - 1);
+			throw iae;
 		}
 
-		// build the actual URI object
-		final URIBuilder uriBuilder = new URIBuilder(builder.toString());
+		// strip leading and trailing slash
+		if (path.length() > start && path.charAt(start) == '/') {
+			path.deleteCharAt(start);
+		}
+		if (path.length() > start && path.charAt(path.length() - 1) == '/') {
+			path.setLength(path.length() - 1);
+		}
+	}
+
+	private URI buildUri() throws URISyntaxException {
 
-		// add all query parameters
+		final StringBuilder builder = BUFFER.get();
+		builder.setLength(0);
+
+		// build the URI from the base URI and path elements
+		builder.append(baseUri).append(path);
+
+		// add the query of the base URI and all query parameters
+		char separator = '?';
+		if (baseQuery != null) {
+			builder.append('?').append(baseQuery);
+			separator = '&';
+		}
 		for (Map.Entry<String, List<Object>> queryParam : queryParams.entrySet()) {
 			for (Object value : queryParam.getValue()) {
-				uriBuilder.addParameter(queryParam.getKey(), value.toString());
+				builder.append(separator);
+				ApiUriTemplate.encodeQueryComponent(queryParam.getKey(), builder);
+				builder.append('=');
+				ApiUriTemplate.encodeQueryComponent(value.toString(), builder);
+				separator = '&';
 			}
 		}
 
-		return uriBuilder.build();
+		// the fragment comes last
+		if (baseFragment != null) {
+			builder.append('#').append(baseFragment);
+		}
+
+		final URI uri = new URI(builder.toString());
+
+		// do not keep unusually large buffers
+		if (builder.capacity() > MAX_BUFFER_CAPACITY) {
+			BUFFER.remove();
+		}
+
+		return uri;
+	}
+
+	/**
+	 * Removes one trailing slash and optionally one leading slash from a string.
+	 *
+	 * @param value the string
+	 * @param leading whether to remove a leading slash
+	 * @return the string without slashes
+	 */
+	private static String stripSlashes(String value, boolean leading) {
+		final int start = leading && value.startsWith("/") ? 1 : 0;
+		final int end = value.length() > start && value.endsWith("/") ? value.length() - 1 : value.length();
+		return start == 0 && end == value.length() ? value : value.substring(start, end);
 	}
 }
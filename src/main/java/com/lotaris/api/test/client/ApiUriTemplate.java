@@ -0,0 +1,439 @@
+package com.lotaris.api.test.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiled URI template, e.g. <tt>/orgs/{org}/users/{id}</tt>. Templates are parsed and validated
+ * once (see {@link #compile(java.lang.String)}) and can then be expanded any number of times,
+ * concurrently.
+ *
+ * <p>This is a subset of RFC 6570 supporting two kinds of expressions:</p>
+ * <ul>
+ * <li><tt>{var}</tt> (simple expansion): all characters except unreserved ones are
+ * percent-encoded, e.g. <tt>a/b c</tt> becomes <tt>a%2Fb%20c</tt>;</li>
+ * <li><tt>{+var}</tt> (reserved expansion): reserved characters and percent-encoded triplets are
+ * kept, e.g. <tt>a/b c</tt> becomes <tt>a/b%20c</tt>.</li>
+ * </ul>
+ *
+ * <p>Unlike RFC 6570, all variables must have a value: expanding a template with a missing or
+ * null value is an error, since it is most likely a mistake in a test. Values are converted to
+ * strings with {@link Object#toString()} and encoded in UTF-8.</p>
+ *
+ * @see ApiUriBuilder#template(java.lang.String, java.lang.Object[])
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public final class ApiUriTemplate {
+
+	/**
+	 * Maximum number of templates kept in the cache of compiled templates.
+	 */
+	private static final int MAX_CACHED_TEMPLATES = 1024;
+	/**
+	 * Cache of compiled templates by template string.
+	 */
+	private static final ConcurrentMap<String, ApiUriTemplate> CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Hexadecimal digits used for percent-encoding.
+	 */
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	/**
+	 * ASCII characters that are never encoded (unreserved characters: <tt>ALPHA / DIGIT / "-" /
+	 * "." / "_" / "~"</tt>).
+	 */
+	private static final boolean[] UNRESERVED = new boolean[128];
+	/**
+	 * ASCII characters that are not encoded by reserved expansion or in literals (unreserved and
+	 * reserved characters).
+	 */
+	private static final boolean[] UNRESERVED_OR_RESERVED = new boolean[128];
+	/**
+	 * ASCII characters that are not encoded in query parameters (the same as the form encoding of
+	 * the Apache HTTP client: <tt>ALPHA / DIGIT / "-" / "." / "_" / "*"</tt>).
+	 */
+	private static final boolean[] FORM_SAFE = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c : "-._~".toCharArray()) {
+			UNRESERVED[c] = true;
+		}
+
+		System.arraycopy(UNRESERVED, 0, UNRESERVED_OR_RESERVED, 0, UNRESERVED.length);
+		for (char c : ":/?#[]@!$&'()*+,;=".toCharArray()) {
+			UNRESERVED_OR_RESERVED[c] = true;
+		}
+
+		System.arraycopy(UNRESERVED, 0, FORM_SAFE, 0, UNRESERVED.length);
+		FORM_SAFE['~'] = false;
+		FORM_SAFE['*'] = true;
+	}
+
+	/**
+	 * The template string.
+	 */
+	private final String template;
+	/**
+	 * The parts of the template, in order: literals (already encoded) and expressions.
+	 */
+	private final Part[] parts;
+	/**
+	 * The names of the variables, in order of first appearance.
+	 */
+	private final List<String> variableNames;
+	/**
+	 * Estimated length of an expansion (used to size buffers).
+	 */
+	private final int estimatedLength;
+
+	/**
+	 * Parses a template.
+	 *
+	 * @param template the template string
+	 * @throws IllegalArgumentException if the template is invalid
+	 */
+	private ApiUriTemplate(String template) {
+		this.template = template;
+
+		final List<Part> parsedParts = new ArrayList<>();
+		final List<String> names = new ArrayList<>();
+
+		int position = 0;
+		while (position < template.length()) {
+			final int open = template.indexOf('{', position);
+			final int literalEnd = open >= 0 ? open : template.length();
+
+			if (literalEnd > position) {
+				final String literal = template.substring(position, literalEnd);
+				if (literal.indexOf('}') >= 0) {
+					throw new IllegalArgumentException("Unexpected '}' in URI template " + template);
+				}
+
+				final StringBuilder encoded = new StringBuilder(literal.length());
+				encode(literal, encoded, UNRESERVED_OR_RESERVED, true);
+				parsedParts.add(new Part(encoded.toString(), null, -1, false));
+			}
+
+			if (open < 0) {
+				break;
+			}
+
+			final int close = template.indexOf('}', open);
+			if (close < 0) {
+				throw new IllegalArgumentException("Unclosed expression at index " + open + " in URI template " + template);
+			}
+
+			final boolean reserved = close > open + 1 && template.charAt(open + 1) == '+';
+			final String name = template.substring(reserved ? open + 2 : open + 1, close);
+			validateVariableName(name, template);
+
+			if (!names.contains(name)) {
+				names.add(name);
+			}
+			parsedParts.add(new Part(null, name, names.indexOf(name), reserved));
+
+			position = close + 1;
+		}
+
+		this.parts = parsedParts.toArray(new Part[parsedParts.size()]);
+		this.variableNames = Collections.unmodifiableList(names);
+		this.estimatedLength = template.length() + 16 * names.size();
+	}
+
+	/**
+	 * Returns the compiled version of a template. Templates are cached: compiling the same
+	 * template again returns the same instance.
+	 *
+	 * @param template the template string
+	 * @return a compiled template
+	 * @throws IllegalArgumentException if the template is null or invalid
+	 */
+	public static ApiUriTemplate compile(String template) {
+		if (template == null) {
+			throw new IllegalArgumentException("URI template cannot be null");
+		}
+
+		ApiUriTemplate compiled = CACHE.get(template);
+		if (compiled == null) {
+			compiled = new ApiUriTemplate(template);
+
+			// templates are normally constants; stop caching if they are not
+			if (CACHE.size() < MAX_CACHED_TEMPLATES) {
+				final ApiUriTemplate existing = CACHE.putIfAbsent(template, compiled);
+				if (existing != null) {
+					compiled = existing;
+				}
+			}
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * @return the template string
+	 */
+	public String getTemplate() {
+		return template;
+	}
+
+	/**
+	 * @return the names of the variables of this template, in order of first appearance
+	 */
+	public List<String> getVariableNames() {
+		return variableNames;
+	}
+
+	/**
+	 * Expands this template with positional values: the first value is the value of the first
+	 * variable (see {@link #getVariableNames()}), and so on.
+	 *
+	 * @param values the values of the variables
+	 * @return the expanded URI reference
+	 * @throws IllegalArgumentException if the number of values does not match the number of
+	 * variables or if a value is null
+	 */
+	public String expand(Object... values) {
+		final StringBuilder builder = new StringBuilder(estimatedLength);
+		expandTo(builder, values);
+		return builder.toString();
+	}
+
+	/**
+	 * Expands this template with named values.
+	 *
+	 * @param values the values of the variables by name
+	 * @return the expanded URI reference
+	 * @throws IllegalArgumentException if the value of a variable is missing or null
+	 */
+	public String expand(Map<String, ?> values) {
+		final StringBuilder builder = new StringBuilder(estimatedLength);
+		expandTo(builder, values);
+		return builder.toString();
+	}
+
+	/**
+	 * Expands this template with positional values and appends the result to a buffer.
+	 *
+	 * @param builder the buffer to append to
+	 * @param values the values of the variables, in the order of {@link #getVariableNames()}
+	 * @throws IllegalArgumentException if the number of values does not match the number of
+	 * variables or if a value is null
+	 */
+	public void expandTo(StringBuilder builder, Object... values) {
+		if (values.length != variableNames.size()) {
+			throw new IllegalArgumentException("URI template " + template + " has " + variableNames.size() + " variable(s), got " + values.length + " value(s)");
+		}
+
+		for (int i = 0; i < parts.length; i++) {
+			final Part part = parts[i];
+			if (part.literal != null) {
+				builder.append(part.literal);
+			} else {
+				expandVariable(builder, part, values[part.index]);
+			}
+		}
+	}
+
+	/**
+	 * Expands this template with named values and appends the result to a buffer.
+	 *
+	 * @param builder the buffer to append to
+	 * @param values the values of the variables by name
+	 * @throws IllegalArgumentException if the value of a variable is missing or null
+	 */
+	public void expandTo(StringBuilder builder, Map<String, ?> values) {
+		for (int i = 0; i < parts.length; i++) {
+			final Part part = parts[i];
+			if (part.literal != null) {
+				builder.append(part.literal);
+			} else {
+				expandVariable(builder, part, values.get(part.name));
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+
+	/**
+	 * Percent-encodes a string as a query parameter name or value in
+	 * <tt>application/x-www-form-urlencoded</tt> format: letters, digits and <tt>-._*</tt> are
+	 * kept, spaces are encoded as <tt>+</tt> and other characters are percent-encoded in UTF-8.
+	 *
+	 * @param value the string to encode
+	 * @param builder the buffer to append the encoded string to
+	 */
+	static void encodeQueryComponent(String value, StringBuilder builder) {
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == ' ') {
+				builder.append('+');
+			} else if (c < 128 && FORM_SAFE[c]) {
+				builder.append(c);
+			} else {
+				i = encodeChar(value, i, builder);
+			}
+		}
+	}
+
+	/**
+	 * Appends the value of a variable.
+	 *
+	 * @param builder the buffer to append to
+	 * @param part the expression
+	 * @param value the value of the variable
+	 * @throws IllegalArgumentException if the value is null
+	 */
+	private void expandVariable(StringBuilder builder, Part part, Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Missing value for variable " + part.name + " of URI template " + template);
+		}
+
+		encode(value.toString(), builder, part.reserved ? UNRESERVED_OR_RESERVED : UNRESERVED, part.reserved);
+	}
+
+	/**
+	 * Percent-encodes a string.
+	 *
+	 * @param value the string to encode
+	 * @param builder the buffer to append the encoded string to
+	 * @param allowed the ASCII characters that are not encoded
+	 * @param keepTriplets whether to keep valid percent-encoded triplets as they are
+	 */
+	private static void encode(String value, StringBuilder builder, boolean[] allowed, boolean keepTriplets) {
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c < 128 && allowed[c]) {
+				builder.append(c);
+			} else if (c == '%' && keepTriplets && i + 2 < value.length() && isHexDigit(value.charAt(i + 1)) && isHexDigit(value.charAt(i + 2))) {
+				builder.append(value, i, i + 3);
+				i += 2;
+			} else {
+				i = encodeChar(value, i, builder);
+			}
+		}
+	}
+
+	/**
+	 * Percent-encodes the UTF-8 bytes of the character at the specified index (or of the
+	 * surrogate pair starting at that index).
+	 *
+	 * @param value the string
+	 * @param index the index of the character
+	 * @param builder the buffer to append the encoded character to
+	 * @return the index of the last character that was encoded
+	 */
+	private static int encodeChar(String value, int index, StringBuilder builder) {
+
+		final char c = value.charAt(index);
+		int codePoint = c;
+		int last = index;
+		if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+			codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+			last = index + 1;
+		} else if (Character.isSurrogate(c)) {
+			// unpaired surrogates cannot be encoded in UTF-8
+			codePoint = '?';
+		}
+
+		if (codePoint < 0x80) {
+			appendEncodedByte(builder, codePoint);
+		} else if (codePoint < 0x800) {
+			appendEncodedByte(builder, 0xC0 | (codePoint >> 6));
+			appendEncodedByte(builder, 0x80 | (codePoint & 0x3F));
+		} else if (codePoint < 0x10000) {
+			appendEncodedByte(builder, 0xE0 | (codePoint >> 12));
+			appendEncodedByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+			appendEncodedByte(builder, 0x80 | (codePoint & 0x3F));
+		} else {
+			appendEncodedByte(builder, 0xF0 | (codePoint >> 18));
+			appendEncodedByte(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+			appendEncodedByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+			appendEncodedByte(builder, 0x80 | (codePoint & 0x3F));
+		}
+
+		return last;
+	}
+
+	/**
+	 * @param builder the buffer to append to
+	 * @param b the byte to append as a percent-encoded triplet
+	 */
+	private static void appendEncodedByte(StringBuilder builder, int b) {
+		builder.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+	}
+
+	/**
+	 * @param c a character
+	 * @return true if the character is an hexadecimal digit
+	 */
+	private static boolean isHexDigit(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+
+	/**
+	 * Ensures that a variable name is valid (letters, digits, <tt>_</tt> and <tt>.</tt>).
+	 *
+	 * @param name the variable name
+	 * @param template the template (for error messages)
+	 * @throws IllegalArgumentException if the name is invalid or uses an unsupported operator
+	 */
+	private static void validateVariableName(String name, String template) {
+		if (name.isEmpty()) {
+			throw new IllegalArgumentException("Empty expression in URI template " + template);
+		}
+
+		for (int i = 0; i < name.length(); i++) {
+			final char c = name.charAt(i);
+			if (!(c < 128 && (UNRESERVED[c] && c != '-' && c != '~'))) {
+				throw new IllegalArgumentException("Unsupported expression {" + name + "} in URI template " + template
+						+ " (only {var} and {+var} are supported)");
+			}
+		}
+	}
+
+	/**
+	 * Part of a template: either a literal or an expression.
+	 */
+	private static class Part {
+
+		/**
+		 * The encoded literal (null for an expression).
+		 */
+		private final String literal;
+		/**
+		 * The variable name (null for a literal).
+		 */
+		private final String name;
+		/**
+		 * The index of the variable in the variable names (-1 for a literal).
+		 */
+		private final int index;
+		/**
+		 * Whether the expression uses reserved expansion.
+		 */
+		private final boolean reserved;
+
+		public Part(String literal, String name, int index, boolean reserved) {
+			this.literal = literal;
+			this.name = name;
+			this.index = index;
+			this.reserved = reserved;
+		}
+	}
+}
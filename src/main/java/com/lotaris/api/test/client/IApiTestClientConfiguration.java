@@ -3,6 +3,10 @@ package com.lotaris.api.test.client;
 /**
  * Define the configuration of an API Test client
  * 
+ * <p>Connection pooling, request listeners, response buffering and concurrency limits are
+ * configured by implementing {@link IApiTestClientExtendedConfiguration} (or extending
+ * {@link ApiTestClientConfigurationAdapter}) instead.</p>
+ *
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  */
 public interface IApiTestClientConfiguration {
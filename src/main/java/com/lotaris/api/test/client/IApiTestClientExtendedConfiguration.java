@@ -0,0 +1,36 @@
+package com.lotaris.api.test.client;
+
+import java.util.List;
+
+/**
+ * Optional extension of an API test client configuration. Clients whose configuration only
+ * implements {@link IApiTestClientConfiguration} use the default value of each setting (i.e. as if
+ * the corresponding method returned null).
+ *
+ * @see ApiTestClientConfigurationAdapter
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiTestClientExtendedConfiguration extends IApiTestClientConfiguration {
+
+	/**
+	 * @return The configuration of the connection pool, or null to use the default configuration
+	 */
+	ApiTestConnectionPoolConfiguration getConnectionPoolConfiguration();
+
+	/**
+	 * @return The listeners notified of the lifecycle of each request, or null if there are none
+	 */
+	List<IApiTestRequestListener> getRequestListeners();
+
+	/**
+	 * @return The policy deciding whether response bodies are buffered in memory or spooled to
+	 * temporary files, or null to always buffer them in memory
+	 */
+	ApiTestResponseBufferingPolicy getResponseBufferingPolicy();
+
+	/**
+	 * @return The limiter adapting the number of concurrent requests to the capacity of the
+	 * server, or null not to limit concurrency
+	 */
+	ApiTestConcurrencyLimiter getConcurrencyLimiter();
+}
@@ -0,0 +1,33 @@
+package com.lotaris.api.test.client;
+
+/**
+ * Algorithm adjusting the number of requests an {@link ApiTestConcurrencyLimiter} lets through at
+ * the same time, from the latency and outcome of the requests that completed.
+ *
+ * <p>Methods are always called by the limiter while it holds its lock: implementations do not need
+ * to be thread-safe, but must be fast. An instance must not be shared between limiters.</p>
+ *
+ * @see ApiTestAimdLimit
+ * @see ApiTestGradientLimit
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiTestConcurrencyLimit {
+
+	/**
+	 * Returns the current maximum number of requests in flight.
+	 *
+	 * @return a limit of at least 1
+	 */
+	int getLimit();
+
+	/**
+	 * Called when a request has completed.
+	 *
+	 * @param latency the duration of the request in nanoseconds (excluding the time spent waiting
+	 * for the limiter)
+	 * @param inFlight the number of requests in flight when the request completed, including it
+	 * @param failed true if the request could not be completed or if the server signaled that it
+	 * was overloaded (status 429 or 5xx)
+	 */
+	void onSample(long latency, int inFlight, boolean failed);
+}
@@ -0,0 +1,47 @@
+package com.lotaris.api.test.client;
+
+/**
+ * Observer of the lifecycle of the requests executed by API test clients. Listeners are
+ * registered with {@link IApiTestClientExtendedConfiguration#getRequestListeners()}.
+ *
+ * <p>Listeners are called synchronously on the threads executing the requests (the I/O threads
+ * for asynchronous requests), possibly concurrently: implementations must be thread-safe and fast
+ * so as not to distort the latencies being measured.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiTestRequestListener {
+
+	/**
+	 * Called before a request is executed.
+	 *
+	 * @param request the request
+	 */
+	void onRequestStart(ApiTestRequest request);
+
+	/**
+	 * Called when the status line and headers of the response have been received, before the
+	 * response body is read.
+	 *
+	 * @param request the request
+	 * @param status the HTTP status code of the response
+	 */
+	void onResponseHeaders(ApiTestRequest request, int status);
+
+	/**
+	 * Called when the response has been fully read. The timings of the request are available from
+	 * the response.
+	 *
+	 * @param request the request
+	 * @param response the API response
+	 */
+	void onResponseComplete(ApiTestRequest request, ApiTestResponse response);
+
+	/**
+	 * Called when the request could not be completed.
+	 *
+	 * @param request the request
+	 * @param error the error
+	 */
+	void onError(ApiTestRequest request, ApiTestException error);
+}
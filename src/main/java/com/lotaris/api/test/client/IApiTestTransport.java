@@ -0,0 +1,50 @@
+package com.lotaris.api.test.client;
+
+import java.io.IOException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+
+/**
+ * Engine executing the requests of an {@link ApiTestClient}. Whatever the engine, requests are
+ * described by an {@link ApiTestRequest} and their responses are read into an
+ * {@link ApiTestResponse}, so that the same tests can be run (and benchmarked) with different
+ * engines.
+ *
+ * <p>The execution context of each request holds the cookies of the client and the recorder of
+ * the request timings. Engines that can report when the request starts being sent and when the
+ * response headers are received do it through the recorder, which also notifies the request
+ * listeners.</p>
+ *
+ * <p>The transport executes the synchronous and streaming requests of a client
+ * ({@link ApiTestClient#execute(ApiTestRequest)} and
+ * {@link ApiTestClient#executeStreaming(ApiTestRequest)}). Asynchronous requests
+ * ({@link ApiTestClient#executeAsync(ApiTestRequest)}) do not go through the transport: they are
+ * always executed by the asynchronous Apache client of the connection pool.</p>
+ *
+ * <p>Requests and responses are exchanged as Apache HttpClient objects, which every engine adapts
+ * to and from its own model; engines that are not based on HttpClient still depend on it.</p>
+ *
+ * <p>Implementations must be thread-safe.</p>
+ *
+ * @see ApiTestTransportEngine
+ * @see ApiTestConnectionPool#createClient(com.lotaris.api.test.client.IApiTestTransport)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiTestTransport {
+
+	/**
+	 * @return a short name describing the engine (e.g. in benchmark reports)
+	 */
+	String getName();
+
+	/**
+	 * Executes a request. The caller consumes the body of the returned response and closes it.
+	 *
+	 * @param request the Apache request object of an {@link ApiTestRequest}
+	 * @param context the execution context of the request
+	 * @return the HTTP response
+	 * @throws IOException if the request could not be executed
+	 */
+	CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException;
+}
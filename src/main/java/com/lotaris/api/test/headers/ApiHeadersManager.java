@@ -3,12 +3,20 @@ package com.lotaris.api.test.headers;
 import com.lotaris.api.test.client.ApiTestRequest;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manager of API request headers that allows setting headers for all requests or only for the next
  * request.
  *
+ * <p>Operations for all requests are compiled into an immutable header plan the first time they
+ * are applied, and recompiled only when they are modified. The plan holds the final headers of
+ * each header name (whether existing headers are replaced and which values are added), so that
+ * each header name is modified once per request however many operations were configured for it.
+ * Operations for the next request are merged with the plan when it is applied.</p>
+ *
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  * @author Simon Oulevay <simon.oulevay@lotaris.com>
  */
@@ -59,6 +67,10 @@ public class ApiHeadersManager {
 	 * <tt>configure</tt>).
 	 */
 	private final List<HeaderOperation> nextRequestHeaders;
+	/**
+	 * The compiled operations for all requests (null until applied or after being modified).
+	 */
+	private HeaderPlan permanentHeadersPlan;
 
 	//<editor-fold defaultstate="collapsed" desc="Constructor">
 	/**
@@ -68,6 +80,20 @@ public class ApiHeadersManager {
 		permanentHeaders = new ArrayList<>();
 		nextRequestHeaders = new ArrayList<>();
 	}
+
+	/**
+	 * Constructs a headers manager with a copy of the configuration of another manager. Further
+	 * modifications of either manager do not affect the other.
+	 *
+	 * @param headersManager the headers manager to copy
+	 */
+	public ApiHeadersManager(ApiHeadersManager headersManager) {
+		permanentHeaders = new ArrayList<>(headersManager.getPermanentHeaders());
+		nextRequestHeaders = new ArrayList<>(headersManager.getNextRequestHeaders());
+
+		// the plan is immutable and can be shared
+		permanentHeadersPlan = headersManager.getPermanentHeadersPlan();
+	}
 	//</editor-fold>
 
 	/**
@@ -83,39 +109,11 @@ public class ApiHeadersManager {
 	 * @throws IllegalArgumentException if the operation or header are null
 	 */
 	public ApiHeadersManager configure(final Operation op, final ApiHeader header, final boolean forAllRequests) {
-		if (op == null) {
-			throw new IllegalArgumentException("Operation cannot be null");
-		} else if (header == null) {
-			throw new IllegalArgumentException("Header cannot be null");
-		}
-
-		// create the header operation instance
-		final HeaderOperation operation = new HeaderOperation(header, op);
-
-		// remove operations that would become superfluous after adding this one, e.g. a previously
-		// added SET operation becomes useless if we add a REMOVE for the same header
-		cleanHeaderOperations(operation, forAllRequests);
 
-		// add the operation to permanent headers or next request headers depending on the supplied boolean
-		(forAllRequests ? permanentHeaders : nextRequestHeaders).add(operation);
-
-		//<editor-fold defaultstate="collapsed" desc="Special REMOVE/ADD Case">
-		/*
-		 * Special case: if a header is removed for the next request, and then added for all
-		 * requests, it would not be normally added because next request operations overwrite
-		 * operations for all requests (see #configure).
-		 *
-		 * Example:
-		 * - REMOVE X-Custom-Header false   // next request operation, will be run last
-		 * - ADD X-Custom-Header true       // all requests operation, will be run first
-		 *
-		 * To fix this, we automatically also add the header to the next request:
-		 * - ADD X-Custom-Header false
-		 */
-		if (Operation.ADD.equals(op) && forAllRequests) {
-			nextRequestHeaders.add(operation);
+		addOperation(permanentHeaders, nextRequestHeaders, createOperation(op, header), forAllRequests);
+		if (forAllRequests) {
+			permanentHeadersPlan = null;
 		}
-		//</editor-fold>
 
 		return this;
 	}
@@ -151,20 +149,22 @@ public class ApiHeadersManager {
 	 * permanent header modifications and modifications specific to the next request. Next request
 	 * modifications are then cleared.
 	 *
+	 * <p>Only the net effect of the modifications is applied: for each header name, existing
+	 * headers are removed if the modifications set or remove the header, and the resulting values
+	 * are added.</p>
+	 *
 	 * @param request the request to configure
 	 * @return this manager
 	 */
 	public ApiHeadersManager applyConfiguration(ApiTestRequest request) {
 
-		// apply all permanent header operations
-		for (final HeaderOperation op : permanentHeaders) {
-			op.apply(request);
+		// compile permanent header operations if they were modified
+		if (permanentHeadersPlan == null) {
+			permanentHeadersPlan = new HeaderPlan(permanentHeaders);
 		}
 
-		// apply all header operations for the next request
-		for (final HeaderOperation op : nextRequestHeaders) {
-			op.apply(request);
-		}
+		// apply permanent header operations merged with those for the next request
+		permanentHeadersPlan.apply(request, nextRequestHeaders.isEmpty() ? null : new HeaderPlan(nextRequestHeaders));
 
 		// clear operations for the next request
 		nextRequestHeaders.clear();
@@ -172,17 +172,126 @@ public class ApiHeadersManager {
 		return this;
 	}
 
+	/**
+	 * Compiles the modifications of this manager (for all requests, then for the next request) into
+	 * a header plan that configures any number of requests with their net effect. Unlike
+	 * {@link #applyConfiguration(com.lotaris.api.test.client.ApiTestRequest)}, modifications for
+	 * the next request are not cleared. The plan is immutable: later modifications of this manager
+	 * do not affect it, and it can be shared by concurrent threads.
+	 *
+	 * @return a header plan
+	 */
+	public HeaderPlan compile() {
+
+		final List<HeaderOperation> next = getNextRequestHeaders();
+		if (next.isEmpty()) {
+			final HeaderPlan plan = getPermanentHeadersPlan();
+			return plan != null ? plan : new HeaderPlan(getPermanentHeaders());
+		}
+
+		final List<HeaderOperation> operations = new ArrayList<>(getPermanentHeaders());
+		operations.addAll(next);
+		return new HeaderPlan(operations);
+	}
+
 	//<editor-fold defaultstate="collapsed" desc="Utilities">
+	/**
+	 * Returns the operations for all requests.
+	 *
+	 * @return a list of operations (which must not be modified)
+	 */
+	List<HeaderOperation> getPermanentHeaders() {
+		return permanentHeaders;
+	}
+
+	/**
+	 * Returns the operations for the next request.
+	 *
+	 * @return a list of operations (which must not be modified)
+	 */
+	List<HeaderOperation> getNextRequestHeaders() {
+		return nextRequestHeaders;
+	}
+
+	/**
+	 * Returns the compiled operations for all requests.
+	 *
+	 * @return a header plan, or null if the operations have not been compiled
+	 */
+	HeaderPlan getPermanentHeadersPlan() {
+		return permanentHeadersPlan;
+	}
+
+	/**
+	 * Creates a header operation.
+	 *
+	 * @param op what to do with the header (ADD/SET/REMOVE)
+	 * @param header the header to modify
+	 * @return a header operation
+	 * @throws IllegalArgumentException if the operation or header are null
+	 */
+	static HeaderOperation createOperation(Operation op, ApiHeader header) {
+		if (op == null) {
+			throw new IllegalArgumentException("Operation cannot be null");
+		} else if (header == null) {
+			throw new IllegalArgumentException("Header cannot be null");
+		}
+
+		return new HeaderOperation(header, op);
+	}
+
+	/**
+	 * Adds an operation to the operations for all requests or for the next request.
+	 *
+	 * @param permanentHeaders the operations for all requests
+	 * @param nextRequestHeaders the operations for the next request
+	 * @param operation the operation to add
+	 * @param forAllRequests true to add the operation for all requests, false to add it only for
+	 * the next request
+	 */
+	static void addOperation(List<HeaderOperation> permanentHeaders, List<HeaderOperation> nextRequestHeaders, HeaderOperation operation, boolean forAllRequests) {
+
+		// remove operations that would become superfluous after adding this one, e.g. a previously
+		// added SET operation becomes useless if we add a REMOVE for the same header
+		cleanHeaderOperations(permanentHeaders, nextRequestHeaders, operation, forAllRequests);
+
+		// add the operation to permanent headers or next request headers depending on the supplied boolean
+		(forAllRequests ? permanentHeaders : nextRequestHeaders).add(operation);
+
+		//<editor-fold defaultstate="collapsed" desc="Special REMOVE/ADD Case">
+		/*
+		 * Special case: if a header is removed for the next request, and then added for all
+		 * requests, it would not be normally added because next request operations overwrite
+		 * operations for all requests (see #configure).
+		 *
+		 * Example:
+		 * - REMOVE X-Custom-Header false   // next request operation, will be run last
+		 * - ADD X-Custom-Header true       // all requests operation, will be run first
+		 *
+		 * To fix this, we automatically also add the header to the next request:
+		 * - ADD X-Custom-Header false
+		 *
+		 * This is only necessary if the header is set or removed for the next request; otherwise
+		 * it would be added twice.
+		 */
+		if (Operation.ADD.equals(operation.getOperation()) && forAllRequests && overridesHeader(nextRequestHeaders, operation.getHeaderName())) {
+			nextRequestHeaders.add(operation);
+		}
+		//</editor-fold>
+	}
+
 	/**
 	 * Removes header operations that would become superfluous after adding the specified one. For
 	 * example, a previously added SET operation becomes useless if a REMOVE is added for the same
 	 * header.
 	 *
+	 * @param permanentHeaders the operations for all requests
+	 * @param nextRequestHeaders the operations for the next request
 	 * @param op the operation that will be added
 	 * @param forAllRequests whether the operation will be applied to all subsequent requests or
 	 * only the next one
 	 */
-	private void cleanHeaderOperations(HeaderOperation op, boolean forAllRequests) {
+	private static void cleanHeaderOperations(List<HeaderOperation> permanentHeaders, List<HeaderOperation> nextRequestHeaders, HeaderOperation op, boolean forAllRequests) {
 		
 		// only SET and REMOVE operations require cleaning
 		if (!Operation.ADD.equals(op.getOperation())) {
@@ -198,6 +307,22 @@ public class ApiHeadersManager {
 		}
 	}
 	
+	/**
+	 * Indicates whether a list contains an operation setting or removing the specified header.
+	 *
+	 * @param operations the list of operations
+	 * @param headerName the header name
+	 * @return true if a SET or REMOVE operation for that header name is in the list
+	 */
+	private static boolean overridesHeader(List<HeaderOperation> operations, String headerName) {
+		for (final HeaderOperation operation : operations) {
+			if (!Operation.ADD.equals(operation.getOperation()) && operation.getHeaderName().equals(headerName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Removes header operations from a list.
 	 *
@@ -235,7 +360,7 @@ public class ApiHeadersManager {
 	/**
 	 * Wrapper to apply a header operation.
 	 */
-	private static class HeaderOperation {
+	static class HeaderOperation {
 		
 		/**
 		 * The header.
@@ -270,15 +395,162 @@ public class ApiHeadersManager {
 		public String getHeaderName() {
 			return header.getName();
 		}
-		
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="HeaderPlan (compiled operations)">
+	/**
+	 * Immutable net effect of a list of header operations, by header name in order of first
+	 * appearance.
+	 *
+	 * @see ApiHeadersManager#compile()
+	 */
+	public static final class HeaderPlan {
+
+		/**
+		 * The net effect of the operations for each header name.
+		 */
+		private final HeaderPlanEntry[] entries;
+		/**
+		 * The entries by header name.
+		 */
+		private final Map<String, HeaderPlanEntry> entriesByName;
+
 		/**
-		 * Applies this operation to the specified request.
+		 * Compiles a list of operations.
+		 *
+		 * @param operations the operations, in the order in which they must be applied
+		 */
+		HeaderPlan(List<HeaderOperation> operations) {
+
+			// fold the operations of each header name
+			final Map<String, HeaderPlanEntry> folded = new LinkedHashMap<>();
+			for (final HeaderOperation operation : operations) {
+				final HeaderPlanEntry previous = folded.get(operation.getHeaderName());
+				folded.put(operation.getHeaderName(), HeaderPlanEntry.fold(previous, operation));
+			}
+
+			entries = folded.values().toArray(new HeaderPlanEntry[folded.size()]);
+			entriesByName = folded;
+		}
+
+		/**
+		 * Applies this plan to a request.
 		 *
 		 * @param request the request to configure
 		 */
 		public void apply(ApiTestRequest request) {
-			operation.apply(request, header);
+			apply(request, null);
+		}
+
+		/**
+		 * Applies this plan to a request, merged with another plan applied after it.
+		 *
+		 * @param request the request to configure
+		 * @param overlay the plan applied after this one (may be null)
+		 */
+		void apply(ApiTestRequest request, HeaderPlan overlay) {
+
+			for (int i = 0; i < entries.length; i++) {
+				final HeaderPlanEntry entry = entries[i];
+				final HeaderPlanEntry overlayEntry = overlay != null ? overlay.entriesByName.get(entry.name) : null;
+
+				if (overlayEntry == null) {
+					entry.apply(request);
+				} else if (overlayEntry.replace) {
+					overlayEntry.apply(request);
+				} else {
+					entry.apply(request);
+					overlayEntry.applyValues(request);
+				}
+			}
+
+			// apply overlay entries for header names that are not in this plan
+			if (overlay != null) {
+				for (int i = 0; i < overlay.entries.length; i++) {
+					if (!entriesByName.containsKey(overlay.entries[i].name)) {
+						overlay.entries[i].apply(request);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Net effect of the operations on a header name.
+	 */
+	private static class HeaderPlanEntry {
+
+		/**
+		 * The header name.
+		 */
+		private final String name;
+		/**
+		 * Whether existing headers with this name are removed.
+		 */
+		private final boolean replace;
+		/**
+		 * The headers added (after removing existing headers if applicable).
+		 */
+		private final ApiHeader[] headers;
+
+		public HeaderPlanEntry(String name, boolean replace, ApiHeader[] headers) {
+			this.name = name;
+			this.replace = replace;
+			this.headers = headers;
+		}
+
+		/**
+		 * Returns the net effect of an operation applied after previous operations.
+		 *
+		 * @param previous the net effect of the previous operations (may be null)
+		 * @param operation the operation
+		 * @return the new net effect
+		 */
+		public static HeaderPlanEntry fold(HeaderPlanEntry previous, HeaderOperation operation) {
+			switch (operation.getOperation()) {
+				case SET:
+					return new HeaderPlanEntry(operation.getHeaderName(), true, new ApiHeader[]{operation.header});
+				case REMOVE:
+					return new HeaderPlanEntry(operation.getHeaderName(), true, new ApiHeader[0]);
+				default:
+					if (previous == null) {
+						return new HeaderPlanEntry(operation.getHeaderName(), false, new ApiHeader[]{operation.header});
+					}
+
+					final ApiHeader[] headers = new ApiHeader[previous.headers.length + 1];
+					System.arraycopy(previous.headers, 0, headers, 0, previous.headers.length);
+					headers[previous.headers.length] = operation.header;
+					return new HeaderPlanEntry(previous.name, previous.replace, headers);
+			}
+		}
+
+		/**
+		 * Applies this entry to a request.
+		 *
+		 * @param request the request to configure
+		 */
+		public void apply(ApiTestRequest request) {
+			if (replace && headers.length == 1) {
+				request.setHeader(name, headers[0].computeValue(request));
+				return;
+			} else if (replace) {
+				request.removeHeader(name);
+			}
+
+			applyValues(request);
+		}
+
+		/**
+		 * Adds the headers of this entry to a request, without removing existing ones.
+		 *
+		 * @param request the request to configure
+		 */
+		public void applyValues(ApiTestRequest request) {
+			for (int i = 0; i < headers.length; i++) {
+				request.addHeader(name, headers[i].computeValue(request));
+			}
 		}
 	}
 	//</editor-fold>
-}
\ No newline at end of file
+}
@@ -0,0 +1,186 @@
+package com.lotaris.api.test.headers;
+
+import com.lotaris.api.test.client.ApiTestRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Headers manager that can be shared by threads executing requests concurrently, e.g. the worker
+ * threads of a test that fans requests out.
+ *
+ * <p>Modifications for all requests are copy-on-write: each modification publishes a new
+ * immutable, compiled configuration which is then used by all threads, and requests being
+ * configured concurrently see either the previous or the new configuration but never a partial
+ * one.</p>
+ *
+ * <p>Modifications for the next request are specific to the thread that configures them: they
+ * are applied to the next request configured by the same thread, and cleared afterwards. Other
+ * threads are not affected.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ConcurrentApiHeadersManager extends ApiHeadersManager {
+
+	/**
+	 * The current configuration for all requests.
+	 */
+	private volatile PermanentConfiguration permanentConfiguration;
+	/**
+	 * Header operations to apply only to the next request of each thread.
+	 */
+	private final ThreadLocal<List<HeaderOperation>> nextRequestHeaders;
+
+	//<editor-fold defaultstate="collapsed" desc="Constructor">
+	/**
+	 * Constructs an empty headers manager.
+	 */
+	public ConcurrentApiHeadersManager() {
+		permanentConfiguration = new PermanentConfiguration(new ArrayList<HeaderOperation>(0));
+		nextRequestHeaders = new ThreadLocal<>();
+	}
+
+	/**
+	 * Constructs a headers manager with a copy of the configuration of another manager. Operations
+	 * for the next request of the other manager become operations for the next request of the
+	 * current thread.
+	 *
+	 * @param headersManager the headers manager to copy
+	 */
+	public ConcurrentApiHeadersManager(ApiHeadersManager headersManager) {
+		permanentConfiguration = new PermanentConfiguration(new ArrayList<>(headersManager.getPermanentHeaders()));
+		nextRequestHeaders = new ThreadLocal<>();
+
+		final List<HeaderOperation> next = headersManager.getNextRequestHeaders();
+		if (!next.isEmpty()) {
+			nextRequestHeaders.set(new ArrayList<>(next));
+		}
+	}
+	//</editor-fold>
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>A modification for the next request only applies to the next request of the current
+	 * thread.</p>
+	 */
+	@Override
+	public ApiHeadersManager configure(Operation op, ApiHeader header, boolean forAllRequests) {
+		configure(Collections.singletonList(createOperation(op, header)), forAllRequests);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>Modifications for all requests are published at once. A modification for the next
+	 * request only applies to the next request of the current thread.</p>
+	 */
+	@Override
+	public ApiHeadersManager configure(Operation op, IApiHeaderConfiguration headerConfiguration, boolean forAllRequests) {
+		if (headerConfiguration == null) {
+			throw new IllegalArgumentException("Header configuration cannot be null");
+		}
+
+		final List<ApiHeader> headers = headerConfiguration.getHeaders();
+		final List<HeaderOperation> operations = new ArrayList<>(headers.size());
+		for (final ApiHeader header : headers) {
+			operations.add(createOperation(op, header));
+		}
+
+		configure(operations, forAllRequests);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>Operations for the next request of the current thread are applied and cleared.</p>
+	 */
+	@Override
+	public ApiHeadersManager applyConfiguration(ApiTestRequest request) {
+
+		final List<HeaderOperation> next = nextRequestHeaders.get();
+		permanentConfiguration.plan.apply(request, next == null || next.isEmpty() ? null : new HeaderPlan(next));
+
+		// clear operations for the next request of this thread
+		nextRequestHeaders.remove();
+
+		return this;
+	}
+
+	@Override
+	List<HeaderOperation> getPermanentHeaders() {
+		return permanentConfiguration.operations;
+	}
+
+	@Override
+	List<HeaderOperation> getNextRequestHeaders() {
+		final List<HeaderOperation> next = nextRequestHeaders.get();
+		return next != null ? next : Collections.<HeaderOperation>emptyList();
+	}
+
+	@Override
+	HeaderPlan getPermanentHeadersPlan() {
+		return permanentConfiguration.plan;
+	}
+
+	/**
+	 * Adds operations for all requests or for the next request of the current thread.
+	 *
+	 * @param operations the operations to add
+	 * @param forAllRequests true to add the operations for all requests, false to add them only
+	 * for the next request of the current thread
+	 */
+	private void configure(List<HeaderOperation> operations, boolean forAllRequests) {
+
+		// only create operations for the next request of this thread if necessary (operations for
+		// all requests only remove or copy existing ones)
+		List<HeaderOperation> next = nextRequestHeaders.get();
+		if (next == null) {
+			next = new ArrayList<>();
+			if (!forAllRequests) {
+				nextRequestHeaders.set(next);
+			}
+		}
+
+		if (!forAllRequests) {
+			for (final HeaderOperation operation : operations) {
+				// operations for all requests are not modified by operations for the next request
+				addOperation(permanentConfiguration.operations, next, operation, false);
+			}
+			return;
+		}
+
+		// copy, modify and publish the operations for all requests
+		synchronized (this) {
+			final List<HeaderOperation> permanent = new ArrayList<>(permanentConfiguration.operations);
+			for (final HeaderOperation operation : operations) {
+				addOperation(permanent, next, operation, true);
+			}
+			permanentConfiguration = new PermanentConfiguration(permanent);
+		}
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="PermanentConfiguration (immutable)">
+	/**
+	 * Operations for all requests and their compiled plan.
+	 */
+	private static class PermanentConfiguration {
+
+		/**
+		 * The operations for all requests.
+		 */
+		private final List<HeaderOperation> operations;
+		/**
+		 * The compiled operations.
+		 */
+		private final HeaderPlan plan;
+
+		public PermanentConfiguration(List<HeaderOperation> operations) {
+			this.operations = Collections.unmodifiableList(operations);
+			this.plan = new HeaderPlan(operations);
+		}
+	}
+	//</editor-fold>
+}
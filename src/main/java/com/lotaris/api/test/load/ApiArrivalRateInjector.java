@@ -0,0 +1,326 @@
+package com.lotaris.api.test.load;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Open-model load injector sending requests at a constant rate, whatever the response times.
+ *
+ * <p>Unlike virtual users (see {@link ApiLoadTest}), which wait for each response before sending
+ * the next request and therefore send fewer requests when the server stalls, the injector schedules
+ * the <em>n</em>th request at <tt>start + n / rate</tt>. Requests are sent by a bounded number of
+ * senders; if all of them are waiting for responses, the next request is sent as soon as one
+ * becomes available. The latency of each request is measured from its scheduled time, which
+ * corrects for coordinated omission (see {@link ApiArrivalRateReport}).</p>
+ *
+ * <pre>
+ * ApiArrivalRateReport report = new ApiArrivalRateInjector(200)
+ *   .withDuration(1, TimeUnit.MINUTES)
+ *   .withReporter(new ApiLoadTestConsoleReporter())
+ *   .run("things", client, new ApiRequestScenario(ApiTestRequest.GET, uri("things")));
+ * </pre>
+ *
+ * <p>More complex iterations (e.g. several requests) can be scheduled as tasks, whose latency is
+ * then the duration of the whole task.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiArrivalRateInjector {
+
+	/**
+	 * Requests sent later than this after their scheduled time (in nanoseconds) are counted as
+	 * delayed.
+	 */
+	private static final long DELAY_THRESHOLD = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * The target rate in requests per second.
+	 */
+	private final double rate;
+	/**
+	 * How long requests are scheduled, in nanoseconds.
+	 */
+	private long duration;
+	/**
+	 * The maximum number of concurrent requests.
+	 */
+	private int maxSenders;
+	/**
+	 * The reporter of the results (or null).
+	 */
+	private IApiLoadTestReporter reporter;
+
+	/**
+	 * Constructs an injector sending requests for 30 seconds with at most 100 concurrent requests.
+	 *
+	 * @param rate the target rate in requests (or tasks) per second
+	 * @throws IllegalArgumentException if the rate is not strictly positive
+	 */
+	public ApiArrivalRateInjector(double rate) {
+		if (!(rate > 0)) {
+			throw new IllegalArgumentException("Target rate must be strictly positive, got " + rate);
+		}
+
+		this.rate = rate;
+		this.duration = TimeUnit.SECONDS.toNanos(30);
+		this.maxSenders = 100;
+	}
+
+	/**
+	 * Sets how long requests are scheduled. The injector then waits for the last responses.
+	 *
+	 * @param duration the duration
+	 * @param unit the unit of the duration
+	 * @return this injector
+	 * @throws IllegalArgumentException if the duration is not strictly positive
+	 */
+	public ApiArrivalRateInjector withDuration(long duration, TimeUnit unit) {
+		if (duration <= 0) {
+			throw new IllegalArgumentException("Load test duration must be strictly positive, got " + duration);
+		}
+		this.duration = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent requests (each sender has its own thread). It should
+	 * be larger than the target rate multiplied by the expected latency, so that requests are not
+	 * delayed.
+	 *
+	 * @param maxSenders the maximum number of concurrent requests
+	 * @return this injector
+	 * @throws IllegalArgumentException if the value is not strictly positive
+	 */
+	public ApiArrivalRateInjector withMaxSenders(int maxSenders) {
+		if (maxSenders <= 0) {
+			throw new IllegalArgumentException("Maximum number of senders must be at least 1, got " + maxSenders);
+		}
+		this.maxSenders = maxSenders;
+		return this;
+	}
+
+	/**
+	 * Sets the reporter of the results of each run.
+	 *
+	 * @param reporter the reporter, or null not to report results
+	 * @return this injector
+	 */
+	public ApiArrivalRateInjector withReporter(IApiLoadTestReporter reporter) {
+		this.reporter = reporter;
+		return this;
+	}
+
+	/**
+	 * Runs the load test with the requests of a scenario and waits for all responses.
+	 *
+	 * @param name the name of the report
+	 * @param client the client sending the requests
+	 * @param scenario builds the requests to send
+	 * @return the load test report
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public ApiArrivalRateReport run(String name, final ApiTestClient client, final IApiLoadScenario scenario) throws InterruptedException {
+
+		client.getConnectionPool().ensureCapacity(maxSenders);
+
+		return run(name, new IApiLoadTask() {
+			@Override
+			public void execute(long index) {
+				client.execute(scenario.buildRequest(index));
+			}
+		});
+	}
+
+	/**
+	 * Runs the load test with a task and waits for all executions to complete. The latency
+	 * recorded for each execution is the duration of the task.
+	 *
+	 * <p>Executions throwing an exception or an {@link AssertionError} are counted as failed
+	 * requests. Any other error (e.g. an {@link OutOfMemoryError}) stops the sender that executed
+	 * the task, and is rethrown once all senders have terminated.</p>
+	 *
+	 * @param name the name of the report
+	 * @param task the task to execute
+	 * @return the load test report
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public ApiArrivalRateReport run(String name, IApiLoadTask task) throws InterruptedException {
+
+		final long requests = (long) Math.ceil(duration * rate / TimeUnit.SECONDS.toNanos(1));
+		final int senderCount = (int) Math.min(maxSenders, requests);
+
+		final AtomicLong next = new AtomicLong();
+		final long start = System.nanoTime();
+
+		final List<Sender> senders = new ArrayList<>(senderCount);
+		for (int i = 0; i < senderCount; i++) {
+			final Sender sender = new Sender(task, next, start, requests);
+			sender.thread = new Thread(sender, "api-load-injector-" + i);
+			sender.thread.setDaemon(true);
+			senders.add(sender);
+		}
+
+		for (Sender sender : senders) {
+			sender.thread.start();
+		}
+
+		try {
+			for (Sender sender : senders) {
+				sender.thread.join();
+			}
+		} catch (InterruptedException ie) {
+			for (Sender sender : senders) {
+				sender.thread.interrupt();
+			}
+			Thread.currentThread().interrupt();
+			throw ie;
+		}
+
+		final long elapsedTime = System.nanoTime() - start;
+
+		for (Sender sender : senders) {
+			if (sender.error != null) {
+				throw sender.error;
+			}
+		}
+
+		// merge the results of all senders
+		final Histogram latencies = new Histogram(3);
+		final Histogram uncorrectedLatencies = new Histogram(3);
+		long sentRequests = 0;
+		long failedRequests = 0;
+		long delayedRequests = 0;
+
+		for (Sender sender : senders) {
+			latencies.add(sender.latencies);
+			uncorrectedLatencies.add(sender.uncorrectedLatencies);
+			sentRequests += sender.requests;
+			failedRequests += sender.failedRequests;
+			delayedRequests += sender.delayedRequests;
+		}
+
+		final ApiArrivalRateReport report = new ApiArrivalRateReport(name, senderCount, elapsedTime, rate, sentRequests, failedRequests, delayedRequests, latencies, uncorrectedLatencies);
+		if (reporter != null) {
+			reporter.report(report);
+		}
+
+		return report;
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="Sender (runnable)">
+	/**
+	 * Sender taking the next scheduled execution of the task, waiting for its scheduled time and
+	 * executing it. Its results are only read once its thread has terminated.
+	 */
+	private class Sender implements Runnable {
+
+		/**
+		 * The task to execute.
+		 */
+		private final IApiLoadTask task;
+		/**
+		 * The index of the next request to send (shared by all senders).
+		 */
+		private final AtomicLong next;
+		/**
+		 * When the load test started (in nanoseconds, see {@link System#nanoTime()}).
+		 */
+		private final long start;
+		/**
+		 * The number of requests to send.
+		 */
+		private final long total;
+		/**
+		 * The latency of all requests (completed or failed) from their scheduled time, in
+		 * microseconds.
+		 */
+		private final Histogram latencies;
+		/**
+		 * The latency of all requests (completed or failed) from their actual send time, in
+		 * microseconds.
+		 */
+		private final Histogram uncorrectedLatencies;
+		/**
+		 * The thread of this sender.
+		 */
+		private Thread thread;
+		/**
+		 * The number of requests sent.
+		 */
+		private long requests;
+		/**
+		 * The number of executions that failed.
+		 */
+		private long failedRequests;
+		/**
+		 * The number of requests sent late.
+		 */
+		private long delayedRequests;
+		/**
+		 * The error that stopped this sender (or null).
+		 */
+		private Error error;
+
+		public Sender(IApiLoadTask task, AtomicLong next, long start, long total) {
+			this.task = task;
+			this.next = next;
+			this.start = start;
+			this.total = total;
+			this.latencies = new Histogram(3);
+			this.uncorrectedLatencies = new Histogram(3);
+		}
+
+		@Override
+		public void run() {
+			long index;
+			while ((index = next.getAndIncrement()) < total) {
+
+				final long scheduled = start + (long) (index * (TimeUnit.SECONDS.toNanos(1) / rate));
+				try {
+					waitUntil(scheduled);
+				} catch (InterruptedException ie) {
+					return;
+				}
+
+				requests++;
+				final long sent = System.nanoTime();
+				if (sent - scheduled > DELAY_THRESHOLD) {
+					delayedRequests++;
+				}
+
+				try {
+					task.execute(index);
+				} catch (Exception | AssertionError e) {
+					failedRequests++;
+				} catch (Error e) {
+					error = e;
+					return;
+				}
+
+				// a failed request (e.g. a timeout) also kept its caller waiting
+				final long completed = System.nanoTime();
+				latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(completed - scheduled));
+				uncorrectedLatencies.recordValue(TimeUnit.NANOSECONDS.toMicros(completed - sent));
+			}
+		}
+
+		/**
+		 * Sleeps until the specified time.
+		 *
+		 * @param time the time to wait for (in nanoseconds, see {@link System#nanoTime()})
+		 * @throws InterruptedException if the thread is interrupted while sleeping
+		 */
+		private void waitUntil(long time) throws InterruptedException {
+			long remaining = time - System.nanoTime();
+			while (remaining > 0) {
+				TimeUnit.NANOSECONDS.sleep(remaining);
+				remaining = time - System.nanoTime();
+			}
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,105 @@
+package com.lotaris.api.test.load;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Results of an open-model load test run by an {@link ApiArrivalRateInjector}.
+ *
+ * <p>The latency distribution of the report is corrected for coordinated omission: latencies are
+ * measured from the time at which each request was scheduled to be sent, so that requests delayed
+ * by a stalled server (or by busy senders) account for the time they waited. The uncorrected
+ * distribution, measured from the time at which each request was actually sent, is what a closed
+ * loop of virtual users would have reported.</p>
+ *
+ * <p>Both distributions include failed requests, measured until they failed, so that requests
+ * timing out under load are not left out of the percentiles and the two distributions can be
+ * compared.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiArrivalRateReport extends ApiLoadTestReport {
+
+	/**
+	 * The target rate in requests per second.
+	 */
+	private final double targetRate;
+	/**
+	 * The number of requests sent late because all senders were busy.
+	 */
+	private final long delayedRequests;
+	/**
+	 * The latency of all requests (completed or failed) from the time they were actually sent, in
+	 * microseconds.
+	 */
+	private final Histogram uncorrectedLatencies;
+
+	/**
+	 * Constructs a new report.
+	 *
+	 * @param name the name of the test
+	 * @param senders the maximum number of concurrent requests
+	 * @param elapsedTime the total duration of the load test in nanoseconds
+	 * @param targetRate the target rate in requests per second
+	 * @param requests the number of requests scheduled
+	 * @param failedRequests the number of requests that could not be completed
+	 * @param delayedRequests the number of requests sent late because all senders were busy
+	 * @param latencies the latency of all requests (completed or failed) from their scheduled time,
+	 * in microseconds
+	 * @param uncorrectedLatencies the latency of all requests (completed or failed) from their
+	 * actual send time, in microseconds
+	 */
+	public ApiArrivalRateReport(String name, int senders, long elapsedTime, double targetRate, long requests, long failedRequests, long delayedRequests, Histogram latencies, Histogram uncorrectedLatencies) {
+		super(name, senders, elapsedTime, requests, failedRequests, requests, failedRequests, latencies, elapsedTime, requests);
+		this.targetRate = targetRate;
+		this.delayedRequests = delayedRequests;
+		this.uncorrectedLatencies = uncorrectedLatencies;
+	}
+
+	/**
+	 * @return the target rate in requests per second
+	 */
+	public double getTargetRate() {
+		return targetRate;
+	}
+
+	/**
+	 * Returns the number of requests sent late because all senders were busy waiting for previous
+	 * responses. If this is not zero, the injector could not sustain the target rate and more
+	 * senders should be allowed.
+	 *
+	 * @return a number of requests
+	 */
+	public long getDelayedRequests() {
+		return delayedRequests;
+	}
+
+	/**
+	 * Returns the uncorrected latency at the specified percentile.
+	 *
+	 * @param percentile a percentile (between 0 and 100)
+	 * @param unit the unit of the returned latency
+	 * @return the latency in the specified unit
+	 */
+	public long getUncorrectedLatencyAtPercentile(double percentile, TimeUnit unit) {
+		return unit.convert(uncorrectedLatencies.getValueAtPercentile(percentile), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Returns the latency distribution of all requests (completed or failed) measured from the time
+	 * they were actually sent. Values are in microseconds.
+	 *
+	 * @return a histogram
+	 */
+	public Histogram getUncorrectedLatencyHistogram() {
+		return uncorrectedLatencies;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString()
+				+ String.format(Locale.ENGLISH, "\n  target rate: %.1f req/s, %d requests delayed", targetRate, delayedRequests)
+				+ "\n  uncorrected latency (ms):" + formatLatencies(uncorrectedLatencies);
+	}
+}
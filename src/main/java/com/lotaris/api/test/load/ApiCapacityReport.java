@@ -0,0 +1,103 @@
+package com.lotaris.api.test.load;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a capacity search: the load test of each step, in the order in which they were run,
+ * and the highest rate that met the service level objective.
+ *
+ * @see ApiCapacitySearch
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiCapacityReport {
+
+	/**
+	 * The name of the search.
+	 */
+	private final String name;
+	/**
+	 * The objective of the search.
+	 */
+	private final ApiLatencySlo slo;
+	/**
+	 * The report of each step.
+	 */
+	private final List<ApiArrivalRateReport> steps;
+
+	/**
+	 * Constructs a new report.
+	 *
+	 * @param name the name of the search
+	 * @param slo the objective of the search
+	 * @param steps the report of each step, in the order in which they were run
+	 */
+	public ApiCapacityReport(String name, ApiLatencySlo slo, List<ApiArrivalRateReport> steps) {
+		this.name = name;
+		this.slo = slo;
+		this.steps = Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * @return the name of the search
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the objective of the search
+	 */
+	public ApiLatencySlo getSlo() {
+		return slo;
+	}
+
+	/**
+	 * @return the report of each step, in the order in which they were run
+	 */
+	public List<ApiArrivalRateReport> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns the step with the highest target rate that met the objective.
+	 *
+	 * @return a step report, or null if no step met the objective
+	 */
+	public ApiArrivalRateReport getBestStep() {
+		ApiArrivalRateReport best = null;
+		for (ApiArrivalRateReport step : steps) {
+			if (slo.isMetBy(step) && (best == null || step.getTargetRate() > best.getTargetRate())) {
+				best = step;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the highest target rate that met the objective in requests per second, or 0 if no
+	 * step met the objective
+	 */
+	public double getMaxSustainableRate() {
+		final ApiArrivalRateReport best = getBestStep();
+		return best != null ? best.getTargetRate() : 0;
+	}
+
+	@Override
+	public String toString() {
+
+		final StringBuilder builder = new StringBuilder();
+		builder.append(String.format(Locale.ENGLISH, "Capacity search %s (%s): max sustainable rate %.1f req/s", name, slo, getMaxSustainableRate()));
+
+		for (ApiArrivalRateReport step : steps) {
+			builder.append(String.format(Locale.ENGLISH, "\n  %8.1f req/s: %s, p%s=%.3f ms, error rate %.3f%%",
+					step.getTargetRate(), slo.isMetBy(step) ? "met   " : "missed",
+					ApiLoadTestReport.formatPercentile(slo.getPercentile()),
+					step.getLatencyAtPercentile(slo.getPercentile(), TimeUnit.MICROSECONDS) / 1000.0, ApiLatencySlo.getErrorRate(step) * 100));
+		}
+
+		return builder.toString();
+	}
+}
@@ -0,0 +1,299 @@
+package com.lotaris.api.test.load;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the highest arrival rate at which an API meets a service level objective.
+ *
+ * <p>The search runs a series of open-model load tests (see {@link ApiArrivalRateInjector}) of the
+ * same duration. The rate is first multiplied by a constant factor at each step, starting from the
+ * start rate, until the objective is missed or the maximum rate is reached. The highest rate that
+ * met the objective and the first rate that missed it are then bisected until they are within the
+ * configured precision.</p>
+ *
+ * <pre>
+ * ApiCapacityReport report = new ApiCapacitySearch(new ApiLatencySlo(99, 200, TimeUnit.MILLISECONDS).withMaxErrorRate(0.001))
+ *   .withRates(10, 5000)
+ *   .withStepDuration(10, TimeUnit.SECONDS)
+ *   .run("things", client, new ApiRequestScenario(ApiTestRequest.GET, uri("things")));
+ * </pre>
+ *
+ * <p>A warm-up phase at the start rate, whose results are discarded, precedes the first step so
+ * that connection establishment and class loading are not measured.</p>
+ *
+ * <p>Steps are independent: the server should recover between them (e.g. queues should drain
+ * while the last responses of a step are awaited).</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiCapacitySearch {
+
+	/**
+	 * The objective to meet.
+	 */
+	private final ApiLatencySlo slo;
+	/**
+	 * The rate of the first step in requests per second.
+	 */
+	private double startRate;
+	/**
+	 * The highest rate tried in requests per second.
+	 */
+	private double maxRate;
+	/**
+	 * The factor applied to the rate after each step that met the objective.
+	 */
+	private double factor;
+	/**
+	 * The precision of the bisection, relative to the rate that met the objective.
+	 */
+	private double precision;
+	/**
+	 * The duration of each step in nanoseconds.
+	 */
+	private long stepDuration;
+	/**
+	 * The duration of the warm-up phase in nanoseconds.
+	 */
+	private long warmupDuration;
+	/**
+	 * The maximum number of concurrent requests.
+	 */
+	private int maxSenders;
+	/**
+	 * The reporter of the results of each step (or null).
+	 */
+	private IApiLoadTestReporter reporter;
+
+	/**
+	 * Constructs a search from 10 to 10000 requests per second doubling the rate at each step, with
+	 * steps of 10 seconds after a warm-up of 10 seconds, at most 100 concurrent requests and a precision of 10%.
+	 *
+	 * @param slo the objective to meet
+	 * @throws IllegalArgumentException if the objective is null
+	 */
+	public ApiCapacitySearch(ApiLatencySlo slo) {
+		if (slo == null) {
+			throw new IllegalArgumentException("Service level objective is required");
+		}
+
+		this.slo = slo;
+		this.startRate = 10;
+		this.maxRate = 10000;
+		this.factor = 2;
+		this.precision = 0.1;
+		this.stepDuration = TimeUnit.SECONDS.toNanos(10);
+		this.warmupDuration = TimeUnit.SECONDS.toNanos(10);
+		this.maxSenders = 100;
+	}
+
+	/**
+	 * Sets the range of rates tried by the search.
+	 *
+	 * @param startRate the rate of the first step in requests per second
+	 * @param maxRate the highest rate tried in requests per second
+	 * @return this search
+	 * @throws IllegalArgumentException if the start rate is not strictly positive or is higher
+	 * than the maximum rate
+	 */
+	public ApiCapacitySearch withRates(double startRate, double maxRate) {
+		if (!(startRate > 0)) {
+			throw new IllegalArgumentException("Start rate must be strictly positive, got " + startRate);
+		} else if (!(maxRate >= startRate)) {
+			throw new IllegalArgumentException("Maximum rate must be at least the start rate, got " + maxRate);
+		}
+		this.startRate = startRate;
+		this.maxRate = maxRate;
+		return this;
+	}
+
+	/**
+	 * Sets the factor applied to the rate after each step that met the objective, until a step
+	 * misses it.
+	 *
+	 * @param factor a factor strictly greater than 1
+	 * @return this search
+	 * @throws IllegalArgumentException if the factor is not strictly greater than 1
+	 */
+	public ApiCapacitySearch withStepFactor(double factor) {
+		if (!(factor > 1)) {
+			throw new IllegalArgumentException("Step factor must be strictly greater than 1, got " + factor);
+		}
+		this.factor = factor;
+		return this;
+	}
+
+	/**
+	 * Sets the precision at which the bisection stops: when the difference between the rate that
+	 * met the objective and the rate that missed it is at most this fraction of the former.
+	 *
+	 * @param precision a fraction strictly between 0 and 1 (e.g. 0.05 for 5%)
+	 * @return this search
+	 * @throws IllegalArgumentException if the precision is not strictly between 0 and 1
+	 */
+	public ApiCapacitySearch withPrecision(double precision) {
+		if (!(precision > 0 && precision < 1)) {
+			throw new IllegalArgumentException("Precision must be strictly between 0 and 1, got " + precision);
+		}
+		this.precision = precision;
+		return this;
+	}
+
+	/**
+	 * Sets the duration of each step.
+	 *
+	 * @param duration the duration
+	 * @param unit the unit of the duration
+	 * @return this search
+	 * @throws IllegalArgumentException if the duration is not strictly positive
+	 */
+	public ApiCapacitySearch withStepDuration(long duration, TimeUnit unit) {
+		if (duration <= 0) {
+			throw new IllegalArgumentException("Step duration must be strictly positive, got " + duration);
+		}
+		this.stepDuration = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the duration of the warm-up phase, run at the start rate before the first step.
+	 *
+	 * @param duration the duration (0 to disable the warm-up)
+	 * @param unit the unit of the duration
+	 * @return this search
+	 * @throws IllegalArgumentException if the duration is negative
+	 */
+	public ApiCapacitySearch withWarmupDuration(long duration, TimeUnit unit) {
+		if (duration < 0) {
+			throw new IllegalArgumentException("Warm-up duration cannot be negative, got " + duration);
+		}
+		this.warmupDuration = unit.toNanos(duration);
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent requests of each step.
+	 *
+	 * @param maxSenders the maximum number of concurrent requests
+	 * @return this search
+	 * @throws IllegalArgumentException if the value is not strictly positive
+	 * @see ApiArrivalRateInjector#withMaxSenders(int)
+	 */
+	public ApiCapacitySearch withMaxSenders(int maxSenders) {
+		if (maxSenders <= 0) {
+			throw new IllegalArgumentException("Maximum number of senders must be at least 1, got " + maxSenders);
+		}
+		this.maxSenders = maxSenders;
+		return this;
+	}
+
+	/**
+	 * Sets the reporter of the results of each step.
+	 *
+	 * @param reporter the reporter, or null not to report steps
+	 * @return this search
+	 */
+	public ApiCapacitySearch withReporter(IApiLoadTestReporter reporter) {
+		this.reporter = reporter;
+		return this;
+	}
+
+	/**
+	 * Runs the search with the requests of a scenario.
+	 *
+	 * @param name the name of the search
+	 * @param client the client sending the requests
+	 * @param scenario builds the requests to send
+	 * @return the capacity report
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public ApiCapacityReport run(String name, final ApiTestClient client, final IApiLoadScenario scenario) throws InterruptedException {
+
+		client.getConnectionPool().ensureCapacity(maxSenders);
+
+		return run(name, new IApiLoadTask() {
+			@Override
+			public void execute(long index) {
+				client.execute(scenario.buildRequest(index));
+			}
+		});
+	}
+
+	/**
+	 * Runs the search with a task. The latency of each execution is the duration of the task.
+	 *
+	 * @param name the name of the search
+	 * @param task the task to execute
+	 * @return the capacity report
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public ApiCapacityReport run(String name, IApiLoadTask task) throws InterruptedException {
+
+		final List<ApiArrivalRateReport> steps = new ArrayList<>();
+
+		// highest rate that met the objective and lowest rate that missed it (0 if none yet)
+		double met = 0;
+		double missed = 0;
+
+		if (warmupDuration > 0) {
+			new ApiArrivalRateInjector(startRate)
+					.withDuration(warmupDuration, TimeUnit.NANOSECONDS)
+					.withMaxSenders(maxSenders)
+					.run(name + " (warm-up)", task);
+		}
+
+		// ramp up
+		double rate = startRate;
+		while (true) {
+			if (runStep(name, task, rate, steps)) {
+				met = rate;
+			} else {
+				missed = rate;
+				break;
+			}
+
+			if (rate >= maxRate) {
+				break;
+			}
+			rate = Math.min(rate * factor, maxRate);
+		}
+
+		// bisect between the last rate that met the objective and the first that missed it
+		while (met > 0 && missed > 0 && missed - met > met * precision) {
+			rate = (met + missed) / 2;
+			if (runStep(name, task, rate, steps)) {
+				met = rate;
+			} else {
+				missed = rate;
+			}
+		}
+
+		return new ApiCapacityReport(name, slo, steps);
+	}
+
+	/**
+	 * Runs a step of the search.
+	 *
+	 * @param name the name of the search
+	 * @param task the task to execute
+	 * @param rate the rate of the step
+	 * @param steps the reports of the previous steps (the report of this step is added)
+	 * @return true if the step met the objective
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	private boolean runStep(String name, IApiLoadTask task, double rate, List<ApiArrivalRateReport> steps) throws InterruptedException {
+
+		final ApiArrivalRateReport report = new ApiArrivalRateInjector(rate)
+				.withDuration(stepDuration, TimeUnit.NANOSECONDS)
+				.withMaxSenders(maxSenders)
+				.withReporter(reporter)
+				.run(String.format(Locale.ENGLISH, "%s @ %.1f req/s", name, rate), task);
+
+		steps.add(report);
+		return slo.isMetBy(report);
+	}
+}
@@ -0,0 +1,127 @@
+package com.lotaris.api.test.load;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation to run an API test method as a capacity search: the method is executed at increasing
+ * arrival rates to find the highest rate at which it meets a service level objective (see
+ * {@link ApiCapacitySearch}). The latency of each execution is the duration of the whole method.
+ *
+ * <pre>
+ * &#64;Test
+ * &#64;ApiCapacityTest(maxLatency = 200, maxErrorRate = 0.001, minRate = 100)
+ * public void thingsShouldBeFastEnough() {
+ *   assertEquals(200, getResource("things").getStatus());
+ * }
+ * </pre>
+ *
+ * <p>As for load tests, each execution has its own copy of the headers manager (initialized with
+ * the headers configured for all requests of the test). Like the independent users of an open
+ * model, each execution also has its own client (and cookies), closed once it completes; all
+ * executions share the connection pool of the test.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ApiCapacityTest {
+
+	/**
+	 * Returns the percentile of the latency objective.
+	 *
+	 * @return a percentile (between 0 and 100)
+	 */
+	double percentile() default 99;
+
+	/**
+	 * Returns the maximum latency at the percentile (exclusive).
+	 *
+	 * @return a latency
+	 * @see #latencyUnit()
+	 */
+	long maxLatency();
+
+	/**
+	 * Returns the unit of the maximum latency.
+	 *
+	 * @return a time unit
+	 */
+	TimeUnit latencyUnit() default TimeUnit.MILLISECONDS;
+
+	/**
+	 * Returns the maximum ratio of failed executions.
+	 *
+	 * @return a ratio between 0 and 1
+	 */
+	double maxErrorRate() default 0;
+
+	/**
+	 * Returns the rate of the first step.
+	 *
+	 * @return a rate in executions per second
+	 */
+	double startRate() default 10;
+
+	/**
+	 * Returns the highest rate tried.
+	 *
+	 * @return a rate in executions per second
+	 */
+	double maxRate() default 10000;
+
+	/**
+	 * Returns the factor applied to the rate after each step that met the objective.
+	 *
+	 * @return a factor strictly greater than 1
+	 */
+	double stepFactor() default 2;
+
+	/**
+	 * Returns the precision of the bisection, relative to the rate that met the objective.
+	 *
+	 * @return a fraction strictly between 0 and 1
+	 */
+	double precision() default 0.1;
+
+	/**
+	 * Returns the duration of each step.
+	 *
+	 * @return a duration
+	 * @see #unit()
+	 */
+	long stepDuration() default 10;
+
+	/**
+	 * Returns the duration of the warm-up phase run at the start rate before the first step.
+	 *
+	 * @return a duration (0 to disable the warm-up)
+	 * @see #unit()
+	 */
+	long warmup() default 10;
+
+	/**
+	 * Returns the unit of the step and warm-up durations.
+	 *
+	 * @return a time unit
+	 */
+	TimeUnit unit() default TimeUnit.SECONDS;
+
+	/**
+	 * Returns the maximum number of concurrent executions.
+	 *
+	 * @return a number of sender threads
+	 */
+	int maxSenders() default 100;
+
+	/**
+	 * Returns the minimum capacity expected: the test fails if the highest rate that met the
+	 * objective is lower.
+	 *
+	 * @return a rate in executions per second (0 to never fail)
+	 */
+	double minRate() default 0;
+}
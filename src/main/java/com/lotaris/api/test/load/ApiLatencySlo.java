@@ -0,0 +1,117 @@
+package com.lotaris.api.test.load;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service level objective of a load test: a maximum latency at a percentile and a maximum error
+ * rate.
+ *
+ * <pre>
+ * // p99 &lt; 200 ms and less than 0.1% errors
+ * new ApiLatencySlo(99, 200, TimeUnit.MILLISECONDS).withMaxErrorRate(0.001)
+ * </pre>
+ *
+ * @see ApiCapacitySearch
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiLatencySlo {
+
+	/**
+	 * The percentile of the latency objective (between 0 and 100).
+	 */
+	private final double percentile;
+	/**
+	 * The maximum latency at the percentile in microseconds (exclusive).
+	 */
+	private final long maxLatency;
+	/**
+	 * The maximum ratio of failed iterations (inclusive).
+	 */
+	private double maxErrorRate;
+
+	/**
+	 * Constructs an objective with no tolerated errors.
+	 *
+	 * @param percentile the percentile of the latency objective (e.g. 99)
+	 * @param maxLatency the maximum latency at the percentile (exclusive)
+	 * @param unit the unit of the maximum latency
+	 * @throws IllegalArgumentException if the percentile is not between 0 and 100 or the latency
+	 * is not strictly positive
+	 */
+	public ApiLatencySlo(double percentile, long maxLatency, TimeUnit unit) {
+		if (!(percentile > 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("Percentile must be between 0 (exclusive) and 100, got " + percentile);
+		} else if (maxLatency <= 0) {
+			throw new IllegalArgumentException("Maximum latency must be strictly positive, got " + maxLatency);
+		}
+
+		this.percentile = percentile;
+		this.maxLatency = unit.toMicros(maxLatency);
+	}
+
+	/**
+	 * Sets the maximum ratio of failed iterations (or requests) of a load test.
+	 *
+	 * @param maxErrorRate a ratio between 0 and 1 (e.g. 0.001 for 0.1%)
+	 * @return this objective
+	 * @throws IllegalArgumentException if the ratio is not between 0 and 1
+	 */
+	public ApiLatencySlo withMaxErrorRate(double maxErrorRate) {
+		if (!(maxErrorRate >= 0 && maxErrorRate <= 1)) {
+			throw new IllegalArgumentException("Maximum error rate must be between 0 and 1, got " + maxErrorRate);
+		}
+		this.maxErrorRate = maxErrorRate;
+		return this;
+	}
+
+	/**
+	 * @return the percentile of the latency objective (between 0 and 100)
+	 */
+	public double getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * @param unit the unit of the returned latency
+	 * @return the maximum latency at the percentile (exclusive)
+	 */
+	public long getMaxLatency(TimeUnit unit) {
+		return unit.convert(maxLatency, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * @return the maximum ratio of failed iterations (between 0 and 1)
+	 */
+	public double getMaxErrorRate() {
+		return maxErrorRate;
+	}
+
+	/**
+	 * Indicates whether a load test met this objective. A load test without iterations does not
+	 * meet any objective.
+	 *
+	 * @param report the load test report
+	 * @return true if the latency at the percentile and the error rate are within the objective
+	 */
+	public boolean isMetBy(ApiLoadTestReport report) {
+		return report.getIterations() > 0
+				&& getErrorRate(report) <= maxErrorRate
+				&& report.getLatencyHistogram().getValueAtPercentile(percentile) < maxLatency;
+	}
+
+	/**
+	 * @param report a load test report
+	 * @return the ratio of failed iterations of the load test (0 if there were none)
+	 */
+	static double getErrorRate(ApiLoadTestReport report) {
+		return report.getIterations() > 0 ? report.getFailedIterations() / (double) report.getIterations() : 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ENGLISH, "p%s < %.3f ms, error rate <= %s%%",
+				ApiLoadTestReport.formatPercentile(percentile),
+				maxLatency / 1000.0, maxErrorRate * 100);
+	}
+}
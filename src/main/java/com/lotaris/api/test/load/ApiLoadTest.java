@@ -0,0 +1,58 @@
+package com.lotaris.api.test.load;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation to run an API test method as a load test. The method is executed repeatedly by
+ * concurrent virtual users until the configured duration has elapsed, and the latency of each
+ * request is recorded (see {@link ApiLoadTestReport}).
+ *
+ * <p>Each virtual user has its own headers manager (initialized with the headers configured for
+ * all requests of the test) and its own cookies, but all virtual users share the connection pool of
+ * the test.</p>
+ *
+ * <p>All virtual users run the test method on the same test instance: the test class cannot have
+ * mutable instance fields. Throughput is measured once all virtual users have started (after the
+ * ramp-up period).</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ApiLoadTest {
+
+	/**
+	 * Returns the number of concurrent virtual users.
+	 *
+	 * @return a number of virtual users
+	 */
+	int concurrency() default 10;
+
+	/**
+	 * Returns how long the test method is executed once all virtual users have started.
+	 *
+	 * @return a duration
+	 * @see #unit()
+	 */
+	long duration() default 30;
+
+	/**
+	 * Returns the period over which virtual users are started (they are started at regular
+	 * intervals). With no ramp-up, all virtual users start at once.
+	 *
+	 * @return a duration
+	 * @see #unit()
+	 */
+	long rampUp() default 0;
+
+	/**
+	 * Returns the unit of the duration and ramp-up period.
+	 *
+	 * @return a time unit
+	 */
+	TimeUnit unit() default TimeUnit.SECONDS;
+}
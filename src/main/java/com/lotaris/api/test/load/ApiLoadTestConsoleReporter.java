@@ -0,0 +1,43 @@
+package com.lotaris.api.test.load;
+
+import java.io.PrintStream;
+
+/**
+ * Load test and capacity search reporter that prints a summary of each report to a stream (the
+ * standard output by default).
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiLoadTestConsoleReporter implements IApiLoadTestReporter, IApiCapacityReporter {
+
+	/**
+	 * The stream to print reports to.
+	 */
+	private final PrintStream out;
+
+	/**
+	 * Constructs a reporter that prints to the standard output.
+	 */
+	public ApiLoadTestConsoleReporter() {
+		this(System.out);
+	}
+
+	/**
+	 * Constructs a reporter that prints to the specified stream.
+	 *
+	 * @param out the stream to print reports to
+	 */
+	public ApiLoadTestConsoleReporter(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void report(ApiLoadTestReport report) {
+		out.println(report);
+	}
+
+	@Override
+	public void report(ApiCapacityReport report) {
+		out.println(report);
+	}
+}
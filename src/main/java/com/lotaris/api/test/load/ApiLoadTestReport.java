@@ -0,0 +1,247 @@
+package com.lotaris.api.test.load;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Results of a load test: iteration and request counts, throughput and request latency
+ * distribution.
+ *
+ * <p>Latencies are recorded in microseconds in an HdrHistogram with 3 significant digits.</p>
+ *
+ * @see ApiLoadTest
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiLoadTestReport {
+
+	/**
+	 * Percentiles shown in the report summary.
+	 */
+	private static final double[] SUMMARY_PERCENTILES = new double[]{50.0, 90.0, 99.0, 99.9};
+
+	/**
+	 * The name of the test.
+	 */
+	private final String name;
+	/**
+	 * The number of virtual users.
+	 */
+	private final int concurrency;
+	/**
+	 * The total duration of the load test in nanoseconds.
+	 */
+	private final long elapsedTime;
+	/**
+	 * The number of executions of the test method.
+	 */
+	private final long iterations;
+	/**
+	 * The number of executions of the test method that failed.
+	 */
+	private final long failedIterations;
+	/**
+	 * The number of requests, whether completed or not.
+	 */
+	private final long requests;
+	/**
+	 * The number of requests that could not be completed.
+	 */
+	private final long failedRequests;
+	/**
+	 * The latency of requests completed during the measured duration in microseconds.
+	 */
+	private final Histogram latencies;
+	/**
+	 * The duration over which the throughput is measured in nanoseconds.
+	 */
+	private final long measuredTime;
+	/**
+	 * The number of requests sent during the measured duration.
+	 */
+	private final long measuredRequests;
+
+	/**
+	 * Constructs a new report.
+	 *
+	 * @param name the name of the test
+	 * @param concurrency the number of virtual users
+	 * @param elapsedTime the total duration of the load test in nanoseconds
+	 * @param iterations the number of executions of the test method
+	 * @param failedIterations the number of executions of the test method that failed
+	 * @param failedRequests the number of requests that could not be completed
+	 * @param latencies the latency of completed requests in microseconds
+	 */
+	public ApiLoadTestReport(String name, int concurrency, long elapsedTime, long iterations, long failedIterations, long failedRequests, Histogram latencies) {
+		this(name, concurrency, elapsedTime, iterations, failedIterations, latencies.getTotalCount() + failedRequests, failedRequests, latencies, elapsedTime, latencies.getTotalCount() + failedRequests);
+	}
+
+	/**
+	 * Constructs a new report whose throughput and latencies are measured over part of the load
+	 * test (e.g. once all virtual users have started).
+	 *
+	 * @param name the name of the test
+	 * @param concurrency the number of virtual users
+	 * @param elapsedTime the total duration of the load test in nanoseconds
+	 * @param iterations the number of executions of the test method
+	 * @param failedIterations the number of executions of the test method that failed
+	 * @param requests the number of requests, whether completed or not
+	 * @param failedRequests the number of requests that could not be completed
+	 * @param latencies the latency of requests completed during the measured duration in
+	 * microseconds
+	 * @param measuredTime the duration over which the throughput is measured in nanoseconds
+	 * @param measuredRequests the number of requests sent during the measured duration
+	 */
+	public ApiLoadTestReport(String name, int concurrency, long elapsedTime, long iterations, long failedIterations, long requests, long failedRequests, Histogram latencies, long measuredTime, long measuredRequests) {
+		this.name = name;
+		this.concurrency = concurrency;
+		this.elapsedTime = elapsedTime;
+		this.iterations = iterations;
+		this.failedIterations = failedIterations;
+		this.requests = requests;
+		this.failedRequests = failedRequests;
+		this.latencies = latencies;
+		this.measuredTime = measuredTime;
+		this.measuredRequests = measuredRequests;
+	}
+
+	/**
+	 * @return the name of the test
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of virtual users
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Returns the total duration of the load test, including the ramp-up period.
+	 *
+	 * @param unit the unit of the returned duration
+	 * @return the duration in the specified unit
+	 */
+	public long getElapsedTime(TimeUnit unit) {
+		return unit.convert(elapsedTime, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the number of executions of the test method
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the number of executions of the test method that failed
+	 */
+	public long getFailedIterations() {
+		return failedIterations;
+	}
+
+	/**
+	 * @return the number of requests, whether completed or not
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the number of requests that could not be completed (e.g. connection errors)
+	 */
+	public long getFailedRequests() {
+		return failedRequests;
+	}
+
+	/**
+	 * Returns the average number of requests per second over the measured duration of the load
+	 * test, which excludes the ramp-up period.
+	 *
+	 * @return a throughput in requests per second
+	 */
+	public double getThroughput() {
+		return measuredTime > 0 ? measuredRequests * (double) TimeUnit.SECONDS.toNanos(1) / measuredTime : 0;
+	}
+
+	/**
+	 * Returns the latency at the specified percentile.
+	 *
+	 * @param percentile a percentile (between 0 and 100)
+	 * @param unit the unit of the returned latency
+	 * @return the latency in the specified unit
+	 */
+	public long getLatencyAtPercentile(double percentile, TimeUnit unit) {
+		return unit.convert(latencies.getValueAtPercentile(percentile), TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Returns the latency distribution of requests completed during the measured duration of the
+	 * load test, which excludes the ramp-up period. Values are in microseconds.
+	 *
+	 * @return a histogram
+	 */
+	public Histogram getLatencyHistogram() {
+		return latencies;
+	}
+
+	@Override
+	public String toString() {
+
+		final StringBuilder builder = new StringBuilder();
+		builder.append(String.format(Locale.ENGLISH, "Load test %s: %d users, %.1f s, %d iterations (%d failed), %d requests (%d failed), %.1f req/s",
+				name, concurrency, elapsedTime / (double) TimeUnit.SECONDS.toNanos(1), iterations, failedIterations, getRequests(), failedRequests, getThroughput()));
+
+		builder.append("\n  latency (ms):").append(formatLatencies(latencies));
+
+		return builder.toString();
+	}
+
+	/**
+	 * Returns the percentiles shown in latency summaries (p50, p90, p99 and p99.9).
+	 *
+	 * @return a new array of percentiles
+	 */
+	public static double[] getSummaryPercentiles() {
+		return SUMMARY_PERCENTILES.clone();
+	}
+
+	/**
+	 * Formats the summary percentiles and maximum of a latency distribution in milliseconds.
+	 *
+	 * @param latencies latencies in microseconds
+	 * @return the formatted latencies (e.g. " p50=1.234 ... max=5.678")
+	 */
+	public static String formatLatencies(Histogram latencies) {
+
+		final StringBuilder builder = new StringBuilder();
+		for (double percentile : SUMMARY_PERCENTILES) {
+			builder.append(String.format(Locale.ENGLISH, " p%s=%.3f", formatPercentile(percentile), latencies.getValueAtPercentile(percentile) / 1000.0));
+		}
+		builder.append(String.format(Locale.ENGLISH, " max=%.3f", latencies.getMaxValue() / 1000.0));
+
+		return builder.toString();
+	}
+
+	/**
+	 * Formats the minimum, summary percentiles and maximum of a latency distribution in
+	 * milliseconds.
+	 *
+	 * @param latencies latencies in microseconds
+	 * @return the formatted latencies (e.g. " min=0.123 p50=1.234 ... max=5.678")
+	 */
+	public static String formatLatencyDistribution(Histogram latencies) {
+		return String.format(Locale.ENGLISH, " min=%.3f", latencies.getMinValue() / 1000.0) + formatLatencies(latencies);
+	}
+
+	/**
+	 * @param percentile a percentile
+	 * @return the percentile without decimals if it is an integer (e.g. "99" or "99.9")
+	 */
+	public static String formatPercentile(double percentile) {
+		return percentile == Math.floor(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+	}
+}
@@ -0,0 +1,86 @@
+package com.lotaris.api.test.load;
+
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiTestRequestBody;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import com.lotaris.api.test.headers.ApiHeadersManager;
+import com.lotaris.api.test.headers.ApiHeadersManager.HeaderPlan;
+
+/**
+ * Load scenario sending the same request over and over, built like the requests of an API test:
+ * from an URI builder, with headers configured by a headers manager and an optional body.
+ *
+ * <pre>
+ * new ApiRequestScenario(ApiTestRequest.GET, uri("things")).withHeaders(headersManager)
+ * </pre>
+ *
+ * <p>The URI builder must not be modified while the scenario is used. The headers of the headers
+ * manager are compiled once when it is set (including headers configured for the next request,
+ * which are applied to every request), and the same header plan configures every request.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiRequestScenario implements IApiLoadScenario {
+
+	/**
+	 * The HTTP method.
+	 */
+	private final String method;
+	/**
+	 * The URI builder.
+	 */
+	private final ApiUriBuilder uriBuilder;
+	/**
+	 * The request body (or null).
+	 */
+	private ApiTestRequestBody body;
+	/**
+	 * The header plan configuring each request (or null).
+	 */
+	private HeaderPlan headersPlan;
+
+	/**
+	 * Constructs a scenario without body or headers.
+	 *
+	 * @param method the HTTP method (see {@link ApiTestRequest} constants)
+	 * @param uriBuilder the URI builder
+	 */
+	public ApiRequestScenario(String method, ApiUriBuilder uriBuilder) {
+		this.method = method;
+		this.uriBuilder = uriBuilder;
+	}
+
+	/**
+	 * Sets the body of the requests.
+	 *
+	 * @param body the request body, or null for no body
+	 * @return this scenario
+	 */
+	public ApiRequestScenario withBody(ApiTestRequestBody body) {
+		this.body = body;
+		return this;
+	}
+
+	/**
+	 * Sets the headers of the requests.
+	 *
+	 * @param headersManager the headers manager configuring each request (later modifications of
+	 * the manager do not affect the scenario)
+	 * @return this scenario
+	 */
+	public ApiRequestScenario withHeaders(ApiHeadersManager headersManager) {
+		this.headersPlan = headersManager != null ? headersManager.compile() : null;
+		return this;
+	}
+
+	@Override
+	public ApiTestRequest buildRequest(long index) {
+
+		final ApiTestRequest request = new ApiTestRequest(method, uriBuilder, body);
+		if (headersPlan != null) {
+			headersPlan.apply(request);
+		}
+
+		return request;
+	}
+}
@@ -0,0 +1,306 @@
+package com.lotaris.api.test.load;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestConnectionPool;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.IApiTestTransport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Benchmark of the transports executing the requests of API test clients. A fixed number of
+ * requests is executed by concurrent threads after a warm-up phase, and the latency of each
+ * request is recorded in a load test report (see {@link ApiLoadTestReport}).
+ *
+ * <pre>
+ * ApiTestTransportBenchmark benchmark = new ApiTestTransportBenchmark(requestFactory)
+ *   .withConcurrency(8)
+ *   .withReporter(new ApiLoadTestConsoleReporter());
+ *
+ * benchmark.compare(pool,
+ *   pool.createTransport(ApiTestTransportEngine.CLASSIC),
+ *   pool.createTransport(ApiTestTransportEngine.ASYNC),
+ *   new ApiTestStubTransport(200, "application/json", "{}"));
+ * </pre>
+ *
+ * <p>Each request is built by the request factory, which must be thread-safe. Each iteration
+ * builds and executes one request: iterations whose request cannot be built or executed are
+ * counted as failed, and requests that cannot be executed are also counted as failed requests.
+ * The status of responses is not checked.</p>
+ *
+ * @see IApiTestTransport
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestTransportBenchmark {
+
+	/**
+	 * Builds the requests to execute.
+	 */
+	private final Callable<ApiTestRequest> requestFactory;
+	/**
+	 * The number of threads executing requests.
+	 */
+	private int concurrency;
+	/**
+	 * The number of requests executed before measuring.
+	 */
+	private long warmupRequests;
+	/**
+	 * The number of measured requests.
+	 */
+	private long requests;
+	/**
+	 * The reporter of the results (or null).
+	 */
+	private IApiLoadTestReporter reporter;
+
+	/**
+	 * Constructs a benchmark executing 10000 requests (after 1000 warm-up requests) on a single
+	 * thread.
+	 *
+	 * @param requestFactory builds the requests to execute (thread-safe)
+	 * @throws IllegalArgumentException if the request factory is null
+	 */
+	public ApiTestTransportBenchmark(Callable<ApiTestRequest> requestFactory) {
+		if (requestFactory == null) {
+			throw new IllegalArgumentException("Request factory is required");
+		}
+
+		this.requestFactory = requestFactory;
+		this.concurrency = 1;
+		this.warmupRequests = 1000;
+		this.requests = 10000;
+	}
+
+	/**
+	 * Sets the number of threads executing requests concurrently.
+	 *
+	 * @param concurrency the number of threads
+	 * @return this benchmark
+	 * @throws IllegalArgumentException if the value is not strictly positive
+	 */
+	public ApiTestTransportBenchmark withConcurrency(int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Benchmark concurrency must be at least 1, got " + concurrency);
+		}
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * Sets the number of requests executed before measuring, so that connections are opened and
+	 * code is compiled by the JIT.
+	 *
+	 * @param warmupRequests the number of warm-up requests
+	 * @return this benchmark
+	 * @throws IllegalArgumentException if the value is negative
+	 */
+	public ApiTestTransportBenchmark withWarmupRequests(long warmupRequests) {
+		if (warmupRequests < 0) {
+			throw new IllegalArgumentException("Number of warm-up requests cannot be negative, got " + warmupRequests);
+		}
+		this.warmupRequests = warmupRequests;
+		return this;
+	}
+
+	/**
+	 * Sets the number of measured requests.
+	 *
+	 * @param requests the number of requests
+	 * @return this benchmark
+	 * @throws IllegalArgumentException if the value is not strictly positive
+	 */
+	public ApiTestTransportBenchmark withRequests(long requests) {
+		if (requests <= 0) {
+			throw new IllegalArgumentException("Number of requests must be at least 1, got " + requests);
+		}
+		this.requests = requests;
+		return this;
+	}
+
+	/**
+	 * Sets the reporter of the results of each run.
+	 *
+	 * @param reporter the reporter, or null not to report results
+	 * @return this benchmark
+	 */
+	public ApiTestTransportBenchmark withReporter(IApiLoadTestReporter reporter) {
+		this.reporter = reporter;
+		return this;
+	}
+
+	/**
+	 * Runs the benchmark once for each transport, with clients sharing the connections of the
+	 * specified pool. Transports are benchmarked in order.
+	 *
+	 * @param connectionPool the connection pool
+	 * @param transports the transports to compare
+	 * @return the report of each transport, named after the transport
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public List<ApiLoadTestReport> compare(ApiTestConnectionPool connectionPool, IApiTestTransport... transports) throws InterruptedException {
+
+		final List<ApiLoadTestReport> reports = new ArrayList<>(transports.length);
+		for (IApiTestTransport transport : transports) {
+			final ApiTestClient client = connectionPool.createClient(transport);
+			try {
+				reports.add(run(transport.getName(), client));
+			} finally {
+				client.close();
+			}
+		}
+
+		return reports;
+	}
+
+	/**
+	 * Runs the benchmark with the specified client. The warm-up requests are executed first, then
+	 * the measured requests.
+	 *
+	 * @param name the name of the report
+	 * @param client the client executing the requests
+	 * @return the report of the measured requests
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public ApiLoadTestReport run(String name, ApiTestClient client) throws InterruptedException {
+
+		client.getConnectionPool().ensureCapacity(concurrency);
+
+		if (warmupRequests > 0) {
+			execute(client, warmupRequests);
+		}
+
+		final long start = System.nanoTime();
+		final List<Worker> workers = execute(client, requests);
+		final long elapsedTime = System.nanoTime() - start;
+
+		// merge the results of all workers
+		final Histogram latencies = new Histogram(3);
+		long iterations = 0;
+		long failedIterations = 0;
+		long failedRequests = 0;
+		for (Worker worker : workers) {
+			latencies.add(worker.latencies);
+			iterations += worker.iterations;
+			failedIterations += worker.failedIterations;
+			failedRequests += worker.failedRequests;
+		}
+
+		final ApiLoadTestReport report = new ApiLoadTestReport(name, concurrency, elapsedTime, iterations, failedIterations, failedRequests, latencies);
+		if (reporter != null) {
+			reporter.report(report);
+		}
+
+		return report;
+	}
+
+	/**
+	 * Executes requests with concurrent workers and waits for them to complete.
+	 *
+	 * @param client the client executing the requests
+	 * @param count the number of requests to execute
+	 * @return the terminated workers
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	private List<Worker> execute(ApiTestClient client, long count) throws InterruptedException {
+
+		final AtomicLong remaining = new AtomicLong(count);
+
+		final List<Worker> workers = new ArrayList<>(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			final Worker worker = new Worker(client, remaining);
+			worker.thread = new Thread(worker, "api-transport-benchmark-" + i);
+			workers.add(worker);
+		}
+
+		for (Worker worker : workers) {
+			worker.thread.start();
+		}
+
+		try {
+			for (Worker worker : workers) {
+				worker.thread.join();
+			}
+		} catch (InterruptedException ie) {
+			for (Worker worker : workers) {
+				worker.thread.interrupt();
+			}
+			Thread.currentThread().interrupt();
+			throw ie;
+		}
+
+		return workers;
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="Worker (runnable)">
+	/**
+	 * Worker executing requests on its own thread until the shared number of remaining requests
+	 * is exhausted. Its results are only read once its thread has terminated.
+	 */
+	private class Worker implements Runnable {
+
+		/**
+		 * The client executing the requests.
+		 */
+		private final ApiTestClient client;
+		/**
+		 * The number of requests that remain to be executed by all workers.
+		 */
+		private final AtomicLong remaining;
+		/**
+		 * The latency of completed requests in microseconds.
+		 */
+		private final Histogram latencies;
+		/**
+		 * The number of requests built (or not) and executed by this worker.
+		 */
+		private long iterations;
+		/**
+		 * The number of requests that could not be built or completed.
+		 */
+		private long failedIterations;
+		/**
+		 * The number of requests that were built but could not be completed.
+		 */
+		private long failedRequests;
+		/**
+		 * The thread of this worker.
+		 */
+		private Thread thread;
+
+		public Worker(ApiTestClient client, AtomicLong remaining) {
+			this.client = client;
+			this.remaining = remaining;
+			this.latencies = new Histogram(3);
+		}
+
+		@Override
+		public void run() {
+			while (remaining.getAndDecrement() > 0 && !Thread.currentThread().isInterrupted()) {
+				iterations++;
+
+				final ApiTestRequest request;
+				try {
+					request = requestFactory.call();
+				} catch (Exception e) {
+					failedIterations++;
+					continue;
+				}
+
+				final long start = System.nanoTime();
+				try {
+					client.execute(request);
+					latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+				} catch (Exception e) {
+					failedIterations++;
+					failedRequests++;
+				}
+			}
+		}
+	}
+	//</editor-fold>
+}
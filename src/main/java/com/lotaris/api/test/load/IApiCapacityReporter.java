@@ -0,0 +1,18 @@
+package com.lotaris.api.test.load;
+
+/**
+ * Receives the results of capacity searches. Load test reporters implementing this interface also
+ * receive the summary of capacity tests, after the report of each step.
+ *
+ * @see ApiCapacityTest
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiCapacityReporter {
+
+	/**
+	 * Reports the results of a capacity search.
+	 *
+	 * @param report the capacity report
+	 */
+	void report(ApiCapacityReport report);
+}
@@ -0,0 +1,24 @@
+package com.lotaris.api.test.load;
+
+import com.lotaris.api.test.client.ApiTestRequest;
+
+/**
+ * Scenario of a load injector: builds the requests sent to the API.
+ *
+ * <p>Implementations must be thread-safe: requests are built concurrently by the senders of the
+ * injector.</p>
+ *
+ * @see ApiArrivalRateInjector
+ * @see ApiRequestScenario
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiLoadScenario {
+
+	/**
+	 * Builds a request.
+	 *
+	 * @param index the index of the request in the load test (starting at 0)
+	 * @return a fully configured API request
+	 */
+	ApiTestRequest buildRequest(long index);
+}
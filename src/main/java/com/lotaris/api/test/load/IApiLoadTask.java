@@ -0,0 +1,22 @@
+package com.lotaris.api.test.load;
+
+/**
+ * Unit of work scheduled by a load injector, such as a request or an execution of a test method
+ * sending several requests.
+ *
+ * <p>Implementations must be thread-safe: tasks are executed concurrently by the senders of the
+ * injector.</p>
+ *
+ * @see ApiArrivalRateInjector#run(java.lang.String, com.lotaris.api.test.load.IApiLoadTask)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiLoadTask {
+
+	/**
+	 * Executes the task once.
+	 *
+	 * @param index the index of the execution in the load test (starting at 0)
+	 * @throws Exception if the execution failed
+	 */
+	void execute(long index) throws Exception;
+}
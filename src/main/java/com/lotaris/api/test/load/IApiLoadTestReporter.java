@@ -0,0 +1,18 @@
+package com.lotaris.api.test.load;
+
+/**
+ * Receives the results of load tests.
+ *
+ * @see ApiLoadTest
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public interface IApiLoadTestReporter {
+
+	/**
+	 * Reports the results of a load test. Called once all virtual users have stopped, whether the
+	 * test succeeded or not.
+	 *
+	 * @param report the load test report
+	 */
+	void report(ApiLoadTestReport report);
+}
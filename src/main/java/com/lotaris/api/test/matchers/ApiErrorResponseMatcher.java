@@ -1,10 +1,13 @@
 package com.lotaris.api.test.matchers;
 
 import com.jayway.jsonpath.InvalidPathException;
-import com.jayway.jsonpath.JsonPath;
 import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.utils.JsonPathUtils;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
@@ -14,6 +17,11 @@ import org.hamcrest.Description;
 /**
  * Ensures that a JSON API error response has the expected HTTP status code and errors.
  *
+ * <p>Each expected error is matched with the first actual error (in the order of the response)
+ * that it matches and that has not been matched yet. Actual errors are indexed by code, location
+ * type and location (and message) so that expectations are matched in constant time; only
+ * expectations with a message pattern scan the errors with the same code and location.</p>
+ *
  * @author Laurent Prevost <laurent.prevost@forbes-digital.com>
  */
 public class ApiErrorResponseMatcher extends BaseMatcher<ApiTestResponse> {
@@ -107,7 +115,7 @@ public class ApiErrorResponseMatcher extends BaseMatcher<ApiTestResponse> {
 		// ensure response has "errors" property
 		JSONArray errors;
 		try {
-			errors = JsonPath.read(response.getResponseAsString(), "$.errors");
+			errors = JsonPathUtils.read(response.getJsonPathDocument(), "$.errors");
 		} catch (InvalidPathException | ClassCastException e) {
 			hasErrorsProperty = false;
 			return false;
@@ -117,22 +125,16 @@ public class ApiErrorResponseMatcher extends BaseMatcher<ApiTestResponse> {
 		parseErrors(errors);
 
 		// ensure all expected errors are there
+		final ErrorIndex index = new ErrorIndex(actualErrors);
 		for (final ErrorExpectation expectedError : expectedErrors) {
-
-			boolean found = false;
-			for (final Error actualError : actualErrors) {
-				if (expectedError.matches(actualError)) {
-					actualErrors.remove(actualError);
-					found = true;
-					break;
-				}
-			}
-
-			if (!found) {
+			if (!index.consume(expectedError)) {
 				unmetErrorExpectations.add(expectedError);
 			}
 		}
 
+		// unexpected errors are those that were not matched
+		actualErrors = index.getRemainingErrors();
+
 		return httpStatusCodeMatches && hasErrorsProperty && invalidErrors.isEmpty()
 				&& unmetErrorExpectations.isEmpty() && actualErrors.isEmpty();
 	}
@@ -321,6 +323,13 @@ public class ApiErrorResponseMatcher extends BaseMatcher<ApiTestResponse> {
 			return builder.toString();
 		}
 
+		/**
+		 * @return the key of the errors this expectation can match (by code and location)
+		 */
+		public ErrorKey getLocationKey() {
+			return new ErrorKey(code, locationType, location, null);
+		}
+
 		public boolean matches(Error error) {
 
 			if (code != error.getCode()) {
@@ -344,4 +353,171 @@ public class ApiErrorResponseMatcher extends BaseMatcher<ApiTestResponse> {
 			}
 		}
 	}
+
+	/**
+	 * Key of an error: its code, location type, location and optionally its message.
+	 */
+	private static class ErrorKey {
+
+		private final int code;
+		private final String locationType;
+		private final String location;
+		private final String message;
+		private final int hashCode;
+
+		public ErrorKey(int code, String locationType, String location, String message) {
+			this.code = code;
+			this.locationType = locationType;
+			this.location = location;
+			this.message = message;
+			this.hashCode = Arrays.hashCode(new Object[]{code, locationType, location, message});
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof ErrorKey)) {
+				return false;
+			}
+
+			final ErrorKey other = (ErrorKey) obj;
+			return code == other.code && equal(locationType, other.locationType) && equal(location, other.location) && equal(message, other.message);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		private static boolean equal(String a, String b) {
+			return a != null ? a.equals(b) : b == null;
+		}
+	}
+
+	/**
+	 * Indices of errors in the order of the response. Matched errors are skipped lazily.
+	 */
+	private static class ErrorQueue {
+
+		private int[] indices = new int[4];
+		private int size;
+		private int head;
+
+		public void add(int index) {
+			if (size == indices.length) {
+				indices = Arrays.copyOf(indices, size * 2);
+			}
+			indices[size++] = index;
+		}
+
+		/**
+		 * @param consumed which errors have already been matched
+		 * @return the index of the first error that has not been matched, or -1 if there is none
+		 */
+		public int first(boolean[] consumed) {
+			while (head < size && consumed[indices[head]]) {
+				head++;
+			}
+			return head < size ? indices[head] : -1;
+		}
+	}
+
+	/**
+	 * Index of actual errors by code and location (all errors, and those with a non-empty message),
+	 * and by code, location and message.
+	 */
+	private static class ErrorIndex {
+
+		private final List<Error> errors;
+		private final boolean[] consumed;
+		private final Map<ErrorKey, ErrorQueue> byLocation;
+		private final Map<ErrorKey, ErrorQueue> byLocationWithMessage;
+		private final Map<ErrorKey, ErrorQueue> byMessage;
+
+		public ErrorIndex(List<Error> errors) {
+			this.errors = errors;
+			this.consumed = new boolean[errors.size()];
+			this.byLocation = new HashMap<>();
+			this.byLocationWithMessage = new HashMap<>();
+			this.byMessage = new HashMap<>();
+
+			for (int i = 0; i < errors.size(); i++) {
+				final Error error = errors.get(i);
+				final ErrorKey locationKey = new ErrorKey(error.getCode(), error.getLocationType(), error.getLocation(), null);
+
+				queue(byLocation, locationKey).add(i);
+				if (error.getMessage() != null && !error.getMessage().isEmpty()) {
+					queue(byLocationWithMessage, locationKey).add(i);
+				}
+				queue(byMessage, new ErrorKey(error.getCode(), error.getLocationType(), error.getLocation(), error.getMessage())).add(i);
+			}
+		}
+
+		/**
+		 * Matches an expectation with the first error it matches that has not been matched yet.
+		 *
+		 * @param expectation the error expectation
+		 * @return true if a matching error was found
+		 */
+		public boolean consume(ErrorExpectation expectation) {
+
+			final int index;
+			if (expectation.message != null) {
+				index = first(byMessage.get(new ErrorKey(expectation.code, expectation.locationType, expectation.location, expectation.message)));
+			} else if (expectation.messagePattern == null) {
+				index = first(byLocationWithMessage.get(expectation.getLocationKey()));
+			} else {
+				index = scan(byLocation.get(expectation.getLocationKey()), expectation);
+			}
+
+			if (index < 0) {
+				return false;
+			}
+
+			consumed[index] = true;
+			return true;
+		}
+
+		/**
+		 * @return the errors that have not been matched, in the order of the response
+		 */
+		public List<Error> getRemainingErrors() {
+			final List<Error> remaining = new ArrayList<>();
+			for (int i = 0; i < consumed.length; i++) {
+				if (!consumed[i]) {
+					remaining.add(errors.get(i));
+				}
+			}
+			return remaining;
+		}
+
+		private int first(ErrorQueue queue) {
+			return queue != null ? queue.first(consumed) : -1;
+		}
+
+		private int scan(ErrorQueue queue, ErrorExpectation expectation) {
+			if (queue == null) {
+				return -1;
+			}
+
+			for (int i = queue.head; i < queue.size; i++) {
+				final int index = queue.indices[i];
+				if (!consumed[index] && expectation.matches(errors.get(index))) {
+					return index;
+				}
+			}
+
+			return -1;
+		}
+
+		private static ErrorQueue queue(Map<ErrorKey, ErrorQueue> queues, ErrorKey key) {
+			ErrorQueue queue = queues.get(key);
+			if (queue == null) {
+				queue = new ErrorQueue();
+				queues.put(key, queue);
+			}
+			return queue;
+		}
+	}
 }
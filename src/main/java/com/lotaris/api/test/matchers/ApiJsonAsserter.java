@@ -0,0 +1,71 @@
+package com.lotaris.api.test.matchers;
+
+import com.jayway.jsonassert.JsonAsserter;
+import com.jayway.jsonpath.InvalidPathException;
+import com.lotaris.api.test.utils.JsonPathUtils;
+import org.hamcrest.Matcher;
+import org.hamcrest.Matchers;
+
+/**
+ * JsonPath asserter bound to a parsed JSON document. It behaves like the asserter returned by
+ * <tt>JsonAssert.with</tt>, but evaluates compiled expressions from the cache of
+ * {@link JsonPathUtils}: repeated assertions only cost the evaluation of the path.
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiJsonAsserter implements JsonAsserter {
+
+	/**
+	 * The JsonPath document (maps and lists).
+	 */
+	private final Object document;
+
+	/**
+	 * Constructs an asserter for a parsed JSON document.
+	 *
+	 * @param document the JsonPath document (maps and lists)
+	 * @see com.lotaris.api.test.client.ApiTestResponse#getJsonPathDocument()
+	 */
+	public ApiJsonAsserter(Object document) {
+		this.document = document;
+	}
+
+	@Override
+	public <T> JsonAsserter assertThat(String path, Matcher<T> matcher) {
+		final T actual = JsonPathUtils.read(document, path);
+		if (!matcher.matches(actual)) {
+			throw new AssertionError(String.format("JSON doesn't match.\nExpected:\n%s\nActual:\n%s", matcher.toString(), actual));
+		}
+		return this;
+	}
+
+	@Override
+	public <T> JsonAsserter assertEquals(String path, T expected) {
+		return assertThat(path, Matchers.equalTo(expected));
+	}
+
+	@Override
+	public JsonAsserter assertNotDefined(String path) {
+		try {
+			JsonPathUtils.read(document, path);
+		} catch (InvalidPathException ipe) {
+			return this;
+		}
+		throw new AssertionError(String.format("Document contains the path <%s> but was expected not to.", path));
+	}
+
+	@Override
+	public JsonAsserter assertNull(String path) {
+		return assertThat(path, Matchers.nullValue());
+	}
+
+	@Override
+	public <T> JsonAsserter assertNotNull(String path) {
+		return assertThat(path, Matchers.notNullValue());
+	}
+
+	@Override
+	public JsonAsserter and() {
+		return this;
+	}
+}
@@ -0,0 +1,172 @@
+package com.lotaris.api.test.matchers;
+
+import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.client.ApiTestTimings;
+import com.lotaris.api.test.load.ApiLoadTestReport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+
+/**
+ * Matches the latency distribution of a group of API responses (e.g. the responses of a batch of
+ * requests) against maximum latencies at one or more percentiles. The total time of each request
+ * is used unless {@link #measuringTimeToFirstByte()} is called.
+ *
+ * <pre>
+ * assertThat(batch.getResponses(), hasLatencyPercentile(99, 200, TimeUnit.MILLISECONDS).and(50, 50, TimeUnit.MILLISECONDS));
+ * </pre>
+ *
+ * <p>The responses match only if none of them is null (failed requests of a batch) and all of them
+ * have timings. The mismatch description shows the distribution of the latencies.</p>
+ *
+ * <p>Latencies are recorded in an HdrHistogram with 3 significant digits, so the latency at a
+ * percentile is only known within 0.1%. A percentile is within its maximum if the lowest latency
+ * equivalent to it is: latencies exactly at the maximum match, and so can latencies exceeding it
+ * by less than the precision of the histogram.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiLatencyPercentileMatcher extends BaseMatcher<Iterable<ApiTestResponse>> {
+
+	private final List<Double> percentiles;
+	private final List<Long> maxLatencies;
+	private boolean timeToFirstByte;
+	private Histogram latencies;
+	private int failedResponses;
+	private int untimedResponses;
+	private int missedObjective;
+
+	/**
+	 * Constructs a matcher requiring the latency at a percentile to be within a maximum.
+	 *
+	 * @param percentile the percentile (e.g. 99 or 99.9)
+	 * @param maxLatency the maximum latency at the percentile
+	 * @param unit the unit of the latency
+	 * @throws IllegalArgumentException if the percentile is not greater than 0 and at most 100 or
+	 * if the latency is negative
+	 */
+	public ApiLatencyPercentileMatcher(double percentile, long maxLatency, TimeUnit unit) {
+		this.percentiles = new ArrayList<>();
+		this.maxLatencies = new ArrayList<>();
+		and(percentile, maxLatency, unit);
+	}
+
+	/**
+	 * Also requires the latency at another percentile to be within a maximum.
+	 *
+	 * @param percentile the percentile (e.g. 50)
+	 * @param maxLatency the maximum latency at the percentile
+	 * @param unit the unit of the latency
+	 * @return this matcher
+	 * @throws IllegalArgumentException if the percentile is not greater than 0 and at most 100 or
+	 * if the latency is negative
+	 */
+	public final ApiLatencyPercentileMatcher and(double percentile, long maxLatency, TimeUnit unit) {
+		if (!(percentile > 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("Percentile must be greater than 0 and at most 100, got " + percentile);
+		} else if (maxLatency < 0) {
+			throw new IllegalArgumentException("Maximum latency cannot be negative, got " + maxLatency);
+		}
+		percentiles.add(percentile);
+		maxLatencies.add(unit.toNanos(maxLatency));
+		return this;
+	}
+
+	/**
+	 * Measures the time to first byte of each request instead of its total time.
+	 *
+	 * @return this matcher
+	 */
+	public ApiLatencyPercentileMatcher measuringTimeToFirstByte() {
+		this.timeToFirstByte = true;
+		return this;
+	}
+
+	@Override
+	public boolean matches(Object item) {
+		if (!(item instanceof Iterable)) {
+			return false;
+		}
+
+		// latencies are recorded in microseconds, like the latencies of load tests
+		latencies = new Histogram(3);
+		failedResponses = 0;
+		untimedResponses = 0;
+		missedObjective = -1;
+
+		for (Object element : (Iterable<?>) item) {
+			if (!(element instanceof ApiTestResponse)) {
+				failedResponses++;
+				continue;
+			}
+
+			final ApiTestTimings timings = ((ApiTestResponse) element).getTimings();
+			final long latency = timings == null ? ApiTestTimings.UNKNOWN
+					: timeToFirstByte ? timings.getTimeToFirstByte(TimeUnit.MICROSECONDS) : timings.getTotalTime(TimeUnit.MICROSECONDS);
+			if (latency == ApiTestTimings.UNKNOWN) {
+				untimedResponses++;
+			} else {
+				latencies.recordValue(latency);
+			}
+		}
+
+		if (failedResponses > 0 || untimedResponses > 0 || latencies.getTotalCount() == 0) {
+			return false;
+		}
+
+		// the value at a percentile is the highest value equivalent to it, which could exceed a
+		// maximum recorded exactly
+		for (int i = 0; i < percentiles.size(); i++) {
+			final long latency = latencies.lowestEquivalentValue(latencies.getValueAtPercentile(percentiles.get(i)));
+			if (TimeUnit.MICROSECONDS.toNanos(latency) > maxLatencies.get(i)) {
+				missedObjective = i;
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public void describeTo(Description description) {
+		for (int i = 0; i < percentiles.size(); i++) {
+			description.appendText(i == 0 ? "" : " and ").appendText(describeMeasure(percentiles.get(i)))
+					.appendText(" within ").appendText(ApiResponseMatcher.formatMillis(maxLatencies.get(i)));
+		}
+	}
+
+	@Override
+	public void describeMismatch(Object item, Description description) {
+
+		if (!(item instanceof Iterable)) {
+			description.appendText("was ").appendValue(item);
+			return;
+		} else if (latencies == null) {
+			matches(item);
+		}
+
+		if (failedResponses > 0) {
+			description.appendText(failedResponses + " request(s) failed");
+		} else if (untimedResponses > 0) {
+			description.appendText(untimedResponses + " response(s) have no timings");
+		} else if (latencies.getTotalCount() == 0) {
+			description.appendText("there are no responses");
+		} else {
+			final double percentile = percentiles.get(Math.max(missedObjective, 0));
+			description.appendText(describeMeasure(percentile)).appendText(" was ")
+					.appendText(ApiResponseMatcher.formatMillis(TimeUnit.MICROSECONDS.toNanos(latencies.getValueAtPercentile(percentile))))
+					.appendText(" over " + latencies.getTotalCount() + " responses (ms:" + ApiLoadTestReport.formatLatencyDistribution(latencies) + ")");
+		}
+	}
+
+	/**
+	 * @param percentile a percentile
+	 * @return the measure at the percentile (e.g. "p99 latency")
+	 */
+	private String describeMeasure(double percentile) {
+		return "p" + ApiLoadTestReport.formatPercentile(percentile) + (timeToFirstByte ? " time to first byte" : " latency");
+	}
+}
@@ -1,10 +1,16 @@
 package com.lotaris.api.test.matchers;
 
 import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.client.ApiTestTimings;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 
 /**
+ * Matches the status code and body of an API response and, optionally, the timings of the request
+ * that produced it (see {@link #within(long, TimeUnit)}).
+ *
  * @author Laurent Prevost <laurent.prevost@forbes-digital.com>
  */
 public class ApiResponseMatcher extends BaseMatcher<ApiTestResponse> {
@@ -14,6 +20,10 @@ public class ApiResponseMatcher extends BaseMatcher<ApiTestResponse> {
 	private String actualBody;
 	private boolean statusCodeMatches;
 	private boolean bodyMatches;
+	private long maxTotalTime = -1;
+	private long maxTimeToFirstByte = -1;
+	private ApiTestTimings actualTimings;
+	private boolean latencyMatches;
 
 	public ApiResponseMatcher withStatusCode(int expectedHttpStatusCode) {
 		this.expectedHttpStatusCode = expectedHttpStatusCode;
@@ -40,6 +50,40 @@ public class ApiResponseMatcher extends BaseMatcher<ApiTestResponse> {
 		return this;
 	}
 
+	/**
+	 * Also requires the request to have completed within the specified time, including waiting for
+	 * a connection and reading the response body.
+	 *
+	 * @param maxTotalTime the maximum total time
+	 * @param unit the unit of the time
+	 * @return this matcher
+	 * @throws IllegalArgumentException if the time is negative
+	 */
+	public ApiResponseMatcher within(long maxTotalTime, TimeUnit unit) {
+		if (maxTotalTime < 0) {
+			throw new IllegalArgumentException("Maximum total time cannot be negative, got " + maxTotalTime);
+		}
+		this.maxTotalTime = unit.toNanos(maxTotalTime);
+		return this;
+	}
+
+	/**
+	 * Also requires the response headers to have been received within the specified time after the
+	 * request started being sent.
+	 *
+	 * @param maxTimeToFirstByte the maximum time to first byte
+	 * @param unit the unit of the time
+	 * @return this matcher
+	 * @throws IllegalArgumentException if the time is negative
+	 */
+	public ApiResponseMatcher withTimeToFirstByteWithin(long maxTimeToFirstByte, TimeUnit unit) {
+		if (maxTimeToFirstByte < 0) {
+			throw new IllegalArgumentException("Maximum time to first byte cannot be negative, got " + maxTimeToFirstByte);
+		}
+		this.maxTimeToFirstByte = unit.toNanos(maxTimeToFirstByte);
+		return this;
+	}
+
 	@Override
 	public boolean matches(Object res) {
 		ApiTestResponse response = (ApiTestResponse) res;
@@ -55,7 +99,24 @@ public class ApiResponseMatcher extends BaseMatcher<ApiTestResponse> {
 		}
 
 		statusCodeMatches = response.getStatus() == expectedHttpStatusCode;
-		return bodyMatches && statusCodeMatches;
+
+		latencyMatches = true;
+		if (maxTotalTime >= 0 || maxTimeToFirstByte >= 0) {
+			actualTimings = response.getTimings();
+			latencyMatches = actualTimings != null && matchesLatency(actualTimings.getTotalTime(TimeUnit.NANOSECONDS), maxTotalTime)
+					&& matchesLatency(actualTimings.getTimeToFirstByte(TimeUnit.NANOSECONDS), maxTimeToFirstByte);
+		}
+
+		return bodyMatches && statusCodeMatches && latencyMatches;
+	}
+
+	/**
+	 * @param actual a measured duration in nanoseconds or {@link ApiTestTimings#UNKNOWN}
+	 * @param max the maximum duration in nanoseconds, or -1 if there is none
+	 * @return true if there is no maximum or if the duration is known and within the maximum
+	 */
+	private static boolean matchesLatency(long actual, long max) {
+		return max < 0 || (actual != ApiTestTimings.UNKNOWN && actual <= max);
 	}
 
 	@Override
@@ -64,6 +125,12 @@ public class ApiResponseMatcher extends BaseMatcher<ApiTestResponse> {
 		if (expectedBody != null) {
 			description.appendText("".equals(expectedBody) ? " and no body" : " and body " + expectedBody);
 		}
+		if (maxTotalTime >= 0) {
+			description.appendText(" within " + formatMillis(maxTotalTime));
+		}
+		if (maxTimeToFirstByte >= 0) {
+			description.appendText(" with a time to first byte within " + formatMillis(maxTimeToFirstByte));
+		}
 	}
 
 	@Override
@@ -81,8 +148,24 @@ public class ApiResponseMatcher extends BaseMatcher<ApiTestResponse> {
 			description.appendText(", status code is " + response.getStatus());
 		}
 
+		if (!latencyMatches) {
+			if (actualTimings == null) {
+				description.appendText(", timings were not recorded");
+			} else {
+				description.appendText(", took " + formatMillis(actualTimings.getTotalTime(TimeUnit.NANOSECONDS)) + " (" + actualTimings + ")");
+			}
+		}
+
 		if (!bodyMatches) {
 			description.appendText("\n          body: " + actualBody);
 		}
 	}
+
+	/**
+	 * @param nanos a duration in nanoseconds
+	 * @return the duration in milliseconds (e.g. "12.345 ms")
+	 */
+	static String formatMillis(long nanos) {
+		return String.format(Locale.ENGLISH, "%.3f ms", nanos / 1000000.0);
+	}
 }
@@ -1,12 +1,21 @@
 package com.lotaris.api.test.matchers;
 
-import com.jayway.jsonpath.JsonPath;
+import com.lotaris.api.test.client.ApiTestResponse;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
-import net.minidev.json.JSONArray;
-import net.minidev.json.JSONObject;
+import java.util.NoSuchElementException;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 
@@ -14,20 +23,31 @@ import org.hamcrest.Description;
  * Matcher for Json error responses coming from our API.
  * Should be used only when expecting multiple erorrs.
  *
+ * <p>The response (a JSON string or an {@link ApiTestResponse}) is read with a streaming parser:
+ * each error of the <tt>errors</tt> array is validated as it is read, without building the
+ * array in memory, and matching stops at the first error that is not expected or has no message.
+ * Expected errors are counted by location and code, so that each error is matched in constant
+ * time. A response that is not valid JSON or has no <tt>errors</tt> array does not match, and the
+ * mismatch description reports why.</p>
+ *
  * @author Laurent Prevost <laurent.prevost@forbes-digital.com>
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
  */
-public class JsonErrorMatcher extends BaseMatcher<String>{
+public class JsonErrorMatcher extends BaseMatcher<Object> {
 
-	private List<Entry<String, Integer>> expectedErrors;
-	// Needed because we consume errors in the other List while processing
 	private List<Entry<String, Integer>> expectedErrorsLog;
 
 	private boolean sizeMatches;
-	private boolean errorMatches = true;
-	private boolean errorMessageMatches = true;
-	private int errorsReceived = 0;
+	private boolean errorMatches;
+	private boolean errorMessageMatches;
+	private int errorsReceived;
+	private boolean errorsCounted;
 	private String missingErrorMessageLocation;
 	private int missingErrorMessageCode;
+	private Entry<String, Integer> mismatchedError;
+	private boolean unexpectedError;
+	private boolean hasErrorsArray;
+	private String parseError;
 
 	/**
 	 * Adds the list of errors to verify to the matcher
@@ -36,76 +56,128 @@ public class JsonErrorMatcher extends BaseMatcher<String>{
 	 * @return The matcher for convenience
 	 */
 	public JsonErrorMatcher withExpectedErrors(List<Entry<String, Integer>> expectedErrors) {
-		this.expectedErrors = new ArrayList<>(expectedErrors);
 		this.expectedErrorsLog = new ArrayList<>(expectedErrors);
 		return this;
 	}
 
 	@Override
 	public boolean matches(Object item) {
-		String response = (String) item;
-		if (response != null) {
-			JSONArray errors = JsonPath.read(response, "$.errors");
-			if (errors != null) {
-				// Check the size of the error list received
-				if (expectedErrors != null) {
-					sizeMatches = errors.size() == expectedErrors.size();
-					errorsReceived = errors.size();
+
+		// reset state
+		sizeMatches = true;
+		errorMatches = true;
+		errorMessageMatches = true;
+		errorsReceived = 0;
+		errorsCounted = false;
+		mismatchedError = null;
+		unexpectedError = false;
+		hasErrorsArray = true;
+		parseError = null;
+
+		if (item == null || expectedErrorsLog == null) {
+			return false;
+		}
+
+		// count the expected errors by location and code
+		final Map<Entry<String, Integer>, Integer> remaining = new HashMap<>();
+		for (Entry<String, Integer> expected : expectedErrorsLog) {
+			final Entry<String, Integer> key = new SimpleImmutableEntry<>(expected.getKey(), expected.getValue());
+			final Integer count = remaining.get(key);
+			remaining.put(key, count != null ? count + 1 : 1);
+		}
+
+		try (JsonParser parser = Json.createParser(createReader(item))) {
+			if (!moveToErrors(parser)) {
+				hasErrorsArray = false;
+				return false;
+			}
+
+			// check every error as it is read
+			Event event = parser.next();
+			while (event != Event.END_ARRAY) {
+				errorsReceived++;
+
+				final ParsedError error = event == Event.START_OBJECT ? readError(parser) : null;
+				if (error == null) {
+					skipValue(parser, event);
 				}
-				if (expectedErrors != null) {
-					Iterator<Object> error = errors.iterator();
-					boolean found;
-					// Check every error until found in the expected errors list
-					while (error.hasNext()) {
-						found = false;
-						JSONObject jsonError = (JSONObject) error.next();
-						Iterator<Entry<String, Integer>> expectedError = expectedErrors.iterator();
-						// Check code and location as well and verify a message is provided
-						while(expectedError.hasNext() && !found) {
-							Entry<String, Integer> e = expectedError.next();
-							// If found and correct, remove from the expected errors list
-							if (e.getKey().equals(jsonError.get("location")) && e.getValue().equals(jsonError.get("code"))){
-								if (jsonError.get("message") == null) {
-									missingErrorMessageLocation = (String) jsonError.get("location");
-									missingErrorMessageCode = (int) jsonError.get("code");
-									errorMessageMatches = false;
-									return false;
-								}
-								found = true;
-								expectedError.remove();
-							}
-						}
-						// If error was not found in the ecpected errors, fail
-						if (!found) {
-							errorMatches = false;
-							return false;
-						}
-					}
-					// If the expected error is not empty, it means an error expected was not present
-					if (!expectedErrors.isEmpty()) {
-						errorMatches = false;
-						return false;
-					}
-					return true;
+				final Entry<String, Integer> key = error != null && error.code != null ? new SimpleImmutableEntry<>(error.location, error.code) : null;
+				final Integer count = key != null ? remaining.get(key) : null;
+
+				if (count == null) {
+					// the error was not expected (or was expected less times)
+					errorMatches = false;
+					unexpectedError = true;
+					mismatchedError = error != null ? new SimpleImmutableEntry<>(error.location, error.code) : null;
+					sizeMatches = errorsReceived == expectedErrorsLog.size();
+					return false;
+				} else if (!error.hasMessage) {
+					missingErrorMessageLocation = error.location;
+					missingErrorMessageCode = error.code;
+					errorMessageMatches = false;
+					return false;
 				}
+
+				// consume the expected error
+				if (count == 1) {
+					remaining.remove(key);
+				} else {
+					remaining.put(key, count - 1);
+				}
+
+				event = parser.next();
 			}
+		} catch (JsonException | IllegalStateException | NoSuchElementException e) {
+			// the body is not valid JSON or ends unexpectedly
+			parseError = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+			return false;
 		}
-		return false;
+
+		errorsCounted = true;
+		sizeMatches = errorsReceived == expectedErrorsLog.size();
+
+		// If the expected errors are not all consumed, it means an error expected was not present
+		if (!remaining.isEmpty()) {
+			errorMatches = false;
+			for (Entry<String, Integer> expected : expectedErrorsLog) {
+				if (remaining.containsKey(new SimpleImmutableEntry<>(expected.getKey(), expected.getValue()))) {
+					mismatchedError = expected;
+					break;
+				}
+			}
+			return false;
+		}
+
+		return true;
 	}
 
 	@Override
 	public void describeMismatch(Object item, Description description) {
-		String response = (String) item;
-		if (response != null && !response.isEmpty()) {
+		if (item != null && !isEmpty(item)) {
+			if (parseError != null) {
+				description.appendText("The response could not be parsed as JSON: " + parseError + "\n");
+				return;
+			} else if (!hasErrorsArray) {
+				description.appendText("The response has no errors array.\n");
+				return;
+			}
+			if (!errorsCounted && expectedErrorsLog != null) {
+				// matching stopped early: count the remaining errors for the description
+				errorsReceived = countErrors(item);
+				sizeMatches = errorsReceived == expectedErrorsLog.size();
+			}
 			if (!sizeMatches) {
 				description.appendText("The size of the errors received doesn't match. Expected: " + expectedErrorsLog.size() + " Received: " + errorsReceived + "\n");
 			}
 			if (!errorMessageMatches) {
-				description.appendText("Error with location: " + missingErrorMessageLocation + " and code: " + missingErrorMessageCode + "doesn't have an error message.\n");
+				description.appendText("Error with location: " + missingErrorMessageLocation + " and code: " + missingErrorMessageCode + " doesn't have an error message.\n");
 			}
-			if (!errorMatches) {
+			if (!errorMatches && unexpectedError) {
+				description.appendText("At least one error that was received was not expected: \n");
+				description.appendText(mismatchedError != null ? "Location: " + mismatchedError.getKey() + " Code: " + mismatchedError.getValue() + "\n" : "(invalid error)\n");
+			} else if (!errorMatches) {
 				description.appendText("At least one error that was expected was not found in the response: \n");
-				description.appendText("Location: " + expectedErrorsLog.get(0).getKey() + " Code: " + expectedErrorsLog.get(0).getValue() + "\n");
+				description.appendText("Location: " + mismatchedError.getKey() + " Code: " + mismatchedError.getValue() + "\n");
 			}
 		}
 		else {
@@ -123,4 +195,146 @@ public class JsonErrorMatcher extends BaseMatcher<String>{
 		}
 	}
 
+	/**
+	 * Moves a parser to the start of the <tt>errors</tt> array of the root object.
+	 *
+	 * @param parser the parser
+	 * @return true if the parser is positioned after the start of the array, false if there is
+	 * no such array
+	 */
+	private static boolean moveToErrors(JsonParser parser) {
+		if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+			return false;
+		}
+
+		Event event = parser.next();
+		while (event != Event.END_OBJECT) {
+			final String name = parser.getString();
+			event = parser.next();
+			if ("errors".equals(name)) {
+				return event == Event.START_ARRAY;
+			}
+
+			skipValue(parser, event);
+			event = parser.next();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reads the code, location and presence of a message of an error object whose start event has
+	 * been consumed. Other properties are skipped.
+	 *
+	 * @param parser the parser
+	 * @return the error
+	 */
+	private static ParsedError readError(JsonParser parser) {
+
+		final ParsedError error = new ParsedError();
+		Event event = parser.next();
+		while (event != Event.END_OBJECT) {
+			final String name = parser.getString();
+			event = parser.next();
+
+			if ("code".equals(name)) {
+				error.code = event == Event.VALUE_NUMBER && parser.isIntegralNumber() ? toInteger(parser.getLong()) : null;
+			} else if ("location".equals(name)) {
+				error.location = event == Event.VALUE_STRING ? parser.getString() : null;
+			} else if ("message".equals(name)) {
+				error.hasMessage = event != Event.VALUE_NULL;
+			}
+
+			skipValue(parser, event);
+			event = parser.next();
+		}
+
+		return error;
+	}
+
+	/**
+	 * Skips a value whose first event has been consumed.
+	 *
+	 * @param parser the parser
+	 * @param event the first event of the value
+	 */
+	private static void skipValue(JsonParser parser, Event event) {
+		if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+			return;
+		}
+
+		int depth = 1;
+		while (depth > 0) {
+			final Event next = parser.next();
+			if (next == Event.START_OBJECT || next == Event.START_ARRAY) {
+				depth++;
+			} else if (next == Event.END_OBJECT || next == Event.END_ARRAY) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Counts the errors of a response.
+	 *
+	 * @param item the response
+	 * @return the number of elements of the <tt>errors</tt> array, or 0 if it could not be read
+	 */
+	private static int countErrors(Object item) {
+		try (JsonParser parser = Json.createParser(createReader(item))) {
+			if (!moveToErrors(parser)) {
+				return 0;
+			}
+
+			int count = 0;
+			Event event = parser.next();
+			while (event != Event.END_ARRAY) {
+				count++;
+				skipValue(parser, event);
+				event = parser.next();
+			}
+
+			return count;
+		} catch (JsonException | IllegalStateException | NoSuchElementException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param item a JSON string or an API response
+	 * @return a reader of the JSON
+	 */
+	private static Reader createReader(Object item) {
+		if (item instanceof ApiTestResponse) {
+			final ApiTestResponse response = (ApiTestResponse) item;
+			return new InputStreamReader(response.getResponseAsStream(), response.getResponseCharset());
+		}
+		return new StringReader((String) item);
+	}
+
+	/**
+	 * @param item a JSON string or an API response
+	 * @return true if the string or response body is empty
+	 */
+	private static boolean isEmpty(Object item) {
+		return item instanceof ApiTestResponse ? ((ApiTestResponse) item).getResponseLength() == 0 : ((String) item).isEmpty();
+	}
+
+	/**
+	 * @param value a long value
+	 * @return the value as an integer, or null if it does not fit
+	 */
+	private static Integer toInteger(long value) {
+		return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (int) value : null;
+	}
+
+	/**
+	 * Properties of an error object relevant to the matcher.
+	 */
+	private static class ParsedError {
+
+		private Integer code;
+		private String location;
+		private boolean hasMessage;
+	}
 }
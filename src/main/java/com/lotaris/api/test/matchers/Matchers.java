@@ -2,6 +2,7 @@ package com.lotaris.api.test.matchers;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import org.hamcrest.BaseMatcher;
@@ -32,6 +33,19 @@ public class Matchers {
 		return ApiErrorResponseMatcher.isApiErrorResponse(expectedHttpStatusCode);
 	}
 
+	/**
+	 * Builds a matcher of the latency distribution of a group of API responses.
+	 *
+	 * @param percentile the percentile (e.g. 99)
+	 * @param maxLatency the maximum latency at the percentile
+	 * @param unit the unit of the latency
+	 * @return a matcher to be used in an assertThat statement
+	 * @see ApiLatencyPercentileMatcher
+	 */
+	public static ApiLatencyPercentileMatcher hasLatencyPercentile(double percentile, long maxLatency, TimeUnit unit) {
+		return new ApiLatencyPercentileMatcher(percentile, maxLatency, unit);
+	}
+
 	public static interface CollectionComparator<T> {
 
 		boolean compare(T expObj, T actObj);
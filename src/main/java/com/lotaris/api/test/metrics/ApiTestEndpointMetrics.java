@@ -0,0 +1,151 @@
+package com.lotaris.api.test.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Metrics of the requests to an API endpoint, identified by an HTTP method and URI template:
+ * request and error counters and a latency timer.
+ *
+ * <p>Errors are requests that could not be completed or that received a server error response
+ * (5xx). Client error responses (4xx) are counted separately since API tests often expect them.
+ * Latencies are the total time of completed requests, recorded in microseconds.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestEndpointMetrics {
+
+	/**
+	 * The HTTP method.
+	 */
+	private final String method;
+	/**
+	 * The URI template.
+	 */
+	private final String uriTemplate;
+	/**
+	 * The number of requests.
+	 */
+	private final AtomicLong requests;
+	/**
+	 * The number of requests that could not be completed.
+	 */
+	private final AtomicLong failedRequests;
+	/**
+	 * The number of client error responses (4xx).
+	 */
+	private final AtomicLong clientErrors;
+	/**
+	 * The number of server error responses (5xx).
+	 */
+	private final AtomicLong serverErrors;
+	/**
+	 * The latency of completed requests in microseconds.
+	 */
+	private final ConcurrentHistogram latencies;
+
+	/**
+	 * Constructs empty metrics.
+	 *
+	 * @param method the HTTP method
+	 * @param uriTemplate the URI template
+	 */
+	public ApiTestEndpointMetrics(String method, String uriTemplate) {
+		this.method = method;
+		this.uriTemplate = uriTemplate;
+		this.requests = new AtomicLong();
+		this.failedRequests = new AtomicLong();
+		this.clientErrors = new AtomicLong();
+		this.serverErrors = new AtomicLong();
+		this.latencies = new ConcurrentHistogram(3);
+	}
+
+	/**
+	 * Records a completed request.
+	 *
+	 * @param status the HTTP status code of the response
+	 * @param latency the total time of the request in nanoseconds
+	 */
+	public void recordResponse(int status, long latency) {
+		requests.incrementAndGet();
+		if (status >= 500) {
+			serverErrors.incrementAndGet();
+		} else if (status >= 400) {
+			clientErrors.incrementAndGet();
+		}
+		latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(latency, 0)));
+	}
+
+	/**
+	 * Records a request that could not be completed.
+	 */
+	public void recordFailure() {
+		requests.incrementAndGet();
+		failedRequests.incrementAndGet();
+	}
+
+	/**
+	 * @return the HTTP method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the URI template
+	 */
+	public String getUriTemplate() {
+		return uriTemplate;
+	}
+
+	/**
+	 * @return the number of requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * @return the number of requests that could not be completed
+	 */
+	public long getFailedRequests() {
+		return failedRequests.get();
+	}
+
+	/**
+	 * @return the number of client error responses (4xx)
+	 */
+	public long getClientErrors() {
+		return clientErrors.get();
+	}
+
+	/**
+	 * @return the number of server error responses (5xx)
+	 */
+	public long getServerErrors() {
+		return serverErrors.get();
+	}
+
+	/**
+	 * Returns the proportion of requests that could not be completed or received a server error
+	 * response.
+	 *
+	 * @return an error rate between 0 and 1
+	 */
+	public double getErrorRate() {
+		final long total = requests.get();
+		return total > 0 ? (failedRequests.get() + serverErrors.get()) / (double) total : 0;
+	}
+
+	/**
+	 * Returns a copy of the latency distribution of completed requests. Values are in
+	 * microseconds.
+	 *
+	 * @return a histogram
+	 */
+	public Histogram getLatencyHistogram() {
+		return latencies.copy();
+	}
+}
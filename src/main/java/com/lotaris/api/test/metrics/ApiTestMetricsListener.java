@@ -0,0 +1,270 @@
+package com.lotaris.api.test.metrics;
+
+import com.lotaris.api.test.client.ApiTestException;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.client.ApiTestTimings;
+import com.lotaris.api.test.client.IApiTestRequestListener;
+import com.lotaris.api.test.load.ApiLoadTestReport;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Request listener that aggregates metrics (counters, error rates and latency timers) per HTTP
+ * method and URI template (see {@link ApiTestEndpointMetrics}).
+ *
+ * <p>URI templates are derived from request paths by replacing segments that look like
+ * identifiers (numbers, UUIDs and long hexadecimal strings) with <tt>{id}</tt>, e.g.
+ * <tt>/api/users/42/posts</tt> becomes <tt>/api/users/{id}/posts</tt>. The query string is
+ * ignored.</p>
+ *
+ * <p>Metrics can be written as JSON or CSV at any time, or automatically when the JVM shuts down
+ * if an output file is given to the constructor.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestMetricsListener implements IApiTestRequestListener {
+
+	/**
+	 * Path segments replaced by <tt>{id}</tt> in URI templates.
+	 */
+	private static final Pattern ID_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|[0-9a-fA-F]{16,}");
+	/**
+	 * Percentiles written for each endpoint (the summary percentiles of load test reports).
+	 */
+	private static final double[] PERCENTILES = ApiLoadTestReport.getSummaryPercentiles();
+
+	/**
+	 * Metrics by endpoint key (method and URI template).
+	 */
+	private final ConcurrentMap<String, ApiTestEndpointMetrics> metrics;
+
+	/**
+	 * Constructs a listener. Metrics must be written explicitly with {@link #write(java.io.File)}.
+	 */
+	public ApiTestMetricsListener() {
+		metrics = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Constructs a listener that writes its metrics to the specified file when the JVM shuts
+	 * down. The file is written as CSV if its name ends with <tt>.csv</tt>, as JSON otherwise.
+	 *
+	 * @param output the file to write metrics to
+	 */
+	public ApiTestMetricsListener(final File output) {
+		this();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write(output);
+			}
+		}, "api-test-metrics-export"));
+	}
+
+	@Override
+	public void onRequestStart(ApiTestRequest request) {
+	}
+
+	@Override
+	public void onResponseHeaders(ApiTestRequest request, int status) {
+	}
+
+	@Override
+	public void onResponseComplete(ApiTestRequest request, ApiTestResponse response) {
+		final ApiTestTimings timings = response.getTimings();
+		getEndpointMetrics(request).recordResponse(response.getStatus(), timings != null ? timings.getTotalTime(TimeUnit.NANOSECONDS) : 0);
+	}
+
+	@Override
+	public void onError(ApiTestRequest request, ApiTestException error) {
+		getEndpointMetrics(request).recordFailure();
+	}
+
+	/**
+	 * Returns the metrics of all endpoints, sorted by URI template and method.
+	 *
+	 * @return a list of endpoint metrics
+	 */
+	public List<ApiTestEndpointMetrics> getMetrics() {
+
+		final List<ApiTestEndpointMetrics> result = new ArrayList<>(metrics.values());
+		Collections.sort(result, new Comparator<ApiTestEndpointMetrics>() {
+			@Override
+			public int compare(ApiTestEndpointMetrics o1, ApiTestEndpointMetrics o2) {
+				final int templateComparison = o1.getUriTemplate().compareTo(o2.getUriTemplate());
+				return templateComparison != 0 ? templateComparison : o1.getMethod().compareTo(o2.getMethod());
+			}
+		});
+
+		return result;
+	}
+
+	/**
+	 * Writes the metrics to a file, as CSV if its name ends with <tt>.csv</tt>, as JSON otherwise.
+	 *
+	 * @param output the file to write
+	 * @throws ApiTestException if the file could not be written
+	 */
+	public void write(File output) {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+			if (output.getName().toLowerCase(Locale.ENGLISH).endsWith(".csv")) {
+				writeCsv(writer);
+			} else {
+				writeJson(writer);
+			}
+		} catch (IOException ioe) {
+			throw new ApiTestException("Could not write metrics to " + output, ioe);
+		}
+	}
+
+	/**
+	 * Writes the metrics as a JSON array with one object per endpoint. Latencies are in
+	 * milliseconds.
+	 *
+	 * @param writer the writer to write to (not closed)
+	 */
+	public void writeJson(Writer writer) {
+
+		final Map<String, Object> config = new HashMap<>();
+		config.put(JsonGenerator.PRETTY_PRINTING, true);
+
+		final JsonGenerator generator = Json.createGeneratorFactory(config).createGenerator(writer);
+		generator.writeStartArray();
+
+		for (ApiTestEndpointMetrics endpoint : getMetrics()) {
+			final Histogram latencies = endpoint.getLatencyHistogram();
+
+			generator.writeStartObject()
+					.write("method", endpoint.getMethod())
+					.write("uri", endpoint.getUriTemplate())
+					.write("requests", endpoint.getRequests())
+					.write("failedRequests", endpoint.getFailedRequests())
+					.write("clientErrors", endpoint.getClientErrors())
+					.write("serverErrors", endpoint.getServerErrors())
+					.write("errorRate", endpoint.getErrorRate());
+
+			generator.writeStartObject("latency")
+					.write("mean", latencies.getMean() / 1000.0);
+			for (double percentile : PERCENTILES) {
+				generator.write("p" + ApiLoadTestReport.formatPercentile(percentile), latencies.getValueAtPercentile(percentile) / 1000.0);
+			}
+			generator.write("max", latencies.getMaxValue() / 1000.0)
+					.writeEnd();
+
+			generator.writeEnd();
+		}
+
+		generator.writeEnd();
+		generator.flush();
+	}
+
+	/**
+	 * Writes the metrics as CSV with a header line and one line per endpoint. Latencies are in
+	 * milliseconds.
+	 *
+	 * @param writer the writer to write to (not closed)
+	 */
+	public void writeCsv(Writer writer) {
+
+		final PrintWriter out = new PrintWriter(writer);
+
+		out.print("method,uri,requests,failedRequests,clientErrors,serverErrors,errorRate,mean");
+		for (double percentile : PERCENTILES) {
+			out.print(",p" + ApiLoadTestReport.formatPercentile(percentile));
+		}
+		out.println(",max");
+
+		for (ApiTestEndpointMetrics endpoint : getMetrics()) {
+			final Histogram latencies = endpoint.getLatencyHistogram();
+
+			out.print(String.format(Locale.ENGLISH, "%s,%s,%d,%d,%d,%d,%.4f,%.3f",
+					endpoint.getMethod(), escapeCsv(endpoint.getUriTemplate()), endpoint.getRequests(), endpoint.getFailedRequests(),
+					endpoint.getClientErrors(), endpoint.getServerErrors(), endpoint.getErrorRate(), latencies.getMean() / 1000.0));
+			for (double percentile : PERCENTILES) {
+				out.print(String.format(Locale.ENGLISH, ",%.3f", latencies.getValueAtPercentile(percentile) / 1000.0));
+			}
+			out.println(String.format(Locale.ENGLISH, ",%.3f", latencies.getMaxValue() / 1000.0));
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Returns the URI template of a request URI: its path with identifier segments replaced by
+	 * <tt>{id}</tt>.
+	 *
+	 * @param uri the request URI
+	 * @return a URI template
+	 */
+	public static String toUriTemplate(URI uri) {
+
+		final String path = uri.getRawPath();
+		if (path == null || path.isEmpty()) {
+			return "/";
+		}
+
+		final String[] segments = path.split("/", -1);
+		final StringBuilder template = new StringBuilder(path.length());
+		for (int i = 0; i < segments.length; i++) {
+			if (i > 0) {
+				template.append('/');
+			}
+			template.append(ID_SEGMENT.matcher(segments[i]).matches() ? "{id}" : segments[i]);
+		}
+
+		return template.toString();
+	}
+
+	/**
+	 * Returns the metrics of the endpoint of a request, creating them if necessary.
+	 *
+	 * @param request the request
+	 * @return endpoint metrics
+	 */
+	private ApiTestEndpointMetrics getEndpointMetrics(ApiTestRequest request) {
+
+		// templates are not cached by path: paths with identifiers are almost all distinct
+		final String uriTemplate = toUriTemplate(request.getUri());
+		final String key = request.getMethod() + ' ' + uriTemplate;
+		ApiTestEndpointMetrics endpoint = metrics.get(key);
+		if (endpoint == null) {
+			final ApiTestEndpointMetrics newEndpoint = new ApiTestEndpointMetrics(request.getMethod(), uriTemplate);
+			endpoint = metrics.putIfAbsent(key, newEndpoint);
+			if (endpoint == null) {
+				endpoint = newEndpoint;
+			}
+		}
+
+		return endpoint;
+	}
+
+	/**
+	 * @param value a CSV value
+	 * @return the value, quoted if it contains special characters
+	 */
+	private static String escapeCsv(String value) {
+		return value.contains(",") || value.contains("\"") ? "\"" + value.replace("\"", "\"\"") + "\"" : value;
+	}
+}
@@ -1,11 +1,17 @@
 package com.lotaris.api.test.rules;
 
 import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestClientScope;
 import com.lotaris.api.test.client.IApiTestClientConfiguration;
 import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
 
 /**
- * JUnit rule to create and release an HTTP client for each test.
+ * JUnit rule to create and release an HTTP client for each test. Depending on its scope, the
+ * client either has its own connections or reuses connections shared with other tests. Another
+ * client can be bound to the current thread (e.g. for the virtual users of a load test) with
+ * {@link #bind(com.lotaris.api.test.client.ApiTestClient)}.
  *
  * @author Laurent Prevost <laurent.prevost@lotaris.com>
  * @author Simon Oulevay <simon.oulevay@lotaris.com>
@@ -17,10 +23,30 @@ public class ApiTestClientRule extends ExternalResource {
 	 */
 	private ApiTestClient client;
 
+	/**
+	 * API clients bound to specific threads.
+	 */
+	private final ThreadLocal<ApiTestClient> boundClient = new ThreadLocal<>();
+
 	/**
 	 * Client configuration
 	 */
 	private IApiTestClientConfiguration clientConfiguration;
+
+	/**
+	 * Scope of the client connections.
+	 */
+	private ApiTestClientScope scope;
+
+	/**
+	 * The rule providing shared connection pools (required for shared scopes).
+	 */
+	private ApiTestConnectionPoolRule connectionPoolRule;
+
+	/**
+	 * The class of the current test.
+	 */
+	private Class<?> testClass;
 	
 	/**
 	 * Constructor
@@ -28,12 +54,41 @@ public class ApiTestClientRule extends ExternalResource {
 	 * @param clientConfiguration The client configuration
 	 */
 	public ApiTestClientRule(IApiTestClientConfiguration clientConfiguration) {
+		this(clientConfiguration, ApiTestClientScope.TEST, null);
+	}
+
+	/**
+	 * Constructs a rule whose clients use connections with the specified scope.
+	 *
+	 * @param clientConfiguration the client configuration
+	 * @param scope the scope of the client connections
+	 * @param connectionPoolRule the rule providing shared connection pools (may be null for the
+	 * TEST scope)
+	 * @throws IllegalArgumentException if the scope is shared and no connection pool rule is given
+	 */
+	public ApiTestClientRule(IApiTestClientConfiguration clientConfiguration, ApiTestClientScope scope, ApiTestConnectionPoolRule connectionPoolRule) {
+		if (scope != ApiTestClientScope.TEST && connectionPoolRule == null) {
+			throw new IllegalArgumentException("A connection pool rule is required for scope " + scope);
+		}
+
 		this.clientConfiguration = clientConfiguration;
+		this.scope = scope;
+		this.connectionPoolRule = connectionPoolRule;
+	}
+
+	@Override
+	public Statement apply(Statement base, Description description) {
+		testClass = description.getTestClass();
+		return super.apply(base, description);
 	}
 	
 	@Override
 	protected void before() throws Throwable {
-		client = new ApiTestClient(clientConfiguration);
+		if (scope == ApiTestClientScope.TEST) {
+			client = new ApiTestClient(clientConfiguration);
+		} else {
+			client = connectionPoolRule.getConnectionPool(scope, testClass, clientConfiguration).createClient();
+		}
 	}
 
 	@Override
@@ -42,11 +97,30 @@ public class ApiTestClientRule extends ExternalResource {
 	}
 
 	/**
-	 * Returns the API test client.
+	 * Returns the API test client bound to the current thread, or the client of the test if there
+	 * is none.
 	 *
 	 * @return an API test client
 	 */
 	public ApiTestClient getClient() {
-		return client;
-	}	
+		final ApiTestClient bound = boundClient.get();
+		return bound != null ? bound : client;
+	}
+
+	/**
+	 * Binds an API test client to the current thread. It is returned by {@link #getClient()} in
+	 * this thread until {@link #unbind()} is called. The bound client is not closed by this rule.
+	 *
+	 * @param client the client to bind
+	 */
+	public void bind(ApiTestClient client) {
+		boundClient.set(client);
+	}
+
+	/**
+	 * Unbinds the API test client bound to the current thread (if any).
+	 */
+	public void unbind() {
+		boundClient.remove();
+	}
 }
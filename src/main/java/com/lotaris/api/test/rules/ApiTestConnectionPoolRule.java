@@ -0,0 +1,170 @@
+package com.lotaris.api.test.rules;
+
+import com.lotaris.api.test.client.ApiTestClientScope;
+import com.lotaris.api.test.client.ApiTestConnectionPool;
+import com.lotaris.api.test.client.ApiTestConnectionPoolConfiguration;
+import com.lotaris.api.test.client.IApiTestClientConfiguration;
+import com.lotaris.api.test.client.IApiTestClientExtendedConfiguration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * JUnit class rule to share HTTP connection pools between tests. Pools with the
+ * {@link ApiTestClientScope#CLASS} scope are closed after the last test of their test class. Pools
+ * with the {@link ApiTestClientScope#SUITE} scope are shared by all test classes with equal proxy
+ * settings and connection pool configurations (see
+ * {@link IApiTestClientExtendedConfiguration#getConnectionPoolConfiguration()}), even if each test
+ * builds its own client configuration, and closed when the JVM shuts down. The other settings of a
+ * suite pool (e.g. request listeners) are those of the first configuration that requested it.
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestConnectionPoolRule implements TestRule {
+
+	/**
+	 * Connection pools shared by the tests of a test class.
+	 */
+	private final Map<Class<?>, ApiTestConnectionPool> classPools;
+	/**
+	 * Connection pools shared by all test classes, by proxy settings and pool configuration.
+	 */
+	private final Map<SuitePoolKey, ApiTestConnectionPool> suitePools;
+
+	/**
+	 * Constructs a new rule.
+	 */
+	public ApiTestConnectionPoolRule() {
+		classPools = new HashMap<>();
+		suitePools = new HashMap<>();
+	}
+
+	@Override
+	public Statement apply(final Statement base, final Description description) {
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				try {
+					base.evaluate();
+				} finally {
+					releaseClassPool(description.getTestClass());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns the shared connection pool for the specified scope, creating it if necessary.
+	 *
+	 * @param scope the scope of the connection pool (CLASS or SUITE)
+	 * @param testClass the test class requesting the pool
+	 * @param clientConfiguration the client configuration
+	 * @return a shared connection pool
+	 * @throws IllegalArgumentException if the scope is not a shared scope
+	 */
+	public synchronized ApiTestConnectionPool getConnectionPool(ApiTestClientScope scope, Class<?> testClass, IApiTestClientConfiguration clientConfiguration) {
+		switch (scope) {
+			case CLASS:
+				if (!classPools.containsKey(testClass)) {
+					classPools.put(testClass, new ApiTestConnectionPool(clientConfiguration));
+				}
+				return classPools.get(testClass);
+			case SUITE:
+				if (suitePools.isEmpty()) {
+					Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+						@Override
+						public void run() {
+							releaseSuitePools();
+						}
+					}, "api-test-connection-pool-shutdown"));
+				}
+				final SuitePoolKey key = new SuitePoolKey(clientConfiguration);
+				if (!suitePools.containsKey(key)) {
+					suitePools.put(key, new ApiTestConnectionPool(clientConfiguration));
+				}
+				return suitePools.get(key);
+			default:
+				throw new IllegalArgumentException("Connection pools with scope " + scope + " cannot be shared");
+		}
+	}
+
+	/**
+	 * Closes the connection pool shared by the tests of a test class (if any).
+	 *
+	 * @param testClass the test class
+	 */
+	private void releaseClassPool(Class<?> testClass) {
+
+		final ApiTestConnectionPool pool;
+		synchronized (this) {
+			pool = classPools.remove(testClass);
+		}
+
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	/**
+	 * Closes all connection pools shared by test classes.
+	 */
+	private void releaseSuitePools() {
+
+		final List<ApiTestConnectionPool> pools;
+		synchronized (this) {
+			pools = new ArrayList<>(suitePools.values());
+			suitePools.clear();
+		}
+
+		for (ApiTestConnectionPool pool : pools) {
+			pool.close();
+		}
+	}
+
+	/**
+	 * Identifies the suite pool of a client configuration by value: its proxy settings and
+	 * connection pool configuration.
+	 */
+	private static final class SuitePoolKey {
+
+		private final boolean proxyEnabled;
+		private final String proxyHost;
+		private final int proxyPort;
+		private final List<String> proxyExceptions;
+		private final ApiTestConnectionPoolConfiguration poolConfiguration;
+
+		public SuitePoolKey(IApiTestClientConfiguration clientConfiguration) {
+			proxyEnabled = clientConfiguration.isProxyEnabled();
+			proxyHost = proxyEnabled ? clientConfiguration.getProxyHost() : null;
+			proxyPort = proxyEnabled ? clientConfiguration.getProxyPort() : 0;
+			proxyExceptions = proxyEnabled && clientConfiguration.getProxyExceptions() != null ? Arrays.asList(clientConfiguration.getProxyExceptions().clone()) : null;
+
+			// the key is a snapshot: modifying the configuration later must not change its hash code
+			final ApiTestConnectionPoolConfiguration configured = clientConfiguration instanceof IApiTestClientExtendedConfiguration
+					? ((IApiTestClientExtendedConfiguration) clientConfiguration).getConnectionPoolConfiguration() : null;
+			poolConfiguration = configured != null ? new ApiTestConnectionPoolConfiguration(configured) : new ApiTestConnectionPoolConfiguration();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SuitePoolKey)) {
+				return false;
+			}
+
+			final SuitePoolKey other = (SuitePoolKey) obj;
+			return proxyEnabled == other.proxyEnabled && Objects.equals(proxyHost, other.proxyHost) && proxyPort == other.proxyPort
+					&& Objects.equals(proxyExceptions, other.proxyExceptions) && poolConfiguration.equals(other.poolConfiguration);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(proxyEnabled, proxyHost, proxyPort, proxyExceptions, poolConfiguration);
+		}
+	}
+}
@@ -1,10 +1,17 @@
 package com.lotaris.api.test.rules;
 
 import com.lotaris.api.test.headers.ApiHeadersManager;
+import com.lotaris.api.test.headers.ConcurrentApiHeadersManager;
 import org.junit.rules.ExternalResource;
 
 /**
- * JUnit rule to create a headers manager to manage request headers for each test.
+ * JUnit rule to create a headers manager to manage request headers for each test. Another headers
+ * manager can be bound to the current thread (e.g. for the virtual users of a load test) with
+ * {@link #bind(com.lotaris.api.test.headers.ApiHeadersManager)}.
+ *
+ * <p>The headers manager of each test is a {@link ConcurrentApiHeadersManager}, so that requests
+ * can be configured from several threads: headers for all requests are shared, while headers for
+ * the next request only apply to the next request of the thread that configured them.</p>
  *
  * @author Simon Oulevay <simon.oulevay@lotaris.com>
  */
@@ -14,10 +21,14 @@ public class ApiTestHeadersManagerRule extends ExternalResource {
 	 * The headers manager.
 	 */
 	private ApiHeadersManager headersManager;
+	/**
+	 * Headers managers bound to specific threads.
+	 */
+	private final ThreadLocal<ApiHeadersManager> boundHeadersManager = new ThreadLocal<>();
 
 	@Override
 	protected void before() throws Throwable {
-		headersManager = new ApiHeadersManager();
+		headersManager = new ConcurrentApiHeadersManager();
 	}
 
 	@Override
@@ -25,11 +36,30 @@ public class ApiTestHeadersManagerRule extends ExternalResource {
 	}
 
 	/**
-	 * Returns the headers manager.
+	 * Returns the headers manager bound to the current thread, or the headers manager of the test
+	 * if there is none.
 	 *
 	 * @return a headers manager
 	 */
 	public ApiHeadersManager getHeadersManager() {
-		return headersManager;
+		final ApiHeadersManager bound = boundHeadersManager.get();
+		return bound != null ? bound : headersManager;
+	}
+
+	/**
+	 * Binds a headers manager to the current thread. It is returned by {@link #getHeadersManager()}
+	 * in this thread until {@link #unbind()} is called.
+	 *
+	 * @param headersManager the headers manager to bind
+	 */
+	public void bind(ApiHeadersManager headersManager) {
+		boundHeadersManager.set(headersManager);
+	}
+
+	/**
+	 * Unbinds the headers manager bound to the current thread (if any).
+	 */
+	public void unbind() {
+		boundHeadersManager.remove();
 	}
 }
@@ -0,0 +1,487 @@
+package com.lotaris.api.test.rules;
+
+import com.lotaris.api.test.AbstractApiTest;
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestConnectionPool;
+import com.lotaris.api.test.client.ApiTestException;
+import com.lotaris.api.test.headers.ApiHeadersManager;
+import com.lotaris.api.test.load.ApiCapacityReport;
+import com.lotaris.api.test.load.ApiCapacitySearch;
+import com.lotaris.api.test.load.ApiCapacityTest;
+import com.lotaris.api.test.load.ApiLatencySlo;
+import com.lotaris.api.test.load.ApiLoadTest;
+import com.lotaris.api.test.load.ApiLoadTestReport;
+import com.lotaris.api.test.load.IApiCapacityReporter;
+import com.lotaris.api.test.load.IApiLoadTask;
+import com.lotaris.api.test.load.IApiLoadTestReporter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * JUnit rule to run test methods annotated with {@link ApiLoadTest} as load tests, and test
+ * methods annotated with {@link ApiCapacityTest} as capacity searches. Other test methods are run
+ * normally.
+ *
+ * <p>The test method is executed repeatedly by each virtual user until the load test ends. Before
+ * each execution, the virtual user binds a copy of the headers manager of the test (as configured
+ * before the test method is run) to its thread. Each virtual user also binds its own API client,
+ * which has its own cookies but uses the connection pool of the client of the test.</p>
+ *
+ * <p>All virtual users run the test method on the same test instance, so load tests must be
+ * stateless: a test class with a load test cannot declare mutable instance fields (fields that are
+ * neither static, final nor rules). Objects referenced by final fields must be thread-safe. The
+ * throughput of a load test is measured once all virtual users have started.</p>
+ *
+ * <p>For capacity searches, the test method is executed by the senders of an open-model injector
+ * at each arrival rate, with a copy of the headers manager and a new client (closed when the
+ * execution completes) bound for each execution.</p>
+ *
+ * <p>This rule must be applied after the client, headers manager and header configuration rules.
+ * Requests are recorded with {@link #recordRequest(long)} and
+ * {@link #recordFailedRequest()}.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestLoadRule implements TestRule {
+
+	/**
+	 * The rule providing the API client of the test.
+	 */
+	private final ApiTestClientRule clientRule;
+	/**
+	 * The rule providing the headers manager of the test.
+	 */
+	private final ApiTestHeadersManagerRule headersManagerRule;
+	/**
+	 * Receives the results of load tests.
+	 */
+	private final IApiLoadTestReporter reporter;
+	/**
+	 * The virtual user running on the current thread (if any).
+	 */
+	private final ThreadLocal<VirtualUser> currentUser;
+
+	/**
+	 * Constructs a new rule.
+	 *
+	 * @param clientRule the rule providing the API client of the test
+	 * @param headersManagerRule the rule providing the headers manager of the test
+	 * @param reporter receives the results of load tests
+	 * @throws IllegalArgumentException if any argument is null
+	 */
+	public ApiTestLoadRule(ApiTestClientRule clientRule, ApiTestHeadersManagerRule headersManagerRule, IApiLoadTestReporter reporter) {
+		if (clientRule == null) {
+			throw new IllegalArgumentException("Client rule cannot be null");
+		} else if (headersManagerRule == null) {
+			throw new IllegalArgumentException("Headers manager rule cannot be null");
+		} else if (reporter == null) {
+			throw new IllegalArgumentException("Reporter cannot be null");
+		}
+
+		this.clientRule = clientRule;
+		this.headersManagerRule = headersManagerRule;
+		this.reporter = reporter;
+		this.currentUser = new ThreadLocal<>();
+	}
+
+	@Override
+	public Statement apply(final Statement base, final Description description) {
+
+		final ApiLoadTest loadTest = description.getAnnotation(ApiLoadTest.class);
+		final ApiCapacityTest capacityTest = description.getAnnotation(ApiCapacityTest.class);
+		if (loadTest != null && capacityTest != null) {
+			throw new IllegalArgumentException("Test method " + description.getDisplayName() + " cannot be both a load test and a capacity test");
+		} else if (capacityTest != null) {
+			return new Statement() {
+				@Override
+				public void evaluate() throws Throwable {
+					runCapacityTest(base, description, capacityTest);
+				}
+			};
+		} else if (loadTest == null) {
+			return base;
+		}
+
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				runLoadTest(base, description, loadTest);
+			}
+		};
+	}
+
+	/**
+	 * Records a completed request if the current thread is a virtual user of a load test. Does
+	 * nothing otherwise.
+	 *
+	 * @param latency the duration of the request in nanoseconds
+	 */
+	public void recordRequest(long latency) {
+		final VirtualUser user = currentUser.get();
+		if (user != null) {
+			user.requests++;
+			if (user.isMeasured()) {
+				user.latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(latency, 0)));
+				user.measuredRequests++;
+			}
+		}
+	}
+
+	/**
+	 * Records a request that could not be completed if the current thread is a virtual user of a
+	 * load test. Does nothing otherwise.
+	 */
+	public void recordFailedRequest() {
+		final VirtualUser user = currentUser.get();
+		if (user != null) {
+			user.requests++;
+			user.failedRequests++;
+			if (user.isMeasured()) {
+				user.measuredRequests++;
+			}
+		}
+	}
+
+	/**
+	 * Runs a load test, reports its results and throws the first failure of the test method (if
+	 * any).
+	 *
+	 * @param base the test method
+	 * @param description the description of the test method
+	 * @param loadTest the load test configuration
+	 * @throws Throwable the first failure of the test method
+	 */
+	private void runLoadTest(Statement base, Description description, ApiLoadTest loadTest) throws Throwable {
+		if (loadTest.concurrency() < 1) {
+			throw new IllegalArgumentException("Load test concurrency must be at least 1, got " + loadTest.concurrency());
+		}
+
+		ensureStateless(description);
+
+		final int concurrency = loadTest.concurrency();
+		final long rampUp = loadTest.unit().toNanos(loadTest.rampUp());
+		final long duration = loadTest.unit().toNanos(loadTest.duration());
+
+		// virtual users share the connection pool of the test client
+		final ApiTestConnectionPool connectionPool = clientRule.getClient().getConnectionPool();
+		connectionPool.ensureCapacity(concurrency);
+
+		// headers configured before the test method (on this thread) are the template of each
+		// virtual user
+		final ApiHeadersManager headersTemplate = new ApiHeadersManager(headersManagerRule.getHeadersManager());
+
+		// throughput is measured once all virtual users have started
+		final long start = System.nanoTime();
+		final long measureStart = start + rampUp;
+		final long end = measureStart + duration;
+
+		final List<VirtualUser> users = new ArrayList<>(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			final VirtualUser user = new VirtualUser(base, connectionPool, headersTemplate, start + rampUp * i / concurrency, measureStart, end);
+			user.thread = new Thread(user, "api-load-test-" + i);
+			users.add(user);
+		}
+
+		for (VirtualUser user : users) {
+			user.thread.start();
+		}
+
+		try {
+			for (VirtualUser user : users) {
+				user.thread.join();
+			}
+		} catch (InterruptedException ie) {
+			for (VirtualUser user : users) {
+				user.thread.interrupt();
+			}
+			Thread.currentThread().interrupt();
+			throw ie;
+		}
+
+		final long stop = System.nanoTime();
+		final long elapsedTime = stop - start;
+		final long measuredTime = Math.min(stop, end) - measureStart;
+
+		// merge the results of all virtual users
+		final Histogram latencies = new Histogram(3);
+		long iterations = 0;
+		long failedIterations = 0;
+		long requests = 0;
+		long failedRequests = 0;
+		long measuredRequests = 0;
+		Throwable failure = null;
+
+		for (VirtualUser user : users) {
+			latencies.add(user.latencies);
+			iterations += user.iterations;
+			failedIterations += user.failedIterations;
+			requests += user.requests;
+			failedRequests += user.failedRequests;
+			measuredRequests += user.measuredRequests;
+			if (failure == null) {
+				failure = user.failure;
+			}
+		}
+
+		reporter.report(new ApiLoadTestReport(description.getDisplayName(), concurrency, elapsedTime, iterations, failedIterations, requests, failedRequests, latencies, Math.max(measuredTime, 0), measuredRequests));
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Ensures that the test class of a load test has no mutable instance fields, since all virtual
+	 * users share the same test instance. Fields of {@link AbstractApiTest} are only set when the
+	 * test is constructed and are not checked.
+	 *
+	 * @param description the description of the test method
+	 * @throws IllegalArgumentException if the test class declares a mutable instance field
+	 */
+	private static void ensureStateless(Description description) {
+		for (Class<?> type = description.getTestClass(); type != null && type != AbstractApiTest.class && type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				final int modifiers = field.getModifiers();
+				if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && !field.isSynthetic()
+						&& field.getAnnotation(Rule.class) == null && field.getAnnotation(ClassRule.class) == null) {
+					throw new IllegalArgumentException("Load test " + description.getDisplayName() + " cannot run on a test instance with mutable field "
+							+ type.getSimpleName() + "." + field.getName() + " because all virtual users share the same test instance");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs a capacity search, reports the result of each step and of the search, and fails if the
+	 * capacity is lower than the expected minimum.
+	 *
+	 * @param base the test method
+	 * @param description the description of the test method
+	 * @param capacityTest the capacity test configuration
+	 * @throws Throwable if the capacity is too low
+	 */
+	private void runCapacityTest(Statement base, Description description, ApiCapacityTest capacityTest) throws Throwable {
+
+		final ApiLatencySlo slo = new ApiLatencySlo(capacityTest.percentile(), capacityTest.maxLatency(), capacityTest.latencyUnit())
+				.withMaxErrorRate(capacityTest.maxErrorRate());
+
+		final ApiCapacitySearch search = new ApiCapacitySearch(slo)
+				.withRates(capacityTest.startRate(), capacityTest.maxRate())
+				.withStepFactor(capacityTest.stepFactor())
+				.withPrecision(capacityTest.precision())
+				.withStepDuration(capacityTest.stepDuration(), capacityTest.unit())
+				.withWarmupDuration(capacityTest.warmup(), capacityTest.unit())
+				.withMaxSenders(capacityTest.maxSenders())
+				.withReporter(reporter);
+
+		// senders share the connection pool of the test client
+		final ApiTestConnectionPool connectionPool = clientRule.getClient().getConnectionPool();
+		connectionPool.ensureCapacity(capacityTest.maxSenders());
+
+		final TestMethodTask task = new TestMethodTask(base, connectionPool, new ApiHeadersManager(headersManagerRule.getHeadersManager()));
+		final ApiCapacityReport report = search.run(description.getDisplayName(), task);
+
+		if (reporter instanceof IApiCapacityReporter) {
+			((IApiCapacityReporter) reporter).report(report);
+		}
+
+		if (report.getMaxSustainableRate() < capacityTest.minRate()) {
+			throw new AssertionError(String.format(Locale.ENGLISH, "Expected a capacity of at least %.1f req/s\n%s", capacityTest.minRate(), report));
+		}
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="TestMethodTask">
+	/**
+	 * Load task executing the test method. Each execution is bound with its own client and a copy
+	 * of the headers manager; the client is closed when the execution completes, so that no client
+	 * outlives the step of the search that created it.
+	 */
+	private class TestMethodTask implements IApiLoadTask {
+
+		/**
+		 * The test method.
+		 */
+		private final Statement base;
+		/**
+		 * The connection pool shared by all senders.
+		 */
+		private final ApiTestConnectionPool connectionPool;
+		/**
+		 * The headers manager copied before each execution of the test method.
+		 */
+		private final ApiHeadersManager headersTemplate;
+
+		public TestMethodTask(Statement base, ApiTestConnectionPool connectionPool, ApiHeadersManager headersTemplate) {
+			this.base = base;
+			this.connectionPool = connectionPool;
+			this.headersTemplate = headersTemplate;
+		}
+
+		@Override
+		public void execute(long index) throws Exception {
+
+			final ApiTestClient client = connectionPool.createClient();
+			clientRule.bind(client);
+			headersManagerRule.bind(new ApiHeadersManager(headersTemplate));
+			try {
+				base.evaluate();
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new ApiTestException("Load test method failed", t);
+			} finally {
+				headersManagerRule.unbind();
+				clientRule.unbind();
+				client.close();
+			}
+		}
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="VirtualUser (runnable)">
+	/**
+	 * Virtual user repeatedly executing the test method on its own thread. Its results are only
+	 * read once its thread has terminated.
+	 */
+	private class VirtualUser implements Runnable {
+
+		/**
+		 * The test method.
+		 */
+		private final Statement base;
+		/**
+		 * The connection pool shared by all virtual users.
+		 */
+		private final ApiTestConnectionPool connectionPool;
+		/**
+		 * The headers manager copied before each execution of the test method.
+		 */
+		private final ApiHeadersManager headersTemplate;
+		/**
+		 * When this virtual user starts (in nanoseconds, see {@link System#nanoTime()}).
+		 */
+		private final long start;
+		/**
+		 * When all virtual users have started and throughput starts being measured (in
+		 * nanoseconds, see {@link System#nanoTime()}).
+		 */
+		private final long measureStart;
+		/**
+		 * When the load test ends (in nanoseconds, see {@link System#nanoTime()}).
+		 */
+		private final long end;
+		/**
+		 * The latency of requests completed while throughput is measured in microseconds.
+		 */
+		private final Histogram latencies;
+		/**
+		 * The thread of this virtual user.
+		 */
+		private Thread thread;
+		/**
+		 * The number of executions of the test method.
+		 */
+		private long iterations;
+		/**
+		 * The number of executions of the test method that failed.
+		 */
+		private long failedIterations;
+		/**
+		 * The number of requests, whether completed or not.
+		 */
+		private long requests;
+		/**
+		 * The number of requests that could not be completed.
+		 */
+		private long failedRequests;
+		/**
+		 * The number of requests completed or failed while throughput is measured.
+		 */
+		private long measuredRequests;
+		/**
+		 * The first failure of the test method.
+		 */
+		private Throwable failure;
+
+		public VirtualUser(Statement base, ApiTestConnectionPool connectionPool, ApiHeadersManager headersTemplate, long start, long measureStart, long end) {
+			this.base = base;
+			this.connectionPool = connectionPool;
+			this.headersTemplate = headersTemplate;
+			this.start = start;
+			this.measureStart = measureStart;
+			this.end = end;
+			this.latencies = new Histogram(3);
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				waitUntil(start);
+			} catch (InterruptedException ie) {
+				return;
+			}
+
+			final ApiTestClient client = connectionPool.createClient();
+			clientRule.bind(client);
+			currentUser.set(this);
+
+			try {
+				while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+					headersManagerRule.bind(new ApiHeadersManager(headersTemplate));
+					iterations++;
+
+					try {
+						base.evaluate();
+					} catch (Throwable t) {
+						failedIterations++;
+						if (failure == null) {
+							failure = t;
+						}
+					}
+				}
+			} finally {
+				currentUser.remove();
+				headersManagerRule.unbind();
+				clientRule.unbind();
+				client.close();
+			}
+		}
+
+		/**
+		 * Indicates whether a request ending now is measured: its latency is recorded and it counts
+		 * towards the throughput.
+		 *
+		 * @return true if throughput is currently measured
+		 */
+		private boolean isMeasured() {
+			final long now = System.nanoTime();
+			return now - measureStart >= 0 && now - end <= 0;
+		}
+
+		/**
+		 * Sleeps until the specified time.
+		 *
+		 * @param time the time to wait for (in nanoseconds, see {@link System#nanoTime()})
+		 * @throws InterruptedException if the thread is interrupted while sleeping
+		 */
+		private void waitUntil(long time) throws InterruptedException {
+			long remaining = time - System.nanoTime();
+			while (remaining > 0) {
+				TimeUnit.NANOSECONDS.sleep(remaining);
+				remaining = time - System.nanoTime();
+			}
+		}
+	}
+	//</editor-fold>
+}
@@ -0,0 +1,83 @@
+package com.lotaris.api.test.utils;
+
+import com.jayway.jsonpath.JsonPath;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Utility methods to evaluate JsonPath expressions.
+ *
+ * <p>Compiled expressions are kept in a global bounded cache, so that evaluating the same path
+ * again (e.g. in each test of a suite) does not tokenize it again. When the cache is full, the
+ * least recently used expression is evicted. A compiled expression does not hold any evaluation
+ * state and can be shared by threads.</p>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class JsonPathUtils {
+
+	/**
+	 * Maximum number of expressions kept in the cache of compiled expressions.
+	 */
+	private static final int MAX_CACHED_PATHS = 1024;
+	/**
+	 * Cache of compiled expressions by path, in access order (synchronized on itself).
+	 */
+	private static final Map<String, JsonPath> CACHE = new LinkedHashMap<String, JsonPath>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, JsonPath> eldest) {
+			return size() > MAX_CACHED_PATHS;
+		}
+	};
+
+	/**
+	 * Returns the compiled version of a JsonPath expression. Expressions are cached: compiling
+	 * the same path again returns the same instance.
+	 *
+	 * <p>Paths with filters (<tt>[?]</tt>) must be compiled with <tt>JsonPath.compile</tt>.</p>
+	 *
+	 * @param path the JsonPath expression
+	 * @return a compiled expression
+	 * @throws com.jayway.jsonpath.InvalidPathException if the path is invalid
+	 */
+	public static JsonPath compile(String path) {
+
+		if (path == null) {
+			return JsonPath.compile(path);
+		}
+
+		synchronized (CACHE) {
+			final JsonPath cached = CACHE.get(path);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		// compile outside of the lock; if another thread cached the path meanwhile, use its instance
+		final JsonPath compiled = JsonPath.compile(path);
+		synchronized (CACHE) {
+			final JsonPath existing = CACHE.get(path);
+			if (existing != null) {
+				return existing;
+			}
+			CACHE.put(path, compiled);
+		}
+
+		return compiled;
+	}
+
+	/**
+	 * Evaluates a JsonPath expression on a parsed JSON document.
+	 *
+	 * @param <T> the type of the result
+	 * @param document the JsonPath document (maps and lists)
+	 * @param path the JsonPath expression
+	 * @return the result of the evaluation
+	 * @throws com.jayway.jsonpath.InvalidPathException if the path is invalid or does not exist in
+	 * the document
+	 * @see com.lotaris.api.test.client.ApiTestResponse#getJsonPathDocument()
+	 */
+	public static <T> T read(Object document, String path) {
+		return compile(path).read(document);
+	}
+}
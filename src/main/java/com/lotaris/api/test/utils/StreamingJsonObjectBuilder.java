@@ -0,0 +1,530 @@
+package com.lotaris.api.test.utils;
+
+import com.lotaris.api.test.client.ApiTestRequestBody;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+/**
+ * JSON object builder with the same methods as {@link SmartJsonObjectBuilder}, which writes each
+ * name/value pair with a JSON generator as it is added instead of building a tree of JSON values.
+ * The generated bytes are used as is as the body of the request, so that building and sending a
+ * body serializes it only once.
+ *
+ * <p>Since pairs are written in order, a name cannot be replaced once added, and nested objects
+ * and arrays are written with {@link #startObject(java.lang.String)},
+ * {@link #startArray(java.lang.String)} and {@link #end()}. Values of arrays are added with the
+ * <tt>addValue</tt> methods.</p>
+ *
+ * <pre>
+ * postResource(new StreamingJsonObjectBuilder()
+ *		.add("name", "foo")
+ *		.startArray("tags").addValue("a").addValue("b").end(), "things");
+ * </pre>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class StreamingJsonObjectBuilder {
+
+	/**
+	 * Shared generator factory (looking up the JSON provider for each generator is expensive).
+	 */
+	private static final JsonGeneratorFactory GENERATOR_FACTORY = Json.createGeneratorFactory(Collections.<String, Object>emptyMap());
+
+	private final BodyOutputStream buffer;
+	private final JsonGenerator generator;
+	private ApiTestRequestBody body;
+
+	/**
+	 * Constructs a builder of an empty JSON object.
+	 */
+	public StreamingJsonObjectBuilder() {
+		this(4096);
+	}
+
+	/**
+	 * Constructs a builder of an empty JSON object.
+	 *
+	 * @param initialCapacity the initial capacity of the body buffer in bytes
+	 */
+	public StreamingJsonObjectBuilder(int initialCapacity) {
+		buffer = new BodyOutputStream(initialCapacity);
+		generator = GENERATOR_FACTORY.createGenerator(buffer, StandardCharsets.UTF_8);
+		generator.writeStartObject();
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="Name/value pairs">
+	/**
+	 * Adds a name/<tt>JsonValue</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, JsonValue value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonString</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, String value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonNumber</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, BigInteger value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonNumber</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, BigDecimal value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonNumber</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, int value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonNumber</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, long value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonNumber</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, double value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonValue#TRUE</tt> or name/<tt>JsonValue#FALSE</tt> pair to the current
+	 * JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @param value value in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, boolean value) {
+		generator().write(name, value);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonValue#NULL</tt> pair to the current JSON object.
+	 *
+	 * @param name name in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addNull(String name) {
+		generator().writeNull(name);
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonObject</tt> pair to the current JSON object. The value is built from the
+	 * specified object builder.
+	 *
+	 * @param name name in the name/value pair
+	 * @param builder the value is the object associated with this builder
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, JsonObjectBuilder builder) {
+		generator().write(name, builder.build());
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonArray</tt> pair to the current JSON object. The value is built from the
+	 * specified array builder.
+	 *
+	 * @param name name in the name/value pair
+	 * @param builder the value is the array associated with this builder
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, JsonArrayBuilder builder) {
+		generator().write(name, builder.build());
+		return this;
+	}
+
+	/**
+	 * Adds a name/<tt>JsonObject</tt> pair to the current JSON object. The value is built from the
+	 * specified object builder.
+	 *
+	 * @param name name in the name/value pair
+	 * @param builder the value is the object associated with this builder
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder add(String name, SmartJsonObjectBuilder builder) {
+		generator().write(name, builder.build());
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, JsonValue value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, String value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, BigInteger value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, BigDecimal value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, Integer value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, Long value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, Double value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addIfNotNull(String name, Boolean value) {
+		if (value != null) {
+			generator().write(name, value);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, JsonValue value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, String value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, BigInteger value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, BigDecimal value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, Integer value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, Long value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, Double value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+
+	public StreamingJsonObjectBuilder addValueOrNull(String name, Boolean value) {
+		if (value != null) {
+			generator().write(name, value);
+		} else {
+			generator().writeNull(name);
+		}
+		return this;
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Nested objects and arrays">
+	/**
+	 * Starts a JSON object as the value of a name/value pair of the current JSON object. Pairs are
+	 * added to the new object until {@link #end()} is called.
+	 *
+	 * @param name name in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder startObject(String name) {
+		generator().writeStartObject(name);
+		return this;
+	}
+
+	/**
+	 * Starts a JSON object as a value of the current JSON array. Pairs are added to the new object
+	 * until {@link #end()} is called.
+	 *
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder startObject() {
+		generator().writeStartObject();
+		return this;
+	}
+
+	/**
+	 * Starts a JSON array as the value of a name/value pair of the current JSON object. Values are
+	 * added to the new array with the <tt>addValue</tt> methods until {@link #end()} is called.
+	 *
+	 * @param name name in the name/value pair
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder startArray(String name) {
+		generator().writeStartArray(name);
+		return this;
+	}
+
+	/**
+	 * Starts a JSON array as a value of the current JSON array.
+	 *
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder startArray() {
+		generator().writeStartArray();
+		return this;
+	}
+
+	/**
+	 * Ends the current nested JSON object or array.
+	 *
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder end() {
+		generator().writeEnd();
+		return this;
+	}
+
+	/**
+	 * Adds a value to the current JSON array.
+	 *
+	 * @param value the value
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addValue(JsonValue value) {
+		generator().write(value);
+		return this;
+	}
+
+	/**
+	 * Adds a <tt>JsonString</tt> value to the current JSON array.
+	 *
+	 * @param value the value
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addValue(String value) {
+		generator().write(value);
+		return this;
+	}
+
+	/**
+	 * Adds a <tt>JsonNumber</tt> value to the current JSON array.
+	 *
+	 * @param value the value
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addValue(BigInteger value) {
+		generator().write(value);
+		return this;
+	}
+
+	/**
+	 * Adds a <tt>JsonNumber</tt> value to the current JSON array.
+	 *
+	 * @param value the value
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addValue(BigDecimal value) {
+		generator().write(value);
+		return this;
+	}
+
+	/**
+	 * Adds a <tt>JsonNumber</tt> value to the current JSON array.
+	 *
+	 * @param value the value
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addValue(long value) {
+		generator().write(value);
+		return this;
+	}
+
+	/**
+	 * Adds a <tt>JsonNumber</tt> value to the current JSON array.
+	 *
+	 * @param value the value
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addValue(double value) {
+		generator().write(value);
+		return this;
+	}
+
+	/**
+	 * Adds a <tt>JsonValue#TRUE</tt> or <tt>JsonValue#FALSE</tt> value to the current JSON array.
+	 *
+	 * @param value the value
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addValue(boolean value) {
+		generator().write(value);
+		return this;
+	}
+
+	/**
+	 * Adds a <tt>JsonValue#NULL</tt> value to the current JSON array.
+	 *
+	 * @return the object builder
+	 */
+	public StreamingJsonObjectBuilder addNullValue() {
+		generator().writeNull();
+		return this;
+	}
+	//</editor-fold>
+
+	/**
+	 * Ends the JSON object and returns it as a request body with content type
+	 * <tt>application/json</tt>. The generated bytes are not copied. Nothing can be added once
+	 * the body is built; calling this method again returns the same body.
+	 *
+	 * @return an API request body
+	 * @throws javax.json.stream.JsonGenerationException if nested objects or arrays have not been
+	 * ended
+	 */
+	public ApiTestRequestBody build() {
+		if (body == null) {
+			generator.writeEnd();
+			generator.close();
+			body = new ApiTestRequestBody(buffer.getBuffer(), 0, buffer.size(), ApiTestRequestBody.APPLICATION_JSON, StandardCharsets.UTF_8);
+		}
+		return body;
+	}
+
+	/**
+	 * @return the generator
+	 * @throws IllegalStateException if the body has already been built
+	 */
+	private JsonGenerator generator() {
+		if (body != null) {
+			throw new IllegalStateException("The JSON object has already been built");
+		}
+		return generator;
+	}
+
+	/**
+	 * Byte array output stream giving access to its internal buffer, to avoid copying it.
+	 */
+	private static class BodyOutputStream extends ByteArrayOutputStream {
+
+		public BodyOutputStream(int size) {
+			super(size);
+		}
+
+		/**
+		 * @return the internal buffer (only the first {@link #size()} bytes are valid)
+		 */
+		public byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
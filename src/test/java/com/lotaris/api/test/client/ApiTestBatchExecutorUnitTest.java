@@ -0,0 +1,131 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiTestBatchExecutor
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestBatchExecutorUnitTest {
+
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() {
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final String path = exchange.getRequestURI().getPath();
+				if (path.endsWith("/broken")) {
+					throw new IOException("Broken handler");
+				} else if (path.endsWith("/error")) {
+					throw new AssertionError("Handler error");
+				} else if (path.endsWith("/interrupt")) {
+					// requests are dispatched on the thread of the worker
+					Thread.currentThread().interrupt();
+				}
+
+				final byte[] body = path.getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		};
+
+		client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	public void executeAllShouldReturnResponsesAndFailuresInSubmissionOrder() {
+
+		final List<ApiTestRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			requests.add(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com").path(i % 100 == 99 ? "broken" : String.valueOf(i))));
+		}
+
+		final ApiTestBatchResult result = client.executeAll(requests, 16);
+
+		assertEquals(1000, result.size());
+		assertFalse(result.isSuccessful());
+		assertEquals(10, result.getFailures().size());
+		assertEquals(Integer.valueOf(99), result.getFailures().firstKey());
+
+		for (int i = 0; i < 1000; i++) {
+			if (i % 100 == 99) {
+				assertNull(result.getResponses().get(i));
+				assertNotNull(result.getFailure(i));
+			} else {
+				assertEquals("/" + i, result.getResponse(i).getResponseAsString());
+				assertNull(result.getFailure(i));
+			}
+		}
+	}
+
+	@Test
+	public void executeAllShouldRecordErrorsAsFailures() {
+
+		final List<ApiTestRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			requests.add(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com").path(i == 5 ? "error" : String.valueOf(i))));
+		}
+
+		final ApiTestBatchResult result = client.executeAll(requests, 2);
+
+		assertFalse(result.isSuccessful());
+		assertEquals(1, result.getFailures().size());
+		assertNull(result.getResponses().get(5));
+		assertTrue(String.valueOf(result.getFailure(5).getCause()), result.getFailure(5).getCause() instanceof AssertionError);
+
+		try {
+			result.getResponse(5);
+			fail("Expected an ApiTestException");
+		} catch (ApiTestException ate) {
+			assertSame(result.getFailure(5), ate);
+		}
+
+		assertEquals("/9", result.getResponse(9).getResponseAsString());
+	}
+
+	@Test
+	public void executeAllShouldFailRequestsThatWereNotExecuted() {
+
+		// the only worker is interrupted by the third request
+		final List<ApiTestRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			requests.add(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com").path(i == 2 ? "interrupt" : String.valueOf(i))));
+		}
+
+		final ApiTestBatchResult result = client.executeAll(requests, 1);
+
+		assertFalse(Thread.currentThread().isInterrupted());
+		assertFalse(result.isSuccessful());
+		assertEquals("/1", result.getResponse(1).getResponseAsString());
+		assertEquals(7, result.getFailures().size());
+		assertEquals(Integer.valueOf(3), result.getFailures().firstKey());
+
+		for (int i = 3; i < 10; i++) {
+			assertNull(result.getResponses().get(i));
+			assertTrue(result.getFailure(i).getMessage(), result.getFailure(i).getMessage().endsWith("was not executed because the workers of the batch were interrupted"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void executeAllShouldRequireAPositiveConcurrency() {
+		client.executeAll(new ArrayList<ApiTestRequest>(), 0);
+	}
+}
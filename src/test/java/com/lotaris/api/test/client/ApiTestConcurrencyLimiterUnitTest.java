@@ -0,0 +1,108 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * @see ApiTestConcurrencyLimiter
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestConcurrencyLimiterUnitTest {
+
+	@Test
+	public void apiTestConcurrencyLimiterShouldBoundRequestsInFlight() {
+
+		// the handler records the highest number of requests it handled at the same time
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final int current = concurrent.incrementAndGet();
+				int max;
+				while (current > (max = maxConcurrent.get()) && !maxConcurrent.compareAndSet(max, current)) {
+				}
+
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				} finally {
+					concurrent.decrementAndGet();
+				}
+
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		};
+
+		final ApiTestConcurrencyLimiter limiter = new ApiTestConcurrencyLimiter(new ApiTestAimdLimit(4).withLimits(1, 4));
+		final ApiTestClient client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)).withConcurrencyLimiter(limiter));
+		try {
+			final List<ApiTestRequest> requests = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				requests.add(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/things")));
+			}
+
+			assertTrue(client.executeAll(requests, 16).isSuccessful());
+		} finally {
+			client.close();
+		}
+
+		assertTrue(maxConcurrent.get() <= 4);
+		assertEquals(4, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+		assertEquals(0, limiter.getQueueDepth());
+	}
+
+	@Test
+	public void apiTestAimdLimitShouldBackOffOncePerRoundTripAndGrowUnderLoad() {
+
+		final ApiTestAimdLimit limit = new ApiTestAimdLimit(10).withBackoffRatio(0.5);
+
+		// the second failed request was already in flight when the limit decreased
+		limit.onSample(TimeUnit.MILLISECONDS.toNanos(1), 10, true);
+		assertEquals(5, limit.getLimit());
+		limit.onSample(TimeUnit.MILLISECONDS.toNanos(10), 10, true);
+		assertEquals(5, limit.getLimit());
+
+		// about a limit's worth of successful requests adds one request
+		for (int i = 0; i < 6; i++) {
+			limit.onSample(TimeUnit.MILLISECONDS.toNanos(1), 5, false);
+		}
+		assertEquals(6, limit.getLimit());
+
+		// an underused limit does not grow
+		for (int i = 0; i < 100; i++) {
+			limit.onSample(TimeUnit.MILLISECONDS.toNanos(1), 1, false);
+		}
+		assertEquals(6, limit.getLimit());
+	}
+
+	@Test
+	public void apiTestGradientLimitShouldShrinkWhenLatencyIncreases() {
+
+		final ApiTestGradientLimit limit = new ApiTestGradientLimit(20).withLimits(1, 100);
+
+		// stable latencies let the limit grow
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(TimeUnit.MILLISECONDS.toNanos(10), limit.getLimit(), false);
+		}
+		final int grown = limit.getLimit();
+		assertTrue(grown > 20);
+
+		// queuing in the server increases latencies
+		for (int i = 0; i < 20; i++) {
+			limit.onSample(TimeUnit.MILLISECONDS.toNanos(100), limit.getLimit(), false);
+		}
+		assertTrue(limit.getLimit() < grown / 2);
+	}
+}
@@ -0,0 +1,81 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * @see ApiTestConnectionPool
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestConnectionPoolUnitTest {
+
+	@Test
+	public void closedConnectionPoolShouldNotCreateAnAsynchronousClient() {
+
+		final ApiTestConnectionPool pool = new ApiTestConnectionPool(new TestClientConfiguration());
+		final ApiTestClient client = pool.createClient();
+		assertNotNull(pool.getAsyncHttpClient());
+		pool.close();
+
+		try {
+			pool.getAsyncHttpClient();
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException ise) {
+			// expected
+		}
+
+		try {
+			client.executeAsync(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/things")));
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException ise) {
+			// expected
+		}
+	}
+
+	@Test
+	public void connectionPoolsShouldShareOneEvictionThread() {
+
+		final ApiTestConnectionPool[] pools = new ApiTestConnectionPool[3];
+		for (int i = 0; i < pools.length; i++) {
+			pools[i] = new ApiTestConnectionPool(new TestClientConfiguration().withConnectionPoolConfiguration(new ApiTestConnectionPoolConfiguration().withEvictionInterval(1, TimeUnit.SECONDS)));
+		}
+
+		try {
+			int evictors = 0;
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				if ("api-test-connection-evictor".equals(thread.getName())) {
+					assertTrue(thread.isDaemon());
+					evictors++;
+				}
+			}
+			assertEquals(1, evictors);
+		} finally {
+			for (ApiTestConnectionPool pool : pools) {
+				pool.close();
+			}
+		}
+	}
+
+	@Test
+	public void inProcessConnectionPoolShouldIgnoreCapacityChanges() {
+
+		final ApiTestConnectionPool pool = new ApiTestConnectionPool(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		})));
+		try {
+			pool.ensureCapacity(100);
+			assertEquals(204, pool.createClient().execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/things"))).getStatus());
+		} finally {
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.BasicAuthenticator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiTestInProcessTransport
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestInProcessTransportUnitTest {
+
+	private ApiTestInProcessTransport transport;
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() {
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestURI().getPath().endsWith("/login")) {
+					exchange.getResponseHeaders().add("Set-Cookie", "session=42; Path=/");
+					exchange.sendResponseHeaders(204, -1);
+				} else {
+					final byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + exchange.getRequestHeaders().getFirst("Cookie")).getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+					exchange.sendResponseHeaders(200, body.length);
+					exchange.getResponseBody().write(body);
+				}
+				exchange.close();
+			}
+		};
+
+		transport = ApiTestInProcessTransport.forHandler(handler, "/api");
+		client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(transport));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	public void apiTestInProcessTransportShouldDispatchRequestsToTheHandler() throws Exception {
+
+		assertEquals(204, client.execute(new ApiTestRequest(ApiTestRequest.POST, new ApiUriBuilder("http://api.example.com/api").path("login"))).getStatus());
+
+		final ApiTestResponse response = client.execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/api").path("things").queryParam("q", "a b")));
+		assertEquals(200, response.getStatus());
+		assertEquals("GET /api/things?q=a+b session=42", response.getResponseAsString());
+		assertTrue(response.getTimings().getResponseSize() > 0);
+
+		final ApiTestResponse asyncResponse = client.executeAsync(new ApiTestRequest(ApiTestRequest.DELETE, new ApiUriBuilder("http://api.example.com/api").path("things"))).get();
+		assertEquals("DELETE /api/things session=42", asyncResponse.getResponseAsString());
+	}
+
+	@Test
+	public void apiTestInProcessTransportShouldOnlyDispatchRequestsMatchingTheContextPath() {
+
+		final ApiTestResponse response = client.execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/other")));
+		assertEquals(404, response.getStatus());
+		assertEquals("<h1>404 Not Found</h1>No context found for request", response.getResponseAsString());
+	}
+
+	@Test
+	public void apiTestInProcessTransportShouldApplyTheAuthenticatorOfTheContext() {
+
+		transport.getContext().setAuthenticator(new BasicAuthenticator("test") {
+			@Override
+			public boolean checkCredentials(String username, String password) {
+				return "admin".equals(username) && "secret".equals(password);
+			}
+		});
+
+		final ApiTestResponse unauthorized = client.execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/api").path("things")));
+		assertEquals(401, unauthorized.getStatus());
+		assertEquals("Basic realm=\"test\"", unauthorized.getHeaderString("WWW-Authenticate"));
+
+		final ApiTestRequest request = new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/api").path("things"));
+		request.setHeader("Authorization", "Basic " + Base64.encodeBase64String("admin:secret".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(200, client.execute(request).getStatus());
+	}
+
+	@Test
+	public void apiTestInProcessTransportShouldFailAsynchronousRequestsWhoseConsumerStopsReading() throws Exception {
+
+		// the consumer never reads the response body
+		final Future<Void> future = client.getConnectionPool().getAsyncHttpClient().execute(HttpAsyncMethods.createGet("http://api.example.com/api/things"), new AbstractAsyncResponseConsumer<Void>() {
+			@Override
+			protected void onResponseReceived(HttpResponse response) {
+			}
+
+			@Override
+			protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) {
+			}
+
+			@Override
+			protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+			}
+
+			@Override
+			protected Void buildResult(HttpContext context) {
+				return null;
+			}
+
+			@Override
+			protected void releaseResources() {
+			}
+		}, null);
+
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("Expected an ExecutionException");
+		} catch (ExecutionException ee) {
+			assertTrue(ee.getCause().toString(), ee.getCause() instanceof IOException);
+			assertTrue(ee.getCause().getMessage(), ee.getCause().getMessage().startsWith("The response consumer stopped reading the response body"));
+		}
+	}
+}
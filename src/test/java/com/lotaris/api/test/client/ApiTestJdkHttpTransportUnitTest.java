@@ -0,0 +1,83 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiTestJdkHttpTransport
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestJdkHttpTransportUnitTest {
+
+	private HttpServer server;
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestURI().getPath().endsWith("/login")) {
+					exchange.getResponseHeaders().add("Set-Cookie", "session=42; Path=/");
+					exchange.sendResponseHeaders(204, -1);
+				} else {
+					final byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + exchange.getRequestHeaders().getFirst("Cookie")
+							+ " " + exchange.getRequestHeaders().getFirst("Content-Type") + " " + read(exchange.getRequestBody())).getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+					exchange.sendResponseHeaders(200, body.length);
+					exchange.getResponseBody().write(body);
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+
+		client = new ApiTestClient(new TestClientConfiguration().withConnectionPoolConfiguration(new ApiTestConnectionPoolConfiguration().withEngine(ApiTestTransportEngine.JDK)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void apiTestJdkHttpTransportShouldExecuteRequestsWithCookies() {
+
+		final String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+		assertEquals("jdk", client.getTransport().getName());
+
+		assertEquals(204, client.execute(new ApiTestRequest(ApiTestRequest.POST, new ApiUriBuilder(uri).path("login"))).getStatus());
+
+		final ApiTestResponse response = client.execute(new ApiTestRequest(ApiTestRequest.POST, new ApiUriBuilder(uri).path("things").queryParam("q", "a b"),
+				new ApiTestRequestBody("{\"a\":1}".getBytes(StandardCharsets.UTF_8), "application/json", StandardCharsets.UTF_8)));
+
+		assertEquals(200, response.getStatus());
+		assertEquals("POST /api/things?q=a+b session=42 application/json; charset=UTF-8 {\"a\":1}", response.getResponseAsString());
+		assertTrue(response.getTimings().getTimeToFirstByte(TimeUnit.NANOSECONDS) >= 0);
+	}
+
+	private static String read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		int n;
+		while ((n = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, n);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,138 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonWriter;
+import org.apache.http.HttpEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiTestRequestBody
+ * @see ApiTestJsonEntity
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestRequestBodyUnitTest {
+
+	private static final JsonObject JSON = Json.createObjectBuilder().add("name", "été").add("values", Json.createArrayBuilder().add(1).add(2)).build();
+
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() {
+		// echoes the framing headers and the body of the request
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final byte[] body = (exchange.getRequestHeaders().getFirst("Content-Length") + " " + exchange.getRequestHeaders().getFirst("Transfer-Encoding")
+						+ " " + new String(read(exchange.getRequestBody()), StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		};
+
+		client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	public void apiTestJsonEntityShouldWriteTheSameBytesEachTime() throws Exception {
+
+		final HttpEntity entity = ApiTestRequestBody.from(JSON).toEntity();
+		assertTrue(entity.isRepeatable());
+
+		final byte[] expected = serialize().getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			entity.writeTo(out);
+			assertArrayEquals(expected, out.toByteArray());
+			try (InputStream in = entity.getContent()) {
+				assertArrayEquals(expected, read(in));
+			}
+		}
+	}
+
+	@Test
+	public void apiTestJsonEntityShouldBeSentWithAContentLengthIfItIsKnown() {
+
+		final String json = serialize();
+		final long length = json.getBytes(StandardCharsets.UTF_8).length;
+
+		final HttpEntity entity = ApiTestRequestBody.from(JSON, length).toEntity();
+		assertEquals(length, entity.getContentLength());
+		assertFalse(entity.isChunked());
+		assertEquals(length + " null " + json, post(ApiTestRequestBody.from(JSON, length)));
+	}
+
+	@Test
+	public void apiTestJsonEntityShouldBeSentChunkedIfItsLengthIsUnknown() {
+
+		final HttpEntity entity = ApiTestRequestBody.from(JSON).toEntity();
+		assertEquals(-1, entity.getContentLength());
+		assertTrue(entity.isChunked());
+		assertEquals("null chunked " + serialize(), post(ApiTestRequestBody.from(JSON)));
+	}
+
+	@Test
+	public void apiTestRequestBodyShouldSendBufferedJsonWithAContentLength() {
+
+		final String json = serialize();
+		final long length = json.getBytes(StandardCharsets.UTF_8).length;
+
+		final HttpEntity entity = ApiTestRequestBody.fromBuffered(JSON).toEntity();
+		assertEquals(length, entity.getContentLength());
+		assertFalse(entity.isChunked());
+		assertEquals(length + " null " + json, post(ApiTestRequestBody.fromBuffered(JSON)));
+	}
+
+	@Test
+	public void apiTestRequestBodyShouldNotCopyTheBufferOfItsOutputStream() {
+
+		final ApiTestRequestBody.ExposedByteArrayOutputStream out = new ApiTestRequestBody.ExposedByteArrayOutputStream();
+		out.write('a');
+		final byte[] buffer = out.getBuffer();
+		assertTrue(buffer.length > out.size());
+
+		// bytes written later without growing the buffer are visible through it
+		out.write('b');
+		assertSame(buffer, out.getBuffer());
+		assertEquals('b', buffer[1]);
+	}
+
+	private String post(ApiTestRequestBody body) {
+		return client.execute(new ApiTestRequest(ApiTestRequest.POST, new ApiUriBuilder("http://api.example.com/things"), body)).getResponseAsString();
+	}
+
+	private static String serialize() {
+		final StringWriter writer = new StringWriter();
+		try (JsonWriter jsonWriter = Json.createWriter(writer)) {
+			jsonWriter.write(JSON);
+		}
+		return writer.toString();
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[16];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
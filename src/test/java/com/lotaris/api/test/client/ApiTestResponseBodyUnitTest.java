@@ -0,0 +1,129 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @see ApiTestResponseBody
+ * @see ApiTestResponseBufferingPolicy
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestResponseBodyUnitTest {
+
+	private static final int MEMORY_THRESHOLD = 64;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() {
+		// responds to /{length} with a body of that length, sent chunked if the query is "chunked"
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final byte[] body = body(Integer.parseInt(exchange.getRequestURI().getPath().substring(1)));
+				exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+				exchange.sendResponseHeaders(200, "chunked".equals(exchange.getRequestURI().getQuery()) ? 0 : body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		};
+
+		client = new ApiTestClient(new TestClientConfiguration()
+				.withInProcessTransport(ApiTestInProcessTransport.forHandler(handler))
+				.withResponseBufferingPolicy(new ApiTestResponseBufferingPolicy().withMemoryThreshold(MEMORY_THRESHOLD).withTemporaryDirectory(temporaryFolder.getRoot())));
+	}
+
+	@After
+	public void tearDown() {
+		if (client != null) {
+			client.close();
+		}
+	}
+
+	@Test
+	public void apiTestResponseBodyShouldKeepBodiesUpToTheThresholdInMemory() throws Exception {
+
+		for (String query : Arrays.asList("", "?chunked")) {
+			final ApiTestResponse response = get(MEMORY_THRESHOLD, query);
+			assertArrayEquals(body(MEMORY_THRESHOLD), response.getResponseAsBytes());
+			assertFalse(response.getResponseAsByteBuffer().isDirect());
+			assertEquals(0, temporaryFolder.getRoot().listFiles().length);
+		}
+	}
+
+	@Test
+	public void apiTestResponseBodyShouldSpoolBodiesAboveTheThresholdToTemporaryFiles() throws Exception {
+		assertSpooled("");
+	}
+
+	@Test
+	public void apiTestResponseBodyShouldSpoolChunkedBodiesAboveTheThresholdToTemporaryFiles() throws Exception {
+		assertSpooled("?chunked");
+	}
+
+	private void assertSpooled(String query) throws IOException {
+
+		final ApiTestResponse response = get(MEMORY_THRESHOLD + 1, query);
+		assertEquals(MEMORY_THRESHOLD + 1, response.getResponseLength());
+
+		final File[] files = temporaryFolder.getRoot().listFiles();
+		assertEquals(1, files.length);
+		assertEquals(MEMORY_THRESHOLD + 1, files[0].length());
+
+		// the file is mapped when read as a buffer, and streamed otherwise
+		final ByteBuffer buffer = response.getResponseAsByteBuffer();
+		assertTrue(buffer.isDirect());
+		assertTrue(buffer.isReadOnly());
+		final byte[] mapped = new byte[buffer.remaining()];
+		buffer.get(mapped);
+		assertArrayEquals(body(MEMORY_THRESHOLD + 1), mapped);
+		assertArrayEquals(body(MEMORY_THRESHOLD + 1), response.getResponseAsBytes());
+		assertEquals(new String(body(MEMORY_THRESHOLD + 1), StandardCharsets.UTF_8), response.getResponseAsString());
+		try (InputStream in = response.getResponseAsStream()) {
+			assertArrayEquals(body(MEMORY_THRESHOLD + 1), read(in));
+		}
+
+		client.close();
+		client = null;
+		assertFalse(files[0].exists());
+	}
+
+	private ApiTestResponse get(int length, String query) {
+		return client.execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/" + length + query)));
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[16];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] body(int length) {
+		final byte[] body = new byte[length];
+		for (int i = 0; i < length; i++) {
+			body[i] = (byte) ('a' + i % 26);
+		}
+		return body;
+	}
+}
@@ -0,0 +1,138 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @see ApiTestResponse
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestResponseUnitTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void apiTestResponseShouldDecodeTheBodyWithTheCharsetOfTheContentType() throws Exception {
+
+		final Charset latin1 = StandardCharsets.ISO_8859_1;
+		final ApiTestResponse response = new ApiTestResponse(response("{\"name\":\"café\"}".getBytes(latin1), ContentType.create("application/json", latin1)));
+
+		assertEquals(latin1, response.getResponseCharset());
+		assertEquals(15, response.getResponseLength());
+		assertEquals("{\"name\":\"café\"}", response.getResponseAsString());
+		assertEquals("café", response.getResponseAsJsonObject().getString("name"));
+	}
+
+	@Test
+	public void apiTestResponseShouldDecodeTheBodyAsUtf8ByDefault() throws Exception {
+
+		final ApiTestResponse response = new ApiTestResponse(response("café".getBytes(StandardCharsets.UTF_8), ContentType.create("text/plain")));
+
+		assertEquals(StandardCharsets.UTF_8, response.getResponseCharset());
+		assertEquals("café", response.getResponseAsString());
+	}
+
+	@Test
+	public void apiTestResponseShouldReturnTheSameContentAsBytesBufferStreamAndString() throws Exception {
+
+		final byte[] body = "{\"text\":\"été ☃\"}".getBytes(StandardCharsets.UTF_8);
+		final ApiTestResponse response = new ApiTestResponse(response(body, ContentType.APPLICATION_JSON));
+
+		assertArrayEquals(body, response.getResponseAsBytes());
+		assertArrayEquals(body, read(response.getResponseAsByteBuffer()));
+		try (InputStream in = response.getResponseAsStream()) {
+			assertArrayEquals(body, read(in));
+		}
+		assertEquals(new String(body, StandardCharsets.UTF_8), response.getResponseAsString());
+		assertArrayEquals(body, response.getResponseAsString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void apiTestResponseShouldHandleEmptyBodies() throws Exception {
+
+		for (HttpResponse httpResponse : new HttpResponse[] { response(new byte[0], ContentType.APPLICATION_JSON), new BasicHttpResponse(HttpVersion.HTTP_1_1, 204, "No Content") }) {
+			final ApiTestResponse response = new ApiTestResponse(httpResponse);
+
+			assertEquals(0, response.getResponseLength());
+			assertEquals("", response.getResponseAsString());
+			assertEquals(0, response.getResponseAsBytes().length);
+			assertEquals(0, response.getResponseAsByteBuffer().remaining());
+			try (InputStream in = response.getResponseAsStream()) {
+				assertEquals(-1, in.read());
+			}
+		}
+	}
+
+	@Test
+	public void apiTestResponseShouldParseTheJsonBodyOnce() throws Exception {
+
+		final ApiTestResponse response = new ApiTestResponse(response("{\"a\":[1,2]}".getBytes(StandardCharsets.UTF_8), ContentType.APPLICATION_JSON));
+
+		final Object document = response.getJsonPathDocument();
+		assertEquals(2, ((List<?>) ((Map<?, ?>) document).get("a")).size());
+		assertSame(document, response.getJsonPathDocument());
+
+		assertSame(response.getResponseAsJson(), response.getResponseAsJson());
+		assertSame(response.getResponseAsJson(), response.getResponseAsJsonObject());
+	}
+
+	@Test
+	public void apiTestResponseShouldParseSpooledJsonBodiesOnce() throws Exception {
+
+		final byte[] body = "[{\"a\":1},{\"a\":2}]".getBytes(StandardCharsets.UTF_8);
+		final List<File> temporaryFiles = new ArrayList<>();
+		final ApiTestResponse response = new ApiTestResponse(response(body, ContentType.APPLICATION_JSON),
+				new ApiTestResponseBufferingPolicy().withMemoryThreshold(1).withTemporaryDirectory(temporaryFolder.getRoot()), temporaryFiles);
+		assertEquals(1, temporaryFiles.size());
+
+		final Object document = response.getJsonPathDocument();
+		assertEquals(2, ((List<?>) document).size());
+		assertEquals(2, response.getResponseAsJsonArray().getJsonObject(1).getInt("a"));
+
+		// the parsed representations no longer need the file
+		assertTrue(temporaryFiles.get(0).delete());
+		assertSame(document, response.getJsonPathDocument());
+		assertSame(response.getResponseAsJson(), response.getResponseAsJsonArray());
+	}
+
+	private static HttpResponse response(byte[] body, ContentType contentType) {
+		final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new ByteArrayEntity(body, contentType));
+		return response;
+	}
+
+	private static byte[] read(ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[16];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
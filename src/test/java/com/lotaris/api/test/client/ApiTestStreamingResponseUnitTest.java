@@ -0,0 +1,151 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParsingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiTestStreamingResponse
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestStreamingResponseUnitTest {
+
+	private static final int LARGE_ARRAY_LENGTH = 100000;
+
+	private HttpServer server;
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					switch (exchange.getRequestURI().getPath()) {
+						case "/array":
+							out.write("[1, \"two\", {\"three\": [3]}, null]".getBytes(StandardCharsets.UTF_8));
+							break;
+						case "/large":
+							out.write('[');
+							for (int i = 0; i < LARGE_ARRAY_LENGTH; i++) {
+								out.write((i > 0 ? ", " + i : "" + i).getBytes(StandardCharsets.UTF_8));
+							}
+							out.write(']');
+							break;
+						case "/object":
+							out.write("{\"a\": 1}".getBytes(StandardCharsets.UTF_8));
+							break;
+						default:
+							out.write("[1, {\"a\": ".getBytes(StandardCharsets.UTF_8));
+					}
+				} catch (IOException ioe) {
+					// the client closed the connection before reading the whole body
+				}
+			}
+		});
+		server.start();
+
+		// a single connection, which must be released for the next request to be executed
+		client = new ApiTestClient(new TestClientConfiguration().withConnectionPoolConfiguration(new ApiTestConnectionPoolConfiguration().withMaxTotal(1).withMaxPerRoute(1)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.stop(0);
+	}
+
+	@Test
+	public void apiTestStreamingResponseShouldIterateOverTheElementsOfAJsonArray() {
+
+		try (ApiTestStreamingResponse response = stream("array")) {
+			assertEquals(200, response.getStatus());
+			assertNull(response.getTimings());
+
+			final Iterator<JsonValue> iterator = response.getResponseAsJsonArrayIterator();
+			assertEquals(1, ((JsonNumber) iterator.next()).intValue());
+			assertEquals("two", ((JsonString) iterator.next()).getString());
+			assertEquals(3, ((JsonObject) iterator.next()).getJsonArray("three").getInt(0));
+			assertEquals(JsonValue.NULL, iterator.next());
+			assertFalse(iterator.hasNext());
+		}
+	}
+
+	@Test
+	public void apiTestStreamingResponseShouldReleaseTheConnectionWhenClosedBeforeTheEndOfTheBody() throws Exception {
+
+		final ApiTestStreamingResponse response = stream("large");
+		assertEquals(0, ((JsonNumber) response.getResponseAsJsonArrayIterator().next()).intValue());
+		response.close();
+		assertNotNull(response.getTimings());
+
+		// the pool has a single connection: the next request blocks if it was not released
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final JsonArray array = executor.submit(new Callable<JsonArray>() {
+				@Override
+				public JsonArray call() {
+					return client.execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder(uri("array")))).getResponseAsJsonArray();
+				}
+			}).get(10, TimeUnit.SECONDS);
+			assertEquals(4, array.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void apiTestStreamingResponseShouldFailToIterateOverAMalformedJsonArray() {
+
+		try (ApiTestStreamingResponse response = stream("malformed")) {
+			final Iterator<JsonValue> iterator = response.getResponseAsJsonArrayIterator();
+			assertEquals(1, ((JsonNumber) iterator.next()).intValue());
+			try {
+				iterator.next();
+				fail("Expected a JsonParsingException");
+			} catch (JsonParsingException jpe) {
+				// success
+			}
+		}
+
+		try (ApiTestStreamingResponse response = stream("object")) {
+			response.getResponseAsJsonArrayIterator();
+			fail("Expected a JsonException");
+		} catch (JsonException je) {
+			assertTrue(je.getMessage(), je.getMessage().endsWith("is not a JSON array"));
+		}
+	}
+
+	private ApiTestStreamingResponse stream(String path) {
+		return client.executeStreaming(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder(uri(path))));
+	}
+
+	private String uri(String path) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + path;
+	}
+}
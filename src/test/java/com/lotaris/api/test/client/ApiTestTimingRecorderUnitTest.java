@@ -0,0 +1,115 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiTestTimingRecorder
+ * @see ApiTestTimings
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestTimingRecorderUnitTest {
+
+	private static final byte[] BODY = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+
+	private HttpServer server;
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				// the server processing time makes the time to first byte longer than the connect time
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, BODY.length);
+				exchange.getResponseBody().write(BODY);
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		if (client != null) {
+			client.close();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	public void apiTestTimingRecorderShouldMeasureAllPhasesOfBlockingRequests() {
+
+		client = new ApiTestClient(new TestClientConfiguration());
+
+		final ApiTestTimings first = client.execute(request()).getTimings();
+		assertOrdered(first);
+		assertTrue(first.getConnectTime(TimeUnit.NANOSECONDS) > 0);
+		assertTrue(first.getDownloadTime(TimeUnit.NANOSECONDS) >= 0);
+		assertTrue(first.getConnectTime(TimeUnit.NANOSECONDS) + first.getTimeToFirstByte(TimeUnit.NANOSECONDS) + first.getDownloadTime(TimeUnit.NANOSECONDS)
+				<= first.getTotalTime(TimeUnit.NANOSECONDS));
+		assertTrue(first.getRequestSize() > 0);
+		assertTrue(first.getResponseSize() > BODY.length);
+
+		// the pooled connection is reused
+		final ApiTestTimings second = client.execute(request()).getTimings();
+		assertOrdered(second);
+		assertEquals(0, second.getConnectTime(TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void apiTestTimingRecorderShouldReportUnknownPhasesOfTheJdkEngine() {
+
+		client = new ApiTestClient(new TestClientConfiguration().withConnectionPoolConfiguration(new ApiTestConnectionPoolConfiguration().withEngine(ApiTestTransportEngine.JDK)));
+
+		final ApiTestTimings timings = client.execute(request()).getTimings();
+		assertEquals(ApiTestTimings.UNKNOWN, timings.getConnectTime(TimeUnit.NANOSECONDS));
+		assertEquals(ApiTestTimings.UNKNOWN, timings.getRequestSize());
+		assertEquals(ApiTestTimings.UNKNOWN, timings.getResponseSize());
+		assertTrue(timings.getTimeToFirstByte(TimeUnit.NANOSECONDS) >= 0);
+		assertTrue(timings.getTimeToFirstByte(TimeUnit.NANOSECONDS) <= timings.getTotalTime(TimeUnit.NANOSECONDS));
+	}
+
+	@Test
+	public void apiTestTimingRecorderShouldReportUnknownPhasesOfAsynchronousRequests() throws Exception {
+
+		client = new ApiTestClient(new TestClientConfiguration());
+
+		final ApiTestTimings timings = client.executeAsync(request()).get(10, TimeUnit.SECONDS).getTimings();
+		assertEquals(ApiTestTimings.UNKNOWN, timings.getConnectTime(TimeUnit.NANOSECONDS));
+		assertEquals(ApiTestTimings.UNKNOWN, timings.getRequestSize());
+		assertEquals(ApiTestTimings.UNKNOWN, timings.getResponseSize());
+		assertTrue(timings.getTimeToFirstByte(TimeUnit.NANOSECONDS) >= 0);
+		assertTrue(timings.getTimeToFirstByte(TimeUnit.NANOSECONDS) <= timings.getTotalTime(TimeUnit.NANOSECONDS));
+	}
+
+	private ApiTestRequest request() {
+		return new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://127.0.0.1:" + server.getAddress().getPort() + "/things"));
+	}
+
+	private static void assertOrdered(ApiTestTimings timings) {
+		final long connect = timings.getConnectTime(TimeUnit.NANOSECONDS);
+		final long timeToFirstByte = timings.getTimeToFirstByte(TimeUnit.NANOSECONDS);
+		assertTrue(timings.toString(), connect >= 0 && connect <= timeToFirstByte);
+		assertTrue(timings.toString(), timeToFirstByte <= timings.getTotalTime(TimeUnit.NANOSECONDS));
+	}
+}
@@ -0,0 +1,89 @@
+package com.lotaris.api.test.client;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+/**
+ * @see ApiUriTemplate
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiUriTemplateUnitTest {
+
+	@Test
+	public void apiUriTemplateShouldExpandSimpleAndReservedExpressions() {
+		final ApiUriTemplate template = ApiUriTemplate.compile("/orgs/{org}/files/{+path}");
+
+		assertEquals(Arrays.asList("org", "path"), template.getVariableNames());
+		assertEquals("/orgs/a%20b%2Fc/files/x/y%20z%C3%A9", template.expand("a b/c", "x/y zé"));
+		assertEquals("/users/%F0%9F%98%80", ApiUriTemplate.compile("/users/{id}").expand(Collections.singletonMap("id", "😀")));
+	}
+
+	@Test
+	public void apiUriTemplateShouldBeCompiledOnce() {
+		assertSame(ApiUriTemplate.compile("/users/{id}"), ApiUriTemplate.compile("/users/{id}"));
+	}
+
+	@Test
+	public void apiUriTemplateShouldRejectInvalidTemplatesAndMissingValues() {
+		for (String invalid : new String[]{"/users/{id", "/users/}", "/users/{}", "/users/{#id}", "/users/{a,b}"}) {
+			try {
+				ApiUriTemplate.compile(invalid);
+				fail("Template " + invalid + " should be invalid");
+			} catch (IllegalArgumentException iae) {
+				// expected
+			}
+		}
+
+		try {
+			ApiUriTemplate.compile("/users/{id}").expand(Collections.<String, Object>emptyMap());
+			fail("A missing value should be rejected");
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+	}
+
+	@Test
+	public void apiUriBuilderShouldAppendTemplatesAndEncodeQueryParameters() {
+		assertEquals("http://localhost/api/orgs/lotaris/users/42?q=a+b%26c&q=*&page=2", new ApiUriBuilder("http://localhost/api/")
+				.template("/orgs/{org}/users/{id}/", "lotaris", 42)
+				.queryParam("q", "a b&c", "*")
+				.queryParam("page", 2)
+				.build().toString());
+	}
+
+	@Test
+	public void apiUriBuilderShouldKeepTheQueryAndFragmentOfTheBaseUriAtTheEnd() {
+		assertEquals("http://localhost/api/users/42?v=1&q=a#top", new ApiUriBuilder("http://localhost/api/?v=1#top")
+				.path("users")
+				.template("/{id}", 42)
+				.queryParam("q", "a")
+				.build().toString());
+
+		assertEquals("http://localhost/api/users#top?", new ApiUriBuilder("http://localhost/api#top?").path("users").build().toString());
+		assertEquals("http://localhost/api/users?q=a", new ApiUriBuilder("http://localhost/api?").path("users").queryParam("q", "a").build().toString());
+	}
+
+	@Test
+	public void apiUriBuilderShouldBeUnchangedByTemplatesWithInvalidValues() {
+		final ApiUriBuilder builder = new ApiUriBuilder("http://localhost/api").path("users");
+
+		try {
+			builder.template("/{id}/{name}", 42);
+			fail("Missing values should be rejected");
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+
+		try {
+			builder.template("/{id}/{name}", Collections.singletonMap("id", 42));
+			fail("Missing values should be rejected");
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+
+		assertEquals("http://localhost/api/users/42", builder.template("{id}/", 42).build().toString());
+	}
+}
@@ -0,0 +1,86 @@
+package com.lotaris.api.test.client;
+
+/**
+ * Client configuration shared by unit tests: the defaults of {@link ApiTestClientConfigurationAdapter}
+ * with a connection pool configuration, response buffering policy and concurrency limiter set
+ * fluently.
+ *
+ * <pre>
+ * new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)))
+ * </pre>
+ *
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class TestClientConfiguration extends ApiTestClientConfigurationAdapter {
+
+	/**
+	 * The connection pool configuration (or null for the default pool).
+	 */
+	private ApiTestConnectionPoolConfiguration connectionPoolConfiguration;
+	/**
+	 * The response buffering policy (or null).
+	 */
+	private ApiTestResponseBufferingPolicy responseBufferingPolicy;
+	/**
+	 * The concurrency limiter (or null).
+	 */
+	private ApiTestConcurrencyLimiter concurrencyLimiter;
+
+	/**
+	 * Sets the connection pool configuration.
+	 *
+	 * @param connectionPoolConfiguration the connection pool configuration
+	 * @return this configuration
+	 */
+	public TestClientConfiguration withConnectionPoolConfiguration(ApiTestConnectionPoolConfiguration connectionPoolConfiguration) {
+		this.connectionPoolConfiguration = connectionPoolConfiguration;
+		return this;
+	}
+
+	/**
+	 * Sets a connection pool configuration dispatching requests to an in-process transport.
+	 *
+	 * @param transport the in-process transport
+	 * @return this configuration
+	 */
+	public TestClientConfiguration withInProcessTransport(ApiTestInProcessTransport transport) {
+		return withConnectionPoolConfiguration(new ApiTestConnectionPoolConfiguration().withInProcessTransport(transport));
+	}
+
+	/**
+	 * Sets the response buffering policy.
+	 *
+	 * @param responseBufferingPolicy the response buffering policy
+	 * @return this configuration
+	 */
+	public TestClientConfiguration withResponseBufferingPolicy(ApiTestResponseBufferingPolicy responseBufferingPolicy) {
+		this.responseBufferingPolicy = responseBufferingPolicy;
+		return this;
+	}
+
+	/**
+	 * Sets the concurrency limiter.
+	 *
+	 * @param concurrencyLimiter the concurrency limiter
+	 * @return this configuration
+	 */
+	public TestClientConfiguration withConcurrencyLimiter(ApiTestConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+		return this;
+	}
+
+	@Override
+	public ApiTestConnectionPoolConfiguration getConnectionPoolConfiguration() {
+		return connectionPoolConfiguration;
+	}
+
+	@Override
+	public ApiTestResponseBufferingPolicy getResponseBufferingPolicy() {
+		return responseBufferingPolicy;
+	}
+
+	@Override
+	public ApiTestConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+}
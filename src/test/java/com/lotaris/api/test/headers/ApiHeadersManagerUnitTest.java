@@ -37,7 +37,7 @@ public class ApiHeadersManagerUnitTest {
 		removeHeader(header("X-B", "foo"), false);
 		manager.applyConfiguration(request);
 
-		inOrder.verify(request, times(2)).removeHeader("X-A");
+		inOrder.verify(request).removeHeader("X-A");
 		inOrder.verify(request).removeHeader("X-B");
 		inOrder.verifyNoMoreInteractions();
 
@@ -69,7 +69,6 @@ public class ApiHeadersManagerUnitTest {
 		setHeader(header("X-B", "foo"), false);
 		manager.applyConfiguration(request);
 
-		inOrder.verify(request).setHeader("X-A", "foo");
 		inOrder.verify(request).setHeader("X-A", "bar");
 		inOrder.verify(request).setHeader("X-B", "foo");
 		inOrder.verifyNoMoreInteractions();
@@ -93,6 +92,26 @@ public class ApiHeadersManagerUnitTest {
 		inOrder.verifyNoMoreInteractions();
 	}
 
+	@Test
+	public void apiHeadersManagerShouldOnlyApplyTheNetEffectOfOperations() {
+
+		addHeader(header("X-A", "foo"), true);
+		setHeader(header("X-A", "bar"), true);
+		addHeader(header("X-A", "baz"), true);
+		removeHeader(header("X-B", "foo"), true);
+		addHeader(header("X-B", "bar"), true);
+		removeHeader(header("X-C", "foo"), false);
+		addHeader(header("X-C", "bar"), true);
+		manager.applyConfiguration(request);
+
+		verify(request).removeHeader("X-A");
+		verify(request).addHeader("X-A", "bar");
+		verify(request).addHeader("X-A", "baz");
+		verify(request).setHeader("X-B", "bar");
+		verify(request).setHeader("X-C", "bar");
+		verifyNoMoreInteractions(request);
+	}
+
 	@Test
 	public void apiHeadersManagerShouldAddRequestHeaders() {
 		final InOrder inOrder = inOrder(request);
@@ -116,8 +135,8 @@ public class ApiHeadersManagerUnitTest {
 
 		inOrder.verify(request).addHeader("X-A", "foo");
 		inOrder.verify(request).addHeader("X-A", "bar");
-		inOrder.verify(request).addHeader("X-B", "bar");
 		inOrder.verify(request).addHeader("X-A", "baz");
+		inOrder.verify(request).addHeader("X-B", "bar");
 		inOrder.verifyNoMoreInteractions();
 
 		manager.applyConfiguration(request);
@@ -128,6 +147,32 @@ public class ApiHeadersManagerUnitTest {
 		inOrder.verifyNoMoreInteractions();
 	}
 
+	@Test
+	public void compiledHeaderPlanShouldApplyNextRequestHeadersToEveryRequest() {
+		final InOrder inOrder = inOrder(request);
+
+		addHeader(header("X-A", "foo"), true);
+		setHeader(header("X-B", "foo"), true);
+		setHeader(header("X-B", "bar"), false);
+		final ApiHeadersManager.HeaderPlan plan = manager.compile();
+
+		// headers for the next request are kept by the manager
+		manager.applyConfiguration(request);
+		inOrder.verify(request).addHeader("X-A", "foo");
+		inOrder.verify(request).setHeader("X-B", "bar");
+		inOrder.verifyNoMoreInteractions();
+
+		// the plan is not affected by later modifications of the manager
+		setHeader(header("X-A", "baz"), true);
+
+		for (int i = 0; i < 2; i++) {
+			plan.apply(request);
+			inOrder.verify(request).addHeader("X-A", "foo");
+			inOrder.verify(request).setHeader("X-B", "bar");
+			inOrder.verifyNoMoreInteractions();
+		}
+	}
+
 	private void addHeader(final ApiHeader header, boolean forAllRequests) {
 		manager.configure(ApiHeadersManager.Operation.ADD, header, forAllRequests);
 	}
@@ -0,0 +1,97 @@
+package com.lotaris.api.test.headers;
+
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ConcurrentApiHeadersManager
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ConcurrentApiHeadersManagerUnitTest {
+
+	private ConcurrentApiHeadersManager manager;
+
+	@Before
+	public void setUp() {
+		manager = new ConcurrentApiHeadersManager();
+	}
+
+	@Test
+	public void concurrentApiHeadersManagerShouldApplyNextRequestHeadersOnlyToTheThreadThatConfiguredThem() throws Exception {
+
+		manager.configure(ApiHeadersManager.Operation.SET, new ApiHeader("X-A", "foo"), true);
+		manager.configure(ApiHeadersManager.Operation.SET, new ApiHeader("X-B", "main"), false);
+
+		final RecordingRequest workerRequest = new RecordingRequest();
+		final Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				manager.configure(ApiHeadersManager.Operation.SET, new ApiHeader("X-C", "worker"), false);
+				manager.applyConfiguration(workerRequest);
+			}
+		});
+		worker.start();
+		worker.join();
+
+		assertEquals(Arrays.asList("set X-A: foo", "set X-C: worker"), workerRequest.operations);
+
+		final RecordingRequest request = new RecordingRequest();
+		manager.applyConfiguration(request);
+		assertEquals(Arrays.asList("set X-A: foo", "set X-B: main"), request.operations);
+
+		final RecordingRequest nextRequest = new RecordingRequest();
+		manager.applyConfiguration(nextRequest);
+		assertEquals(Arrays.asList("set X-A: foo"), nextRequest.operations);
+	}
+
+	@Test
+	public void concurrentApiHeadersManagerShouldNotAffectCopies() {
+
+		manager.configure(ApiHeadersManager.Operation.ADD, new ApiHeader("X-A", "foo"), true);
+		manager.configure(ApiHeadersManager.Operation.ADD, new ApiHeader("X-B", "bar"), false);
+		final ApiHeadersManager copy = new ApiHeadersManager(manager);
+		manager.configure(ApiHeadersManager.Operation.REMOVE, new ApiHeader("X-A", null), true);
+
+		final RecordingRequest request = new RecordingRequest();
+		copy.applyConfiguration(request);
+
+		assertEquals(Arrays.asList("add X-A: foo", "add X-B: bar"), request.operations);
+	}
+
+	/**
+	 * Request recording the header operations applied to it instead of applying them.
+	 */
+	private static class RecordingRequest extends ApiTestRequest {
+
+		private final List<String> operations = new ArrayList<>();
+
+		public RecordingRequest() {
+			super(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com"));
+		}
+
+		@Override
+		public ApiTestRequest addHeader(String name, Object value) {
+			operations.add("add " + name + ": " + value);
+			return this;
+		}
+
+		@Override
+		public ApiTestRequest setHeader(String name, Object value) {
+			operations.add("set " + name + ": " + value);
+			return this;
+		}
+
+		@Override
+		public ApiTestRequest removeHeader(String name) {
+			operations.add("remove " + name);
+			return this;
+		}
+	}
+}
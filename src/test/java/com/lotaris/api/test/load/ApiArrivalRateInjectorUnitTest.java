@@ -0,0 +1,127 @@
+package com.lotaris.api.test.load;
+
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestInProcessTransport;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import com.lotaris.api.test.client.TestClientConfiguration;
+import com.lotaris.api.test.headers.ApiHeader;
+import com.lotaris.api.test.headers.ApiHeadersManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiArrivalRateInjector
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiArrivalRateInjectorUnitTest {
+
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() {
+
+		// the 20th request stalls the server for 200 milliseconds
+		final AtomicInteger count = new AtomicInteger();
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (count.incrementAndGet() == 20) {
+					try {
+						Thread.sleep(200);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				if (!"secret".equals(exchange.getRequestHeaders().getFirst("X-Token"))) {
+					throw new IOException("Missing token");
+				}
+
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		};
+
+		client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	public void apiArrivalRateInjectorShouldCorrectLatenciesForStalls() throws Exception {
+
+		final ApiHeadersManager headersManager = new ApiHeadersManager().configure(ApiHeadersManager.Operation.SET, new ApiHeader("X-Token", "secret"), true);
+		final ApiRequestScenario scenario = new ApiRequestScenario(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/things")).withHeaders(headersManager);
+
+		final ApiArrivalRateReport report = new ApiArrivalRateInjector(500).withDuration(200, TimeUnit.MILLISECONDS).withMaxSenders(1).run("stall", client, scenario);
+
+		assertEquals(100, report.getRequests());
+		assertEquals(0, report.getFailedRequests());
+		assertTrue(report.getDelayedRequests() > 0);
+
+		// a closed loop only sees the stalled request; requests scheduled during the stall waited
+		assertTrue(report.getUncorrectedLatencyAtPercentile(90, TimeUnit.MILLISECONDS) < 50);
+		assertTrue(report.getLatencyAtPercentile(90, TimeUnit.MILLISECONDS) >= 50);
+		assertTrue(report.getLatencyHistogram().getMaxValue() >= report.getUncorrectedLatencyHistogram().getMaxValue());
+	}
+
+	@Test
+	public void apiArrivalRateInjectorShouldMeasureTheLatencyOfFailedRequests() throws Exception {
+
+		// requests without a token fail, the 20th after a 200-millisecond stall
+		final ApiRequestScenario scenario = new ApiRequestScenario(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/things"));
+
+		final ApiArrivalRateReport report = new ApiArrivalRateInjector(500).withDuration(100, TimeUnit.MILLISECONDS).withMaxSenders(1).run("failures", client, scenario);
+
+		assertEquals(50, report.getRequests());
+		assertEquals(50, report.getFailedRequests());
+		assertEquals(50, report.getLatencyHistogram().getTotalCount());
+		assertEquals(50, report.getUncorrectedLatencyHistogram().getTotalCount());
+		assertTrue(report.getLatencyAtPercentile(100, TimeUnit.MILLISECONDS) >= 150);
+		assertTrue(report.getUncorrectedLatencyAtPercentile(100, TimeUnit.MILLISECONDS) >= 150);
+		assertTrue(report.getUncorrectedLatencyAtPercentile(50, TimeUnit.MILLISECONDS) <= report.getLatencyAtPercentile(50, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void apiArrivalRateInjectorShouldRethrowErrorsOtherThanAssertionErrors() throws Exception {
+
+		final ApiArrivalRateInjector injector = new ApiArrivalRateInjector(500).withDuration(20, TimeUnit.MILLISECONDS).withMaxSenders(2);
+
+		// assertion failures are failed requests
+		final ApiArrivalRateReport report = injector.run("assertions", new IApiLoadTask() {
+			@Override
+			public void execute(long index) {
+				if (index % 2 == 0) {
+					throw new AssertionError("Unexpected response");
+				}
+			}
+		});
+		assertEquals(10, report.getRequests());
+		assertEquals(5, report.getFailedRequests());
+
+		// other errors stop the load test
+		try {
+			injector.run("errors", new IApiLoadTask() {
+				@Override
+				public void execute(long index) {
+					throw new StackOverflowError();
+				}
+			});
+			fail("Expected a StackOverflowError");
+		} catch (StackOverflowError soe) {
+			// expected
+		}
+	}
+}
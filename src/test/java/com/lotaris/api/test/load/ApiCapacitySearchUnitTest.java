@@ -0,0 +1,88 @@
+package com.lotaris.api.test.load;
+
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import com.lotaris.api.test.client.TestClientConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiCapacitySearch
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiCapacitySearchUnitTest {
+
+	private ExecutorService serverExecutor;
+	private HttpServer server;
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() throws IOException {
+
+		// a single worker spending 20 milliseconds on each request serves at most 50 req/s
+		serverExecutor = Executors.newSingleThreadExecutor();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(serverExecutor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+
+		client = new ApiTestClient(new TestClientConfiguration());
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void apiCapacitySearchShouldFindTheHighestRateMeetingTheObjective() throws Exception {
+
+		final ApiLatencySlo slo = new ApiLatencySlo(90, 200, TimeUnit.MILLISECONDS).withMaxErrorRate(0.01);
+		final ApiRequestScenario scenario = new ApiRequestScenario(ApiTestRequest.GET, new ApiUriBuilder("http://127.0.0.1:" + server.getAddress().getPort() + "/things"));
+
+		final ApiCapacityReport report = new ApiCapacitySearch(slo)
+				.withRates(10, 640)
+				.withStepDuration(500, TimeUnit.MILLISECONDS)
+				.withWarmupDuration(500, TimeUnit.MILLISECONDS)
+				.withPrecision(0.2)
+				.withMaxSenders(50)
+				.run("things", client, scenario);
+
+		// 20 req/s is sustainable; at 80 req/s, requests queue up for hundreds of milliseconds
+		final double capacity = report.getMaxSustainableRate();
+		assertTrue(report.toString(), capacity >= 20 && capacity < 80);
+		assertEquals(capacity, report.getBestStep().getTargetRate(), 0);
+		assertTrue(slo.isMetBy(report.getSteps().get(0)));
+
+		// steps ramp up by doubling the rate until the objective is missed, then bisect
+		assertEquals(10, report.getSteps().get(0).getTargetRate(), 0);
+		assertEquals(20, report.getSteps().get(1).getTargetRate(), 0);
+		assertEquals(40, report.getSteps().get(2).getTargetRate(), 0);
+	}
+}
@@ -0,0 +1,136 @@
+package com.lotaris.api.test.load;
+
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestConnectionPool;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiTestStubTransport;
+import com.lotaris.api.test.client.ApiTestTransportEngine;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import com.lotaris.api.test.client.IApiTestTransport;
+import com.lotaris.api.test.client.TestClientConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Executors;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiTestTransportBenchmark
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestTransportBenchmarkUnitTest {
+
+	private ExecutorService serverExecutor;
+	private HttpServer server;
+	private ApiTestConnectionPool pool;
+
+	@Before
+	public void setUp() throws IOException {
+		serverExecutor = Executors.newFixedThreadPool(4);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(serverExecutor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().add("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+		});
+		server.start();
+
+		pool = new ApiTestConnectionPool(new TestClientConfiguration());
+	}
+
+	@After
+	public void tearDown() {
+		pool.close();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void apiTestTransportBenchmarkShouldRunEachTransport() throws Exception {
+
+		final String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/things";
+		final ApiTestTransportBenchmark benchmark = new ApiTestTransportBenchmark(new Callable<ApiTestRequest>() {
+			@Override
+			public ApiTestRequest call() {
+				return new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder(uri));
+			}
+		}).withConcurrency(4).withWarmupRequests(20).withRequests(200);
+
+		final List<ApiLoadTestReport> reports = benchmark.compare(pool,
+				pool.createTransport(ApiTestTransportEngine.CLASSIC),
+				pool.createTransport(ApiTestTransportEngine.ASYNC),
+				new ApiTestStubTransport(200, "application/json", "{}"));
+
+		assertEquals(3, reports.size());
+		assertEquals("apache-classic", reports.get(0).getName());
+		assertEquals("apache-async", reports.get(1).getName());
+		assertEquals("stub", reports.get(2).getName());
+
+		for (ApiLoadTestReport report : reports) {
+			assertEquals(report.getName(), 200, report.getRequests());
+			assertEquals(report.getName(), 0, report.getFailedRequests());
+			assertEquals(report.getName(), 4, report.getConcurrency());
+		}
+	}
+
+	@Test
+	public void apiTestTransportBenchmarkShouldCountFailedIterationsAndRequestsSeparately() throws Exception {
+
+		// every 10th request cannot be built
+		final AtomicLong builtRequests = new AtomicLong();
+		final ApiTestTransportBenchmark benchmark = new ApiTestTransportBenchmark(new Callable<ApiTestRequest>() {
+			@Override
+			public ApiTestRequest call() {
+				if (builtRequests.incrementAndGet() % 10 == 0) {
+					throw new IllegalStateException("No request");
+				}
+				return new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/things"));
+			}
+		}).withConcurrency(1).withWarmupRequests(0).withRequests(100);
+
+		// every 9th built request cannot be executed
+		final IApiTestTransport stub = new ApiTestStubTransport(200, "application/json", "{}");
+		final AtomicLong executedRequests = new AtomicLong();
+		final IApiTestTransport transport = new IApiTestTransport() {
+			@Override
+			public String getName() {
+				return "failing";
+			}
+
+			@Override
+			public CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException {
+				if (executedRequests.incrementAndGet() % 9 == 0) {
+					throw new IOException("No response");
+				}
+				return stub.execute(request, context);
+			}
+		};
+
+		final ApiLoadTestReport report = benchmark.compare(pool, transport).get(0);
+		assertEquals(100, report.getIterations());
+		assertEquals(20, report.getFailedIterations());
+		assertEquals(90, report.getRequests());
+		assertEquals(10, report.getFailedRequests());
+		assertEquals(80, report.getLatencyHistogram().getTotalCount());
+	}
+}
@@ -0,0 +1,137 @@
+package com.lotaris.api.test.matchers;
+
+import static com.lotaris.api.test.matchers.ApiErrorResponseMatcher.isApiErrorResponse;
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestInProcessTransport;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import com.lotaris.api.test.client.TestClientConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+import org.hamcrest.StringDescription;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiErrorResponseMatcher
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiErrorResponseMatcherUnitTest {
+
+	private ApiTestClient client;
+	private volatile String errors;
+
+	@Before
+	public void setUp() {
+
+		// responds with the current errors
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final byte[] body = ("{\"errors\":[" + errors + "]}").getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(422, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		};
+
+		client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	public void apiErrorResponseMatcherShouldMatchDuplicateErrorsOnce() {
+
+		final ApiTestResponse twice = errorResponse(error(10, "/a", "invalid"), error(10, "/a", "invalid"));
+		final ApiTestResponse once = errorResponse(error(10, "/a", "invalid"));
+
+		assertTrue(isApiErrorResponse(422).withError(10, "json", "/a", "invalid").withError(10, "json", "/a", "invalid").matches(twice));
+		assertTrue(isApiErrorResponse(422).withError(10, "json", "/a").withError(10, "json", "/a").matches(twice));
+
+		// each actual error satisfies a single expectation
+		final ApiErrorResponseMatcher matcher = isApiErrorResponse(422).withError(10, "json", "/a", "invalid").withError(10, "json", "/a", "invalid");
+		assertFalse(matcher.matches(once));
+		assertMismatch(matcher, once, ", is missing 1 expected errors (<code=10, locationType=json, location=/a, message=invalid>)");
+
+		// unmatched duplicates are unexpected
+		final ApiErrorResponseMatcher single = isApiErrorResponse(422).withError(10, "json", "/a", "invalid");
+		assertFalse(single.matches(twice));
+		assertMismatch(single, twice, ", has 1 additional unexpected errors (<code=10, locationType=json, location=/a, message=invalid>)");
+	}
+
+	@Test
+	public void apiErrorResponseMatcherShouldNotMatchPartiallyMatchingErrors() {
+
+		final ApiTestResponse response = errorResponse(error(10, "/a", "invalid"), error(20, "/b", ""));
+
+		// code, location type, location and message must all match
+		assertFalse(isApiErrorResponse(422).withError(11, "json", "/a", "invalid").withError(20, "json", "/b", "").matches(response));
+		assertFalse(isApiErrorResponse(422).withError(10, "json", "/c", "invalid").withError(20, "json", "/b", "").matches(response));
+		assertFalse(isApiErrorResponse(422).withError(10, "header", "/a", "invalid").withError(20, "json", "/b", "").matches(response));
+		assertFalse(isApiErrorResponse(422).withError(10, "json", "/a", "valid").withError(20, "json", "/b", "").matches(response));
+		assertFalse(isApiErrorResponse(422).withError(10).withError(20, "json", "/b", "").matches(response));
+
+		// expectations without a message require a non-blank message, patterns the whole message
+		assertFalse(isApiErrorResponse(422).withError(10, "json", "/a").withError(20, "json", "/b").matches(response));
+		assertFalse(isApiErrorResponse(422).withError(10, "json", "/a", Pattern.compile("inval")).withError(20, "json", "/b", "").matches(response));
+		assertTrue(isApiErrorResponse(422).withError(10, "json", "/a", Pattern.compile("inval.*")).withError(20, "json", "/b", "").matches(response));
+
+		// the HTTP status code must match
+		assertFalse(isApiErrorResponse(400).withError(10, "json", "/a", "invalid").withError(20, "json", "/b", "").matches(response));
+	}
+
+	@Test
+	public void apiErrorResponseMatcherShouldMatchExpectationsWithTheFirstMatchingErrorInResponseOrder() {
+
+		final ApiTestResponse response = errorResponse(error(10, "/a", "first"), error(10, "/a", "second"), error(20, "/b", "other"));
+
+		// errors can be expected in any order
+		assertTrue(isApiErrorResponse(422).withError(20, "json", "/b", "other").withError(10, "json", "/a", "second").withError(10, "json", "/a", "first").matches(response));
+
+		// an expectation consumes the first matching error even if a later expectation needed it
+		assertTrue(isApiErrorResponse(422).withError(10, "json", "/a", "first").withError(10, "json", "/a", Pattern.compile(".*")).withError(20, "json", "/b").matches(response));
+		final ApiErrorResponseMatcher matcher = isApiErrorResponse(422).withError(10, "json", "/a", Pattern.compile(".*")).withError(10, "json", "/a", "first").withError(20, "json", "/b");
+		assertFalse(matcher.matches(response));
+		assertMismatch(matcher, response, ", is missing 1 expected errors (<code=10, locationType=json, location=/a, message=first>)"
+				+ ", has 1 additional unexpected errors (<code=10, locationType=json, location=/a, message=second>)");
+
+		// unexpected errors are reported in the order of the response
+		final ApiErrorResponseMatcher partial = isApiErrorResponse(422).withError(10, "json", "/a", "second");
+		assertFalse(partial.matches(response));
+		assertMismatch(partial, response, ", has 2 additional unexpected errors (<code=10, locationType=json, location=/a, message=first>, <code=20, locationType=json, location=/b, message=other>)");
+	}
+
+	private ApiTestResponse errorResponse(String... responseErrors) {
+		final StringBuilder builder = new StringBuilder();
+		for (String error : responseErrors) {
+			builder.append(builder.length() > 0 ? "," : "").append(error);
+		}
+		errors = builder.toString();
+		return client.execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/errors")));
+	}
+
+	private static String error(int code, String location, String message) {
+		return "{\"code\":" + code + ",\"locationType\":\"json\",\"location\":\"" + location + "\",\"message\":\"" + message + "\"}";
+	}
+
+	private static void assertMismatch(ApiErrorResponseMatcher matcher, ApiTestResponse response, String expectedDetails) {
+		final StringDescription description = new StringDescription();
+		matcher.describeMismatch(response, description);
+		assertTrue(description.toString(), description.toString().startsWith("response for URI "));
+		assertTrue(description.toString(), description.toString().contains(" doesn't match" + expectedDetails + "\n          body: "));
+	}
+}
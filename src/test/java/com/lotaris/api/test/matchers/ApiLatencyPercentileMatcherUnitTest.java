@@ -0,0 +1,138 @@
+package com.lotaris.api.test.matchers;
+
+import static com.lotaris.api.test.matchers.Matchers.*;
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestInProcessTransport;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.client.ApiTestTimings;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import com.lotaris.api.test.client.TestClientConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.hamcrest.StringDescription;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ApiLatencyPercentileMatcher
+ * @see ApiResponseMatcher#within(long, java.util.concurrent.TimeUnit)
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiLatencyPercentileMatcherUnitTest {
+
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() {
+
+		// requests to /slow take at least 50 milliseconds
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				if (exchange.getRequestURI().getPath().endsWith("/slow")) {
+					try {
+						Thread.sleep(50);
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				exchange.sendResponseHeaders(204, -1);
+				exchange.close();
+			}
+		};
+
+		client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	public void apiResponseMatcherShouldMatchTheLatencyOfAResponse() {
+
+		final ApiTestResponse response = client.execute(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com/slow")));
+
+		assertTrue(isApiResponse(204).within(10, TimeUnit.SECONDS).withTimeToFirstByteWithin(10, TimeUnit.SECONDS).matches(response));
+
+		final ApiResponseMatcher matcher = isApiResponse(204).within(25, TimeUnit.MILLISECONDS);
+		assertFalse(matcher.matches(response));
+		assertFalse(isApiResponse(204).withTimeToFirstByteWithin(25, TimeUnit.MILLISECONDS).matches(response));
+
+		final StringDescription description = new StringDescription();
+		matcher.describeTo(description);
+		assertEquals("response with HTTP status code 204 within 25.000 ms", description.toString());
+
+		final StringDescription mismatch = new StringDescription();
+		matcher.describeMismatch(response, mismatch);
+		assertTrue(mismatch.toString(), mismatch.toString().startsWith("response doesn't match, took "));
+	}
+
+	@Test
+	public void apiLatencyPercentileMatcherShouldMatchTheLatencyDistributionOfResponses() {
+
+		// one request out of ten is slow
+		final List<ApiTestRequest> requests = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			requests.add(new ApiTestRequest(ApiTestRequest.GET, new ApiUriBuilder("http://api.example.com").path(i % 10 == 9 ? "slow" : "fast")));
+		}
+		final List<ApiTestResponse> responses = client.executeAll(requests, 4).getResponses();
+
+		assertTrue(hasLatencyPercentile(50, 25, TimeUnit.MILLISECONDS).matches(responses));
+		assertTrue(hasLatencyPercentile(99, 10, TimeUnit.SECONDS).and(50, 25, TimeUnit.MILLISECONDS).measuringTimeToFirstByte().matches(responses));
+
+		final ApiLatencyPercentileMatcher matcher = hasLatencyPercentile(50, 25, TimeUnit.MILLISECONDS).and(99, 25, TimeUnit.MILLISECONDS);
+		assertFalse(matcher.matches(responses));
+
+		final StringDescription description = new StringDescription();
+		matcher.describeTo(description);
+		assertEquals("p50 latency within 25.000 ms and p99 latency within 25.000 ms", description.toString());
+
+		final StringDescription mismatch = new StringDescription();
+		matcher.describeMismatch(responses, mismatch);
+		assertTrue(mismatch.toString(), mismatch.toString().matches("p99 latency was \\d+\\.\\d{3} ms over 20 responses \\(ms: min=.* p50=.* p90=.* p99=.* p99\\.9=.* max=.*\\)"));
+
+		// failed requests of a batch do not match
+		final List<ApiTestResponse> partialResponses = new ArrayList<>(responses);
+		partialResponses.set(0, null);
+		assertFalse(hasLatencyPercentile(99, 10, TimeUnit.SECONDS).matches(partialResponses));
+	}
+
+	@Test
+	public void apiLatencyPercentileMatcherShouldMatchLatenciesExactlyAtTheMaximum() throws IOException {
+
+		// 200 ms is recorded with a precision of 128 microseconds
+		final List<ApiTestResponse> responses = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			responses.add(timedResponse(TimeUnit.MILLISECONDS.toNanos(200)));
+		}
+
+		assertTrue(hasLatencyPercentile(99, 200, TimeUnit.MILLISECONDS).and(50, 200000, TimeUnit.MICROSECONDS).matches(responses));
+		assertFalse(hasLatencyPercentile(99, 199, TimeUnit.MILLISECONDS).matches(responses));
+	}
+
+	/**
+	 * Returns an empty response whose request took the specified time.
+	 *
+	 * @param totalTime the total time of the request in nanoseconds
+	 * @return a response with timings
+	 */
+	private static ApiTestResponse timedResponse(final long totalTime) throws IOException {
+		return new ApiTestResponse(new BasicHttpResponse(HttpVersion.HTTP_1_1, 204, "No Content")) {
+			{
+				setTimings(new ApiTestTimings(0, totalTime, 0, totalTime, 0, 0));
+			}
+		};
+	}
+}
@@ -0,0 +1,81 @@
+package com.lotaris.api.test.matchers;
+
+import static org.junit.Assert.*;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+/**
+ * @see JsonErrorMatcher
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class JsonErrorMatcherUnitTest {
+
+	@Test
+	public void jsonErrorMatcherShouldMatchErrorsInAnyOrder() {
+		final JsonErrorMatcher matcher = new JsonErrorMatcher().withExpectedErrors(Arrays.asList(error("/a", 1), error("/b", 2), error("/a", 1)));
+
+		assertTrue(matcher.matches("{\"meta\":{\"errors\":[]},\"errors\":[{\"location\":\"/b\",\"code\":2,\"message\":\"b\",\"details\":{\"x\":[1]}},{\"location\":\"/a\",\"code\":1,\"message\":\"a\"},{\"code\":1,\"location\":\"/a\",\"message\":\"a\"}]}"));
+		assertFalse(matcher.matches("{\"errors\":[{\"location\":\"/b\",\"code\":2,\"message\":\"b\"},{\"location\":\"/a\",\"code\":1,\"message\":\"a\"}]}"));
+		assertFalse(matcher.matches("{\"errors\":[]}"));
+		assertFalse(matcher.matches("{\"data\":[]}"));
+	}
+
+	@Test
+	public void jsonErrorMatcherShouldDescribeTheFirstMismatch() {
+		final JsonErrorMatcher matcher = new JsonErrorMatcher().withExpectedErrors(Arrays.asList(error("/a", 1), error("/b", 2)));
+
+		final String response = "{\"errors\":[{\"location\":\"/a\",\"code\":1,\"message\":null},{\"location\":\"/b\",\"code\":2,\"message\":\"b\"},{\"location\":\"/c\",\"code\":3,\"message\":\"c\"}]}";
+		assertFalse(matcher.matches(response));
+
+		final StringDescription description = new StringDescription();
+		matcher.describeMismatch(response, description);
+		assertEquals("The size of the errors received doesn't match. Expected: 2 Received: 3\nError with location: /a and code: 1 doesn't have an error message.\n", description.toString());
+	}
+
+	@Test
+	public void jsonErrorMatcherShouldReportMalformedResponses() {
+		final JsonErrorMatcher matcher = new JsonErrorMatcher().withExpectedErrors(Arrays.asList(error("/a", 1)));
+
+		final String truncated = "{\"errors\":[{\"location\":\"/a\",\"code\":1,\"message\":\"a\"}";
+		assertFalse(matcher.matches(truncated));
+		final StringDescription truncatedDescription = new StringDescription();
+		matcher.describeMismatch(truncated, truncatedDescription);
+		assertTrue(truncatedDescription.toString(), truncatedDescription.toString().startsWith("The response could not be parsed as JSON: "));
+
+		final String invalid = "{\"errors\":[{\"location\":/a}]}";
+		assertFalse(matcher.matches(invalid));
+		final StringDescription invalidDescription = new StringDescription();
+		matcher.describeMismatch(invalid, invalidDescription);
+		assertTrue(invalidDescription.toString(), invalidDescription.toString().startsWith("The response could not be parsed as JSON: "));
+
+		final String noErrors = "{\"data\":[]}";
+		assertFalse(matcher.matches(noErrors));
+		final StringDescription noErrorsDescription = new StringDescription();
+		matcher.describeMismatch(noErrors, noErrorsDescription);
+		assertEquals("The response has no errors array.\n", noErrorsDescription.toString());
+	}
+
+	@Test
+	public void jsonErrorMatcherShouldMatchLargeErrorArrays() {
+		final int n = 100000;
+		final List<Entry<String, Integer>> expected = new ArrayList<>(n);
+		final StringBuilder response = new StringBuilder("{\"errors\":[");
+		for (int i = 0; i < n; i++) {
+			expected.add(error("/items/" + i, 1000 + i % 10));
+			response.append(i > 0 ? "," : "").append("{\"location\":\"/items/").append(n - 1 - i).append("\",\"code\":").append(1000 + (n - 1 - i) % 10).append(",\"message\":\"invalid\"}");
+		}
+		response.append("]}");
+
+		assertTrue(new JsonErrorMatcher().withExpectedErrors(expected).matches(response.toString()));
+	}
+
+	private static Entry<String, Integer> error(String location, int code) {
+		return new SimpleImmutableEntry<>(location, code);
+	}
+}
@@ -0,0 +1,32 @@
+package com.lotaris.api.test.metrics;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import org.junit.Test;
+
+/**
+ * @see ApiTestMetricsListener
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestMetricsListenerUnitTest {
+
+	@Test
+	public void apiTestMetricsListenerShouldReplaceIdentifierSegmentsInUriTemplates() {
+		assertEquals("/api/users/{id}/posts", template("http://localhost/api/users/42/posts"));
+		assertEquals("/api/users/{id}", template("http://localhost/api/users/0f8fad5b-d9cb-469f-a165-70867728950e"));
+		assertEquals("/api/files/{id}/", template("http://localhost/api/files/0123456789abcdef0123/"));
+		assertEquals("/api/users/me", template("http://localhost/api/users/me"));
+		assertEquals("/api/v2/cafe", template("http://localhost/api/v2/cafe"));
+	}
+
+	@Test
+	public void apiTestMetricsListenerShouldIgnoreQueryStringsInUriTemplates() {
+		assertEquals("/api/users", template("http://localhost/api/users?page=2"));
+		assertEquals("/", template("http://localhost"));
+	}
+
+	private static String template(String uri) {
+		return ApiTestMetricsListener.toUriTemplate(URI.create(uri));
+	}
+}
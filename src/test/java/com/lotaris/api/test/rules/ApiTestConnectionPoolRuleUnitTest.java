@@ -0,0 +1,73 @@
+package com.lotaris.api.test.rules;
+
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestClientScope;
+import com.lotaris.api.test.client.ApiTestConnectionPool;
+import com.lotaris.api.test.client.ApiTestConnectionPoolConfiguration;
+import com.lotaris.api.test.client.TestClientConfiguration;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * @see ApiTestConnectionPoolRule
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestConnectionPoolRuleUnitTest {
+
+	@Test
+	public void suiteScopedPoolsShouldBeSharedByTestsWithEqualConfigurations() throws Throwable {
+
+		final ApiTestConnectionPoolRule connectionPoolRule = new ApiTestConnectionPoolRule();
+
+		// like AbstractApiTest, each test builds its own client configuration
+		final ApiTestConnectionPool first = runTest(connectionPoolRule, "first", configuration(10));
+		final ApiTestConnectionPool second = runTest(connectionPoolRule, "second", configuration(10));
+		final ApiTestConnectionPool other = runTest(connectionPoolRule, "other", configuration(20));
+
+		assertSame(first, second);
+		assertNotSame(first, other);
+	}
+
+	@Test
+	public void suiteScopedPoolsShouldNotBeAffectedByConfigurationsModifiedLater() throws Throwable {
+
+		final ApiTestConnectionPoolRule connectionPoolRule = new ApiTestConnectionPoolRule();
+
+		final ApiTestConnectionPoolConfiguration poolConfiguration = new ApiTestConnectionPoolConfiguration().withMaxTotal(10).withEvictionInterval(0, TimeUnit.SECONDS);
+		final ApiTestConnectionPool first = runTest(connectionPoolRule, "first", new TestClientConfiguration().withConnectionPoolConfiguration(poolConfiguration));
+		poolConfiguration.withMaxTotal(20);
+
+		assertSame(first, runTest(connectionPoolRule, "second", configuration(10)));
+		assertNotSame(first, runTest(connectionPoolRule, "other", configuration(20)));
+	}
+
+	/**
+	 * Runs a test with a client rule using a suite-scoped connection pool.
+	 *
+	 * @param connectionPoolRule the rule providing shared connection pools
+	 * @param name the name of the test
+	 * @param configuration the client configuration of the test
+	 * @return the connection pool of the client of the test
+	 */
+	private static ApiTestConnectionPool runTest(ApiTestConnectionPoolRule connectionPoolRule, String name, TestClientConfiguration configuration) throws Throwable {
+
+		final ApiTestClientRule clientRule = new ApiTestClientRule(configuration, ApiTestClientScope.SUITE, connectionPoolRule);
+		final ApiTestConnectionPool[] pool = new ApiTestConnectionPool[1];
+
+		clientRule.apply(new Statement() {
+			@Override
+			public void evaluate() {
+				pool[0] = clientRule.getClient().getConnectionPool();
+			}
+		}, Description.createTestDescription(ApiTestConnectionPoolRuleUnitTest.class, name)).evaluate();
+
+		return pool[0];
+	}
+
+	private static TestClientConfiguration configuration(int maxTotal) {
+		return new TestClientConfiguration().withConnectionPoolConfiguration(new ApiTestConnectionPoolConfiguration().withMaxTotal(maxTotal).withEvictionInterval(0, TimeUnit.SECONDS));
+	}
+}
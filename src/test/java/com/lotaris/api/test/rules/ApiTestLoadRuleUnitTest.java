@@ -0,0 +1,158 @@
+package com.lotaris.api.test.rules;
+
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.TestClientConfiguration;
+import com.lotaris.api.test.load.ApiLoadTest;
+import com.lotaris.api.test.load.ApiLoadTestReport;
+import com.lotaris.api.test.load.IApiLoadTestReporter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * @see ApiTestLoadRule
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class ApiTestLoadRuleUnitTest {
+
+	private ApiLoadTestReport report;
+
+	@Test
+	public void loadTestShouldCountRequestsAndMeasureThroughputAfterRampUp() throws Throwable {
+
+		final AtomicLong executions = new AtomicLong();
+		final ApiTestLoadRule[] loadRule = new ApiTestLoadRule[1];
+
+		// each execution takes 20 milliseconds, so 2 virtual users send at most 100 req/s
+		runLoadTest(StatelessTest.class, loadRule, new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				final long start = System.nanoTime();
+				Thread.sleep(20);
+				executions.incrementAndGet();
+				loadRule[0].recordRequest(System.nanoTime() - start);
+			}
+		});
+
+		assertEquals(2, report.getConcurrency());
+		assertEquals(executions.get(), report.getIterations());
+		assertEquals(executions.get(), report.getRequests());
+		assertEquals(0, report.getFailedIterations());
+		assertEquals(0, report.getFailedRequests());
+		assertTrue(report.getElapsedTime(TimeUnit.MILLISECONDS) >= 1200);
+
+		// over the whole test (including the 800 ms ramp-up), the throughput would be about 83 req/s
+		assertTrue("Throughput was " + report.getThroughput(), report.getThroughput() >= 90 && report.getThroughput() <= 105);
+	}
+
+	@Test
+	public void loadTestShouldOnlyRecordLatenciesAfterRampUp() throws Throwable {
+
+		final AtomicLong executions = new AtomicLong();
+		final AtomicLong firstStart = new AtomicLong();
+		final ApiTestLoadRule[] loadRule = new ApiTestLoadRule[1];
+
+		// the recorded latency is the time elapsed since the first execution, so latencies
+		// recorded during the 200 ms ramp-up would be lower than 200 ms
+		runLoadTest(RampUpTest.class, loadRule, new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				firstStart.compareAndSet(0, System.nanoTime());
+				Thread.sleep(20);
+				executions.incrementAndGet();
+				loadRule[0].recordRequest(System.nanoTime() - firstStart.get());
+			}
+		});
+
+		final Histogram latencies = report.getLatencyHistogram();
+		assertEquals(executions.get(), report.getRequests());
+		assertTrue(latencies.getTotalCount() > 0);
+		assertTrue(latencies.getTotalCount() < executions.get());
+		assertTrue("Minimum latency was " + latencies.getMinValue() + "us", latencies.getMinValue() >= TimeUnit.MILLISECONDS.toMicros(180));
+	}
+
+	@Test
+	public void loadTestReportShouldComputeThroughputOverTheMeasuredDuration() {
+
+		final Histogram latencies = new Histogram(3);
+		for (int i = 0; i < 150; i++) {
+			latencies.recordValue(1000);
+		}
+
+		final long second = TimeUnit.SECONDS.toNanos(1);
+		assertEquals(50.0, new ApiLoadTestReport("test", 1, 4 * second, 160, 10, 50, latencies).getThroughput(), 0.001);
+		assertEquals(40.0, new ApiLoadTestReport("test", 1, 4 * second, 160, 10, 200, 50, latencies, 2 * second, 80).getThroughput(), 0.001);
+	}
+
+	@Test
+	public void loadTestShouldRejectTestClassesWithMutableFields() throws Throwable {
+
+		final ApiTestLoadRule[] loadRule = new ApiTestLoadRule[1];
+		try {
+			runLoadTest(StatefulTest.class, loadRule, new Statement() {
+				@Override
+				public void evaluate() {
+					fail("Stateful load tests should not be run");
+				}
+			});
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException iae) {
+			assertTrue(iae.getMessage(), iae.getMessage().contains("StatefulTest.count"));
+		}
+
+		assertNull(report);
+	}
+
+	/**
+	 * Runs the load test method of a test class with the client, headers manager and load rules.
+	 *
+	 * @param testClass the test class (with a load test method named "test")
+	 * @param loadRule receives the load rule of the test
+	 * @param testMethod the body of the test method
+	 */
+	private void runLoadTest(Class<?> testClass, ApiTestLoadRule[] loadRule, Statement testMethod) throws Throwable {
+
+		final ApiTestClientRule clientRule = new ApiTestClientRule(new TestClientConfiguration());
+		final ApiTestHeadersManagerRule headersManagerRule = new ApiTestHeadersManagerRule();
+		loadRule[0] = new ApiTestLoadRule(clientRule, headersManagerRule, new IApiLoadTestReporter() {
+			@Override
+			public void report(ApiLoadTestReport loadTestReport) {
+				report = loadTestReport;
+			}
+		});
+
+		final Description description = Description.createTestDescription(testClass, "test", testClass.getMethod("test").getAnnotation(ApiLoadTest.class));
+		clientRule.apply(headersManagerRule.apply(loadRule[0].apply(testMethod, description), description), description).evaluate();
+	}
+
+	public static class StatelessTest {
+
+		private final AtomicLong count = new AtomicLong();
+
+		@ApiLoadTest(concurrency = 2, rampUp = 800, duration = 400, unit = TimeUnit.MILLISECONDS)
+		public void test() {
+			count.incrementAndGet();
+		}
+	}
+
+	public static class RampUpTest {
+
+		@ApiLoadTest(concurrency = 1, rampUp = 200, duration = 200, unit = TimeUnit.MILLISECONDS)
+		public void test() {
+		}
+	}
+
+	public static class StatefulTest {
+
+		private long count;
+
+		@ApiLoadTest(concurrency = 2, duration = 100, unit = TimeUnit.MILLISECONDS)
+		public void test() {
+			count++;
+		}
+	}
+}
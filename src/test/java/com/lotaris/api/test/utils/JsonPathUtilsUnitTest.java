@@ -0,0 +1,71 @@
+package com.lotaris.api.test.utils;
+
+import static org.junit.Assert.*;
+
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.JsonProviderFactory;
+import com.lotaris.api.test.matchers.ApiJsonAsserter;
+import java.util.Arrays;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * @see JsonPathUtils
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class JsonPathUtilsUnitTest {
+
+	private static final Object DOCUMENT = JsonProviderFactory.createProvider().parse("{\"name\":\"foo\",\"tags\":[\"a\",\"b\"],\"owner\":null}");
+
+	@Test
+	public void jsonPathUtilsShouldCompilePathsOnce() {
+		assertSame(JsonPathUtils.compile("$.name"), JsonPathUtils.compile("$.name"));
+		assertEquals("foo", JsonPathUtils.read(DOCUMENT, "$.name"));
+		assertEquals(Arrays.asList("a", "b"), JsonPathUtils.read(DOCUMENT, "$.tags"));
+	}
+
+	@Test
+	public void jsonPathUtilsShouldEvictTheLeastRecentlyUsedPaths() {
+
+		final JsonPath unused = JsonPathUtils.compile("$.unused");
+		final JsonPath used = JsonPathUtils.compile("$.used");
+
+		// more paths than the cache can hold, while regularly using one of them
+		for (int i = 0; i < 2000; i++) {
+			JsonPathUtils.compile("$.generated" + i);
+			if (i % 100 == 0) {
+				assertSame(used, JsonPathUtils.compile("$.used"));
+			}
+		}
+
+		assertSame(used, JsonPathUtils.compile("$.used"));
+		assertNotSame(unused, JsonPathUtils.compile("$.unused"));
+
+		// evicted paths are cached again
+		assertSame(JsonPathUtils.compile("$.generated0"), JsonPathUtils.compile("$.generated0"));
+	}
+
+	@Test
+	public void apiJsonAsserterShouldAssertCompiledPaths() {
+		new ApiJsonAsserter(DOCUMENT)
+				.assertEquals("$.name", "foo")
+				.assertThat("$.tags", Matchers.hasSize(2))
+				.assertNull("$.owner")
+				.assertNotDefined("$.missing");
+
+		try {
+			new ApiJsonAsserter(DOCUMENT).assertNotDefined("$.name");
+			fail("A defined path should fail the assertion");
+		} catch (AssertionError ae) {
+			assertEquals("Document contains the path <$.name> but was expected not to.", ae.getMessage());
+		}
+
+		try {
+			new ApiJsonAsserter(DOCUMENT).assertEquals("$.missing", "foo");
+			fail("A missing path should be rejected");
+		} catch (InvalidPathException ipe) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.lotaris.api.test.utils;
+
+import static org.junit.Assert.*;
+
+import com.lotaris.api.test.client.ApiTestClient;
+import com.lotaris.api.test.client.ApiTestInProcessTransport;
+import com.lotaris.api.test.client.ApiTestRequest;
+import com.lotaris.api.test.client.ApiTestRequestBody;
+import com.lotaris.api.test.client.ApiTestResponse;
+import com.lotaris.api.test.client.ApiUriBuilder;
+import com.lotaris.api.test.client.TestClientConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.stream.JsonGenerationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see StreamingJsonObjectBuilder
+ * @author Simon Oulevay <simon.oulevay@lotaris.com>
+ */
+public class StreamingJsonObjectBuilderUnitTest {
+
+	private ApiTestClient client;
+
+	@Before
+	public void setUp() {
+
+		// echoes the request body
+		final HttpHandler handler = new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final ByteArrayOutputStream body = new ByteArrayOutputStream();
+				try (InputStream in = exchange.getRequestBody()) {
+					final byte[] buffer = new byte[1024];
+					for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+						body.write(buffer, 0, n);
+					}
+				}
+
+				exchange.getResponseHeaders().set("Content-Type", exchange.getRequestHeaders().getFirst("Content-Type"));
+				exchange.sendResponseHeaders(200, body.size());
+				try (OutputStream out = exchange.getResponseBody()) {
+					body.writeTo(out);
+				}
+			}
+		};
+
+		client = new ApiTestClient(new TestClientConfiguration().withInProcessTransport(ApiTestInProcessTransport.forHandler(handler)));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+	}
+
+	@Test
+	public void streamingJsonObjectBuilderShouldWriteNestedObjectsAndArrays() {
+
+		final StreamingJsonObjectBuilder builder = new StreamingJsonObjectBuilder(16)
+				.add("name", "foo")
+				.startObject("owner")
+					.add("id", 42)
+					.addNull("email")
+					.startArray("roles").addValue("admin").addNullValue().end()
+				.end()
+				.startArray("items")
+					.startObject().add("price", new BigDecimal("2.50")).end()
+					.startArray().addValue(true).addValue(3L).end()
+					.startArray().end()
+				.end()
+				.addIfNotNull("skipped", (String) null)
+				.addValueOrNull("missing", (Long) null)
+				.add("last", false);
+
+		final JsonObject expected = Json.createObjectBuilder()
+				.add("name", "foo")
+				.add("owner", Json.createObjectBuilder()
+						.add("id", 42)
+						.addNull("email")
+						.add("roles", Json.createArrayBuilder().add("admin").addNull()))
+				.add("items", Json.createArrayBuilder()
+						.add(Json.createObjectBuilder().add("price", new BigDecimal("2.50")))
+						.add(Json.createArrayBuilder().add(true).add(3L))
+						.add(Json.createArrayBuilder()))
+				.addNull("missing")
+				.add("last", false)
+				.build();
+
+		final ApiTestResponse response = echo(builder.build());
+		assertEquals(ApiTestRequestBody.APPLICATION_JSON, response.getHeaderString("Content-Type").replaceAll(";.*", ""));
+		assertEquals(expected, parse(response.getResponseAsString()));
+	}
+
+	@Test
+	public void streamingJsonObjectBuilderShouldReturnTheSameBodyWhenBuiltAgain() {
+
+		final StreamingJsonObjectBuilder builder = new StreamingJsonObjectBuilder().add("name", "foo");
+
+		final ApiTestRequestBody body = builder.build();
+		assertSame(body, builder.build());
+		assertEquals(parse("{\"name\":\"foo\"}"), parse(echo(body).getResponseAsString()));
+
+		// nothing can be added once built
+		try {
+			builder.add("other", "bar");
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException ise) {
+			// expected
+		}
+
+		try {
+			builder.end();
+			fail("Expected an IllegalStateException");
+		} catch (IllegalStateException ise) {
+			// expected
+		}
+
+		assertSame(body, builder.build());
+	}
+
+	@Test
+	public void streamingJsonObjectBuilderShouldFailOnUnbalancedEnds() {
+
+		// ending the root object leaves nothing for build() to end
+		final StreamingJsonObjectBuilder tooManyEnds = new StreamingJsonObjectBuilder().startArray("values").end().end();
+		try {
+			tooManyEnds.build();
+			fail("Expected a JsonGenerationException");
+		} catch (JsonGenerationException jge) {
+			// expected
+		}
+
+		// nested objects and arrays must be ended before the body is built
+		final StreamingJsonObjectBuilder missingEnd = new StreamingJsonObjectBuilder().startObject("owner").startArray("roles");
+		try {
+			missingEnd.build();
+			fail("Expected a JsonGenerationException");
+		} catch (JsonGenerationException jge) {
+			// expected
+		}
+	}
+
+	private ApiTestResponse echo(ApiTestRequestBody body) {
+		return client.execute(new ApiTestRequest(ApiTestRequest.POST, new ApiUriBuilder("http://api.example.com/echo"), body));
+	}
+
+	private static JsonObject parse(String json) {
+		try (JsonReader reader = Json.createReader(new StringReader(json))) {
+			return reader.readObject();
+		}
+	}
+}